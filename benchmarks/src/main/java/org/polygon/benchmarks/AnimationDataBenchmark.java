@@ -0,0 +1,76 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.polygon.engine.core.graph.CascadeShadow;
+import org.polygon.engine.core.graph.Model;
+import org.polygon.engine.core.scene.AnimationData;
+import org.polygon.engine.core.scene.ModelLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One frame worth of animation work: every entity advances its animation and the pose is read
+// by the geometry pass and by every shadow cascade.
+// Check gc.alloc.rate.norm in the results, it should stay near zero bytes per frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationDataBenchmark {
+    private static final int NUM_FRAMES = 60;
+    private static final float FRAME_TIME = 1.0f / 60.0f;
+
+    @Param({"1000"})
+    private int numEntities;
+
+    // Bob uses 33 bones.
+    @Param({"33", "250"})
+    private int numBones;
+
+    @Param({"MATRIX", "QUAT"})
+    private Model.BoneEncoding encoding;
+
+    private AnimationData[] animationDataArray;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        List<Matrix4f[]> frames = new ArrayList<>();
+        Matrix4f identity = new Matrix4f();
+        for(int i = 0; i < NUM_FRAMES; i++) {
+            Matrix4f[] boneMatrices = new Matrix4f[ModelLoader.MAX_BONES];
+            Arrays.fill(boneMatrices, identity);
+            for(int j = 0; j < numBones; j++) {
+                boneMatrices[j] = BenchmarkUtils.randomModelMatrix(random, 1.0f);
+            }
+            frames.add(boneMatrices);
+        }
+        Model.Animation animation = Model.Animation.encode("benchmark", NUM_FRAMES, numBones, frames, encoding);
+
+        animationDataArray = new AnimationData[numEntities];
+        for(int i = 0; i < numEntities; i++) {
+            AnimationData animationData = new AnimationData(animation);
+            animationData.setCurrentTime(random.nextFloat() * NUM_FRAMES);
+            animationDataArray[i] = animationData;
+        }
+    }
+
+    @Benchmark
+    public void getCurrentFrame(Blackhole blackhole) {
+        for(AnimationData animationData : animationDataArray) {
+            animationData.nextFrame(FRAME_TIME);
+            // Geometry pass and the shadow cascades.
+            blackhole.consume(animationData.getCurrentFrame());
+            for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
+                blackhole.consume(animationData.getCurrentFrame());
+            }
+        }
+    }
+}
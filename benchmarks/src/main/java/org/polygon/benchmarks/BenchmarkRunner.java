@@ -0,0 +1,36 @@
+package org.polygon.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks and exports the results as JSON for regression tracking.
+// Accepts the regular JMH command line options, e.g. "FrustumBenchmark -f 1 -wi 3".
+// The GC profiler is always on so the JSON also contains gc.alloc.rate.norm.
+public class BenchmarkRunner {
+    public static final String RESULT_FILE_PROPERTY = "benchmark.result";
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions commandLineOptions;
+        try {
+            commandLineOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            throw new RuntimeException("Invalid benchmark options [" + e.getMessage() + "]", e);
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty(RESULT_FILE_PROPERTY, DEFAULT_RESULT_FILE))
+                .build();
+
+        new Runner(options).run();
+    }
+}
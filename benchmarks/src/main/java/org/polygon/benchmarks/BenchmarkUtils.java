@@ -0,0 +1,39 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+
+import java.io.File;
+import java.util.Random;
+
+public class BenchmarkUtils {
+    // Fixed seed so every run benchmarks the same data.
+    public static final long SEED = 42L;
+
+    private BenchmarkUtils() {
+
+    }
+
+    // Benchmarks can be started from the root directory or from the benchmarks module directory.
+    public static String resolveResourcePath(String resourcePath) {
+        File file = new File(resourcePath);
+        if(file.exists()) {
+            return file.getPath();
+        }
+        file = new File("..", resourcePath);
+        if(file.exists()) {
+            return file.getPath();
+        }
+        throw new RuntimeException("Benchmark resource does not exist [" + resourcePath + "]");
+    }
+
+    // Random entity transform scattered inside a cube of the given half size.
+    public static Matrix4f randomModelMatrix(Random random, float halfSize) {
+        float halfAngle = random.nextFloat() * (float) Math.PI;
+        return new Matrix4f().translationRotateScale(
+                (random.nextFloat() * 2 - 1) * halfSize,
+                (random.nextFloat() * 2 - 1) * halfSize,
+                (random.nextFloat() * 2 - 1) * halfSize,
+                0, (float) Math.sin(halfAngle), 0, (float) Math.cos(halfAngle),
+                0.5f + random.nextFloat() * 2.0f);
+    }
+}
@@ -0,0 +1,71 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.Frustum;
+import org.polygon.engine.core.scene.BoundingVolumeHierarchy;
+import org.polygon.engine.core.scene.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Frustum culling of a large static scene, linear scan against the BVH query.
+// The camera only sees a small part of the world so the BVH cost should follow the visible count.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BvhCullingBenchmark {
+    private static final float WORLD_HALF_SIZE = 1000.0f;
+
+    @Param({"10000", "100000"})
+    private int numEntities;
+
+    private final Frustum frustum = new Frustum();
+    private final Vector3f localMin = new Vector3f(-1.0f);
+    private final Vector3f localMax = new Vector3f(1.0f);
+    private final List<Entity> visibleEntities = new ArrayList<>();
+    private Entity[] entities;
+    private BoundingVolumeHierarchy bvh;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        bvh = new BoundingVolumeHierarchy();
+        entities = new Entity[numEntities];
+        for(int i = 0; i < numEntities; i++) {
+            Entity entity = new Entity("entity" + i, "model");
+            Matrix4f modelMatrix = BenchmarkUtils.randomModelMatrix(random, WORLD_HALF_SIZE);
+            entity.setPosition(modelMatrix.m30(), modelMatrix.m31(), modelMatrix.m32());
+            bvh.createProxy(entity, localMin, localMax, entity.getModelMatrix());
+            entities[i] = entity;
+        }
+
+        frustum.update(new Matrix4f()
+                .perspective((float) Math.toRadians(60.0f), 16.0f / 9.0f, 0.01f, 200.0f)
+                .lookAt(0, 5, 20, 0, 0, 0, 0, 1, 0));
+    }
+
+    @Benchmark
+    public int linearScan() {
+        visibleEntities.clear();
+        for(Entity entity : entities) {
+            if(frustum.isBoxVisible(localMin, localMax, entity.getModelMatrix())) {
+                visibleEntities.add(entity);
+            }
+        }
+        return visibleEntities.size();
+    }
+
+    @Benchmark
+    public int bvhQuery() {
+        visibleEntities.clear();
+        bvh.query(frustum, visibleEntities);
+        return visibleEntities.size();
+    }
+}
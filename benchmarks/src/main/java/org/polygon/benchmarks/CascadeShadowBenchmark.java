@@ -0,0 +1,42 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.CascadeShadow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cascade split and light matrices calculation, done once per frame by the ShadowRender.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CascadeShadowBenchmark {
+    private List<CascadeShadow> cascadeShadowList;
+    private Matrix4f viewMatrix;
+    private Matrix4f projectionMatrix;
+    private Vector3f lightDirection;
+
+    @Setup
+    public void setup() {
+        cascadeShadowList = new ArrayList<>();
+        for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
+            cascadeShadowList.add(new CascadeShadow());
+        }
+        viewMatrix = new Matrix4f().lookAt(0, 5, 20, 0, 0, 0, 0, 1, 0);
+        projectionMatrix = new Matrix4f()
+                .perspective((float) Math.toRadians(60.0f), 16.0f / 9.0f, 0.01f, 1000.0f);
+        lightDirection = new Vector3f(0.3f, 1.0f, 0.2f).normalize();
+    }
+
+    @Benchmark
+    public List<CascadeShadow> updateCascadeShadows() {
+        CascadeShadow.updateCascadeShadows(cascadeShadowList, viewMatrix, projectionMatrix, lightDirection);
+        return cascadeShadowList;
+    }
+}
@@ -0,0 +1,70 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.polygon.engine.core.graph.Frustum;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Frustum culling as done by the SceneRender for every model every frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrustumBenchmark {
+    @Param({"1000", "10000"})
+    private int numEntities;
+
+    private Frustum frustum;
+    private Matrix4f projViewMatrix;
+    private Matrix4f[] modelMatrices;
+    private final Vector3f localMin = new Vector3f(-1.0f);
+    private final Vector3f localMax = new Vector3f(1.0f);
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        projViewMatrix = new Matrix4f()
+                .perspective((float) Math.toRadians(60.0f), 16.0f / 9.0f, 0.01f, 1000.0f)
+                .lookAt(0, 5, 20, 0, 0, 0, 0, 1, 0);
+        modelMatrices = new Matrix4f[numEntities];
+        for(int i = 0; i < numEntities; i++) {
+            modelMatrices[i] = BenchmarkUtils.randomModelMatrix(random, 100.0f);
+        }
+        frustum = new Frustum();
+        frustum.update(projViewMatrix);
+    }
+
+    @Benchmark
+    public Frustum update() {
+        frustum.update(projViewMatrix);
+        return frustum;
+    }
+
+    @Benchmark
+    public int isBoxVisible() {
+        int visible = 0;
+        for(Matrix4f modelMatrix : modelMatrices) {
+            if(frustum.isBoxVisible(localMin, localMax, modelMatrix)) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public void transformAABB(Blackhole blackhole) {
+        for(Matrix4f modelMatrix : modelMatrices) {
+            Frustum.transformAABB(localMin, localMax, modelMatrix, worldMin, worldMax);
+            blackhole.consume(worldMin);
+            blackhole.consume(worldMax);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.polygon.benchmarks;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.LightClusterGrid;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// CPU side of the clustered lighting: binning small point lights into the view-space cluster grid,
+// done once per frame by the ClusteredLightsRender. Compare the threads params to see how the slices scale.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightClusterGridBenchmark {
+    @Param({"1", "4"})
+    private int threads;
+
+    @Param({"1000", "4000"})
+    private int numLights;
+
+    private ForkJoinPool pool;
+    private LightClusterGrid clusterGrid;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        clusterGrid = new LightClusterGrid(pool);
+        clusterGrid.setProjection(new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16.0f / 9.0f
+                , 0.01f, 1000.0f));
+
+        // Lights spread in front of the camera up to 200 units away, radius 0.5 to 5.5.
+        Random random = new Random(BenchmarkUtils.SEED);
+        for(int i = 0; i < numLights; i++) {
+            float distance = 0.5f + random.nextFloat() * 200.0f;
+            float x = (random.nextFloat() * 2.0f - 1.0f) * distance;
+            float y = (random.nextFloat() * 2.0f - 1.0f) * distance * 0.6f;
+            clusterGrid.addLight(x, y, -distance, 0.5f + random.nextFloat() * 5.0f);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int build() {
+        clusterGrid.build();
+        return clusterGrid.getNumLightIndices();
+    }
+}
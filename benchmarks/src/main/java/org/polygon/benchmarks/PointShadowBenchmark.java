@@ -0,0 +1,48 @@
+package org.polygon.benchmarks;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.PointShadowRender;
+import org.polygon.engine.core.scene.lights.PointLight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Selection of the closest shadow casting point lights, done once per frame by the PointShadowRender.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointShadowBenchmark {
+    @Param({"16", "256"})
+    private int numLights;
+
+    private List<PointLight> pointLights;
+    private final List<PointLight> selectedLights = new ArrayList<>();
+    private final Vector3f cameraPos = new Vector3f(0, 2, 10);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        pointLights = new ArrayList<>();
+        for(int i = 0; i < numLights; i++) {
+            Vector3f position = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat())
+                    .mul(100.0f).sub(50.0f, 50.0f, 50.0f);
+            PointLight pointLight = new PointLight(new Vector3f(1.0f), 1.0f, position);
+            // Half of the lights cast shadows.
+            pointLight.setShadowCasting(i % 2 == 0);
+            pointLights.add(pointLight);
+        }
+    }
+
+    @Benchmark
+    public List<PointLight> selectShadowCastingLights() {
+        selectedLights.clear();
+        PointShadowRender.selectShadowCastingLights(pointLights, cameraPos, selectedLights);
+        return selectedLights;
+    }
+}
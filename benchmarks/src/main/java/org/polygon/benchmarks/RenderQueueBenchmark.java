@@ -0,0 +1,81 @@
+package org.polygon.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.RenderQueue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Building and sorting a frame's draw items, the radix sorted primitive key queue against sorting draw item
+// objects with a comparator. The items come in cull order, i.e. unsorted state.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderQueueBenchmark {
+    private static final int NUM_PROGRAMS = 4;
+    private static final int NUM_MATERIALS = 500;
+    private static final int NUM_MESHES = 2000;
+    private static final float MAX_DEPTH = 1000.0f;
+
+    @Param({"50000"})
+    private int numItems;
+
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final List<DrawItem> drawItemList = new ArrayList<>();
+    private DrawItem[] drawItems;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        drawItems = new DrawItem[numItems];
+        for(int i = 0; i < numItems; i++) {
+            drawItems[i] = new DrawItem(random.nextInt(NUM_PROGRAMS), random.nextInt(NUM_MATERIALS)
+                    , random.nextInt(NUM_MESHES), random.nextFloat() * MAX_DEPTH);
+        }
+    }
+
+    @Benchmark
+    public int radixSort() {
+        renderQueue.clear();
+        for(int i = 0; i < drawItems.length; i++) {
+            DrawItem drawItem = drawItems[i];
+            renderQueue.add(RenderQueue.createKey(drawItem.program, drawItem.material, drawItem.mesh
+                    , drawItem.depth), i);
+        }
+        renderQueue.sort();
+        return renderQueue.getPayload(0);
+    }
+
+    @Benchmark
+    public int comparatorSort() {
+        drawItemList.clear();
+        for(DrawItem drawItem : drawItems) {
+            drawItem.key = RenderQueue.createKey(drawItem.program, drawItem.material, drawItem.mesh
+                    , drawItem.depth);
+            drawItemList.add(drawItem);
+        }
+        drawItemList.sort(Comparator.comparingLong(drawItem -> drawItem.key));
+        return drawItemList.get(0).mesh;
+    }
+
+    private static class DrawItem {
+        private final int program;
+        private final int material;
+        private final int mesh;
+        private final float depth;
+        private long key;
+
+        private DrawItem(int program, int material, int mesh, float depth) {
+            this.program = program;
+            this.material = material;
+            this.mesh = mesh;
+            this.depth = depth;
+        }
+    }
+}
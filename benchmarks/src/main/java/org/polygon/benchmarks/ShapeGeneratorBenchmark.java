@@ -0,0 +1,24 @@
+package org.polygon.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polygon.engine.core.graph.MeshData;
+import org.polygon.engine.core.utils.ShapeGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+// Sphere vertex data generation, without the GL upload.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeGeneratorBenchmark {
+    @Param({"16", "64"})
+    private int resolution;
+
+    @Benchmark
+    public MeshData generateSphereData() {
+        return ShapeGenerator.generateSphereData(1.0f, resolution, resolution);
+    }
+}
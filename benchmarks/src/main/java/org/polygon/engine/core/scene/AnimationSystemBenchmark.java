@@ -0,0 +1,84 @@
+package org.polygon.engine.core.scene;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.polygon.benchmarks.BenchmarkUtils;
+import org.polygon.engine.core.graph.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// One tick of the animation system: advance every animation, sync point, then evaluate the render poses.
+// Lives in the scene package since AnimationData.syncRenderState is package-private.
+// Compare the threads params to see how the pose evaluation scales.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationSystemBenchmark {
+    private static final int NUM_FRAMES = 60;
+    private static final float FRAME_TIME = 1.0f / 60.0f;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param({"1000"})
+    private int numEntities;
+
+    // Bob uses 33 bones.
+    @Param({"33", "250"})
+    private int numBones;
+
+    @Param({"MATRIX", "QUAT"})
+    private Model.BoneEncoding encoding;
+
+    private ForkJoinPool pool;
+    private AnimationSystem animationSystem;
+    private final List<AnimationData> animations = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkUtils.SEED);
+        List<Matrix4f[]> frames = new ArrayList<>();
+        Matrix4f identity = new Matrix4f();
+        for(int i = 0; i < NUM_FRAMES; i++) {
+            Matrix4f[] boneMatrices = new Matrix4f[ModelLoader.MAX_BONES];
+            Arrays.fill(boneMatrices, identity);
+            for(int j = 0; j < numBones; j++) {
+                boneMatrices[j] = BenchmarkUtils.randomModelMatrix(random, 1.0f);
+            }
+            frames.add(boneMatrices);
+        }
+        Model.Animation animation = Model.Animation.encode("benchmark", NUM_FRAMES, numBones, frames, encoding);
+
+        animations.clear();
+        for(int i = 0; i < numEntities; i++) {
+            AnimationData animationData = new AnimationData(animation);
+            animationData.setCurrentTime(random.nextFloat() * NUM_FRAMES);
+            animations.add(animationData);
+        }
+
+        pool = new ForkJoinPool(threads);
+        animationSystem = new AnimationSystem(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void tick() {
+        animationSystem.advance(animations, FRAME_TIME);
+        for(AnimationData animationData : animations) {
+            animationData.syncRenderState();
+        }
+        animationSystem.evaluateRenderPoses(animations);
+    }
+}
@@ -0,0 +1,69 @@
+package org.polygon.engine.core.scene;
+
+import org.openjdk.jmh.annotations.*;
+import org.polygon.benchmarks.BenchmarkUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Cold vs warm model loads, without the GL uploads.
+// cold imports the model with assimp and encodes it like a cache miss does,
+// warm maps the cache file written in the setup.
+// Lives in the scene package since the model cache internals are package-private.
+// Needs the resources directory, run it from the root or the benchmarks directory.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelCacheBenchmark {
+    @Param({
+            "resources/models/bob/boblamp.md5mesh",
+            "resources/models/backpack/Survival_BackPack_2.fbx",
+            "resources/models/test/DamagedHelmet.gltf",
+            "resources/models/terrain/terrain.obj",
+    })
+    private String modelPath;
+
+    private String resolvedModelPath;
+    private int flags;
+    private ModelCache.Key key;
+    private Path cacheDirectory;
+    private Path cacheFile;
+
+    @Setup
+    public void setup() throws IOException {
+        resolvedModelPath = BenchmarkUtils.resolveResourcePath(modelPath);
+        // Only bob is animated.
+        flags = ModelLoader.getImportFlags(modelPath.endsWith(".md5mesh"));
+        key = ModelCache.createKey(resolvedModelPath, flags);
+
+        cacheDirectory = Files.createTempDirectory("polygon-model-cache");
+        ModelCache.setCacheDirectory(cacheDirectory);
+        cacheFile = ModelCache.getCacheFile(key);
+        ModelCache.write(cacheFile, ModelCache.encode(ModelLoader.importModel(resolvedModelPath, flags), key));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(cacheFile);
+        Files.deleteIfExists(cacheDirectory);
+    }
+
+    @Benchmark
+    public Object cold() {
+        return ModelCache.encode(ModelLoader.importModel(resolvedModelPath, flags), key);
+    }
+
+    @Benchmark
+    public Object warm() {
+        ModelCache.CachedModel cachedModel = ModelCache.read(cacheFile, key);
+        if(cachedModel == null) {
+            throw new RuntimeException("Model cache file is stale [" + cacheFile + "]");
+        }
+        return cachedModel;
+    }
+}
@@ -0,0 +1,60 @@
+package org.polygon.engine.core.scene;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.polygon.benchmarks.BenchmarkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.assimp.Assimp.*;
+
+// Bone weights processing of the bob model meshes.
+// Lives in the scene package since processBones is package-private.
+// Needs the resources directory, run it from the root or the benchmarks directory.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelLoaderBenchmark {
+    private static final String MODEL_PATH = "resources/models/bob/boblamp.md5mesh";
+
+    private AIScene aiScene;
+    private final List<AIMesh> aiMeshList = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        String modelPath = BenchmarkUtils.resolveResourcePath(MODEL_PATH);
+        aiScene = aiImportFile(modelPath, aiProcess_JoinIdenticalVertices | aiProcess_Triangulate
+                | aiProcess_LimitBoneWeights);
+        if(aiScene == null) {
+            throw new RuntimeException("Error loading model [modelPath: " + modelPath + "]");
+        }
+
+        int numMeshes = aiScene.mNumMeshes();
+        PointerBuffer aiMeshes = aiScene.mMeshes();
+        for(int i = 0; i < numMeshes; i++) {
+            aiMeshList.add(AIMesh.create(aiMeshes.get(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        aiMeshList.clear();
+        aiReleaseImport(aiScene);
+    }
+
+    @Benchmark
+    public void processBones(Blackhole blackhole) {
+        List<ModelLoader.Bone> boneList = new ArrayList<>();
+        for(AIMesh aiMesh : aiMeshList) {
+            blackhole.consume(ModelLoader.processBones(aiMesh, boneList));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+#version 410 core
+
+const float PI = 3.14159265359;
+
+const int MAX_POINT_LIGHT_SHADOWS = 4;
+
+// Must match the LightClusterGrid.
+const int CLUSTERS_X = 16;
+const int CLUSTERS_Y = 9;
+const int CLUSTERS_Z = 24;
+
+struct Attenuation {
+    float constant;
+    float linear;
+    float exponent;
+};
+
+// G-Buffer samplers
+uniform sampler2D albedoSampler;
+uniform sampler2D normalSampler;
+uniform sampler2D materialSampler;
+uniform sampler2D depthSampler;
+
+// Per-frame camera data shared by the shaders, see FrameUniforms.
+layout (std140) uniform CameraData {
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 invProjectionMatrix;
+    mat4 invViewMatrix;
+    vec2 screenSize;
+};
+
+// The lights binned by the ClusteredLightsRender, five texels per light:
+// 0: view position, radius
+// 1: color, intensity
+// 2: attenuation constant, linear, exponent, light type
+// 3: spot light view cone direction, cut off
+// 4: world position, point light shadow index
+uniform samplerBuffer lightDataSampler;
+// First index and number of lights of every cluster.
+uniform usamplerBuffer clusterSampler;
+// The light indices of every cluster.
+uniform usamplerBuffer lightIndexSampler;
+// x: near plane, y: CLUSTERS_Z / log(far / near)
+uniform vec2 clusterDepth;
+
+uniform samplerCube pointShadowMap[MAX_POINT_LIGHT_SHADOWS];
+
+in vec2 outTextCoord;
+
+// Output Additive blending is handled by OpenGL state in the ClusteredLightsRender.
+out vec4 FragColor;
+
+// Reconstruct View Position from Depth Buffer
+vec3 reconstructViewPos(float depth, vec2 texCoords) {
+    float z = depth * 2.0 - 1.0;
+    vec2 clipXY = texCoords * 2.0 - 1.0;
+    vec4 clipPos = vec4(clipXY, z, 1.0);
+    vec4 viewPos_w = invProjectionMatrix * clipPos;
+    return viewPos_w.xyz / viewPos_w.w;
+}
+
+// Normal Distribution Function (Trowbridge-Reitz GGX)
+// D = a^2 / PI((N.H)^2(a^2 - 1) + 1)^2
+// a represents the roughtness of the material ^ 2.
+float DistributionGGX(vec3 N, vec3 H, float roughness) {
+    float a = roughness * roughness;
+    float a2 = a * a;
+    float NdotH = max(dot(N, H), 0.0);
+    float NdotH2 = NdotH * NdotH;
+    float nom   = a2;
+    float denom = (NdotH2 * (a2 - 1.0) + 1.0);
+    denom = PI * denom * denom;
+    return nom / max(denom, 0.0000001);
+}
+
+// GeometrySchlickGGX used in correlation with the GeometrySmith function
+// GeometrySchlickGGX = N.X / (N.X) (1 - k) + k
+// X represents the L or V vectors.
+// k represents roughness / 2. the old (roughness + 1.0)^2 was used by Unreal Engine but they reverted back to the
+// roughness / 2
+float GeometrySchlickGGX(float NdotV, float roughness) {
+    //    float r = (roughness + 1.0);
+    //    float k = (r * r) / 8.0;
+    float k = roughness / 2.0;
+    float nom   = NdotV;
+    float denom = NdotV * (1.0 - k) + k;
+    return nom / max(denom, 0.0000001);
+}
+
+// Geometry shadowing function is a combination of the smith model and the schlick model
+// Gsmith = G(NdotV) * G(NdotL) where G is the GeometrySchlickGGX function
+float GeometrySmith(vec3 N, vec3 V, vec3 L, float roughness) {
+    float NdotV = max(dot(N, V), 0.0);
+    float NdotL = max(dot(N, L), 0.0);
+    float ggx2 = GeometrySchlickGGX(NdotV, roughness);
+    float ggx1 = GeometrySchlickGGX(NdotL, roughness);
+    return ggx1 * ggx2;
+}
+
+// Fresnel Schlick Function.
+// F0 represents the base reflectivity of the material.
+// F = F0 + (1 - F0) (1 - (V.H))^5.
+// V is the view vector and H is the half-way vector (half-way between the view V and light L vector).
+// Since V vector and H vector are normalized the dot product will be cos the angle between them.
+vec3 fresnelSchlick(float cosTheta, vec3 F0) {
+    return F0 + (1.0 - F0) * pow(clamp(1.0 - cosTheta, 0.0, 1.0), 5.0);
+}
+
+// Shared PBR Calculation for Point/Spot Lights
+vec3 calcPBRContrib(vec3 lightColor, float lightIntensity, vec3 lightPos_view,
+                    vec3 fragPos_view, vec3 N, vec3 V,
+                    vec3 albedo, float metallic, float roughness)
+{
+    // calculating the L vector and the H half-way vector between the view vector and the light vector.
+    vec3 L = normalize(lightPos_view - fragPos_view);
+    vec3 H = normalize(V + L);
+
+    // Pre-calculated the dot products of the needed vectors because of their frequent usage.
+    // Avoid the negative dot products because they represents Vectors that are out of the BRDF hemisphere.
+    float NdotL = max(dot(N, L), 0.0);
+    if (NdotL <= 0.0) {
+        return vec3(0.0);
+    }
+    float NdotV = max(dot(N, V), 0.0);
+    float HdotV = max(dot(H, V), 0.0);
+
+    // Calculate base reflectivity F0 for Fresnel
+    // For dielectrics, F0 is usually vec3(0.04). For metals, it's the albedo color.
+    vec3 F0 = vec3(0.04);
+    F0 = mix(F0, albedo, metallic);
+
+    // Cook-Torrance terms
+    float D = DistributionGGX(N, H, roughness);
+    float G = GeometrySmith(N, V, L, roughness);
+    vec3 F = fresnelSchlick(HdotV, F0);
+
+    // Specular BRDF component (Cook-Torrance)
+    // Cook-Torrance equation (specular) = D*G*F / 4(V.N)(L.N)
+    // D represents the Normal Distribution function
+    // G represents the Geometry Shadowing function
+    // F represents the Fresnel Function
+    vec3 numerator = D * G * F;
+    float denominator = 4.0 * NdotV * NdotL + 0.001;
+    vec3 specular = numerator / denominator;
+
+    // Diffuse BRDF component (Lambertian)
+    // BRDF = kD.fdiffuse + kS.fspecular
+    // kS is the factor of specular contribution and kD is the factor of diffuse contribution for the light.
+    // PBR should conserve energy so kD + kS should add up to 1
+    // We get the specular factor from the Fresnel function
+    // kS's only usage is to calculate the kD since we are using the Frensel function in the Cook-Torrance function.
+    vec3 kS = F;
+    vec3 kD = vec3(1.0) - kS;
+    kD *= (1.0 - metallic);
+    vec3 diffuse = kD * albedo / PI;
+
+    // Combine and modulate by light color/intensity and angle
+    vec3 radiance = lightColor * lightIntensity;
+    return (diffuse + specular) * radiance * NdotL;
+}
+
+// Calculate Light Attenuation
+float calcAttenuation(vec3 lightPos_view, vec3 fragPos_view, Attenuation att)
+{
+    float distance = length(lightPos_view - fragPos_view);
+    float attenuation = att.constant + att.linear * distance + att.exponent * distance * distance;
+    // Avoid division by zero, return 0 contribution if attenuation is non-positive
+    return (attenuation > 0.0) ? (1.0 / attenuation) : 0.0;
+}
+
+// The shadow index differs between the pixels, the shadow maps are only indexed with constants.
+float samplePointShadow(int shadowIndex, vec3 fragToLight) {
+    if(shadowIndex == 0) {
+        return texture(pointShadowMap[0], fragToLight).r;
+    } else if(shadowIndex == 1) {
+        return texture(pointShadowMap[1], fragToLight).r;
+    } else if(shadowIndex == 2) {
+        return texture(pointShadowMap[2], fragToLight).r;
+    }
+    return texture(pointShadowMap[3], fragToLight).r;
+}
+
+float calcPointShadow(vec3 fragPos_world, vec3 lightPos_world, int shadowIndex, float farPlane) {
+    if(shadowIndex < 0 || shadowIndex >= MAX_POINT_LIGHT_SHADOWS) {
+        return 1.0; // fully lit - no shadows
+    }
+
+    vec3 fragToLight = fragPos_world - lightPos_world;
+    float currentDistance = length(fragToLight);
+    float closestDistance = samplePointShadow(shadowIndex, fragToLight) * farPlane;
+
+    float bias = 0.05;
+    return (currentDistance - bias > closestDistance) ? 0.0 : 1.0;
+}
+
+void main()
+{
+    vec2 texCoords = outTextCoord;
+
+    float depth = texture(depthSampler, texCoords).r;
+    // Discard fragments beyond the far plane (skybox/background)
+    if (depth >= 1.0) {
+        discard;
+    }
+
+    vec3 fragPos_vs = reconstructViewPos(depth, texCoords);
+
+    // Find the fragment's cluster, slices are spaced exponentially between the near and far planes.
+    int tileX = clamp(int(texCoords.x * CLUSTERS_X), 0, CLUSTERS_X - 1);
+    int tileY = clamp(int(texCoords.y * CLUSTERS_Y), 0, CLUSTERS_Y - 1);
+    int slice = clamp(int(floor(log(-fragPos_vs.z / clusterDepth.x) * clusterDepth.y)), 0, CLUSTERS_Z - 1);
+    uvec2 cluster = texelFetch(clusterSampler, tileX + CLUSTERS_X * (tileY + CLUSTERS_Y * slice)).rg;
+    if (cluster.y == 0u) {
+        discard;
+    }
+
+    vec3 albedo = texture(albedoSampler, texCoords).rgb;
+    vec3 N = normalize(texture(normalSampler, texCoords).rgb * 2.0 - 1.0); // View-space normal
+    vec3 materialProps = texture(materialSampler, texCoords).rgb;
+    float metallic = materialProps.r;
+    float roughness = materialProps.g;
+    vec3 V = normalize(-fragPos_vs);
+    vec3 fragPos_world = (invViewMatrix * vec4(fragPos_vs, 1.0)).xyz;
+
+    vec3 lightResult = vec3(0.0);
+    for (uint i = 0u; i < cluster.y; i++) {
+        int lightIndex = int(texelFetch(lightIndexSampler, int(cluster.x + i)).r);
+        int texel = lightIndex * 5;
+        vec4 positionRadius = texelFetch(lightDataSampler, texel);
+        vec3 toLight = positionRadius.xyz - fragPos_vs;
+        if (dot(toLight, toLight) > positionRadius.w * positionRadius.w) {
+            continue;
+        }
+        vec4 colorIntensity = texelFetch(lightDataSampler, texel + 1);
+        vec4 attenuationType = texelFetch(lightDataSampler, texel + 2);
+        Attenuation att = Attenuation(attenuationType.x, attenuationType.y, attenuationType.z);
+
+        if (attenuationType.w < 0.5) // Point Light
+        {
+            vec4 positionShadow = texelFetch(lightDataSampler, texel + 4);
+            vec3 contrib = calcPBRContrib(colorIntensity.rgb, colorIntensity.a, positionRadius.xyz,
+                                          fragPos_vs, N, V, albedo, metallic, roughness);
+            float attenuation = calcAttenuation(positionRadius.xyz, fragPos_vs, att);
+            float shadow = calcPointShadow(fragPos_world, positionShadow.xyz, int(positionShadow.w),
+                                           positionRadius.w);
+            lightResult += contrib * attenuation * shadow;
+        }
+        else // Spot Light
+        {
+            vec4 coneCutOff = texelFetch(lightDataSampler, texel + 3);
+            float spotFactor = dot(-normalize(toLight), coneCutOff.xyz);
+            // Check if fragment is inside the spotlight cone
+            if (spotFactor > coneCutOff.w) {
+                vec3 contrib = calcPBRContrib(colorIntensity.rgb, colorIntensity.a, positionRadius.xyz,
+                                              fragPos_vs, N, V, albedo, metallic, roughness);
+                float attenuation = calcAttenuation(positionRadius.xyz, fragPos_vs, att);
+                // Add smooth falloff at the edge of the cone
+                float spotEffect = smoothstep(coneCutOff.w, mix(coneCutOff.w, 1.0, 0.05), spotFactor);
+                lightResult += contrib * attenuation * spotEffect;
+            }
+        }
+    }
+
+    FragColor = vec4(lightResult, 1.0);
+}
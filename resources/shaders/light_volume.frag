@@ -39,15 +39,31 @@ uniform sampler2D normalSampler;
 uniform sampler2D materialSampler;
 uniform sampler2D depthSampler;
 
-uniform vec2 screenSize;
-uniform mat4 invProjectionMatrix;
+// Per-frame camera data shared by the shaders, see FrameUniforms.
+layout (std140) uniform CameraData {
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 invProjectionMatrix;
+    mat4 invViewMatrix;
+    vec2 screenSize;
+};
 
-uniform int lightType;
-uniform PointLight pointLight;
-uniform SpotLight spotLight;
+// The light volume being drawn, see LightsRender.
+// lightColor: rgb color, a intensity
+// lightPositionView: xyz position, w point light far plane
+// lightPositionWorld: xyz position, w spot light cut off
+// lightAttenuation: constant, linear, exponent
+// lightParams: x light type, y point light shadow index
+layout (std140) uniform LightVolumeData {
+    mat4 modelMatrix;
+    vec4 lightColor;
+    vec4 lightPositionView;
+    vec4 lightPositionWorld;
+    vec4 lightConeDirectionView;
+    vec4 lightAttenuation;
+    ivec4 lightParams;
+};
 
-// Used to get from view space to world space : for point light's shadow mapping
-uniform mat4 invViewMatrix;
 uniform samplerCube pointShadowMap[MAX_POINT_LIGHT_SHADOWS];
 
 // Vertex position in view space
@@ -191,6 +207,13 @@ float calcPointShadow(vec3 fragPos_world, PointLight light) {
 
 void main()
 {
+    int lightType = lightParams.x;
+    Attenuation lightAtt = Attenuation(lightAttenuation.x, lightAttenuation.y, lightAttenuation.z);
+    PointLight pointLight = PointLight(lightColor.rgb, lightColor.a, lightPositionView.xyz
+            , lightPositionWorld.xyz, lightAtt, lightParams.y, lightPositionView.w);
+    SpotLight spotLight = SpotLight(lightColor.rgb, lightColor.a, lightPositionView.xyz
+            , lightAtt, lightConeDirectionView.xyz, lightPositionWorld.w);
+
     // Calculate texture coordinates from fragment's screen position
     vec2 texCoords = gl_FragCoord.xy / screenSize;
 
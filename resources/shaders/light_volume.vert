@@ -2,9 +2,25 @@
 
 layout (location=0) in vec3 position;
 
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
-uniform mat4 modelMatrix;
+// Per-frame camera data shared by the shaders, see FrameUniforms.
+layout (std140) uniform CameraData {
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 invProjectionMatrix;
+    mat4 invViewMatrix;
+    vec2 screenSize;
+};
+
+// The light volume being drawn, see LightsRender.
+layout (std140) uniform LightVolumeData {
+    mat4 modelMatrix;
+    vec4 lightColor;
+    vec4 lightPositionView;
+    vec4 lightPositionWorld;
+    vec4 lightConeDirectionView;
+    vec4 lightAttenuation;
+    ivec4 lightParams;
+};
 
 out vec3 FragPos_view;
 
@@ -42,16 +42,23 @@ uniform sampler2D emissiveSampler;
 uniform sampler2D depthSampler;
 uniform sampler2D ssaoSampler;
 
-uniform mat4 invProjectionMatrix;
-uniform mat4 invViewMatrix;
-uniform mat4 viewMatrix;
-
-uniform AmbientLight ambientLight;
-uniform DirectionalLight directionalLight;
+// Per-frame camera data shared by the shaders, see FrameUniforms.
+layout (std140) uniform CameraData {
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 invProjectionMatrix;
+    mat4 invViewMatrix;
+    vec2 screenSize;
+};
 
-uniform Fog fog;
+// Per-frame lighting data, see FrameUniforms.
+layout (std140) uniform LightingData {
+    CascadeShadow cascadeshadows[NUM_CASCADES];
+    AmbientLight ambientLight;
+    DirectionalLight directionalLight;
+    Fog fog;
+};
 
-uniform CascadeShadow cascadeshadows[NUM_CASCADES];
 uniform sampler2D shadowMap[NUM_CASCADES];
 
 uniform sampler2D brdfLUT;
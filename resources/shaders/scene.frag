@@ -33,13 +33,26 @@ uniform sampler2D roughnessSampler;
 uniform sampler2D aoSampler;
 uniform sampler2D emissiveSampler;
 
-uniform Material material;
+#ifdef INDIRECT
+// Materials of the frame's indirect draws, indexed by the draw record of the instance.
+flat in uint outMaterialIndex;
+
+layout (std430, binding=1) readonly buffer MaterialsData {
+    Material materials[];
+};
+
+#define material materials[outMaterialIndex]
+#else
+layout (std140) uniform MaterialData {
+    Material material;
+};
+#endif
 
 vec3 calcTangentSpaceNormal(vec3 tangent_vs, vec3 bitangent_vs, vec3 normal_vs, vec2 textCoord) {
     mat3 TBN = mat3(normalize(tangent_vs), normalize(bitangent_vs), normalize(normal_vs));
-    vec3 normal_map = texture(normalSampler, textCoord).rgb;
-    //map to [-1, 1]
-    normal_map = normalize(normal_map * 2.0 - 1.0);
+    //map to [-1, 1], Z is rebuilt from X and Y so BC5 normal maps, which only store those, work too
+    vec2 normal_xy = texture(normalSampler, textCoord).rg * 2.0 - 1.0;
+    vec3 normal_map = vec3(normal_xy, sqrt(max(1.0 - dot(normal_xy, normal_xy), 0.0)));
     vec3 normal_view = normalize(TBN * normal_map);
     return normal_view;
 }
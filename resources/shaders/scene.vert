@@ -1,15 +1,40 @@
 #version 410 core
 
+// Compiled twice, with SKINNED defined for the animated models and without it for the static ones,
+// which are always instanced and skip the bone data entirely. The static variant is also compiled as
+// GLSL 430 with INDIRECT defined for the multi-draw indirect path, see MultiDrawRender.
+#ifdef SKINNED
 const int MAX_WEIGHTS = 4;
 const int MAX_BONES = 250;
+#endif
 
 layout (location=0) in vec3 position;
 layout (location=1) in vec3 normal;
 layout (location=2) in vec3 tangent;
 layout (location=3) in vec3 bitangent;
 layout (location=4) in vec2 textCoord;
+#ifdef SKINNED
 layout (location=5) in vec4 boneWeights;
 layout (location=6) in ivec4 boneIndices;
+#endif
+#ifdef INDIRECT
+// Indices of the instance's model matrix and material, one record per instance of every indirect draw.
+layout (location=12) in uvec2 drawRecord;
+
+// Model matrices of the frame's static instances.
+layout (std430, binding=0) readonly buffer InstanceMatrices {
+    mat4 instanceMatrices[];
+};
+
+flat out uint outMaterialIndex;
+#else
+// Per-instance model matrix, used instead of the modelMatrix uniform for instanced draws.
+layout (location=7) in mat4 instanceModelMatrix;
+#endif
+#ifdef SKINNED
+// Per-instance baked animation frame, used instead of the animationFrame uniform for instanced draws.
+layout (location=11) in vec4 instanceAnimationFrame;
+#endif
 
 out vec4 outViewPosition;
 out vec4 outWorldPosition;
@@ -18,12 +43,44 @@ out vec3 outTangent;
 out vec3 outBitangent;
 out vec2 outTextCoord;
 
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
+// Per-frame camera data shared by the shaders, see FrameUniforms.
+layout (std140) uniform CameraData {
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 invProjectionMatrix;
+    mat4 invViewMatrix;
+    vec2 screenSize;
+};
+
+#ifdef SKINNED
 uniform mat4 modelMatrix;
 uniform mat4 bonesMatrices[MAX_BONES];
+// Bone matrix rows of the baked animation frames, see AnimationTexture.
+uniform samplerBuffer animationSampler;
+uniform int bakedAnimation;
+// First texel of the current and next frame and the interpolation factor of a baked animation.
+uniform vec4 animationFrame;
+uniform int instanced;
+
+mat4 getBoneMatrix(int boneIndex, vec4 frame) {
+    if(bakedAnimation == 0) {
+        return bonesMatrices[boneIndex];
+    }
+    int current = int(frame.x) + boneIndex * 3;
+    int next = int(frame.y) + boneIndex * 3;
+    vec4 row0 = mix(texelFetch(animationSampler, current), texelFetch(animationSampler, next), frame.z);
+    vec4 row1 = mix(texelFetch(animationSampler, current + 1), texelFetch(animationSampler, next + 1), frame.z);
+    vec4 row2 = mix(texelFetch(animationSampler, current + 2), texelFetch(animationSampler, next + 2), frame.z);
+    return transpose(mat4(row0, row1, row2, vec4(0.0, 0.0, 0.0, 1.0)));
+}
+#endif
+
 void main()
 {
+#ifdef SKINNED
+    mat4 entityModelMatrix = instanced > 0 ? instanceModelMatrix : modelMatrix;
+    vec4 frame = instanced > 0 ? instanceAnimationFrame : animationFrame;
+
     vec4 totalPos = vec4(0, 0, 0, 0);
     vec4 totalNormal = vec4(0, 0, 0, 0);
     vec4 totalTangent = vec4(0, 0, 0, 0);
@@ -34,17 +91,17 @@ void main()
         float weight = boneWeights[i];
         if(weight > 0) {
             count++;
-            int boneIndex = boneIndices[i];
-            vec4 tmpPos = bonesMatrices[boneIndex] * vec4(position, 1.0);
+            mat4 boneMatrix = getBoneMatrix(boneIndices[i], frame);
+            vec4 tmpPos = boneMatrix * vec4(position, 1.0);
             totalPos += weight * tmpPos;
 
-            vec4 tmpNormal = bonesMatrices[boneIndex] * vec4(normal, 0.0);
+            vec4 tmpNormal = boneMatrix * vec4(normal, 0.0);
             totalNormal += weight * tmpNormal;
 
-            vec4 tmpTangent = bonesMatrices[boneIndex] * vec4(tangent, 0.0);
+            vec4 tmpTangent = boneMatrix * vec4(tangent, 0.0);
             totalTangent += weight * tmpTangent;
 
-            vec4 tmpBitangent = bonesMatrices[boneIndex] * vec4(bitangent, 0.0);
+            vec4 tmpBitangent = boneMatrix * vec4(bitangent, 0.0);
             totalBitangent += weight * tmpBitangent;
         }
     }
@@ -54,9 +111,23 @@ void main()
         totalTangent = vec4(tangent, 0.0);
         totalBitangent = vec4(bitangent, 0.0);
     }
+#elif defined(INDIRECT)
+    mat4 entityModelMatrix = instanceMatrices[drawRecord.x];
+    outMaterialIndex = drawRecord.y;
+    vec4 totalPos = vec4(position, 1.0);
+    vec4 totalNormal = vec4(normal, 0.0);
+    vec4 totalTangent = vec4(tangent, 0.0);
+    vec4 totalBitangent = vec4(bitangent, 0.0);
+#else
+    mat4 entityModelMatrix = instanceModelMatrix;
+    vec4 totalPos = vec4(position, 1.0);
+    vec4 totalNormal = vec4(normal, 0.0);
+    vec4 totalTangent = vec4(tangent, 0.0);
+    vec4 totalBitangent = vec4(bitangent, 0.0);
+#endif
 
-    mat4 modelViewMatrix = viewMatrix * modelMatrix;
-    outWorldPosition = modelMatrix * totalPos;
+    mat4 modelViewMatrix = viewMatrix * entityModelMatrix;
+    outWorldPosition = entityModelMatrix * totalPos;
     outViewPosition = viewMatrix * outWorldPosition;
     gl_Position = projectionMatrix * outViewPosition;
     outNormal = normalize(modelViewMatrix * totalNormal).xyz;
@@ -1,21 +1,56 @@
 #version 410 core
 
+// Compiled twice, with SKINNED defined for the animated models and without it for the static ones.
+// The static variant is also compiled as GLSL 430 with INDIRECT defined for the GPU culled models, see GpuCulling.
+#ifdef SKINNED
 const int MAX_WEIGHTS = 4;
 const int MAX_BONES = 250;
+#endif
 
 layout (location=0) in vec3 position;
 layout (location=1) in vec3 normal;
 layout (location=2) in vec3 tangent;
 layout (location=3) in vec3 bitangent;
 layout (location=4) in vec2 textCoord;
+#ifdef SKINNED
 layout (location=5) in vec4 boneWeights;
 layout (location=6) in ivec4 boneIndices;
+#endif
 
+#ifdef INDIRECT
+// Index of the instance's model matrix, the material index isn't used.
+layout (location=12) in uvec2 drawRecord;
+
+layout (std430, binding=0) readonly buffer InstanceMatrices {
+    mat4 instanceMatrices[];
+};
+#else
 uniform mat4 modelMatrix;
+#endif
 uniform mat4 projViewMatrix;
+#ifdef SKINNED
 uniform mat4 bonesMatrices[MAX_BONES];
+// Bone matrix rows of the baked animation frames, see AnimationTexture.
+uniform samplerBuffer animationSampler;
+uniform int bakedAnimation;
+// First texel of the current and next frame and the interpolation factor of a baked animation.
+uniform vec4 animationFrame;
+
+mat4 getBoneMatrix(int boneIndex, vec4 frame) {
+    if(bakedAnimation == 0) {
+        return bonesMatrices[boneIndex];
+    }
+    int current = int(frame.x) + boneIndex * 3;
+    int next = int(frame.y) + boneIndex * 3;
+    vec4 row0 = mix(texelFetch(animationSampler, current), texelFetch(animationSampler, next), frame.z);
+    vec4 row1 = mix(texelFetch(animationSampler, current + 1), texelFetch(animationSampler, next + 1), frame.z);
+    vec4 row2 = mix(texelFetch(animationSampler, current + 2), texelFetch(animationSampler, next + 2), frame.z);
+    return transpose(mat4(row0, row1, row2, vec4(0.0, 0.0, 0.0, 1.0)));
+}
+#endif
 
 void main() {
+#ifdef SKINNED
     vec4 totalPos = vec4(0, 0, 0, 0);
 
     int count = 0;
@@ -24,14 +59,20 @@ void main() {
         float weight = boneWeights[i];
         if(weight > 0) {
             count++;
-            int boneIndex = boneIndices[i];
-            vec4 tmpPos = bonesMatrices[boneIndex] * vec4(position, 1.0);
+            vec4 tmpPos = getBoneMatrix(boneIndices[i], animationFrame) * vec4(position, 1.0);
             totalPos += weight * tmpPos;
         }
     }
     if(count == 0) {
         totalPos = vec4(position, 1.0);
     }
+#else
+    vec4 totalPos = vec4(position, 1.0);
+#endif
 
+#ifdef INDIRECT
+    gl_Position = projViewMatrix * instanceMatrices[drawRecord.x] * totalPos;
+#else
     gl_Position = projViewMatrix * modelMatrix * totalPos;
+#endif
 }
\ No newline at end of file
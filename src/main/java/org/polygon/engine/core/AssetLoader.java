@@ -0,0 +1,149 @@
+package org.polygon.engine.core;
+
+import org.polygon.engine.core.graph.CompressedTextureCache;
+import org.polygon.engine.core.graph.CompressedTextureData;
+import org.polygon.engine.core.graph.Model;
+import org.polygon.engine.core.graph.Texture;
+import org.polygon.engine.core.graph.TextureCache;
+import org.polygon.engine.core.graph.TextureData;
+import org.polygon.engine.core.scene.ModelLoader;
+import org.polygon.engine.core.sound.SoundBuffer;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Loads assets without stalling the game loop.
+// Files are read and decoded on worker threads, only the final GL and AL uploads are queued to the main thread,
+// which runs them within a time budget every frame in processUploads.
+// The returned futures complete on the main thread right after the upload, while the scene state lock is held,
+// so their callbacks can add the loaded assets to a scene.
+public class AssetLoader {
+    private final ExecutorService workers;
+    private final Queue<Upload<?, ?>> uploadQueue = new ConcurrentLinkedQueue<>();
+    // Set by cleanup, decodes finishing later free their data instead of leaving it in the queue.
+    private volatile boolean closed;
+    // Measures the upload budget.
+    private final GameLoopTimer.Clock clock;
+
+    public AssetLoader(int numThreads) {
+        this(numThreads, GameLoopTimer.SYSTEM_CLOCK);
+    }
+
+    public AssetLoader(int numThreads, GameLoopTimer.Clock clock) {
+        this.clock = clock;
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Polygon-AssetLoader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Loads the texture into the textureCache, completes with the cached texture if it was loaded meanwhile.
+    // Goes through the CompressedTextureCache when it's enabled, a cache miss is compressed on the worker.
+    public CompletableFuture<Texture> loadTexture(String texturePath, boolean sRGB, TextureCache textureCache) {
+        if(CompressedTextureCache.isEnabled()) {
+            CompressedTextureData.Usage usage = sRGB ? CompressedTextureData.Usage.COLOR
+                    : CompressedTextureData.Usage.DATA;
+            return submit(() -> CompressedTextureCache.load(texturePath, usage)
+                    , compressedTextureData -> textureCache.createTexture(texturePath, compressedTextureData)
+                    , compressedTextureData -> {});
+        }
+        return submit(() -> TextureData.load(texturePath)
+                , textureData -> textureCache.createTexture(texturePath, textureData, sRGB)
+                , TextureData::free);
+    }
+
+    public CompletableFuture<SoundBuffer> loadSound(String soundPath) {
+        return submit(() -> SoundBuffer.decode(soundPath), SoundBuffer::new, SoundBuffer.SoundData::free);
+    }
+
+    // The model's textures are decoded on the worker thread too. The model isn't added to any scene.
+    public CompletableFuture<Model> loadModel(String modelId, String modelPath, TextureCache textureCache
+            , boolean importAnimations) {
+        return submit(() -> ModelLoader.decodeModel(modelPath, importAnimations)
+                , decodedModel -> ModelLoader.createModel(modelId, decodedModel, textureCache)
+                , ModelLoader.DecodedModel::free);
+    }
+
+    // Runs decode on a worker thread and queues upload with its result to the main thread.
+    // discard frees the decoded data if the loader is cleaned up before it's uploaded.
+    public <D, T> CompletableFuture<T> submit(Callable<D> decode, Function<D, T> upload, Consumer<D> discard) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        workers.execute(() -> {
+            try {
+                D data = decode.call();
+                uploadQueue.add(new Upload<>(data, upload, discard, future));
+                // Queued after cleanup drained the queue, or while it did.
+                if(closed) {
+                    discardUploads();
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // Runs queued uploads until budgetNanos is spent, it always runs at least one so loading keeps progressing.
+    // Must be called on the main thread, returns the number of uploads done.
+    public int processUploads(long budgetNanos) {
+        long startTime = clock.nanoTime();
+        int numUploads = 0;
+        Upload<?, ?> upload;
+        while((upload = uploadQueue.poll()) != null) {
+            upload.run();
+            numUploads++;
+            if(clock.nanoTime() - startTime >= budgetNanos) {
+                break;
+            }
+        }
+        return numUploads;
+    }
+
+    public int getPendingUploads() {
+        return uploadQueue.size();
+    }
+
+    // Decodes still running after the wait free their data once they're done.
+    public void cleanup() {
+        closed = true;
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        discardUploads();
+    }
+
+    private void discardUploads() {
+        Upload<?, ?> upload;
+        while((upload = uploadQueue.poll()) != null) {
+            upload.discard();
+        }
+    }
+
+    private record Upload<D, T>(D data, Function<D, T> upload, Consumer<D> free, CompletableFuture<T> future) {
+        private void run() {
+            try {
+                future.complete(upload.apply(data));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void discard() {
+            free.accept(data);
+            future.cancel(false);
+        }
+    }
+}
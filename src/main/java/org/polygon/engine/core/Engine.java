@@ -1,17 +1,39 @@
 package org.polygon.engine.core;
 
 import org.polygon.engine.core.graph.EngineRender;
+import org.polygon.engine.core.graph.Mesh;
+import org.polygon.engine.core.graph.Model;
+import org.polygon.engine.core.graph.TextureStreamer;
+import org.polygon.engine.core.scene.ModelLoader;
+import org.polygon.engine.core.scene.Scene;
+
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Engine {
     public static final int TARGET_UPS = 30;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final float NANOS_PER_MS = 1_000_000.0f;
     private final IGameLogic gameLogic;
     private final Window window;
     private EngineRender render;
-    private boolean running;
+    private volatile boolean running;
+    // Guards the scene state between the update thread and the main thread,
+    // held during a whole update tick, the input handling and the render state sync.
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private Thread updateThread;
+    private volatile Throwable updateThreadError;
+    private final GameLoopTimer timer = new GameLoopTimer();
+    // Time the simulation reached with the last update tick, written under the state lock.
+    private volatile long updateTickTime;
 
     public Engine(String windowTitle, Window.WindowOptions opts, IGameLogic gameLogic) {
         // Creating engine's window and passing the resize function as reference
         window = new Window(windowTitle, opts);
+        // Set before the renderers and the game create any meshes.
+        Mesh.setPackedVertexFormat(opts.packedVertexFormat);
+        ModelLoader.setAnimationEncoding(opts.quaternionAnimations ? Model.BoneEncoding.QUAT
+                : Model.BoneEncoding.MATRIX);
+        TextureStreamer.setBudgetBytes((long) opts.textureBudgetMB * 1024 * 1024);
 
         // Passing game logic to engine
         // creating the renderer scene entities
@@ -34,6 +56,7 @@ public class Engine {
     }
 
     private void cleanup() {
+        stopUpdateThread();
         // Destroying game and freeing memory
         gameLogic.cleanup();
         // Destroying Renderer entity
@@ -45,52 +68,30 @@ public class Engine {
     }
 
     // Main game loop
+    // Input and rendering run once per iteration, gameLogic.update runs in fixed ticks of 1 / ups seconds
+    // spent from the time accumulated by the GameLoopTimer. The entities moved in the ticks are drawn
+    // interpolated by the fraction of the next tick already elapsed, see Scene.interpolateRenderState.
     private void run() {
         // Track user options
         Window.WindowOptions opts = window.getWindowOptions();
-        // This will hold before loop time in MS to calculate lag
-        long rbeforeMS = System.currentTimeMillis();
-        long ubeforeMS = rbeforeMS;
-
-        float targetUpdateMS;
-        float targetRenderMS;
-        float beforeTargetUpdateMs = 1000.0f / opts.ups;
-        float beforeTargetRenderMS = opts.fps > 0 ? 1000.0f / opts.fps : 0;
+        timer.reset();
+        updateTickTime = timer.getSimulationTime();
 
-        // Will determine if we should update or render based on targetFps and targetUps
-        float deltaUpdate = 0;
-        float deltaRender = 0;
+        if(opts.multithreadedUpdate) {
+            startUpdateThread();
+        }
 
         while(running && !window.windowShouldClose()) {
-            // Finds the target update time in MS to manage fixed game updates
-            targetUpdateMS = 1000.0f / opts.ups;
-            // Finds the target render time in MS to manage capped frame rate
+            // Read every iteration so target UPS and FPS changes apply instantly.
+            long updateStepNanos = NANOS_PER_SECOND / opts.ups;
             // If there is no specified frame rate cap, we will depend on
             // GLFW v-sync to control render calls rate instead
-            targetRenderMS = opts.fps > 0 ? 1000.0f / opts.fps : 0;
-
-            // Check if the user changed target FPS
-            // This reset is needed for instant target FPS change.
-            if(beforeTargetRenderMS != targetRenderMS) {
-                deltaRender = 0;
-            }
-            // Check if the user changed target UPS
-            // This reset is needed for instant target UPS change.
-            if(beforeTargetUpdateMs != targetUpdateMS) {
-                deltaUpdate = 0;
-            }
+            long renderStepNanos = opts.fps > 0 ? NANOS_PER_SECOND / opts.fps : 0;
 
             // Poll window events and key callbacks will only invoke during this call
             window.pollEvents();
 
-            // Get current iteration time in MS and
-            // increment both deltaUpdate and deltaRender based on lag
-            // if lag was equal to or bigger than the target values for updating and rendering
-            // then the division result will be equal to 1 or more and that is a flag to
-            // render/update. If otherwise we need to sleep for more iterations until it's time to render/update
-            long nowMS = System.currentTimeMillis();
-            deltaUpdate += (nowMS - rbeforeMS) / targetUpdateMS;
-            deltaRender += (nowMS - rbeforeMS) / targetRenderMS;
+            long frameDeltaNanos = timer.beginFrame();
 
             // Process the game window's mouse inputs
             window.getMouseInputHandler().input();
@@ -98,53 +99,139 @@ public class Engine {
             // Handle GUI inputs and decide if the GUI is in the focus of the mouse or keyboard
             boolean inputConsumed = false;
 
-            for(IGuiInstance instance : window.getGuiInstances()) {
-                if(inputConsumed) {
-                    break;
+            stateLock.lock();
+            try {
+                for(IGuiInstance instance : window.getGuiInstances()) {
+                    if(inputConsumed) {
+                        break;
+                    }
+                    inputConsumed = instance.handleGuiInput(window);
+                }
+
+                for(IGuiInstance instance : window.getCurrentScene().getGuiInstances()) {
+                    if(inputConsumed) {
+                        break;
+                    }
+                    inputConsumed = instance.handleGuiInput(window);
                 }
-                inputConsumed = instance.handleGuiInput(window);
+                gameLogic.input(window, frameDeltaNanos / NANOS_PER_MS, inputConsumed);
+            } finally {
+                stateLock.unlock();
             }
 
-            for(IGuiInstance instance : window.getCurrentScene().getGuiInstances()) {
-                if(inputConsumed) {
-                    break;
+            // Fixed update ticks, the update thread runs them on its own if enabled
+            if(updateThread == null) {
+                int ticks = timer.consumeTicks(updateStepNanos);
+                for(int i = 0; i < ticks; i++) {
+                    runUpdateTick(updateStepNanos, timer.getSimulationTime() - (ticks - 1 - i) * updateStepNanos);
                 }
-                inputConsumed = instance.handleGuiInput(window);
             }
-            gameLogic.input(window, nowMS - rbeforeMS, inputConsumed);
-
-            // Caps updating according to targetUps
-            if(deltaUpdate >= 1) {
-                // Updating game according to physics or game inputs
-                // and passing delta time taken between updates
-                gameLogic.update(window, nowMS - ubeforeMS);
-                ubeforeMS = nowMS;
-                // Reset deltaUpdate to re-determine if a time matching targetUps in MS
-                // had passed or not for future update calls
-                deltaUpdate--;
+
+            if(updateThreadError != null) {
+                throw new RuntimeException("Update thread failed", updateThreadError);
             }
 
-            if(opts.fps <= 0 || deltaRender >= 1) {
+            if(timer.isRenderDue(renderStepNanos)) {
+                // Sync point, the renderers read the state of the last finished update tick
+                float alpha;
+                stateLock.lock();
+                try {
+                    // Finished asset loads complete their futures here, so their callbacks
+                    // can change the scene before it's synced.
+                    window.getAssetLoader().processUploads((long) (opts.assetUploadBudgetMS * 1_000_000));
+                    window.getCurrentScene().syncRenderState();
+                    // Fraction of the next tick elapsed since the synced one.
+                    alpha = timer.getAlpha(updateTickTime, updateStepNanos);
+                } finally {
+                    stateLock.unlock();
+                }
+                window.getCurrentScene().interpolateRenderState(alpha);
+                window.getCurrentScene().evaluateRenderPoses();
                 // Clears the screen and initiate draw calls then redraw frame buffer
                 render.render(window);
-                // Reset deltaRender to redetermine if a time matching targetFps in MS
-                // had passed or not for future draw calls
-                deltaRender--;
+                timer.renderDone(renderStepNanos);
                 // Swap frame buffer
                 window.update();
             }
 
-            rbeforeMS = nowMS;
-
-            // Used to track if user changed target FPS
-            beforeTargetRenderMS = targetRenderMS;
-            // Used to track if user changed target UPS
-            beforeTargetUpdateMs = targetUpdateMS;
+            // With a capped frame rate, sleep until the next frame or tick instead of spinning
+            if(renderStepNanos > 0) {
+                long nextEventTime = timer.getNextRenderTime(renderStepNanos);
+                if(updateThread == null) {
+                    nextEventTime = Math.min(nextEventTime, timer.getNextTickTime(updateStepNanos));
+                }
+                try {
+                    timer.waitUntil(nextEventTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
         }
         // Cleans up engine components when window closes (game loop shutdown)
         cleanup();
     }
 
+    // Runs one fixed update tick, tickTime is the time the simulation reaches with it.
+    private void runUpdateTick(long updateStepNanos, long tickTime) {
+        Scene scene = window.getCurrentScene();
+        stateLock.lock();
+        try {
+            scene.beginUpdateTick();
+            try {
+                gameLogic.update(window, updateStepNanos / NANOS_PER_MS);
+            } finally {
+                scene.endUpdateTick();
+            }
+            updateTickTime = tickTime;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    private void startUpdateThread() {
+        render.setSceneStateLock(stateLock);
+        updateThread = new Thread(this::runUpdateLoop, "Polygon-Update");
+        updateThread.setDaemon(true);
+        updateThread.start();
+    }
+
+    private void stopUpdateThread() {
+        if(updateThread == null) {
+            return;
+        }
+        running = false;
+        try {
+            updateThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        updateThread = null;
+    }
+
+    // Update loop of the update thread, ticks gameLogic.update at the target UPS.
+    private void runUpdateLoop() {
+        Window.WindowOptions opts = window.getWindowOptions();
+        GameLoopTimer updateTimer = new GameLoopTimer(timer.getClock());
+        try {
+            while(running) {
+                long updateStepNanos = NANOS_PER_SECOND / opts.ups;
+                updateTimer.beginFrame();
+                int ticks = updateTimer.consumeTicks(updateStepNanos);
+                for(int i = 0; i < ticks; i++) {
+                    runUpdateTick(updateStepNanos
+                            , updateTimer.getSimulationTime() - (ticks - 1 - i) * updateStepNanos);
+                }
+                updateTimer.waitUntil(updateTimer.getNextTickTime(updateStepNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            // Rethrown by the main loop.
+            updateThreadError = e;
+        }
+    }
+
     public void start() {
         running = true;
         run();
@@ -0,0 +1,145 @@
+package org.polygon.engine.core;
+
+// Fixed timestep timing of the game loop, in nanoseconds.
+// Every frame adds the time since the previous one to an accumulator, which is spent in fixed update ticks.
+// What's left over is the fraction of the next tick already elapsed, the renderers interpolate with it.
+// A frame never runs more than MAX_TICKS_PER_FRAME ticks, the rest of the lag is dropped so slow updates
+// can't snowball into ever more ticks per frame.
+// Time comes from a Clock, so the loop can be driven by a fake one without waiting.
+public class GameLoopTimer {
+    public static final int MAX_TICKS_PER_FRAME = 5;
+    // Waits shorter than this spin instead of sleeping, sleeps overshoot by up to a millisecond or more.
+    private static final long SPIN_NANOS = 2_000_000;
+
+    private final Clock clock;
+    private long frameTime;
+    private long frameDeltaNanos;
+    private long accumulator;
+    private long lastRenderTime;
+    private long droppedNanos;
+
+    public interface Clock {
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+
+        // Gives up the rest of the time slice while spinning towards a deadline.
+        void yieldThread();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        }
+
+        @Override
+        public void yieldThread() {
+            Thread.yield();
+        }
+    };
+
+    public GameLoopTimer() {
+        this(SYSTEM_CLOCK);
+    }
+
+    public GameLoopTimer(Clock clock) {
+        this.clock = clock;
+        reset();
+    }
+
+    // Starts over from now with nothing accumulated.
+    public void reset() {
+        frameTime = clock.nanoTime();
+        lastRenderTime = frameTime;
+        frameDeltaNanos = 0;
+        accumulator = 0;
+    }
+
+    // Starts a frame, returns the time since the previous one.
+    public long beginFrame() {
+        long now = clock.nanoTime();
+        frameDeltaNanos = now - frameTime;
+        frameTime = now;
+        accumulator += frameDeltaNanos;
+        return frameDeltaNanos;
+    }
+
+    // Number of ticks of updateStepNanos to run this frame, they're taken out of the accumulator.
+    public int consumeTicks(long updateStepNanos) {
+        int ticks = (int) Math.min(accumulator / updateStepNanos, MAX_TICKS_PER_FRAME);
+        accumulator -= ticks * updateStepNanos;
+        if(accumulator >= updateStepNanos) {
+            long remainder = accumulator % updateStepNanos;
+            droppedNanos += accumulator - remainder;
+            accumulator = remainder;
+        }
+        return ticks;
+    }
+
+    // Fraction of the next tick elapsed by now since the simulation reached tickTime, from 0 to 1.
+    // Clamped, a tick from another timer may still be running or lag behind.
+    public float getAlpha(long tickTime, long updateStepNanos) {
+        float alpha = (float) (clock.nanoTime() - tickTime) / updateStepNanos;
+        return Math.max(0.0f, Math.min(1.0f, alpha));
+    }
+
+    // Time the last tick run so far stands for, the simulation is that far along.
+    public long getSimulationTime() {
+        return frameTime - accumulator;
+    }
+
+    // Whether a frame is due with the frame rate capped to one every renderStepNanos, 0 for no cap.
+    public boolean isRenderDue(long renderStepNanos) {
+        return renderStepNanos <= 0 || frameTime - lastRenderTime >= renderStepNanos;
+    }
+
+    // Keeps the frames on a steady cadence, unless they fell a whole frame behind.
+    public void renderDone(long renderStepNanos) {
+        if(renderStepNanos <= 0 || frameTime - lastRenderTime >= 2 * renderStepNanos) {
+            lastRenderTime = frameTime;
+        } else {
+            lastRenderTime += renderStepNanos;
+        }
+    }
+
+    // When the accumulator reaches the next tick.
+    public long getNextTickTime(long updateStepNanos) {
+        return frameTime + updateStepNanos - accumulator;
+    }
+
+    // When the next frame is due with the frame rate capped to one every renderStepNanos.
+    public long getNextRenderTime(long renderStepNanos) {
+        return lastRenderTime + renderStepNanos;
+    }
+
+    // Sleeps until shortly before the deadline, then spins the rest for precision.
+    public void waitUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while((remaining = deadline - clock.nanoTime()) > 0) {
+            if(remaining > SPIN_NANOS) {
+                clock.sleep(remaining - SPIN_NANOS);
+            } else {
+                clock.yieldThread();
+            }
+        }
+    }
+
+    public long getFrameDeltaNanos() {
+        return frameDeltaNanos;
+    }
+
+    // Simulation time dropped so far to catch up, see MAX_TICKS_PER_FRAME.
+    public long getDroppedNanos() {
+        return droppedNanos;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+}
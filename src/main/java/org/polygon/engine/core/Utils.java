@@ -35,4 +35,44 @@ public class Utils {
     public static int[] listIntToArray(List<Integer> list) {
         return list.stream().mapToInt((Integer v) -> v).toArray();
     }
+
+    // Converts a float to an IEEE 754 half float, rounding to nearest.
+    // Out of range values become infinity, values too small for a half float become zero.
+    public static short toHalfFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int floatExponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        // Infinity and NaN.
+        if(floatExponent == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int exponent = floatExponent - 127 + 15;
+        if(exponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+
+        if(exponent <= 0) {
+            // Subnormal half float.
+            if(exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if(((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        // A rounding carry out of the mantissa correctly bumps the exponent.
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
 }
@@ -28,6 +28,7 @@ public class Window {
     private GLFWKeyCallback prevKeyCallback;
     private List<FrameBufferSizeCallback> frameBufferSizeCallbacks;
     private GLFWFramebufferSizeCallback prevFramebufferSizeCallback;
+    private AssetLoader assetLoader;
 
     public Window(String title, WindowOptions opts) {
         this.opts = opts;
@@ -128,6 +129,7 @@ public class Window {
         mouseInputHandler = new MouseInputHandler(windowHandle);
         keyCallbacks = new ArrayList<>();
         guiInstances = new ArrayList<>();
+        assetLoader = new AssetLoader(this.opts.assetLoaderThreads);
     }
 
     public int getWidth() {
@@ -169,8 +171,14 @@ public class Window {
         this.guiInstances.add(guiInstance);
     }
 
+    public AssetLoader getAssetLoader() {
+        return assetLoader;
+    }
+
     public Scene createScene() {
-        return new Scene(getWidth(), getHeight());
+        Scene scene = new Scene(getWidth(), getHeight());
+        scene.setInterpolationEnabled(opts.renderInterpolation);
+        return scene;
     }
 
     public boolean isKeyPressed(int keyCode) {
@@ -196,6 +204,7 @@ public class Window {
     }
 
     public void cleanup() {
+        assetLoader.cleanup();
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(windowHandle);
         glfwDestroyWindow(windowHandle);
@@ -265,6 +274,53 @@ public class Window {
         public int height;
         public float exposure = 1.0f;
         public boolean ssaoEnabled = true;
+        // Runs gameLogic.update on its own thread at the target UPS while the main thread renders.
+        // Input, GUI and GLFW calls stay on the main thread. Added models, added and removed entities, entity
+        // transforms and animations are copied for the renderers at the sync point before each frame, other scene
+        // state like the camera and lights should only be changed from input or the GUI.
+        public boolean multithreadedUpdate;
+        // Worker threads decoding assets for the AssetLoader.
+        public int assetLoaderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        // Main thread time spent on asset uploads per frame.
+        public float assetUploadBudgetMS = 2.0f;
+        // Interleaved packed vertex format for meshes, 36 bytes per skinned vertex and 28 per static vertex
+        // instead of 88, see Mesh.setPackedVertexFormat.
+        public boolean packedVertexFormat;
+        // Per-pass CPU and GPU timings of the last frames, see EngineRender.getFrameProfiler.
+        public boolean frameProfiler = true;
+        // Shades the point and spot lights in one fullscreen pass over view-space light clusters instead of
+        // drawing a light volume per light, meant for scenes with thousands of small lights.
+        public boolean clusteredLighting;
+        // Draws distant entities with the simplified mesh LODs generated at import, see LodSelector.
+        public boolean meshLods = true;
+        // Packs loaded animation clips as quaternion, translation and scale instead of 3x4 matrices,
+        // 10 floats per bone instead of 12, exact unless the bone matrices have shear.
+        public boolean quaternionAnimations;
+        // Bakes the animations into a texture the skinning shaders sample, so animated entities are instanced
+        // and only pass their frame instead of uploading their bone matrices per draw, see AnimationTexture.
+        public boolean bakedAnimations;
+        // GPU memory budget of the scene textures in MB, 0 disables streaming. Streamed textures start with
+        // their small mip levels and the finer ones are loaded as they're drawn larger, see TextureStreamer.
+        public int textureBudgetMB;
+        // Block-compresses the textures at their first load and caches them with their mip chains,
+        // see CompressedTextureCache. BC1 and BC3 for colors, BC5 for normal maps.
+        public boolean compressedTextures;
+        // BC7 instead of BC1 and BC3 for the compressed colors, ignored without GL 4.2 or
+        // ARB_texture_compression_bptc.
+        public boolean bc7Textures;
+        // Draws the entities moved in the update ticks interpolated between their last two tick transforms,
+        // smooth motion at frame rates above the UPS for a tick of latency, see Scene.setInterpolationEnabled.
+        // Applies to the scenes made by createScene.
+        public boolean renderInterpolation = true;
+        // Skips the GL binding and capability calls that wouldn't change the current state, see GLState.
+        public boolean glStateCache = true;
+        // Keeps the static meshes in one shared GeometryArena and draws their instances in the geometry pass with
+        // a glMultiDrawElementsIndirect call per set of material textures, see MultiDrawRender. Ignored without
+        // GL 4.3, the contexts of most drivers are the newest version they support even though 4.1 is requested.
+        public boolean multiDrawIndirect;
+        // Culls the entities of the static models in the arena against the camera and the shadow cascades in a
+        // compute shader, which fills the indirect draws of both passes, see GpuCulling. Needs multiDrawIndirect.
+        public boolean gpuCulling;
     }
 
     public interface KeyCallback {
@@ -0,0 +1,123 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.scene.AnimationData;
+
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Bone matrices of every frame of the animations in use, baked into a texture buffer the skinning vertex
+// shaders read with texelFetch. Animated entities then only pass their frame, a vec4 per instance or per draw,
+// instead of uploading their whole bone palette for every mesh in every pass.
+// An animation is baked the first time it's drawn and stays in the texture until clear.
+public class AnimationTexture {
+    // Texture unit of the animationSampler, free in the geometry and shadow passes.
+    public static final int TEXTURE_UNIT = 6;
+    // A bone takes 3 RGBA32F texels, the rows of the upper 3x4 of its matrix.
+    public static final int TEXELS_PER_BONE = 3;
+    private static final int INITIAL_CAPACITY_TEXELS = 16384;
+    private static boolean enabled;
+
+    private final TextureBuffer textureBuffer;
+    private final int maxTexels;
+    // First texel of every baked animation, -1 for the animations that don't fit in the texture.
+    private final Map<Model.Animation, Integer> animationOffsets = new IdentityHashMap<>();
+    private FloatBuffer data;
+    private int numTexels;
+
+    public AnimationTexture() {
+        textureBuffer = new TextureBuffer(GL_RGBA32F, GL_STATIC_DRAW);
+        maxTexels = glGetInteger(GL_MAX_TEXTURE_BUFFER_SIZE);
+        data = MemoryUtil.memAllocFloat(INITIAL_CAPACITY_TEXELS * 4);
+    }
+
+    // Animated entities upload their bone palette per draw when disabled.
+    public static void setEnabled(boolean enabled) {
+        AnimationTexture.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public void cleanup() {
+        textureBuffer.cleanup();
+        MemoryUtil.memFree(data);
+    }
+
+    public void bind() {
+        textureBuffer.bind(GL_TEXTURE0 + TEXTURE_UNIT);
+    }
+
+    // Drops the baked animations, e.g. when the scene changes.
+    public void clear() {
+        animationOffsets.clear();
+        numTexels = 0;
+    }
+
+    // Writes the render state frame of the animationData as the shaders read it: the first texel of the
+    // current frame, the first texel of the next frame and the interpolation factor.
+    // Returns false if the animation doesn't fit in the texture, the entity needs its bone palette then.
+    public boolean getFrame(AnimationData animationData, Vector4f dest) {
+        Model.Animation animation = animationData.getRenderAnimation();
+        int offset = getOffset(animation);
+        if(offset < 0) {
+            return false;
+        }
+        int frameTexels = animation.numBones() * TEXELS_PER_BONE;
+        dest.set(offset + animationData.getRenderFrameIndex() * frameTexels
+                , offset + animationData.getRenderNextFrameIndex() * frameTexels
+                , animationData.getRenderInterpolationFactor(), 0.0f);
+        return true;
+    }
+
+    private int getOffset(Model.Animation animation) {
+        Integer offset = animationOffsets.get(animation);
+        if(offset == null) {
+            offset = bake(animation);
+            animationOffsets.put(animation, offset);
+        }
+        return offset;
+    }
+
+    // Appends the animation and uploads the texture again, only happens the first time it's drawn.
+    private int bake(Model.Animation animation) {
+        int animationTexels = animation.numFrames() * animation.numBones() * TEXELS_PER_BONE;
+        // The frame offsets are passed as floats, exact up to 2^24.
+        if((long) numTexels + animationTexels > Math.min(maxTexels, 1 << 24)) {
+            System.err.println("Animation doesn't fit in the animation texture [" + animation.name() + "]");
+            return -1;
+        }
+        if((numTexels + animationTexels) * 4 > data.capacity()) {
+            data = MemoryUtil.memRealloc(data, Math.max(data.capacity() * 2, (numTexels + animationTexels) * 4));
+        }
+
+        int offset = numTexels;
+        Matrix4f[] palette = new Matrix4f[animation.numBones()];
+        for(int i = 0; i < palette.length; i++) {
+            palette[i] = new Matrix4f();
+        }
+        int index = offset * 4;
+        for(int frame = 0; frame < animation.numFrames(); frame++) {
+            animation.sample(frame, palette);
+            for(Matrix4f matrix : palette) {
+                data.put(index, matrix.m00()).put(index + 1, matrix.m10())
+                        .put(index + 2, matrix.m20()).put(index + 3, matrix.m30());
+                data.put(index + 4, matrix.m01()).put(index + 5, matrix.m11())
+                        .put(index + 6, matrix.m21()).put(index + 7, matrix.m31());
+                data.put(index + 8, matrix.m02()).put(index + 9, matrix.m12())
+                        .put(index + 10, matrix.m22()).put(index + 11, matrix.m32());
+                index += TEXELS_PER_BONE * 4;
+            }
+        }
+        numTexels += animationTexels;
+
+        textureBuffer.upload(data.slice(0, numTexels * 4));
+        return offset;
+    }
+}
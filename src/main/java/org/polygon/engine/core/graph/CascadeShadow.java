@@ -29,10 +29,15 @@ public class CascadeShadow {
             return;
         }
 
-        Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
-        Matrix4f projectionMatrix = scene.getProjection().getProjMatrix();
-        Vector4f directionalLightPosition =
-                new Vector4f(scene.getSceneLights().getDirectionalLight().getDirection(), 0);
+        updateCascadeShadows(cascadeShadowList, scene.getCamera().getViewMatrix()
+                , scene.getProjection().getProjMatrix(), scene.getSceneLights().getDirectionalLight().getDirection());
+    }
+
+    // Calculates the cascades from the camera matrices and the directional light direction only,
+    // doesn't need a Scene or a GL context.
+    public static void updateCascadeShadows(List<CascadeShadow> cascadeShadowList, Matrix4f viewMatrix
+            , Matrix4f projectionMatrix, Vector3f directionalLightDirection) {
+        Vector4f directionalLightPosition = new Vector4f(directionalLightDirection, 0);
 
         float cascadeSplitLambda = 0.95f;
 
@@ -0,0 +1,235 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.scene.lights.PointLight;
+import org.polygon.engine.core.scene.lights.SceneLights;
+import org.polygon.engine.core.scene.lights.SpotLight;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Draws every point and spot light in one fullscreen pass instead of a light volume per light.
+// The LightClusterGrid bins the lights into view-space clusters, the lights, the cluster ranges and the
+// light index list are uploaded to texture buffers and the shader only shades the lights of the pixel's cluster.
+// GL 4.1 has no shader storage buffers, texture buffers hold the lists instead.
+public class ClusteredLightsRender {
+    // Texels per light in the light data buffer, see clustered_lights.frag.
+    private static final int LIGHT_TEXELS = 5;
+    private static final int INITIAL_LIGHT_CAPACITY = 256;
+    // The lights pass shadow map units aren't used by this pass.
+    private static final int LIGHT_DATA_TEXTURE_UNIT = 5;
+    private static final int CLUSTER_TEXTURE_UNIT = 6;
+    private static final int LIGHT_INDEX_TEXTURE_UNIT = 7;
+
+    private final ShaderProgram shaderProgram;
+    private UniformMap uniformMap;
+    private final LightClusterGrid clusterGrid;
+    private final TextureBuffer lightDataBuffer;
+    private final TextureBuffer clusterBuffer;
+    private final TextureBuffer lightIndexBuffer;
+    private FloatBuffer lightData;
+    private final IntBuffer clusterData;
+    private IntBuffer lightIndexData;
+    private final Vector2f clusterDepth;
+    private final Vector4f auxVec4;
+    private final Vector3f auxVec3;
+
+    public ClusteredLightsRender() {
+        List<ShaderProgram.ShaderModuleData> shaderModules = new ArrayList<>();
+        shaderModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/lights.vert"
+                , GL_VERTEX_SHADER));
+        shaderModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/clustered_lights.frag"
+                , GL_FRAGMENT_SHADER));
+        shaderProgram = new ShaderProgram(shaderModules);
+        createUniforms();
+
+        clusterGrid = new LightClusterGrid();
+        lightDataBuffer = new TextureBuffer(GL_RGBA32F);
+        clusterBuffer = new TextureBuffer(GL_RG32UI);
+        lightIndexBuffer = new TextureBuffer(GL_R32UI);
+        lightData = MemoryUtil.memAllocFloat(INITIAL_LIGHT_CAPACITY * LIGHT_TEXELS * 4);
+        clusterData = MemoryUtil.memAllocInt(LightClusterGrid.NUM_CLUSTERS * 2);
+        lightIndexData = MemoryUtil.memAllocInt(INITIAL_LIGHT_CAPACITY);
+        clusterDepth = new Vector2f();
+        auxVec4 = new Vector4f();
+        auxVec3 = new Vector3f();
+    }
+
+    public void cleanup() {
+        shaderProgram.cleanup();
+        lightDataBuffer.cleanup();
+        clusterBuffer.cleanup();
+        lightIndexBuffer.cleanup();
+        MemoryUtil.memFree(lightData);
+        MemoryUtil.memFree(clusterData);
+        MemoryUtil.memFree(lightIndexData);
+    }
+
+    private void createUniforms() {
+        uniformMap = new UniformMap(shaderProgram.getProgramId());
+        uniformMap.createUniform("albedoSampler");
+        uniformMap.createUniform("normalSampler");
+        uniformMap.createUniform("materialSampler");
+        uniformMap.createUniform("depthSampler");
+        uniformMap.createUniform("lightDataSampler");
+        uniformMap.createUniform("clusterSampler");
+        uniformMap.createUniform("lightIndexSampler");
+        uniformMap.createUniform("clusterDepth");
+        shaderProgram.bindUniformBlock("CameraData", UniformBuffer.CAMERA_BINDING);
+
+        // The texture units never change, set the samplers once.
+        shaderProgram.bind();
+        uniformMap.setUniform("albedoSampler", 0);
+        uniformMap.setUniform("normalSampler", 1);
+        uniformMap.setUniform("materialSampler", 2);
+        uniformMap.setUniform("depthSampler", 4);
+        uniformMap.setUniform("lightDataSampler", LIGHT_DATA_TEXTURE_UNIT);
+        uniformMap.setUniform("clusterSampler", CLUSTER_TEXTURE_UNIT);
+        uniformMap.setUniform("lightIndexSampler", LIGHT_INDEX_TEXTURE_UNIT);
+        for(int i = 0; i < PointShadowBuffer.MAX_POINT_LIGHT_SHADOWS; i++) {
+            String uniformName = "pointShadowMap[" + i + "]";
+            uniformMap.createUniform(uniformName);
+            uniformMap.setUniform(uniformName, LightsRender.POINT_SHADOW_TEXTURE_UNIT + i);
+        }
+        shaderProgram.unbind();
+    }
+
+    public LightClusterGrid getClusterGrid() {
+        return clusterGrid;
+    }
+
+    // Draws the point and spot lights additively over the base lighting, the G-Buffer textures must be bound.
+    public void render(Scene scene, PointShadowRender pointShadowRender, QuadMesh quadMesh) {
+        int numLights = updateLights(scene, pointShadowRender.getActiveShadowLights());
+        if(numLights == 0) {
+            return;
+        }
+        updateClusters();
+
+        shaderProgram.bind();
+        float zNear = clusterGrid.getZNear();
+        float zFar = clusterGrid.getZFar();
+        // slice = log(depth / near) * CLUSTERS_Z / log(far / near), the same slices as the LightClusterGrid.
+        uniformMap.setUniform("clusterDepth", clusterDepth.set(zNear
+                , LightClusterGrid.CLUSTERS_Z / (float) Math.log(zFar / zNear)));
+
+        lightDataBuffer.bind(GL_TEXTURE0 + LIGHT_DATA_TEXTURE_UNIT);
+        clusterBuffer.bind(GL_TEXTURE0 + CLUSTER_TEXTURE_UNIT);
+        lightIndexBuffer.bind(GL_TEXTURE0 + LIGHT_INDEX_TEXTURE_UNIT);
+        pointShadowRender.getPointShadowBuffer().bindTextures(GL_TEXTURE0 + LightsRender.POINT_SHADOW_TEXTURE_UNIT);
+
+        GLState.enable(GL_BLEND);
+        glBlendEquation(GL_FUNC_ADD);
+        GLState.blendFunc(GL_ONE, GL_ONE);
+        GLState.depthMask(false);
+        GLState.disable(GL_DEPTH_TEST);
+
+        GLState.bindVertexArray(quadMesh.getVaoId());
+        glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+        RenderStats.addDrawCall(RenderStats.Pass.LIGHTING, 1, quadMesh.getNumVertices());
+        GLState.bindVertexArray(0);
+
+        GLState.disable(GL_BLEND);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.depthMask(true);
+
+        shaderProgram.unbind();
+    }
+
+    // Writes the visible point and spot lights to the light data buffer and adds them to the cluster grid,
+    // returns the number of lights.
+    private int updateLights(Scene scene, List<PointLight> activeShadowLights) {
+        Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
+        SceneLights sceneLights = scene.getSceneLights();
+        clusterGrid.setProjection(scene.getProjection().getProjMatrix());
+        clusterGrid.clearLights();
+
+        int maxLights = sceneLights.getPointLightList().size() + sceneLights.getSpotLightList().size();
+        if(maxLights * LIGHT_TEXELS * 4 > lightData.capacity()) {
+            lightData = MemoryUtil.memRealloc(lightData, maxLights * LIGHT_TEXELS * 4);
+        }
+        lightData.clear();
+
+        for(PointLight pointLight : sceneLights.getPointLightList()) {
+            if(pointLight.getIntensity() <= 0 || pointLight.getRadius() <= 0) {
+                continue;
+            }
+            putLight(pointLight, viewMatrix, null, 0.0f, activeShadowLights.indexOf(pointLight));
+        }
+
+        for(SpotLight spotLight : sceneLights.getSpotLightList()) {
+            if(spotLight.getIntensity() <= 0 || spotLight.getRadius() <= 0) {
+                continue;
+            }
+            auxVec4.set(spotLight.getConeDirection(), 0).mul(viewMatrix);
+            auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z).normalize();
+            putLight(spotLight, viewMatrix, auxVec3, spotLight.getCutOff(), -1);
+        }
+
+        int numLights = clusterGrid.getNumLights();
+        if(numLights > 0) {
+            lightData.flip();
+            lightDataBuffer.upload(lightData);
+        }
+        return numLights;
+    }
+
+    // Light data texels: view position and radius, color and intensity, attenuation and type,
+    // view cone direction and cut off, world position and shadow index. Point lights have no cone direction,
+    // their shadow map far plane is the radius.
+    private void putLight(PointLight light, Matrix4f viewMatrix, Vector3f coneDirection, float cutOff
+            , int shadowIndex) {
+        Vector3f position = light.getPosition();
+        PointLight.Attenuation attenuation = light.getAttenuation();
+        auxVec4.set(position, 1).mul(viewMatrix);
+        clusterGrid.addLight(auxVec4.x, auxVec4.y, auxVec4.z, light.getRadius());
+
+        lightData.put(auxVec4.x).put(auxVec4.y).put(auxVec4.z).put(light.getRadius());
+        Vector3f color = light.getColor();
+        lightData.put(color.x).put(color.y).put(color.z).put(light.getIntensity());
+        lightData.put(attenuation.getConstant()).put(attenuation.getLinear()).put(attenuation.getExponent())
+                .put(coneDirection != null ? 1 : 0);
+        if(coneDirection != null) {
+            lightData.put(coneDirection.x).put(coneDirection.y).put(coneDirection.z).put(cutOff);
+        } else {
+            lightData.put(0.0f).put(0.0f).put(0.0f).put(cutOff);
+        }
+        lightData.put(position.x).put(position.y).put(position.z).put(shadowIndex);
+    }
+
+    // Bins the lights and uploads the cluster ranges and the light index list.
+    private void updateClusters() {
+        clusterGrid.build();
+
+        int[] offsets = clusterGrid.getClusterOffsets();
+        int[] counts = clusterGrid.getClusterCounts();
+        clusterData.clear();
+        for(int i = 0; i < LightClusterGrid.NUM_CLUSTERS; i++) {
+            clusterData.put(offsets[i]).put(counts[i]);
+        }
+        clusterData.flip();
+        clusterBuffer.upload(clusterData);
+
+        // An empty buffer can't back the texture, keep at least one index.
+        int numIndices = Math.max(1, clusterGrid.getNumLightIndices());
+        if(numIndices > lightIndexData.capacity()) {
+            lightIndexData = MemoryUtil.memRealloc(lightIndexData, Math.max(numIndices, lightIndexData.capacity() * 2));
+        }
+        lightIndexData.clear();
+        lightIndexData.put(clusterGrid.getLightIndices(), 0, clusterGrid.getNumLightIndices());
+        if(clusterGrid.getNumLightIndices() == 0) {
+            lightIndexData.put(0);
+        }
+        lightIndexData.flip();
+        lightIndexBuffer.upload(lightIndexData);
+    }
+}
@@ -0,0 +1,182 @@
+package org.polygon.engine.core.graph;
+
+import org.polygon.engine.core.scene.ModelCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// On-disk cache of the block-compressed textures with their mip chains, so an image is only decoded and
+// compressed the first time it's loaded, see TextureCompressor. A DDS-like file per texture and usage,
+// stale entries are detected from the source file's size and modification time like in ModelCache.
+// Cache files are memory-mapped and the levels are uploaded straight from the mapping.
+public class CompressedTextureCache {
+    private static final int MAGIC = 0x58455450;
+    // Bump when the file layout or the encoders change.
+    private static final int VERSION = 1;
+    private static final String FILE_EXTENSION = ".ptex";
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static boolean enabled;
+    private static boolean bc7;
+    private static Path cacheDirectory = Paths.get("cache", "textures");
+
+    private CompressedTextureCache() {
+
+    }
+
+    // Textures loaded afterwards are compressed, see TextureCache.
+    public static void setEnabled(boolean enabled) {
+        CompressedTextureCache.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Compresses the colors and data textures to BC7 instead of BC1 and BC3, only if the GL supports it.
+    public static void setBC7(boolean bc7) {
+        CompressedTextureCache.bc7 = bc7;
+    }
+
+    public static boolean isBC7() {
+        return bc7;
+    }
+
+    // Null disables the disk cache, textures are then compressed on every load.
+    public static void setCacheDirectory(Path cacheDirectory) {
+        CompressedTextureCache.cacheDirectory = cacheDirectory;
+    }
+
+    public static Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    // Returns the compressed texture, decodes, compresses and caches the image first if there's no valid
+    // cache file. Doesn't touch OpenGL, so it can run on an asset loader thread.
+    public static CompressedTextureData load(String texturePath, CompressedTextureData.Usage usage) {
+        Key key = createKey(texturePath, usage, bc7);
+        if(cacheDirectory == null) {
+            return compress(texturePath, usage);
+        }
+
+        Path cacheFile = getCacheFile(key);
+        CompressedTextureData compressedTextureData = read(cacheFile, key);
+        if(compressedTextureData != null) {
+            return compressedTextureData;
+        }
+
+        ByteBuffer buffer = encode(compress(texturePath, usage), key);
+        ModelCache.write(cacheFile, buffer);
+        return decode(buffer, key);
+    }
+
+    private static CompressedTextureData compress(String texturePath, CompressedTextureData.Usage usage) {
+        TextureData textureData = TextureData.load(texturePath);
+        try {
+            return TextureCompressor.compress(textureData, usage, bc7);
+        } finally {
+            textureData.free();
+        }
+    }
+
+    // Maps the cache file, returns null if it doesn't exist or it's stale.
+    static CompressedTextureData read(Path cacheFile, Key key) {
+        if(!Files.exists(cacheFile)) {
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer, key);
+        } catch(IOException | RuntimeException e) {
+            System.err.println("Failed to read the texture cache file [" + cacheFile + "]");
+            return null;
+        }
+    }
+
+    static Key createKey(String texturePath, CompressedTextureData.Usage usage, boolean bc7) {
+        File file = new File(texturePath);
+        return new Key(file.getAbsolutePath(), file.lastModified(), file.length(), usage, bc7);
+    }
+
+    static Path getCacheFile(Key key) {
+        String name = new File(key.sourcePath()).getName() + "-"
+                + Integer.toHexString(key.sourcePath().hashCode()) + "-" + key.usage().name().toLowerCase()
+                + (key.bc7() ? "-bc7" : "");
+        return cacheDirectory.resolve(name + FILE_EXTENSION);
+    }
+
+    // Layout, every section is 4 byte aligned:
+    // header: magic, version, source modification time, source size, usage, bc7, source path
+    // image: format, width, height, level count, then per level its size and blocks
+    static ByteBuffer encode(CompressedTextureData compressedTextureData, Key key) {
+        byte[] sourcePath = key.sourcePath().getBytes(StandardCharsets.UTF_8);
+        int size = 4 * Integer.BYTES + 2 * Long.BYTES + ModelCache.stringSize(sourcePath) + 4 * Integer.BYTES;
+        for(ByteBuffer level : compressedTextureData.levels()) {
+            size += Integer.BYTES + level.remaining();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(BYTE_ORDER);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(key.lastModified());
+        buffer.putLong(key.sourceSize());
+        buffer.putInt(key.usage().ordinal());
+        buffer.putInt(key.bc7() ? 1 : 0);
+        ModelCache.putString(buffer, sourcePath);
+
+        buffer.putInt(compressedTextureData.format().ordinal());
+        buffer.putInt(compressedTextureData.width());
+        buffer.putInt(compressedTextureData.height());
+        buffer.putInt(compressedTextureData.getNumLevels());
+        for(ByteBuffer level : compressedTextureData.levels()) {
+            buffer.putInt(level.remaining());
+            buffer.put(level.duplicate());
+        }
+
+        if(buffer.hasRemaining()) {
+            throw new RuntimeException("Texture cache size mismatch [" + key.sourcePath() + "]");
+        }
+        return buffer.flip();
+    }
+
+    // Returns null if the buffer doesn't hold a cache entry for the key. The levels are views into the buffer.
+    static CompressedTextureData decode(ByteBuffer buffer, Key key) {
+        buffer.order(BYTE_ORDER);
+        if(buffer.remaining() < 5 * Integer.BYTES + 2 * Long.BYTES
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getLong() != key.lastModified() || buffer.getLong() != key.sourceSize()
+                || buffer.getInt() != key.usage().ordinal() || buffer.getInt() != (key.bc7() ? 1 : 0)
+                || !key.sourcePath().equals(ModelCache.getString(buffer))) {
+            return null;
+        }
+
+        CompressedTextureData.Format format = CompressedTextureData.Format.values()[buffer.getInt()];
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int numLevels = buffer.getInt();
+        List<ByteBuffer> levels = new ArrayList<>(numLevels);
+        for(int level = 0; level < numLevels; level++) {
+            int levelBytes = buffer.getInt();
+            if(levelBytes != format.getLevelBytes(width >> level, height >> level)) {
+                throw new RuntimeException("Texture cache level size mismatch [" + key.sourcePath() + "]");
+            }
+            levels.add(buffer.slice(buffer.position(), levelBytes));
+            buffer.position(buffer.position() + levelBytes);
+        }
+        return new CompressedTextureData(width, height, format, key.usage(), levels);
+    }
+
+    record Key(String sourcePath, long lastModified, long sourceSize, CompressedTextureData.Usage usage
+            , boolean bc7) {}
+}
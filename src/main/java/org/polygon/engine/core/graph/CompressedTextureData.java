@@ -0,0 +1,57 @@
+package org.polygon.engine.core.graph;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Block-compressed image with its whole mip chain, level 0 first, see TextureCompressor.
+// Doesn't touch OpenGL. The levels are views into one buffer, usually the mapped cache file,
+// so there's nothing to free.
+public record CompressedTextureData(int width, int height, Format format, Usage usage, List<ByteBuffer> levels) {
+    public enum Format {
+        // Opaque RGB, 8 bytes per 4x4 block.
+        BC1(8),
+        // RGBA, the BC1 color block after an interpolated alpha block.
+        BC3(16),
+        // Two interpolated channels, used for the XY of normal maps.
+        BC5(16),
+        // RGBA, far less banding than BC1 and BC3. Needs GL 4.2 or ARB_texture_compression_bptc.
+        BC7(16);
+
+        private final int blockBytes;
+
+        Format(int blockBytes) {
+            this.blockBytes = blockBytes;
+        }
+
+        public int getBlockBytes() {
+            return blockBytes;
+        }
+
+        // Levels smaller than a block still take a whole one.
+        public int getLevelBytes(int width, int height) {
+            return ((Math.max(1, width) + 3) / 4) * ((Math.max(1, height) + 3) / 4) * blockBytes;
+        }
+    }
+
+    // What the texture holds, picks the format and the color space it's filtered and sampled in.
+    public enum Usage {
+        // sRGB colors, base color and emissive maps.
+        COLOR,
+        // Linear values, metallic, roughness and ambient occlusion maps.
+        DATA,
+        // Tangent space normals, only X and Y are kept, the shaders rebuild Z.
+        NORMAL_MAP;
+
+        public boolean isSRGB() {
+            return this == COLOR;
+        }
+    }
+
+    public boolean isSRGB() {
+        return usage.isSRGB();
+    }
+
+    public int getNumLevels() {
+        return levels.size();
+    }
+}
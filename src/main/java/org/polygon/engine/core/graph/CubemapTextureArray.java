@@ -11,11 +11,10 @@ public class CubemapTextureArray {
         ids = new int[numCubemaps];
         glGenTextures(ids);
 
-        int previousActiveTextureUnit = glGetInteger(GL_ACTIVE_TEXTURE);
-        glActiveTexture(GL_TEXTURE0);
+        GLState.activeTexture(GL_TEXTURE0);
 
         for(int i = 0; i < numCubemaps; i++) {
-            glBindTexture(GL_TEXTURE_CUBE_MAP, ids[i]);
+            GLState.bindTexture(GL_TEXTURE_CUBE_MAP, ids[i]);
             for(int face = 0; face < 6; face++) {
                 glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, 0, GL_DEPTH_COMPONENT32F
                         , resolution, resolution, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
@@ -28,14 +27,11 @@ public class CubemapTextureArray {
             glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
         }
 
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
-        glActiveTexture(previousActiveTextureUnit);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
     }
 
     public void cleanup() {
-        for(int id : ids) {
-            glDeleteTextures(id);
-        }
+        GLState.deleteTextures(ids);
     }
 
     public int[] getIds() {
@@ -1,6 +1,7 @@
 package org.polygon.engine.core.graph;
 
 import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 import org.polygon.engine.core.IRenderPass;
 import org.polygon.engine.core.Window;
 import org.polygon.engine.core.graph.gui.GuiRender;
@@ -10,10 +11,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import static org.lwjgl.opengl.GL40.*;
 
 public class EngineRender {
+    // Held while the GUI is drawn, GUI instances can change the scene while the update thread runs.
+    private Lock sceneStateLock;
     private ShadowRender shadowRender;
     private PointShadowRender pointShadowRender;
     private GBuffer gBuffer;
@@ -26,6 +30,16 @@ public class EngineRender {
     private SSAOBuffer ssaoBuffer;
     private SSAORender ssaoRender;
     private Frustum frustum;
+    private FrameProfiler frameProfiler;
+    private FrameUniforms frameUniforms;
+    private AnimationTexture animationTexture;
+    // Scene the animationTexture was baked for.
+    private Scene animationScene;
+    private TextureStreamer textureStreamer;
+    // Shared buffers of the static meshes, null unless multi-draw indirect is enabled and supported.
+    private GeometryArena geometryArena;
+    // Culls the static arena entities in a compute shader for the geometry and shadow passes, null when disabled.
+    private GpuCulling gpuCulling;
 
     public enum RenderStage {
         POST_GEOMETRY,
@@ -41,16 +55,40 @@ public class EngineRender {
         // creates the GLCapabilities instance and makes the OpenGL
         // bindings available for use.
         GL.createCapabilities();
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
+        // The shadow state of a previous context doesn't apply to this one.
+        GLState.invalidate();
+        GLState.setEnabled(window.getWindowOptions().glStateCache);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.enable(GL_CULL_FACE);
+        GLState.cullFace(GL_BACK);
 
         shadowRender = new ShadowRender();
         pointShadowRender = new PointShadowRender();
         gBuffer = new GBuffer(window);
         sceneFBO = new SceneFBO(window);
         sceneRender = new SceneRender();
+        animationTexture = new AnimationTexture();
+        textureStreamer = new TextureStreamer();
+        AnimationTexture.setEnabled(window.getWindowOptions().bakedAnimations);
+        GLCapabilities capabilities = GL.getCapabilities();
+        CompressedTextureCache.setEnabled(window.getWindowOptions().compressedTextures
+                && capabilities.GL_EXT_texture_compression_s3tc);
+        CompressedTextureCache.setBC7(window.getWindowOptions().bc7Textures
+                && (capabilities.OpenGL42 || capabilities.GL_ARB_texture_compression_bptc));
+        LodSelector.setEnabled(window.getWindowOptions().meshLods);
+        // Set before the game creates any meshes, the static ones are put in the arena.
+        if(window.getWindowOptions().multiDrawIndirect && capabilities.OpenGL43) {
+            geometryArena = new GeometryArena();
+            Mesh.setGeometryArena(geometryArena);
+            sceneRender.setGeometryArena(geometryArena);
+            if(window.getWindowOptions().gpuCulling) {
+                gpuCulling = new GpuCulling(geometryArena);
+                sceneRender.setGpuCulling(gpuCulling);
+                shadowRender.setGpuCulling(gpuCulling);
+            }
+        }
         lightsRender = new LightsRender();
+        lightsRender.setClusteredLighting(window.getWindowOptions().clusteredLighting);
         guiRender = new GuiRender(window);
         skyBoxRender = new SkyBoxRender();
         fxaaRender = new FXAARender();
@@ -58,6 +96,9 @@ public class EngineRender {
         ssaoRender = new SSAORender();
         renderPasses = new HashMap<>();
         frustum = new Frustum();
+        frameUniforms = new FrameUniforms();
+        frameProfiler = new FrameProfiler();
+        frameProfiler.setEnabled(window.getWindowOptions().frameProfiler);
     }
 
     public void cleanup() {
@@ -72,30 +113,71 @@ public class EngineRender {
         fxaaRender.cleanup();
         ssaoBuffer.cleanup();
         ssaoRender.cleanup();
+        frameProfiler.cleanup();
+        frameUniforms.cleanup();
+        animationTexture.cleanup();
+        textureStreamer.cleanup();
+        if(gpuCulling != null) {
+            gpuCulling.cleanup();
+        }
+        if(geometryArena != null) {
+            Mesh.setGeometryArena(null);
+            geometryArena.cleanup();
+        }
     }
 
     public void render(Window window) {
         assertDefaultGL();
+        RenderStats.reset();
+        frameProfiler.beginFrame();
 
         Scene scene = window.getCurrentScene();
+        if(scene != animationScene) {
+            // The animations of the previous scene aren't needed anymore.
+            animationTexture.clear();
+            animationScene = scene;
+        }
+
+        shadowRender.updateCascades(scene);
+        // GPU culling of the camera and the cascades, read by the shadow and geometry passes.
+        if(gpuCulling != null) {
+            frameProfiler.begin(RenderStats.Pass.CULLING);
+            gpuCulling.cull(scene, shadowRender.getCascadeShadowList(), gBuffer.getHeight());
+            frameProfiler.end(RenderStats.Pass.CULLING);
+        }
 
         // Shadow Pass
-        shadowRender.render(scene);
+        frameProfiler.begin(RenderStats.Pass.SHADOW);
+        shadowRender.render(scene, animationTexture);
+        frameProfiler.end(RenderStats.Pass.SHADOW);
 
         // Point lights shadow Pass
-        pointShadowRender.render(scene);
+        frameProfiler.begin(RenderStats.Pass.POINT_SHADOW);
+        pointShadowRender.render(scene, animationTexture);
+        frameProfiler.end(RenderStats.Pass.POINT_SHADOW);
 
         // Geometry Pass, draws to the G-Buffer FBO.
-        sceneRender.render(scene, gBuffer, frustum);
+        frameProfiler.begin(RenderStats.Pass.GEOMETRY);
+        // The per-frame uniform blocks need the cascades updated by the shadow pass.
+        frameUniforms.update(scene, shadowRender.getCascadeShadowList(), sceneFBO.getWidth(), sceneFBO.getHeight());
+        sceneRender.render(scene, gBuffer, frustum, animationTexture);
+        // Streams the texture levels requested by the geometry pass, the uploads count towards it.
+        textureStreamer.update(scene.getTextureCache());
+        frameProfiler.end(RenderStats.Pass.GEOMETRY);
 
         // POST_GEOMETRY Pass
+        frameProfiler.begin(RenderStats.Pass.POST_GEOMETRY);
         renderStage(RenderStage.POST_GEOMETRY, scene);
+        frameProfiler.end(RenderStats.Pass.POST_GEOMETRY);
 
         // SSAO Pass
         if(window.getWindowOptions().ssaoEnabled) {
+            frameProfiler.begin(RenderStats.Pass.SSAO);
             ssaoRender.render(scene, gBuffer, ssaoBuffer);
+            frameProfiler.end(RenderStats.Pass.SSAO);
         }
 
+        frameProfiler.begin(RenderStats.Pass.LIGHTING);
         bindIntermediateFBO();
 
         // Copy the real per-pixel scene depth from the GBuffer into the SceneFBO's depth buffer.
@@ -103,22 +185,51 @@ public class EngineRender {
 
         // Base Lighting Pass, draws to the SceneFBO.
         int ssaoTextureId = window.getWindowOptions().ssaoEnabled ? ssaoBuffer.getBlurTextureId() : ssaoBuffer.getFallbackWhiteTextureId();
-        lightsRender.render(scene, shadowRender, pointShadowRender
-                , gBuffer, ssaoTextureId, sceneFBO.getWidth(), sceneFBO.getHeight());
+        lightsRender.render(scene, shadowRender, pointShadowRender, gBuffer, ssaoTextureId);
+        frameProfiler.end(RenderStats.Pass.LIGHTING);
 
         // POST_LIGHTING Pass
+        frameProfiler.begin(RenderStats.Pass.POST_LIGHTING);
         renderStage(RenderStage.POST_LIGHTING, scene);
+        frameProfiler.end(RenderStats.Pass.POST_LIGHTING);
 
         // Skybox Pass
+        frameProfiler.begin(RenderStats.Pass.SKYBOX);
         skyBoxRender.render(scene);
-
-        unbindIntermediateFBO(window);
+        frameProfiler.end(RenderStats.Pass.SKYBOX);
 
         // Post Processing: FXAA Pass, draws to the screen.
+        frameProfiler.begin(RenderStats.Pass.FXAA);
+        unbindIntermediateFBO(window);
         fxaaRender.render(sceneFBO.getTextureId(), window);
+        frameProfiler.end(RenderStats.Pass.FXAA);
 
         // GUI Pass draws to the screen.
-        guiRender.render(window);
+        frameProfiler.begin(RenderStats.Pass.GUI);
+        if(sceneStateLock != null) {
+            sceneStateLock.lock();
+            try {
+                guiRender.render(window);
+            } finally {
+                sceneStateLock.unlock();
+            }
+        } else {
+            guiRender.render(window);
+        }
+        frameProfiler.end(RenderStats.Pass.GUI);
+        frameProfiler.endFrame();
+    }
+
+    public FrameProfiler getFrameProfiler() {
+        return frameProfiler;
+    }
+
+    public TextureStreamer getTextureStreamer() {
+        return textureStreamer;
+    }
+
+    public void setSceneStateLock(Lock sceneStateLock) {
+        this.sceneStateLock = sceneStateLock;
     }
 
     // Binds an intermediateFBO to draw into. used for final Image post-processing.
@@ -128,35 +239,35 @@ public class EngineRender {
 
         glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         glClear(GL_COLOR_BUFFER_BIT);
-        glViewport(0, 0, sceneFBO.getWidth(), sceneFBO.getHeight());
+        GLState.viewport(0, 0, sceneFBO.getWidth(), sceneFBO.getHeight());
     }
 
     private void blitGBufferDepth() {
-        glBindFramebuffer(GL_READ_FRAMEBUFFER, gBuffer.getGBufferId());
-        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, sceneFBO.getFboId());
+        GLState.bindFramebuffer(GL_READ_FRAMEBUFFER, gBuffer.getGBufferId());
+        GLState.bindFramebuffer(GL_DRAW_FRAMEBUFFER, sceneFBO.getFboId());
         glBlitFramebuffer(
                 0, 0, gBuffer.getWidth(), gBuffer.getHeight(),
                 0, 0, sceneFBO.getWidth(), sceneFBO.getHeight(),
                 GL_DEPTH_BUFFER_BIT, GL_NEAREST);
 
         // Restore SceneFBO as both read and draw target for the passes that follow.
-        glBindFramebuffer(GL_FRAMEBUFFER, sceneFBO.getFboId());
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, sceneFBO.getFboId());
     }
 
     private void unbindIntermediateFBO(Window window) {
         sceneFBO.unbind();
-        glViewport(0, 0, window.getWidth(), window.getHeight());
+        GLState.viewport(0, 0, window.getWidth(), window.getHeight());
     }
 
     private void assertDefaultGL() {
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
-        glDepthFunc(GL_LESS);
-        glDepthMask(true);
-        glDisable(GL_BLEND);
-        glEnable(GL_TEXTURE_CUBE_MAP_SEAMLESS);
-        glDisable(GL_FRAMEBUFFER_SRGB);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.enable(GL_CULL_FACE);
+        GLState.cullFace(GL_BACK);
+        GLState.depthFunc(GL_LESS);
+        GLState.depthMask(true);
+        GLState.disable(GL_BLEND);
+        GLState.enable(GL_TEXTURE_CUBE_MAP_SEAMLESS);
+        GLState.disable(GL_FRAMEBUFFER_SRGB);
     }
 
     public void addRenderPass(RenderStage stage, IRenderPass renderPass) {
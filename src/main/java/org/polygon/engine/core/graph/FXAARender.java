@@ -41,14 +41,14 @@ public class FXAARender {
     }
 
     public void render(int sceneTextureId, Window window) {
-        glEnable(GL_FRAMEBUFFER_SRGB);
+        GLState.enable(GL_FRAMEBUFFER_SRGB);
         int width = window.getWidth();
         int height = window.getHeight();
         Window.WindowOptions options = window.getWindowOptions();
         shaderProgram.bind();
 
-        glDisable(GL_DEPTH_TEST);
-        glDisable(GL_BLEND);
+        GLState.disable(GL_DEPTH_TEST);
+        GLState.disable(GL_BLEND);
 
         // Set uniforms
         uniformMap.setUniform("sceneSampler", 0); // Texture unit 0
@@ -58,15 +58,15 @@ public class FXAARender {
         uniformMap.setUniform("enableToneMap", options.enableToneMap);
 
         // Bind input texture
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, sceneTextureId);
+        GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_2D, sceneTextureId);
 
         // Render the quad
-        glBindVertexArray(quadMesh.getVaoId());
+        GLState.bindVertexArray(quadMesh.getVaoId());
         glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
-        glBindVertexArray(0);
+        RenderStats.addDrawCall(RenderStats.Pass.FXAA, 1, quadMesh.getNumVertices());
+        GLState.bindVertexArray(0);
 
-        glDisable(GL_FRAMEBUFFER_SRGB);
+        GLState.disable(GL_FRAMEBUFFER_SRGB);
         shaderProgram.unbind();
     }
 } 
\ No newline at end of file
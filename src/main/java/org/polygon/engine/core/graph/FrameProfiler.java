@@ -0,0 +1,288 @@
+package org.polygon.engine.core.graph;
+
+import org.polygon.engine.core.graph.RenderStats.Pass;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Records per-pass CPU and GPU timings and the RenderStats counters of the last frames in a ring buffer.
+// GPU times come from GL_TIME_ELAPSED queries that are read QUERY_FRAMES frames later, so reading them
+// never waits on the GPU, the GPU time of the latest frames reads -1 until its query is available.
+// CPU times are the time spent issuing the pass commands. Nothing is allocated per frame.
+public class FrameProfiler {
+    public static final int DEFAULT_HISTORY = 300;
+    // Query sets in flight, a set is reused after QUERY_FRAMES frames.
+    private static final int QUERY_FRAMES = 3;
+    private static final int NUM_PASSES = Pass.values().length;
+
+    private final int history;
+    private final long[] frameIds;
+    private final long[] frameCpuNanos;
+    private final long[][] cpuNanos;
+    private final long[][] gpuNanos;
+    private final int[][] drawCalls;
+    private final int[][] triangles;
+    private final int[][] uniformUploads;
+    private final long[][] uniformBytes;
+    private final long[][] uploadBytes;
+    private final int[][] stateCalls;
+    private final int[][] elidedStateCalls;
+
+    private final int[][] queryIds;
+    private final boolean[][] queryIssued;
+    private final long[] queryFrameIds;
+
+    private boolean enabled = true;
+    private long frameCount;
+    private long frameStartTime;
+    private long passStartTime;
+
+    public FrameProfiler() {
+        this(DEFAULT_HISTORY);
+    }
+
+    public FrameProfiler(int history) {
+        if(history < 1) {
+            throw new RuntimeException("Profiler history must hold at least one frame [" + history + "]");
+        }
+        this.history = history;
+        frameIds = new long[history];
+        frameCpuNanos = new long[history];
+        cpuNanos = new long[history][NUM_PASSES];
+        gpuNanos = new long[history][NUM_PASSES];
+        drawCalls = new int[history][NUM_PASSES];
+        triangles = new int[history][NUM_PASSES];
+        uniformUploads = new int[history][NUM_PASSES];
+        uniformBytes = new long[history][NUM_PASSES];
+        uploadBytes = new long[history][NUM_PASSES];
+        stateCalls = new int[history][NUM_PASSES];
+        elidedStateCalls = new int[history][NUM_PASSES];
+
+        queryIds = new int[QUERY_FRAMES][NUM_PASSES];
+        queryIssued = new boolean[QUERY_FRAMES][NUM_PASSES];
+        queryFrameIds = new long[QUERY_FRAMES];
+        for(int[] ids : queryIds) {
+            glGenQueries(ids);
+        }
+    }
+
+    public void beginFrame() {
+        if(!enabled) {
+            return;
+        }
+        int querySet = (int) (frameCount % QUERY_FRAMES);
+        collectQueries(querySet);
+        queryFrameIds[querySet] = frameCount;
+
+        int slot = getSlot(frameCount);
+        frameIds[slot] = frameCount;
+        for(int i = 0; i < NUM_PASSES; i++) {
+            cpuNanos[slot][i] = 0;
+            gpuNanos[slot][i] = -1;
+        }
+        frameStartTime = System.nanoTime();
+    }
+
+    // Passes can't be nested, a GL_TIME_ELAPSED query must end before the next one begins.
+    public void begin(Pass pass) {
+        RenderStats.setCurrentPass(pass);
+        if(!enabled) {
+            return;
+        }
+        glBeginQuery(GL_TIME_ELAPSED, queryIds[(int) (frameCount % QUERY_FRAMES)][pass.ordinal()]);
+        passStartTime = System.nanoTime();
+    }
+
+    public void end(Pass pass) {
+        if(!enabled) {
+            return;
+        }
+        cpuNanos[getSlot(frameCount)][pass.ordinal()] += System.nanoTime() - passStartTime;
+        glEndQuery(GL_TIME_ELAPSED);
+        queryIssued[(int) (frameCount % QUERY_FRAMES)][pass.ordinal()] = true;
+    }
+
+    public void endFrame() {
+        if(!enabled) {
+            return;
+        }
+        int slot = getSlot(frameCount);
+        frameCpuNanos[slot] = System.nanoTime() - frameStartTime;
+        for(Pass pass : Pass.values()) {
+            drawCalls[slot][pass.ordinal()] = RenderStats.getDrawCalls(pass);
+            triangles[slot][pass.ordinal()] = RenderStats.getTriangles(pass);
+            uniformUploads[slot][pass.ordinal()] = RenderStats.getUniformUploads(pass);
+            uniformBytes[slot][pass.ordinal()] = RenderStats.getUniformBytes(pass);
+            uploadBytes[slot][pass.ordinal()] = RenderStats.getUploadBytes(pass);
+            stateCalls[slot][pass.ordinal()] = RenderStats.getStateCalls(pass);
+            elidedStateCalls[slot][pass.ordinal()] = RenderStats.getElidedStateCalls(pass);
+        }
+        frameCount++;
+    }
+
+    // Reads the results of the query set issued QUERY_FRAMES frames ago into the frame's ring slot.
+    // A result that still isn't available is dropped instead of stalling.
+    private void collectQueries(int querySet) {
+        long frameId = queryFrameIds[querySet];
+        boolean inHistory = frameIds[getSlot(frameId)] == frameId;
+        for(int i = 0; i < NUM_PASSES; i++) {
+            if(!queryIssued[querySet][i]) {
+                continue;
+            }
+            queryIssued[querySet][i] = false;
+            int queryId = queryIds[querySet][i];
+            if(glGetQueryObjecti(queryId, GL_QUERY_RESULT_AVAILABLE) == GL_TRUE && inHistory) {
+                gpuNanos[getSlot(frameId)][i] = glGetQueryObjecti64(queryId, GL_QUERY_RESULT);
+            }
+        }
+    }
+
+    private int getSlot(long frameId) {
+        return (int) (frameId % history);
+    }
+
+    // Slot of the frame completed framesAgo frames before the last one, 0 is the last completed frame.
+    private int getRecordedSlot(int framesAgo) {
+        if(framesAgo < 0 || framesAgo >= getRecordedFrames()) {
+            throw new RuntimeException("Frame isn't recorded [" + framesAgo + "]");
+        }
+        return getSlot(frameCount - 1 - framesAgo);
+    }
+
+    public int getRecordedFrames() {
+        return (int) Math.min(frameCount, history);
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getFrameCpuTimeNanos(int framesAgo) {
+        return frameCpuNanos[getRecordedSlot(framesAgo)];
+    }
+
+    public long getCpuTimeNanos(int framesAgo, Pass pass) {
+        return cpuNanos[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    // -1 if the pass didn't run or its query result isn't available yet.
+    public long getGpuTimeNanos(int framesAgo, Pass pass) {
+        return gpuNanos[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public int getDrawCalls(int framesAgo, Pass pass) {
+        return drawCalls[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public int getTriangles(int framesAgo, Pass pass) {
+        return triangles[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public int getUniformUploads(int framesAgo, Pass pass) {
+        return uniformUploads[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public long getUniformBytes(int framesAgo, Pass pass) {
+        return uniformBytes[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public long getUploadBytes(int framesAgo, Pass pass) {
+        return uploadBytes[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public int getStateCalls(int framesAgo, Pass pass) {
+        return stateCalls[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    public int getElidedStateCalls(int framesAgo, Pass pass) {
+        return elidedStateCalls[getRecordedSlot(framesAgo)][pass.ordinal()];
+    }
+
+    // Averages over the recorded frames.
+    public float getAverageCpuTimeMS(Pass pass) {
+        int numFrames = getRecordedFrames();
+        if(numFrames == 0) {
+            return 0.0f;
+        }
+        long total = 0;
+        for(int i = 0; i < numFrames; i++) {
+            total += getCpuTimeNanos(i, pass);
+        }
+        return total / (numFrames * 1_000_000.0f);
+    }
+
+    // Frames without a GPU time for the pass are left out.
+    public float getAverageGpuTimeMS(Pass pass) {
+        int numFrames = 0;
+        long total = 0;
+        for(int i = 0; i < getRecordedFrames(); i++) {
+            long gpuTime = getGpuTimeNanos(i, pass);
+            if(gpuTime >= 0) {
+                total += gpuTime;
+                numFrames++;
+            }
+        }
+        return numFrames > 0 ? total / (numFrames * 1_000_000.0f) : 0.0f;
+    }
+
+    public float getAverageFrameCpuTimeMS() {
+        int numFrames = getRecordedFrames();
+        if(numFrames == 0) {
+            return 0.0f;
+        }
+        long total = 0;
+        for(int i = 0; i < numFrames; i++) {
+            total += getFrameCpuTimeNanos(i);
+        }
+        return total / (numFrames * 1_000_000.0f);
+    }
+
+    // Writes the recorded frames as CSV, oldest first, one row per frame and pass.
+    public void exportCsv(Path path) {
+        try(BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("frame,pass,cpuMS,gpuMS,drawCalls,triangles,uniformUploads,uniformBytes,uploadBytes"
+                    + ",stateCalls,elidedStateCalls");
+            writer.newLine();
+            for(int framesAgo = getRecordedFrames() - 1; framesAgo >= 0; framesAgo--) {
+                int slot = getRecordedSlot(framesAgo);
+                for(Pass pass : Pass.values()) {
+                    int i = pass.ordinal();
+                    writer.write(String.format(Locale.ROOT, "%d,%s,%.4f,%.4f,%d,%d,%d,%d,%d,%d,%d", frameIds[slot]
+                            , pass
+                            , cpuNanos[slot][i] / 1_000_000.0, gpuNanos[slot][i] >= 0 ? gpuNanos[slot][i] / 1_000_000.0 : -1.0
+                            , drawCalls[slot][i], triangles[slot][i], uniformUploads[slot][i], uniformBytes[slot][i]
+                            , uploadBytes[slot][i], stateCalls[slot][i], elidedStateCalls[slot][i]));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't export the frame profile [" + path + "]", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Disabling keeps the recorded frames, the queries in flight are dropped.
+    public void setEnabled(boolean enabled) {
+        if(this.enabled && !enabled) {
+            for(boolean[] issued : queryIssued) {
+                Arrays.fill(issued, false);
+            }
+        }
+        this.enabled = enabled;
+    }
+
+    public void cleanup() {
+        for(int[] ids : queryIds) {
+            glDeleteQueries(ids);
+        }
+    }
+}
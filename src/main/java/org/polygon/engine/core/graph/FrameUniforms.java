@@ -0,0 +1,87 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.polygon.engine.core.scene.Fog;
+import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.scene.lights.AmbientLight;
+import org.polygon.engine.core.scene.lights.DirectionalLight;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Uploads the per-frame CameraData and LightingData uniform blocks once per frame,
+// the shaders declaring them read the shared buffers instead of setting their own uniforms.
+// The offsets follow the std140 layout of the blocks as they are declared in the shaders.
+public class FrameUniforms {
+    // CameraData: scene.vert, lights.frag, light_volume.vert and light_volume.frag
+    static final int PROJECTION_MATRIX_OFFSET = 0;
+    static final int VIEW_MATRIX_OFFSET = 64;
+    private static final int INV_PROJECTION_MATRIX_OFFSET = 128;
+    private static final int INV_VIEW_MATRIX_OFFSET = 192;
+    private static final int SCREEN_SIZE_OFFSET = 256;
+    static final int CAMERA_DATA_SIZE = 272;
+    // LightingData: lights.frag, a CascadeShadow struct is a mat4 and a float padded to 80 bytes.
+    private static final int CASCADE_STRIDE = 80;
+    private static final int CASCADE_SPLIT_DISTANCE_OFFSET = 64;
+    private static final int AMBIENT_LIGHT_OFFSET = CASCADE_STRIDE * CascadeShadow.SHADOW_MAP_CASCADE_COUNT;
+    private static final int DIRECTIONAL_LIGHT_OFFSET = AMBIENT_LIGHT_OFFSET + 16;
+    private static final int FOG_OFFSET = DIRECTIONAL_LIGHT_OFFSET + 32;
+    private static final int LIGHTING_DATA_SIZE = FOG_OFFSET + 32;
+
+    private final UniformBuffer cameraBuffer;
+    private final UniformBuffer lightingBuffer;
+    private final Vector4f auxVec4;
+
+    public FrameUniforms() {
+        cameraBuffer = new UniformBuffer(CAMERA_DATA_SIZE);
+        lightingBuffer = new UniformBuffer(LIGHTING_DATA_SIZE);
+        auxVec4 = new Vector4f();
+    }
+
+    public void cleanup() {
+        cameraBuffer.cleanup();
+        lightingBuffer.cleanup();
+    }
+
+    // Called once the cascade shadows are updated, before the passes using the blocks.
+    public void update(Scene scene, List<CascadeShadow> cascadeShadows, int screenWidth, int screenHeight) {
+        Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
+
+        ByteBuffer cameraData = cameraBuffer.getData();
+        scene.getProjection().getProjMatrix().get(PROJECTION_MATRIX_OFFSET, cameraData);
+        viewMatrix.get(VIEW_MATRIX_OFFSET, cameraData);
+        scene.getProjection().getInvProjMatrix().get(INV_PROJECTION_MATRIX_OFFSET, cameraData);
+        scene.getCamera().getInvViewMatrix().get(INV_VIEW_MATRIX_OFFSET, cameraData);
+        cameraData.putFloat(SCREEN_SIZE_OFFSET, screenWidth);
+        cameraData.putFloat(SCREEN_SIZE_OFFSET + 4, screenHeight);
+        cameraBuffer.upload();
+        cameraBuffer.bind(UniformBuffer.CAMERA_BINDING);
+
+        ByteBuffer lightingData = lightingBuffer.getData();
+        for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
+            CascadeShadow cascadeShadow = cascadeShadows.get(i);
+            cascadeShadow.getProjViewMatrix().get(i * CASCADE_STRIDE, lightingData);
+            lightingData.putFloat(i * CASCADE_STRIDE + CASCADE_SPLIT_DISTANCE_OFFSET, cascadeShadow.getSplitDistance());
+        }
+
+        AmbientLight ambientLight = scene.getSceneLights().getAmbientLight();
+        ambientLight.getColor().get(AMBIENT_LIGHT_OFFSET, lightingData);
+        lightingData.putFloat(AMBIENT_LIGHT_OFFSET + 12, ambientLight.getIntensity());
+
+        DirectionalLight directionalLight = scene.getSceneLights().getDirectionalLight();
+        auxVec4.set(directionalLight.getDirection(), 0).mul(viewMatrix);
+        directionalLight.getColor().get(DIRECTIONAL_LIGHT_OFFSET, lightingData);
+        lightingData.putFloat(DIRECTIONAL_LIGHT_OFFSET + 12, directionalLight.getIntensity());
+        lightingData.putFloat(DIRECTIONAL_LIGHT_OFFSET + 16, auxVec4.x);
+        lightingData.putFloat(DIRECTIONAL_LIGHT_OFFSET + 20, auxVec4.y);
+        lightingData.putFloat(DIRECTIONAL_LIGHT_OFFSET + 24, auxVec4.z);
+
+        Fog fog = scene.getFog();
+        lightingData.putInt(FOG_OFFSET, fog.isActive() ? 1 : 0);
+        fog.getColor().get(FOG_OFFSET + 16, lightingData);
+        lightingData.putFloat(FOG_OFFSET + 28, fog.getDensity());
+        lightingBuffer.upload();
+        lightingBuffer.bind(UniformBuffer.LIGHTING_BINDING);
+    }
+}
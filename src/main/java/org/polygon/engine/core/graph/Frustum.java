@@ -5,6 +5,11 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 public class Frustum {
+    // classifyAABB results.
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECT = 1;
+    public static final int INSIDE = 2;
+
     private static final int LEFT = 0;
     private static final int RIGHT = 1;
     private static final int BOTTOM = 2;
@@ -13,6 +18,8 @@ public class Frustum {
     private static final int FAR = 5;
 
     private final Vector4f[] planes;
+    private final Vector3f worldMinAux = new Vector3f();
+    private final Vector3f worldMaxAux = new Vector3f();
 
     public Frustum() {
         planes = new Vector4f[6];
@@ -70,38 +77,58 @@ public class Frustum {
                 projViewMatrix.m33() - projViewMatrix.m32());
     }
 
+    // The normalized left, right, bottom, top, near and far planes, inside where ax + by + cz + d >= 0.
+    // Shared, not to be modified.
+    public Vector4f[] getPlanes() {
+        return planes;
+    }
+
     public boolean isBoxVisible(Vector3f localMin, Vector3f localMax, Matrix4f modelMatrix) {
-        Vector3f worldMin = new Vector3f();
-        Vector3f worldMax = new Vector3f();
-        transformAABB(localMin, localMax, modelMatrix, worldMin, worldMax);
-        return isAABBVisible(worldMin, worldMax);
+        transformAABB(localMin, localMax, modelMatrix, worldMinAux, worldMaxAux);
+        return isAABBVisible(worldMinAux, worldMaxAux);
     }
 
     public static void transformAABB(Vector3f localMin, Vector3f localMax, Matrix4f modelMatrix,
                                      Vector3f outMin, Vector3f outMax) {
-        Vector3f center = new Vector3f(localMin).add(localMax).mul(0.5f);
-        Vector3f extent = new Vector3f(localMax).sub(localMin).mul(0.5f);
-
-        Vector4f worldCenter4 = modelMatrix.transform(new Vector4f(center, 1.0f));
-
-        float newExtentX = Math.abs(modelMatrix.m00()) * extent.x
-                + Math.abs(modelMatrix.m10()) * extent.y
-                + Math.abs(modelMatrix.m20()) * extent.z;
-
-        float newExtentY = Math.abs(modelMatrix.m01()) * extent.x
-                + Math.abs(modelMatrix.m11()) * extent.y
-                + Math.abs(modelMatrix.m21()) * extent.z;
-
-        float newExtentZ = Math.abs(modelMatrix.m02()) * extent.x
-                + Math.abs(modelMatrix.m12()) * extent.y
-                + Math.abs(modelMatrix.m22()) * extent.z;
-
-        outMin.set(worldCenter4.x - newExtentX, worldCenter4.y - newExtentY, worldCenter4.z - newExtentZ);
-        outMax.set(worldCenter4.x + newExtentX, worldCenter4.y + newExtentY, worldCenter4.z + newExtentZ);
+        float centerX = (localMin.x + localMax.x) * 0.5f;
+        float centerY = (localMin.y + localMax.y) * 0.5f;
+        float centerZ = (localMin.z + localMax.z) * 0.5f;
+        float extentX = (localMax.x - localMin.x) * 0.5f;
+        float extentY = (localMax.y - localMin.y) * 0.5f;
+        float extentZ = (localMax.z - localMin.z) * 0.5f;
+
+        float worldCenterX = modelMatrix.m00() * centerX + modelMatrix.m10() * centerY
+                + modelMatrix.m20() * centerZ + modelMatrix.m30();
+        float worldCenterY = modelMatrix.m01() * centerX + modelMatrix.m11() * centerY
+                + modelMatrix.m21() * centerZ + modelMatrix.m31();
+        float worldCenterZ = modelMatrix.m02() * centerX + modelMatrix.m12() * centerY
+                + modelMatrix.m22() * centerZ + modelMatrix.m32();
+
+        float newExtentX = Math.abs(modelMatrix.m00()) * extentX
+                + Math.abs(modelMatrix.m10()) * extentY
+                + Math.abs(modelMatrix.m20()) * extentZ;
+
+        float newExtentY = Math.abs(modelMatrix.m01()) * extentX
+                + Math.abs(modelMatrix.m11()) * extentY
+                + Math.abs(modelMatrix.m21()) * extentZ;
+
+        float newExtentZ = Math.abs(modelMatrix.m02()) * extentX
+                + Math.abs(modelMatrix.m12()) * extentY
+                + Math.abs(modelMatrix.m22()) * extentZ;
+
+        outMin.set(worldCenterX - newExtentX, worldCenterY - newExtentY, worldCenterZ - newExtentZ);
+        outMax.set(worldCenterX + newExtentX, worldCenterY + newExtentY, worldCenterZ + newExtentZ);
     }
 
     public boolean isAABBVisible(Vector3f worldMin, Vector3f worldMax) {
-        for(Vector4f plane : planes) {
+        return isAABBVisible(planes, 0, worldMin, worldMax);
+    }
+
+    // Tests the box against the 6 planes from firstPlane on, laid out like getPlanes. cull.comp tests every view
+    // of the GPU culled entities the same way.
+    public static boolean isAABBVisible(Vector4f[] planes, int firstPlane, Vector3f worldMin, Vector3f worldMax) {
+        for(int i = firstPlane; i < firstPlane + 6; i++) {
+            Vector4f plane = planes[i];
             float px = plane.x >= 0 ? worldMax.x : worldMin.x;
             float py = plane.y >= 0 ? worldMax.y : worldMin.y;
             float pz = plane.z >= 0 ? worldMax.z : worldMin.z;
@@ -112,4 +139,31 @@ public class Frustum {
         }
         return true;
     }
+
+    public int classifyAABB(Vector3f worldMin, Vector3f worldMax) {
+        return classifyAABB(worldMin.x, worldMin.y, worldMin.z, worldMax.x, worldMax.y, worldMax.z);
+    }
+
+    // Returns OUTSIDE, INTERSECT or INSIDE, an AABB fully INSIDE the frustum doesn't need its contents tested.
+    public int classifyAABB(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = INSIDE;
+        for(Vector4f plane : planes) {
+            // The corner furthest along the plane normal.
+            float px = plane.x >= 0 ? maxX : minX;
+            float py = plane.y >= 0 ? maxY : minY;
+            float pz = plane.z >= 0 ? maxZ : minZ;
+            if(plane.x * px + plane.y * py + plane.z * pz + plane.w < 0) {
+                return OUTSIDE;
+            }
+
+            // The opposite corner, if it's behind the plane the box crosses it.
+            float nx = plane.x >= 0 ? minX : maxX;
+            float ny = plane.y >= 0 ? minY : maxY;
+            float nz = plane.z >= 0 ? minZ : maxZ;
+            if(plane.x * nx + plane.y * ny + plane.z * nz + plane.w < 0) {
+                result = INTERSECT;
+            }
+        }
+        return result;
+    }
 }
@@ -32,7 +32,7 @@ public class GBuffer {
 
     private void createBuffers() {
         gBufferId = glGenFramebuffers();
-        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, gBufferId);
+        GLState.bindFramebuffer(GL_DRAW_FRAMEBUFFER, gBufferId);
 
         textureIds = new int[TOTAL_TEXTURES];
         glGenTextures(textureIds);
@@ -43,12 +43,12 @@ public class GBuffer {
         // Attach textures and setup draw buffers
         attachAndConfigure();
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     private void setupTextures(int newWidth, int newHeight) {
          for(int i = 0; i < TOTAL_TEXTURES; i++) {
-            glBindTexture(GL_TEXTURE_2D, textureIds[i]);
+            GLState.bindTexture(GL_TEXTURE_2D, textureIds[i]);
 
             switch (i) {
                 case GBUFFER_IDX_ALBEDO:
@@ -114,11 +114,11 @@ public class GBuffer {
 
     public void cleanup() {
         if (gBufferId != -1) {
-            glDeleteFramebuffers(gBufferId);
+            GLState.deleteFramebuffer(gBufferId);
             gBufferId = -1;
         }
         if (textureIds != null) {
-            glDeleteTextures(textureIds);
+            GLState.deleteTextures(textureIds);
             textureIds = null;
         }
     }
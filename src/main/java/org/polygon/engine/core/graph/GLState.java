@@ -0,0 +1,275 @@
+package org.polygon.engine.core.graph;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Shadow copy of the GL bindings and capabilities the render passes change, every change goes through here
+// and the calls that would set a value that is already current are elided. Each call is counted as issued or
+// elided in the RenderStats of the current pass. Values start unknown, so the first call always reaches GL.
+// Code changing the state with raw GL calls must call invalidate afterwards, the ImGui backend restores
+// everything it changes so the GUI pass doesn't need to.
+public class GLState {
+    private static final int UNKNOWN = -1;
+    // Texture units and targets with tracked bindings, binds outside of them always reach GL.
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int[] TEXTURE_TARGETS = {
+            GL_TEXTURE_2D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_2D_ARRAY, GL_TEXTURE_BUFFER,
+    };
+    private static final int[] CAPABILITIES = {
+            GL_DEPTH_TEST, GL_CULL_FACE, GL_BLEND, GL_SCISSOR_TEST, GL_STENCIL_TEST,
+            GL_TEXTURE_CUBE_MAP_SEAMLESS, GL_FRAMEBUFFER_SRGB,
+    };
+
+    private static boolean enabled = true;
+    private static int program;
+    private static int vertexArray;
+    private static int activeTexture;
+    // Bound texture of every unit and target, indexed by unit * TEXTURE_TARGETS.length + target index.
+    private static final int[] textures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGETS.length];
+    private static int drawFramebuffer;
+    private static int readFramebuffer;
+    private static final int[] viewport = new int[4];
+    // 1 enabled, 0 disabled, in CAPABILITIES order.
+    private static final int[] capabilities = new int[CAPABILITIES.length];
+    private static int cullFace;
+    private static int depthFunc;
+    private static int depthMask;
+    private static int blendSrc;
+    private static int blendDst;
+
+    static {
+        invalidate();
+    }
+
+    private GLState() {
+
+    }
+
+    // Every call reaches GL when disabled, the shadow state is still kept so it can be enabled at any time.
+    public static void setEnabled(boolean enabled) {
+        GLState.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Forgets the shadow state, the next call of each kind reaches GL.
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeTexture = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        drawFramebuffer = UNKNOWN;
+        readFramebuffer = UNKNOWN;
+        Arrays.fill(viewport, UNKNOWN);
+        Arrays.fill(capabilities, UNKNOWN);
+        cullFace = UNKNOWN;
+        depthFunc = UNKNOWN;
+        depthMask = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+    }
+
+    public static void useProgram(int programId) {
+        if(isCurrent(program == programId)) {
+            return;
+        }
+        glUseProgram(programId);
+        program = programId;
+    }
+
+    public static void bindVertexArray(int vaoId) {
+        if(isCurrent(vertexArray == vaoId)) {
+            return;
+        }
+        glBindVertexArray(vaoId);
+        vertexArray = vaoId;
+    }
+
+    // The texture unit is GL_TEXTURE0 + unit, as for glActiveTexture.
+    public static void activeTexture(int textureUnit) {
+        if(isCurrent(activeTexture == textureUnit)) {
+            return;
+        }
+        glActiveTexture(textureUnit);
+        activeTexture = textureUnit;
+    }
+
+    // Binds to the active texture unit.
+    public static void bindTexture(int target, int textureId) {
+        int index = getTextureIndex(activeTexture, target);
+        if(index >= 0 && isCurrent(textures[index] == textureId)) {
+            return;
+        }
+        glBindTexture(target, textureId);
+        if(index >= 0) {
+            textures[index] = textureId;
+        } else {
+            RenderStats.addStateCall();
+        }
+    }
+
+    // Binds for sampling, the active texture unit is only switched when the texture isn't bound to the unit
+    // already, so nothing else should rely on the active unit afterwards.
+    public static void bindTexture(int textureUnit, int target, int textureId) {
+        int index = getTextureIndex(textureUnit, target);
+        if(index >= 0 && enabled && textures[index] == textureId) {
+            // The glActiveTexture call is elided too.
+            RenderStats.addElidedStateCall();
+            RenderStats.addElidedStateCall();
+            return;
+        }
+        activeTexture(textureUnit);
+        bindTexture(target, textureId);
+    }
+
+    public static void bindFramebuffer(int target, int framebufferId) {
+        boolean draw = target == GL_FRAMEBUFFER || target == GL_DRAW_FRAMEBUFFER;
+        boolean read = target == GL_FRAMEBUFFER || target == GL_READ_FRAMEBUFFER;
+        if(isCurrent((!draw || drawFramebuffer == framebufferId) && (!read || readFramebuffer == framebufferId))) {
+            return;
+        }
+        glBindFramebuffer(target, framebufferId);
+        if(draw) {
+            drawFramebuffer = framebufferId;
+        }
+        if(read) {
+            readFramebuffer = framebufferId;
+        }
+    }
+
+    public static void viewport(int x, int y, int width, int height) {
+        if(isCurrent(viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height)) {
+            return;
+        }
+        glViewport(x, y, width, height);
+        viewport[0] = x;
+        viewport[1] = y;
+        viewport[2] = width;
+        viewport[3] = height;
+    }
+
+    public static void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public static void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    public static void cullFace(int mode) {
+        if(isCurrent(cullFace == mode)) {
+            return;
+        }
+        glCullFace(mode);
+        cullFace = mode;
+    }
+
+    public static void depthFunc(int func) {
+        if(isCurrent(depthFunc == func)) {
+            return;
+        }
+        glDepthFunc(func);
+        depthFunc = func;
+    }
+
+    public static void depthMask(boolean flag) {
+        int mask = flag ? 1 : 0;
+        if(isCurrent(depthMask == mask)) {
+            return;
+        }
+        glDepthMask(flag);
+        depthMask = mask;
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if(isCurrent(blendSrc == src && blendDst == dst)) {
+            return;
+        }
+        glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+    }
+
+    // Deleting an object reverts the bindings of the current context to 0, and its id can be reused right away.
+    public static void deleteTexture(int textureId) {
+        glDeleteTextures(textureId);
+        for(int i = 0; i < textures.length; i++) {
+            if(textures[i] == textureId) {
+                textures[i] = 0;
+            }
+        }
+    }
+
+    public static void deleteTextures(int[] textureIds) {
+        for(int textureId : textureIds) {
+            deleteTexture(textureId);
+        }
+    }
+
+    public static void deleteVertexArray(int vaoId) {
+        glDeleteVertexArrays(vaoId);
+        if(vertexArray == vaoId) {
+            vertexArray = 0;
+        }
+    }
+
+    public static void deleteFramebuffer(int framebufferId) {
+        glDeleteFramebuffers(framebufferId);
+        if(drawFramebuffer == framebufferId) {
+            drawFramebuffer = 0;
+        }
+        if(readFramebuffer == framebufferId) {
+            readFramebuffer = 0;
+        }
+    }
+
+    private static void setCapability(int capability, boolean enable) {
+        int index = indexOf(CAPABILITIES, capability);
+        int value = enable ? 1 : 0;
+        if(index >= 0 && isCurrent(capabilities[index] == value)) {
+            return;
+        }
+        if(enable) {
+            glEnable(capability);
+        } else {
+            glDisable(capability);
+        }
+        if(index >= 0) {
+            capabilities[index] = value;
+        } else {
+            RenderStats.addStateCall();
+        }
+    }
+
+    // Counts the call, it's elided when the value is already current and the tracking is enabled.
+    private static boolean isCurrent(boolean current) {
+        if(current && enabled) {
+            RenderStats.addElidedStateCall();
+            return true;
+        }
+        RenderStats.addStateCall();
+        return false;
+    }
+
+    // -1 for untracked units and targets, or while the active unit is unknown.
+    private static int getTextureIndex(int textureUnit, int target) {
+        int unit = textureUnit - GL_TEXTURE0;
+        int targetIndex = indexOf(TEXTURE_TARGETS, target);
+        if(unit < 0 || unit >= MAX_TEXTURE_UNITS || targetIndex < 0) {
+            return -1;
+        }
+        return unit * TEXTURE_TARGETS.length + targetIndex;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
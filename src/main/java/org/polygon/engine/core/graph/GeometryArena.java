@@ -0,0 +1,265 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Vertex and index buffers shared by the static meshes, each mesh is a range of vertices and a range of indices
+// of them, so they all draw with the same VAO and can be batched into one multi-draw call. Vertices are in the
+// packed static format of Mesh, the indices of a mesh are stored with its first vertex added, so the ranges
+// draw with the plain index offsets. The buffers grow by copying into larger ones, freed ranges are reused.
+public class GeometryArena {
+    private static final int INITIAL_VERTEX_CAPACITY = 1 << 18;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 20;
+    private static final int BYTES_PER_VERTEX = Mesh.PACKED_STATIC_BYTES_PER_VERTEX;
+
+    private final int vaoId;
+    private int vertexVboId;
+    private int indexVboId;
+    private final RangeAllocator vertexAllocator;
+    private final RangeAllocator indexAllocator;
+    // The instance VBO the instance attributes currently point to, shared by all the meshes, see Mesh.
+    private int instanceVboId = -1;
+    private int firstInstance;
+
+    public GeometryArena() {
+        vertexAllocator = new RangeAllocator(INITIAL_VERTEX_CAPACITY);
+        indexAllocator = new RangeAllocator(INITIAL_INDEX_CAPACITY);
+        vertexVboId = createBuffer((long) INITIAL_VERTEX_CAPACITY * BYTES_PER_VERTEX);
+        indexVboId = createBuffer((long) INITIAL_INDEX_CAPACITY * Integer.BYTES);
+
+        vaoId = glGenVertexArrays();
+        GLState.bindVertexArray(vaoId);
+        setupVertexAttributes();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        GLState.bindVertexArray(0);
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(vertexVboId);
+        glDeleteBuffers(indexVboId);
+        GLState.deleteVertexArray(vaoId);
+    }
+
+    // Copies the packed vertices and the indices of a mesh into the arena, growing it if they don't fit.
+    public Allocation allocate(ByteBuffer vertices, int vertexCount, IntBuffer indices) {
+        int indexCount = indices.remaining();
+        int firstVertex = vertexAllocator.allocate(vertexCount);
+        if(firstVertex < 0) {
+            growVertices(vertexCount);
+            firstVertex = vertexAllocator.allocate(vertexCount);
+        }
+        int firstIndex = indexAllocator.allocate(indexCount);
+        if(firstIndex < 0) {
+            growIndices(indexCount);
+            firstIndex = indexAllocator.allocate(indexCount);
+        }
+
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vertexVboId);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long) firstVertex * BYTES_PER_VERTEX, vertices);
+        IntBuffer rebasedIndices = MemoryUtil.memAllocInt(indexCount);
+        rebaseIndices(indices, firstVertex, rebasedIndices);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, indexVboId);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long) firstIndex * Integer.BYTES, rebasedIndices);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        MemoryUtil.memFree(rebasedIndices);
+        return new Allocation(firstVertex, vertexCount, firstIndex, indexCount);
+    }
+
+    // Writes the remaining indices with firstVertex added to rebasedIndices from 0 on, the positions are kept.
+    static void rebaseIndices(IntBuffer indices, int firstVertex, IntBuffer rebasedIndices) {
+        for(int i = 0; i < indices.remaining(); i++) {
+            rebasedIndices.put(i, indices.get(indices.position() + i) + firstVertex);
+        }
+    }
+
+    public void free(Allocation allocation) {
+        vertexAllocator.free(allocation.firstVertex(), allocation.vertexCount());
+        indexAllocator.free(allocation.firstIndex(), allocation.indexCount());
+    }
+
+    // Same as Mesh.setupInstanceAttributes, the arena meshes share the VAO so they share the cached pointers.
+    public void setupInstanceAttributes(int instanceVboId, int firstInstance, boolean animationFrames) {
+        GLState.bindVertexArray(vaoId);
+        if(this.instanceVboId == instanceVboId && this.firstInstance == firstInstance) {
+            return;
+        }
+        Mesh.pointInstanceAttributes(instanceVboId, firstInstance, animationFrames);
+        this.instanceVboId = instanceVboId;
+        this.firstInstance = firstInstance;
+    }
+
+    public int getVaoId() {
+        return vaoId;
+    }
+
+    private static int createBuffer(long size) {
+        int bufferId = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, bufferId);
+        glBufferData(GL_COPY_WRITE_BUFFER, size, GL_STATIC_DRAW);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        return bufferId;
+    }
+
+    // Same layout as Mesh's packed static format, the skinning attributes are left disabled.
+    private void setupVertexAttributes() {
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, BYTES_PER_VERTEX, 0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 4, GL_INT_2_10_10_10_REV, true, BYTES_PER_VERTEX, 12);
+        glEnableVertexAttribArray(2);
+        glVertexAttribPointer(2, 4, GL_INT_2_10_10_10_REV, true, BYTES_PER_VERTEX, 16);
+        glEnableVertexAttribArray(3);
+        glVertexAttribPointer(3, 4, GL_INT_2_10_10_10_REV, true, BYTES_PER_VERTEX, 20);
+        glEnableVertexAttribArray(4);
+        glVertexAttribPointer(4, 2, GL_HALF_FLOAT, false, BYTES_PER_VERTEX, 24);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glVertexAttrib4f(5, 0.0f, 0.0f, 0.0f, 0.0f);
+        glVertexAttribI4i(6, 0, 0, 0, 0);
+    }
+
+    private void growVertices(int vertexCount) {
+        int oldCapacity = vertexAllocator.getCapacity();
+        int capacity = grownCapacity(oldCapacity, vertexCount);
+        vertexVboId = copyToLargerBuffer(vertexVboId, (long) oldCapacity * BYTES_PER_VERTEX
+                , (long) capacity * BYTES_PER_VERTEX);
+        vertexAllocator.grow(capacity);
+        GLState.bindVertexArray(vaoId);
+        setupVertexAttributes();
+        GLState.bindVertexArray(0);
+    }
+
+    private void growIndices(int indexCount) {
+        int oldCapacity = indexAllocator.getCapacity();
+        int capacity = grownCapacity(oldCapacity, indexCount);
+        indexVboId = copyToLargerBuffer(indexVboId, (long) oldCapacity * Integer.BYTES
+                , (long) capacity * Integer.BYTES);
+        indexAllocator.grow(capacity);
+        GLState.bindVertexArray(vaoId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        GLState.bindVertexArray(0);
+    }
+
+    // Doubles the capacity until count more elements fit after the current end.
+    static int grownCapacity(int capacity, int count) {
+        long required = (long) capacity + count;
+        long grown = capacity;
+        while(grown < required) {
+            grown *= 2;
+        }
+        if(grown > Integer.MAX_VALUE) {
+            throw new RuntimeException("Geometry arena can't grow to [" + grown + "] elements");
+        }
+        return (int) grown;
+    }
+
+    private static int copyToLargerBuffer(int bufferId, long oldSize, long size) {
+        int newBufferId = createBuffer(size);
+        glBindBuffer(GL_COPY_READ_BUFFER, bufferId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, newBufferId);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, oldSize);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glDeleteBuffers(bufferId);
+        return newBufferId;
+    }
+
+    // Vertex and index ranges of a mesh, in vertices and indices.
+    public record Allocation(int firstVertex, int vertexCount, int firstIndex, int indexCount) {
+    }
+
+    // First fit allocator of element ranges, the free ranges are kept sorted by start and merged with their
+    // neighbours when freed.
+    static class RangeAllocator {
+        private int[] freeStarts = new int[16];
+        private int[] freeSizes = new int[16];
+        private int numFree;
+        private int capacity;
+
+        RangeAllocator(int capacity) {
+            this.capacity = capacity;
+            if(capacity > 0) {
+                freeStarts[0] = 0;
+                freeSizes[0] = capacity;
+                numFree = 1;
+            }
+        }
+
+        // Start of the allocated range, -1 if no free range is large enough. Empty ranges start at 0.
+        int allocate(int size) {
+            if(size == 0) {
+                return 0;
+            }
+            for(int i = 0; i < numFree; i++) {
+                if(freeSizes[i] < size) {
+                    continue;
+                }
+                int start = freeStarts[i];
+                freeStarts[i] += size;
+                freeSizes[i] -= size;
+                if(freeSizes[i] == 0) {
+                    removeFree(i);
+                }
+                return start;
+            }
+            return -1;
+        }
+
+        void free(int start, int size) {
+            if(size == 0) {
+                return;
+            }
+            int i = 0;
+            while(i < numFree && freeStarts[i] < start) {
+                i++;
+            }
+            boolean mergePrevious = i > 0 && freeStarts[i - 1] + freeSizes[i - 1] == start;
+            boolean mergeNext = i < numFree && start + size == freeStarts[i];
+            if(mergePrevious && mergeNext) {
+                freeSizes[i - 1] += size + freeSizes[i];
+                removeFree(i);
+            } else if(mergePrevious) {
+                freeSizes[i - 1] += size;
+            } else if(mergeNext) {
+                freeStarts[i] = start;
+                freeSizes[i] += size;
+            } else {
+                insertFree(i, start, size);
+            }
+        }
+
+        // The new space after the old capacity becomes a free range.
+        void grow(int capacity) {
+            int oldCapacity = this.capacity;
+            this.capacity = capacity;
+            free(oldCapacity, capacity - oldCapacity);
+        }
+
+        int getCapacity() {
+            return capacity;
+        }
+
+        private void removeFree(int index) {
+            System.arraycopy(freeStarts, index + 1, freeStarts, index, numFree - index - 1);
+            System.arraycopy(freeSizes, index + 1, freeSizes, index, numFree - index - 1);
+            numFree--;
+        }
+
+        private void insertFree(int index, int start, int size) {
+            if(numFree == freeStarts.length) {
+                freeStarts = Arrays.copyOf(freeStarts, numFree * 2);
+                freeSizes = Arrays.copyOf(freeSizes, numFree * 2);
+            }
+            System.arraycopy(freeStarts, index, freeStarts, index + 1, numFree - index);
+            System.arraycopy(freeSizes, index, freeSizes, index + 1, numFree - index);
+            freeStarts[index] = start;
+            freeSizes[index] = size;
+            numFree++;
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.scene.Entity;
+import org.polygon.engine.core.scene.Scene;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL43.*;
+
+// Culls the entities of the static models whose meshes are all in the GeometryArena on the GPU, against the
+// camera frustum and every shadow cascade, in one compute dispatch. The shader picks their LODs and appends their
+// draw records to compacted indirect commands of every view, see cull.comp. The geometry and shadow passes then
+// draw them with glMultiDrawElementsIndirect without the CPU culling any of the entities, the BVH queries of the
+// passes skip their models. The commands of a view are sorted by texture set like in MultiDrawRender, the shadow
+// views draw all theirs with one call.
+// The storage buffers are kept between frames. The entities and their models are only laid out and uploaded again
+// when the sync point changed the render lists, the commands also when the textures or data of a material
+// changed. Otherwise only the matrices of the entities the sync point or the interpolation changed are uploaded.
+// The shader also counts the visible entities of every view and writes the views and LOD of every entity, read
+// back by readVisibility to check it against the CPU math, and the largest screen size of every model's entities
+// visible to the camera, read back the next frame to request the textures.
+class GpuCulling {
+    private static final int WORKGROUP_SIZE = 64;
+    // The camera and the cascades.
+    static final int NUM_VIEWS = 1 + CascadeShadow.SHADOW_MAP_CASCADE_COUNT;
+    // The LOD of an entity in its visibility word, above the bits of its views.
+    static final int VISIBILITY_LOD_SHIFT = 16;
+    // Storage buffer bindings of cull.comp, 0 and 1 are the instance matrices and materials of the draw shaders.
+    private static final int ENTITY_MODELS_BINDING = 2;
+    private static final int MODELS_BINDING = 3;
+    private static final int MESH_DRAWS_BINDING = 4;
+    private static final int COMMANDS_BINDING = 5;
+    private static final int RECORDS_BINDING = 6;
+    private static final int VISIBILITY_BINDING = 7;
+    private static final int MODEL_SCREEN_SIZES_BINDING = 8;
+    // std430 sizes of the ModelData and MeshDraw structs.
+    private static final int MODEL_DATA_SIZE = 48;
+    private static final int MESH_DRAW_SIZE_INTS = 3;
+    private static final int MATRIX_SIZE_FLOATS = 16;
+    // Changed matrices at most this many apart are uploaded together with the ones between them.
+    private static final int MAX_UPLOAD_GAP = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final GeometryArena geometryArena;
+    private final ShaderProgram cullShaderProgram;
+    private final UniformMap cullUniformMap;
+    private final ShaderProgram sceneShaderProgram;
+    private final ShaderProgram shadowShaderProgram;
+    private final UniformMap shadowUniformMap;
+    private final int matrixBufferId;
+    private final int entityModelBufferId;
+    private final int modelBufferId;
+    private final int meshDrawBufferId;
+    private final int commandBufferId;
+    // The commands without instances, copied over the commands before every dispatch.
+    private final int commandTemplateBufferId;
+    private final int recordBufferId;
+    private final int materialBufferId;
+    private final int visibilityBufferId;
+    // Written by every other dispatch, the one not written next holds the screen sizes of the last dispatch.
+    private final int[] screenSizeBufferIds = new int[2];
+    private int screenSizeBuffer;
+    private boolean screenSizesReadable;
+    // Frustums of the views, the camera's first.
+    private final Frustum[] frustums = new Frustum[NUM_VIEWS];
+    private final Vector4f[] planes = new Vector4f[NUM_VIEWS * 6];
+    private final float[] lodThresholds = new float[LodSelector.NUM_LOD_THRESHOLDS];
+    private final Matrix4f projViewMatrix = new Matrix4f();
+    // Scene, render lists and sync point the buffers were last updated for.
+    private Scene culledScene;
+    private long renderListsVersion;
+    private long renderSyncCount;
+    // Culled models, in the order of the model data.
+    private final List<Model> culledModels = new ArrayList<>();
+    // Mesh draws of the culled models, the mesh draws of a model follow each other. Sorted by texture set and
+    // material in the queue, its payloads index the lists below.
+    private final RenderQueue meshDrawQueue = new RenderQueue();
+    private final List<Material> meshDrawMaterials = new ArrayList<>();
+    private final List<Mesh> meshDrawMeshes = new ArrayList<>();
+    private int[] meshDrawModels = new int[INITIAL_CAPACITY];
+    private int[] meshDrawTextureSetIds = new int[INITIAL_CAPACITY];
+    private int numMeshDraws;
+    // Materials in the order of the material data.
+    private final List<Material> materials = new ArrayList<>();
+    // Entities of the culled models, in the order of the matrices, and their matrix indices.
+    private final List<Entity> entities = new ArrayList<>();
+    private final Map<Entity, Integer> entityIndices = new IdentityHashMap<>();
+    // Matrix indices of the entities changed since the last cull, sorted before the upload.
+    private int[] changedIndices = new int[INITIAL_CAPACITY];
+    private int numChangedIndices;
+    // Runs of commands sharing the textures, first command and the material binding the textures.
+    private int[] runFirstCommands = new int[INITIAL_CAPACITY];
+    private final List<Material> runMaterials = new ArrayList<>();
+    private int numRuns;
+    private int commandsPerView;
+    // Staging data, the matrices and the material data are kept as uploaded.
+    private FloatBuffer matrices = MemoryUtil.memAllocFloat(INITIAL_CAPACITY * MATRIX_SIZE_FLOATS);
+    private IntBuffer entityModels = MemoryUtil.memAllocInt(INITIAL_CAPACITY);
+    private ByteBuffer modelData = MemoryUtil.memAlloc(INITIAL_CAPACITY * MODEL_DATA_SIZE);
+    // Largest screen size of every culled model's entities visible to the camera, as of the last read back.
+    private FloatBuffer modelScreenSizes = MemoryUtil.memCallocFloat(INITIAL_CAPACITY);
+    private IntBuffer meshDraws = MemoryUtil.memAllocInt(INITIAL_CAPACITY * MESH_DRAW_SIZE_INTS);
+    private IntBuffer commands = MemoryUtil.memAllocInt(INITIAL_CAPACITY * MultiDrawRender.COMMAND_SIZE_INTS);
+    private ByteBuffer materialData = MemoryUtil.memAlloc(INITIAL_CAPACITY * SceneRender.MATERIAL_DATA_SIZE);
+    // A material's data with zeroed padding, copied into the material data and compared with it.
+    private final ByteBuffer materialDataAux = MemoryUtil.memCalloc(SceneRender.MATERIAL_DATA_SIZE);
+
+    GpuCulling(GeometryArena geometryArena) {
+        this.geometryArena = geometryArena;
+        List<ShaderProgram.ShaderModuleData> cullModuleDataList = new ArrayList<>();
+        cullModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/cull.comp", GL_COMPUTE_SHADER));
+        cullShaderProgram = new ShaderProgram(cullModuleDataList, List.of("MAX_VIEWS " + NUM_VIEWS
+                , "MAX_LOD_THRESHOLDS " + LodSelector.NUM_LOD_THRESHOLDS
+                , "VISIBILITY_LOD_SHIFT " + VISIBILITY_LOD_SHIFT));
+        cullUniformMap = new UniformMap(cullShaderProgram.getProgramId());
+        cullUniformMap.createUniform("numEntities");
+        cullUniformMap.createUniform("numViews");
+        cullUniformMap.createUniform("commandsPerView");
+        cullUniformMap.createUniform("planes");
+        cullUniformMap.createUniform("cameraPosition");
+        cullUniformMap.createUniform("projectionScale");
+        cullUniformMap.createUniform("lodThresholds");
+
+        sceneShaderProgram = MultiDrawRender.createSceneShaderProgram();
+        List<ShaderProgram.ShaderModuleData> shadowModuleDataList = new ArrayList<>();
+        shadowModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/shadow.vert", GL_VERTEX_SHADER));
+        shadowShaderProgram = new ShaderProgram(shadowModuleDataList, List.of("INDIRECT"), "430 core");
+        shadowUniformMap = new UniformMap(shadowShaderProgram.getProgramId());
+        shadowUniformMap.createUniform("projViewMatrix");
+
+        matrixBufferId = glGenBuffers();
+        entityModelBufferId = glGenBuffers();
+        modelBufferId = glGenBuffers();
+        meshDrawBufferId = glGenBuffers();
+        commandBufferId = glGenBuffers();
+        commandTemplateBufferId = glGenBuffers();
+        recordBufferId = glGenBuffers();
+        materialBufferId = glGenBuffers();
+        visibilityBufferId = glGenBuffers();
+        glGenBuffers(screenSizeBufferIds);
+        for(int i = 0; i < NUM_VIEWS; i++) {
+            frustums[i] = new Frustum();
+        }
+    }
+
+    void cleanup() {
+        cullShaderProgram.cleanup();
+        sceneShaderProgram.cleanup();
+        shadowShaderProgram.cleanup();
+        glDeleteBuffers(new int[] {matrixBufferId, entityModelBufferId, modelBufferId, meshDrawBufferId
+                , commandBufferId, commandTemplateBufferId, recordBufferId, materialBufferId, visibilityBufferId
+                , screenSizeBufferIds[0], screenSizeBufferIds[1]});
+        MemoryUtil.memFree(matrices);
+        MemoryUtil.memFree(entityModels);
+        MemoryUtil.memFree(modelData);
+        MemoryUtil.memFree(modelScreenSizes);
+        MemoryUtil.memFree(meshDraws);
+        MemoryUtil.memFree(commands);
+        MemoryUtil.memFree(materialData);
+        MemoryUtil.memFree(materialDataAux);
+    }
+
+    // Static models with every mesh in the arena, their entities are only culled and drawn by this class.
+    static boolean isCulled(Model model) {
+        if(model.isAnimated()) {
+            return false;
+        }
+        for(Material material : model.getMaterialList()) {
+            for(Mesh mesh : material.getMeshList()) {
+                if(!mesh.isInGeometryArena()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Updates the buffers of the culled models' entities and culls them for the camera and the cascades, which
+    // must be updated for the frame already. The textures are requested for the screen height in pixels.
+    void cull(Scene scene, List<CascadeShadow> cascadeShadowList, int screenHeight) {
+        TextureCache textureCache = scene.getTextureCache();
+        if(scene != culledScene || scene.getRenderListsVersion() != renderListsVersion) {
+            buildEntities(scene);
+            buildCommands(textureCache);
+        } else {
+            if(isMaterialDataStale(textureCache)) {
+                buildCommands(textureCache);
+            }
+            uploadChangedMatrices(scene);
+        }
+        renderSyncCount = scene.getRenderSyncCount();
+        if(numRuns == 0) {
+            return;
+        }
+        requestTextures(textureCache, screenHeight);
+        resetOutputs();
+
+        projViewMatrix.set(scene.getProjection().getProjMatrix()).mul(scene.getCamera().getViewMatrix());
+        frustums[0].update(projViewMatrix);
+        for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
+            frustums[i + 1].update(cascadeShadowList.get(i).getProjViewMatrix());
+        }
+        for(int view = 0; view < NUM_VIEWS; view++) {
+            System.arraycopy(frustums[view].getPlanes(), 0, planes, view * 6, 6);
+        }
+        LodSelector.getLodThresholds(lodThresholds);
+
+        cullShaderProgram.bind();
+        cullUniformMap.setUniform("numEntities", entities.size());
+        cullUniformMap.setUniform("numViews", NUM_VIEWS);
+        cullUniformMap.setUniform("commandsPerView", commandsPerView);
+        cullUniformMap.setUniform("planes", planes);
+        cullUniformMap.setUniform("cameraPosition", scene.getCamera().getPosition());
+        cullUniformMap.setUniform("projectionScale", scene.getProjection().getProjMatrix().m11());
+        cullUniformMap.setUniform("lodThresholds", lodThresholds);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MultiDrawRender.INSTANCE_MATRICES_BINDING, matrixBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, ENTITY_MODELS_BINDING, entityModelBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MODELS_BINDING, modelBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MESH_DRAWS_BINDING, meshDrawBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, COMMANDS_BINDING, commandBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, RECORDS_BINDING, recordBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, VISIBILITY_BINDING, visibilityBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MODEL_SCREEN_SIZES_BINDING, screenSizeBufferIds[screenSizeBuffer]);
+        glDispatchCompute((entities.size() + WORKGROUP_SIZE - 1) / WORKGROUP_SIZE, 1, 1);
+        // The commands are read by the draw calls, the records as vertex attributes and the matrices by shaders,
+        // the visibility and the screen sizes are read back.
+        glMemoryBarrier(GL_COMMAND_BARRIER_BIT | GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL_SHADER_STORAGE_BARRIER_BIT
+                | GL_BUFFER_UPDATE_BARRIER_BIT);
+        cullShaderProgram.unbind();
+        screenSizeBuffer ^= 1;
+        screenSizesReadable = true;
+    }
+
+    // Entities of the last cull, in the order of the visibility words.
+    List<Entity> getEntities() {
+        return entities;
+    }
+
+    // Reads the visibility output of the last cull back: the visible entity count of every view, then a word per
+    // entity with a bit per view it's visible in and its LOD at VISIBILITY_LOD_SHIFT. Stalls the pipeline, for
+    // checking the shader only.
+    int[] readVisibility() {
+        int[] visibility = new int[NUM_VIEWS + entities.size()];
+        if(numRuns == 0) {
+            return visibility;
+        }
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, visibilityBufferId);
+        glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, visibility);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        return visibility;
+    }
+
+    // Draws the entities visible to the camera in the geometry pass, one call per texture set.
+    void renderGeometry(TextureCache textureCache) {
+        if(numRuns == 0) {
+            return;
+        }
+        sceneShaderProgram.bind();
+        bindDrawBuffers();
+        for(int run = 0; run < numRuns; run++) {
+            int firstCommand = runFirstCommands[run];
+            int numCommands = (run + 1 < numRuns ? runFirstCommands[run + 1] : commandsPerView) - firstCommand;
+            MultiDrawRender.bindTextures(runMaterials.get(run).getTextures(textureCache));
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT
+                    , (long) firstCommand * MultiDrawRender.COMMAND_SIZE_INTS * Integer.BYTES, numCommands, 0);
+            RenderStats.addMultiDrawCall(RenderStats.Pass.GEOMETRY);
+        }
+        MultiDrawRender.unbindDrawRecords();
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    // Draws the entities visible to the cascade into its shadow map with a single call.
+    void renderShadow(int cascade, Matrix4f projViewMatrix) {
+        if(numRuns == 0) {
+            return;
+        }
+        shadowShaderProgram.bind();
+        shadowUniformMap.setUniform("projViewMatrix", projViewMatrix);
+        bindDrawBuffers();
+        glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT
+                , (long) (cascade + 1) * commandsPerView * MultiDrawRender.COMMAND_SIZE_INTS * Integer.BYTES
+                , commandsPerView, 0);
+        RenderStats.addMultiDrawCall(RenderStats.Pass.SHADOW);
+        MultiDrawRender.unbindDrawRecords();
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    private void bindDrawBuffers() {
+        MultiDrawRender.bindDrawRecords(geometryArena, recordBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MultiDrawRender.INSTANCE_MATRICES_BINDING, matrixBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MultiDrawRender.MATERIALS_BINDING, materialBufferId);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandBufferId);
+    }
+
+    // Lays out the entities, the models and the mesh draws of the culled models and uploads them with all the
+    // matrices. Only done when the render lists changed.
+    private void buildEntities(Scene scene) {
+        culledScene = scene;
+        renderListsVersion = scene.getRenderListsVersion();
+        // Models culled before keep their screen sizes until the first read back of the new layout.
+        Map<Model, Float> previousScreenSizes = new IdentityHashMap<>();
+        for(int i = 0; i < culledModels.size(); i++) {
+            previousScreenSizes.put(culledModels.get(i), modelScreenSizes.get(i));
+        }
+        screenSizesReadable = false;
+        culledModels.clear();
+        entities.clear();
+        entityIndices.clear();
+        meshDrawMaterials.clear();
+        meshDrawMeshes.clear();
+        numMeshDraws = 0;
+        for(Model model : scene.getRenderModels()) {
+            List<Entity> entityList = model.getRenderEntityList();
+            if(entityList.isEmpty() || !isCulled(model)) {
+                continue;
+            }
+            int modelIndex = culledModels.size();
+            ensureModelCapacity(modelIndex + 1);
+            int modelOffset = modelIndex * MODEL_DATA_SIZE;
+            model.getAabbMinCorner().get(modelOffset, modelData);
+            model.getAabbMaxCorner().get(modelOffset + 16, modelData);
+            modelData.putInt(modelOffset + 32, numMeshDraws);
+            for(Material material : model.getMaterialList()) {
+                for(Mesh mesh : material.getMeshList()) {
+                    addMeshDraw(material, mesh, modelIndex);
+                }
+            }
+            modelData.putInt(modelOffset + 36, numMeshDraws - modelData.getInt(modelOffset + 32));
+            modelScreenSizes.put(modelIndex, previousScreenSizes.getOrDefault(model, 0.0f));
+
+            ensureEntityCapacity(entities.size() + entityList.size());
+            for(Entity entity : entityList) {
+                int index = entities.size();
+                entity.getRenderModelMatrix().get(index * MATRIX_SIZE_FLOATS, matrices);
+                entityModels.put(index, modelIndex);
+                entityIndices.put(entity, index);
+                entities.add(entity);
+            }
+            culledModels.add(model);
+        }
+
+        int numEntities = entities.size();
+        matrices.limit(numEntities * MATRIX_SIZE_FLOATS);
+        entityModels.limit(numEntities);
+        modelData.limit(culledModels.size() * MODEL_DATA_SIZE);
+        uploadStorage(matrixBufferId, MemoryUtil.memByteBuffer(matrices), GL_DYNAMIC_DRAW);
+        uploadStorage(entityModelBufferId, MemoryUtil.memByteBuffer(entityModels), GL_STATIC_DRAW);
+        uploadStorage(modelBufferId, modelData, GL_STATIC_DRAW);
+        matrices.clear();
+        entityModels.clear();
+        modelData.clear();
+
+        allocateStorage(visibilityBufferId, (long) (NUM_VIEWS + numEntities) * Integer.BYTES, GL_DYNAMIC_READ);
+        for(int screenSizeBufferId : screenSizeBufferIds) {
+            allocateStorage(screenSizeBufferId, (long) culledModels.size() * Float.BYTES, GL_DYNAMIC_READ);
+        }
+    }
+
+    private void addMeshDraw(Material material, Mesh mesh, int modelIndex) {
+        if(numMeshDraws == meshDrawModels.length) {
+            meshDrawModels = Arrays.copyOf(meshDrawModels, numMeshDraws * 2);
+            meshDrawTextureSetIds = Arrays.copyOf(meshDrawTextureSetIds, numMeshDraws * 2);
+        }
+        meshDrawMaterials.add(material);
+        meshDrawMeshes.add(mesh);
+        meshDrawModels[numMeshDraws] = modelIndex;
+        numMeshDraws++;
+    }
+
+    // Lays out one command per LOD of every mesh draw in sorted order, every view has its own copy of them.
+    // Each command has room for a record per entity of its model.
+    private void buildCommands(TextureCache textureCache) {
+        runMaterials.clear();
+        materials.clear();
+        numRuns = 0;
+        commandsPerView = 0;
+        if(numMeshDraws == 0) {
+            return;
+        }
+        meshDrawQueue.clear();
+        for(int i = 0; i < numMeshDraws; i++) {
+            Material material = meshDrawMaterials.get(i);
+            meshDrawTextureSetIds[i] = material.getTextureSetId(textureCache);
+            meshDrawQueue.add(RenderQueue.createKey(0, meshDrawTextureSetIds[i], material.getMaterialId(), 0.0f), i);
+        }
+        meshDrawQueue.sort();
+        ensureMeshDrawCapacity();
+        int recordsPerView = 0;
+        Material lastMaterial = null;
+        int lastTextureSetId = -1;
+        for(int i = 0; i < numMeshDraws; i++) {
+            int meshDraw = meshDrawQueue.getPayload(i);
+            Material material = meshDrawMaterials.get(meshDraw);
+            Mesh mesh = meshDrawMeshes.get(meshDraw);
+            if(material != lastMaterial) {
+                ensureMaterialCapacity(materials.size() + 1);
+                putMaterialData(material, textureCache);
+                MemoryUtil.memCopy(MemoryUtil.memAddress(materialDataAux), MemoryUtil.memAddress(materialData)
+                        + (long) materials.size() * SceneRender.MATERIAL_DATA_SIZE, SceneRender.MATERIAL_DATA_SIZE);
+                materials.add(material);
+                lastMaterial = material;
+            }
+            int textureSetId = meshDrawTextureSetIds[meshDraw];
+            if(textureSetId != lastTextureSetId) {
+                if(numRuns == runFirstCommands.length) {
+                    runFirstCommands = Arrays.copyOf(runFirstCommands, numRuns * 2);
+                }
+                runFirstCommands[numRuns++] = commandsPerView;
+                runMaterials.add(material);
+                lastTextureSetId = textureSetId;
+            }
+
+            int entityCount = culledModels.get(meshDrawModels[meshDraw]).getRenderEntityList().size();
+            meshDraws.put(meshDraw * MESH_DRAW_SIZE_INTS, commandsPerView);
+            meshDraws.put(meshDraw * MESH_DRAW_SIZE_INTS + 1, mesh.getNumLods());
+            meshDraws.put(meshDraw * MESH_DRAW_SIZE_INTS + 2, materials.size() - 1);
+            ensureCommandCapacity((commandsPerView + mesh.getNumLods()) * NUM_VIEWS);
+            for(int lod = 0; lod < mesh.getNumLods(); lod++) {
+                // The instances are counted up by the culling shader.
+                MultiDrawRender.putCommand(commands, commandsPerView, mesh.getLodIndexCount(lod), 0
+                        , mesh.getLodFirstIndex(lod), recordsPerView);
+                commandsPerView++;
+                recordsPerView += entityCount;
+            }
+        }
+
+        // The other views' copies start at their own records.
+        int viewSizeInts = commandsPerView * MultiDrawRender.COMMAND_SIZE_INTS;
+        for(int view = 1; view < NUM_VIEWS; view++) {
+            for(int i = 0; i < viewSizeInts; i++) {
+                int value = commands.get(i);
+                commands.put(view * viewSizeInts + i, i % MultiDrawRender.COMMAND_SIZE_INTS == 4
+                        ? value + view * recordsPerView : value);
+            }
+        }
+        commands.limit(viewSizeInts * NUM_VIEWS);
+        meshDraws.limit(numMeshDraws * MESH_DRAW_SIZE_INTS);
+        materialData.limit(materials.size() * SceneRender.MATERIAL_DATA_SIZE);
+
+        uploadStorage(commandTemplateBufferId, MemoryUtil.memByteBuffer(commands), GL_STATIC_DRAW);
+        allocateStorage(commandBufferId, (long) commands.remaining() * Integer.BYTES, GL_DYNAMIC_COPY);
+        uploadStorage(meshDrawBufferId, MemoryUtil.memByteBuffer(meshDraws), GL_STATIC_DRAW);
+        uploadStorage(materialBufferId, materialData, GL_STATIC_DRAW);
+        allocateStorage(recordBufferId, (long) recordsPerView * NUM_VIEWS * MultiDrawRender.RECORD_SIZE_INTS
+                * Integer.BYTES, GL_DYNAMIC_COPY);
+        commands.clear();
+        meshDraws.clear();
+        materialData.clear();
+    }
+
+    // Whether a material's textures resolved to another texture set or its data changed since the commands were
+    // built. Only walks the mesh draws and the materials.
+    private boolean isMaterialDataStale(TextureCache textureCache) {
+        for(int i = 0; i < numMeshDraws; i++) {
+            if(meshDrawMaterials.get(i).getTextureSetId(textureCache) != meshDrawTextureSetIds[i]) {
+                return true;
+            }
+        }
+        for(int i = 0; i < materials.size(); i++) {
+            putMaterialData(materials.get(i), textureCache);
+            int offset = i * SceneRender.MATERIAL_DATA_SIZE;
+            for(int j = 0; j < SceneRender.MATERIAL_DATA_SIZE; j += Integer.BYTES) {
+                if(materialDataAux.getInt(j) != materialData.getInt(offset + j)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void putMaterialData(Material material, TextureCache textureCache) {
+        SceneRender.putMaterialData(materialDataAux, 0, material, material.getTextures(textureCache));
+    }
+
+    // Uploads the matrices the last sync point and the interpolation changed, in runs of nearby matrices.
+    // After a sync point the last cull didn't see, the changes are unknown and all of them are uploaded.
+    private void uploadChangedMatrices(Scene scene) {
+        long syncCount = scene.getRenderSyncCount();
+        if(syncCount != renderSyncCount && syncCount != renderSyncCount + 1) {
+            for(int i = 0; i < entities.size(); i++) {
+                entities.get(i).getRenderModelMatrix().get(i * MATRIX_SIZE_FLOATS, matrices);
+            }
+            uploadMatrices(0, entities.size());
+            return;
+        }
+
+        numChangedIndices = 0;
+        if(syncCount != renderSyncCount) {
+            addChangedEntities(scene.getSyncedEntities());
+        }
+        addChangedEntities(scene.getInterpolatedEntities());
+        Arrays.sort(changedIndices, 0, numChangedIndices);
+        int i = 0;
+        while(i < numChangedIndices) {
+            int first = changedIndices[i];
+            int last = first;
+            while(++i < numChangedIndices && changedIndices[i] - last <= MAX_UPLOAD_GAP) {
+                last = changedIndices[i];
+            }
+            uploadMatrices(first, last + 1);
+        }
+    }
+
+    // Copies the matrices of the culled entities in the list, the other entities are drawn by the CPU passes.
+    private void addChangedEntities(List<Entity> entityList) {
+        for(Entity entity : entityList) {
+            Integer index = entityIndices.get(entity);
+            if(index == null) {
+                continue;
+            }
+            entity.getRenderModelMatrix().get(index * MATRIX_SIZE_FLOATS, matrices);
+            if(numChangedIndices == changedIndices.length) {
+                changedIndices = Arrays.copyOf(changedIndices, numChangedIndices * 2);
+            }
+            changedIndices[numChangedIndices++] = index;
+        }
+    }
+
+    private void uploadMatrices(int firstEntity, int endEntity) {
+        matrices.position(firstEntity * MATRIX_SIZE_FLOATS);
+        matrices.limit(endEntity * MATRIX_SIZE_FLOATS);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, matrixBufferId);
+        glBufferSubData(GL_SHADER_STORAGE_BUFFER, (long) firstEntity * MATRIX_SIZE_FLOATS * Float.BYTES, matrices);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        RenderStats.addUploadBytes((long) matrices.remaining() * Float.BYTES);
+        matrices.clear();
+    }
+
+    // Requests the textures of every mesh draw for the largest screen size of its model's visible entities, read
+    // back from the last dispatch. That one ran a frame ago, so reading its output doesn't wait for the GPU.
+    private void requestTextures(TextureCache textureCache, int screenHeight) {
+        if(screenSizesReadable) {
+            modelScreenSizes.limit(culledModels.size());
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, screenSizeBufferIds[screenSizeBuffer ^ 1]);
+            glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, modelScreenSizes);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+            modelScreenSizes.clear();
+        }
+        for(int i = 0; i < numMeshDraws; i++) {
+            float screenPixels = LodSelector.getScreenPixels(modelScreenSizes.get(meshDrawModels[i]), screenHeight);
+            for(Texture texture : meshDrawMaterials.get(i).getTextures(textureCache)) {
+                if(texture != null) {
+                    texture.requestScreenSize(screenPixels);
+                }
+            }
+        }
+    }
+
+    // The shader counts the instances of the commands, the visible entities and the screen sizes up from 0.
+    private void resetOutputs() {
+        glBindBuffer(GL_COPY_READ_BUFFER, commandTemplateBufferId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, commandBufferId);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0
+                , (long) commandsPerView * NUM_VIEWS * MultiDrawRender.COMMAND_SIZE_INTS * Integer.BYTES);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, visibilityBufferId);
+        glClearBufferSubData(GL_SHADER_STORAGE_BUFFER, GL_R32UI, 0, (long) NUM_VIEWS * Integer.BYTES, GL_RED_INTEGER
+                , GL_UNSIGNED_INT, (ByteBuffer) null);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, screenSizeBufferIds[screenSizeBuffer]);
+        glClearBufferData(GL_SHADER_STORAGE_BUFFER, GL_R32UI, GL_RED_INTEGER, GL_UNSIGNED_INT, (ByteBuffer) null);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    private static void uploadStorage(int bufferId, ByteBuffer data, int usage) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, data, usage);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        RenderStats.addUploadBytes(data.remaining());
+    }
+
+    private static void allocateStorage(int bufferId, long size, int usage) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, size, usage);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    private void ensureEntityCapacity(int numEntities) {
+        if(entityModels.capacity() < numEntities) {
+            entityModels = MemoryUtil.memRealloc(entityModels, numEntities * 2);
+            matrices = MemoryUtil.memRealloc(matrices, numEntities * 2 * MATRIX_SIZE_FLOATS);
+        }
+    }
+
+    private void ensureModelCapacity(int numModels) {
+        if(modelData.capacity() < numModels * MODEL_DATA_SIZE) {
+            modelData = MemoryUtil.memRealloc(modelData, numModels * 2 * MODEL_DATA_SIZE);
+            modelScreenSizes = MemoryUtil.memRealloc(modelScreenSizes, numModels * 2);
+        }
+    }
+
+    private void ensureMeshDrawCapacity() {
+        if(meshDraws.capacity() < numMeshDraws * MESH_DRAW_SIZE_INTS) {
+            meshDraws = MemoryUtil.memRealloc(meshDraws, numMeshDraws * 2 * MESH_DRAW_SIZE_INTS);
+        }
+    }
+
+    private void ensureCommandCapacity(int numCommands) {
+        if(commands.capacity() < numCommands * MultiDrawRender.COMMAND_SIZE_INTS) {
+            commands = MemoryUtil.memRealloc(commands, numCommands * 2 * MultiDrawRender.COMMAND_SIZE_INTS);
+        }
+    }
+
+    private void ensureMaterialCapacity(int numMaterials) {
+        if(materialData.capacity() < numMaterials * SceneRender.MATERIAL_DATA_SIZE) {
+            materialData = MemoryUtil.memRealloc(materialData, numMaterials * 2 * SceneRender.MATERIAL_DATA_SIZE);
+        }
+    }
+}
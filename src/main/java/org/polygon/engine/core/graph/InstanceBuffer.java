@@ -0,0 +1,95 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.scene.Entity;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// Holds the per-instance model matrices used by glDrawElementsInstanced.
+// The buffer is refilled for every model drawn in a frame, each upload orphans the previous storage
+// so the driver doesn't have to wait for the draw calls still reading from it.
+// Buffers created with animationFrames hold the baked animation frame of the instance after its matrix.
+public class InstanceBuffer {
+    private static final int MATRIX_SIZE_FLOATS = 16;
+    private static final int ANIMATION_FRAME_SIZE_FLOATS = 4;
+    private final int vboId;
+    private final boolean animationFrames;
+    private final int instanceSizeFloats;
+    private final Vector4f animationFrame = new Vector4f();
+    private FloatBuffer instanceData;
+    private int capacity;
+
+    public InstanceBuffer(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    public InstanceBuffer(int initialCapacity, boolean animationFrames) {
+        this.animationFrames = animationFrames;
+        instanceSizeFloats = MATRIX_SIZE_FLOATS + (animationFrames ? ANIMATION_FRAME_SIZE_FLOATS : 0);
+        capacity = Math.max(initialCapacity, 1);
+        instanceData = MemoryUtil.memAllocFloat(capacity * instanceSizeFloats);
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * instanceSizeFloats * Float.BYTES, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(vboId);
+        MemoryUtil.memFree(instanceData);
+    }
+
+    public int getVboId() {
+        return vboId;
+    }
+
+    public boolean hasAnimationFrames() {
+        return animationFrames;
+    }
+
+    // Packs the model matrices of the entities and uploads them, returns the number of instances written.
+    public int upload(List<Entity> entityList) {
+        return upload(entityList, null);
+    }
+
+    // Also packs the baked animation frames, every entity's animation must be in the animationTexture.
+    public int upload(List<Entity> entityList, AnimationTexture animationTexture) {
+        int numInstances = entityList.size();
+        ensureCapacity(numInstances);
+
+        for(int i = 0; i < numInstances; i++) {
+            Entity entity = entityList.get(i);
+            entity.getRenderModelMatrix().get(i * instanceSizeFloats, instanceData);
+            if(animationFrames) {
+                animationTexture.getFrame(entity.getAnimationData(), animationFrame);
+                animationFrame.get(i * instanceSizeFloats + MATRIX_SIZE_FLOATS, instanceData);
+            }
+        }
+        instanceData.position(0);
+        instanceData.limit(numInstances * instanceSizeFloats);
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        // Orphan the old storage before writing the new instance data.
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * instanceSizeFloats * Float.BYTES, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, instanceData);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        RenderStats.addUploadBytes((long) instanceData.remaining() * Float.BYTES);
+
+        instanceData.clear();
+        return numInstances;
+    }
+
+    private void ensureCapacity(int numInstances) {
+        if(numInstances <= capacity) {
+            return;
+        }
+        while(capacity < numInstances) {
+            capacity *= 2;
+        }
+        instanceData = MemoryUtil.memRealloc(instanceData, capacity * instanceSizeFloats);
+    }
+}
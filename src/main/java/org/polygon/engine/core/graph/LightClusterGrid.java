@@ -0,0 +1,307 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Bins light spheres into a view-space cluster grid so the clustered lighting shader only walks the lights
+// that can reach a pixel. The view frustum is split into CLUSTERS_X by CLUSTERS_Y screen tiles and CLUSTERS_Z
+// depth slices spaced exponentially between the near and far planes, clusters are indexed x, then y, then slice.
+// Slices are binned in parallel fork/join tasks, every slice owns its clusters and scratch arrays,
+// the per-slice lists are then compacted into one index list. It doesn't touch OpenGL.
+public class LightClusterGrid {
+    public static final int CLUSTERS_X = 16;
+    public static final int CLUSTERS_Y = 9;
+    public static final int CLUSTERS_Z = 24;
+    public static final int CLUSTERS_PER_SLICE = CLUSTERS_X * CLUSTERS_Y;
+    public static final int NUM_CLUSTERS = CLUSTERS_PER_SLICE * CLUSTERS_Z;
+    // Lights kept per cluster, bounds the shader loop and the index list size.
+    public static final int MAX_LIGHTS_PER_CLUSTER = 256;
+    // Slices a task bins before splitting.
+    private static final int TASK_THRESHOLD = 2;
+    private static final int INITIAL_LIGHT_CAPACITY = 256;
+
+    private final ForkJoinPool pool;
+    private final Matrix4f projMatrix = new Matrix4f();
+    private float zNear;
+    private float zFar;
+    private float tanHalfFovX;
+    private float tanHalfFovY;
+    // View distance of every slice boundary.
+    private final float[] sliceDistances = new float[CLUSTERS_Z + 1];
+
+    // View-space x, y, z and radius per light.
+    private float[] lightSpheres = new float[INITIAL_LIGHT_CAPACITY * 4];
+    private int numLights;
+
+    private final int[] clusterOffsets = new int[NUM_CLUSTERS];
+    private final int[] clusterCounts = new int[NUM_CLUSTERS];
+    private int[] lightIndices = new int[INITIAL_LIGHT_CAPACITY];
+    private int numLightIndices;
+    private final SliceData[] slices = new SliceData[CLUSTERS_Z];
+
+    // Uses the common fork/join pool.
+    public LightClusterGrid() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public LightClusterGrid(ForkJoinPool pool) {
+        this.pool = pool;
+        for(int i = 0; i < CLUSTERS_Z; i++) {
+            slices[i] = new SliceData();
+        }
+        projMatrix.zero();
+    }
+
+    // Recomputes the slices when the perspective projection changed.
+    public void setProjection(Matrix4f projMatrix) {
+        if(this.projMatrix.equals(projMatrix)) {
+            return;
+        }
+        this.projMatrix.set(projMatrix);
+        zNear = projMatrix.perspectiveNear();
+        zFar = projMatrix.perspectiveFar();
+        tanHalfFovX = 1.0f / projMatrix.m00();
+        tanHalfFovY = 1.0f / projMatrix.m11();
+        for(int i = 0; i <= CLUSTERS_Z; i++) {
+            sliceDistances[i] = zNear * (float) Math.pow(zFar / zNear, (double) i / CLUSTERS_Z);
+        }
+    }
+
+    public float getZNear() {
+        return zNear;
+    }
+
+    public float getZFar() {
+        return zFar;
+    }
+
+    // Slice of a view-space depth, the shader computes it the same way.
+    public int getSlice(float viewZ) {
+        float distance = -viewZ;
+        int slice = (int) Math.floor(Math.log(distance / zNear) / Math.log(zFar / zNear) * CLUSTERS_Z);
+        return Math.max(0, Math.min(CLUSTERS_Z - 1, slice));
+    }
+
+    public void clearLights() {
+        numLights = 0;
+    }
+
+    // Adds a light sphere in view space, returns the light's index in the index lists.
+    public int addLight(float x, float y, float z, float radius) {
+        if((numLights + 1) * 4 > lightSpheres.length) {
+            lightSpheres = Arrays.copyOf(lightSpheres, lightSpheres.length * 2);
+        }
+        int offset = numLights * 4;
+        lightSpheres[offset] = x;
+        lightSpheres[offset + 1] = y;
+        lightSpheres[offset + 2] = z;
+        lightSpheres[offset + 3] = radius;
+        return numLights++;
+    }
+
+    public int getNumLights() {
+        return numLights;
+    }
+
+    // Bins the added lights, the results stay valid until the next build.
+    public void build() {
+        if(numLights > 0) {
+            pool.invoke(new SliceTask(this, 0, CLUSTERS_Z));
+        } else {
+            for(SliceData slice : slices) {
+                slice.clear();
+            }
+        }
+
+        int total = 0;
+        for(SliceData slice : slices) {
+            total += slice.numIndices;
+        }
+        if(total > lightIndices.length) {
+            lightIndices = new int[Math.max(total, lightIndices.length * 2)];
+        }
+
+        int offset = 0;
+        for(int i = 0; i < CLUSTERS_Z; i++) {
+            SliceData slice = slices[i];
+            System.arraycopy(slice.indices, 0, lightIndices, offset, slice.numIndices);
+            int firstCluster = i * CLUSTERS_PER_SLICE;
+            for(int j = 0; j < CLUSTERS_PER_SLICE; j++) {
+                clusterOffsets[firstCluster + j] = offset + slice.clusterOffsets[j];
+                clusterCounts[firstCluster + j] = slice.clusterCounts[j];
+            }
+            offset += slice.numIndices;
+        }
+        numLightIndices = total;
+    }
+
+    // First index of every cluster in the light index list.
+    public int[] getClusterOffsets() {
+        return clusterOffsets;
+    }
+
+    public int[] getClusterCounts() {
+        return clusterCounts;
+    }
+
+    // The lights of every cluster, only the first getNumLightIndices entries are valid.
+    public int[] getLightIndices() {
+        return lightIndices;
+    }
+
+    public int getNumLightIndices() {
+        return numLightIndices;
+    }
+
+    // Finds the clusters of one slice every light sphere overlaps, then sorts the pairs by cluster.
+    private void binSlice(int sliceIndex) {
+        SliceData slice = slices[sliceIndex];
+        slice.clear();
+        float near = sliceDistances[sliceIndex];
+        float far = sliceDistances[sliceIndex + 1];
+
+        for(int light = 0; light < numLights; light++) {
+            int offset = light * 4;
+            float x = lightSpheres[offset];
+            float y = lightSpheres[offset + 1];
+            float distance = -lightSpheres[offset + 2];
+            float radius = lightSpheres[offset + 3];
+            if(distance + radius < near || distance - radius > far) {
+                continue;
+            }
+            // The closest distance of the slice to the sphere center, used by the sphere/AABB test.
+            float dz = distance < near ? near - distance : (distance > far ? distance - far : 0.0f);
+            float radiusSquared = radius * radius - dz * dz;
+
+            int minTileX = firstTile(x - radius, near, far, tanHalfFovX, CLUSTERS_X);
+            int maxTileX = lastTile(x + radius, near, far, tanHalfFovX, CLUSTERS_X);
+            int minTileY = firstTile(y - radius, near, far, tanHalfFovY, CLUSTERS_Y);
+            int maxTileY = lastTile(y + radius, near, far, tanHalfFovY, CLUSTERS_Y);
+            for(int tileY = minTileY; tileY <= maxTileY; tileY++) {
+                float dy = axisDistance(y, tileY, near, far, tanHalfFovY, CLUSTERS_Y);
+                for(int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                    float dx = axisDistance(x, tileX, near, far, tanHalfFovX, CLUSTERS_X);
+                    if(dx * dx + dy * dy <= radiusSquared) {
+                        slice.addPair(tileX + tileY * CLUSTERS_X, light);
+                    }
+                }
+            }
+        }
+        slice.sortPairs();
+    }
+
+    // View-space coordinate of a tile boundary at the given distance, boundary 0 is the left or bottom edge.
+    private static float boundary(int tile, float distance, float tanHalfFov, int numTiles) {
+        return (2.0f * tile / numTiles - 1.0f) * tanHalfFov * distance;
+    }
+
+    // The cluster AABB of a tile spans its boundaries at the slice's near and far distances.
+    private static float tileMin(int tile, float near, float far, float tanHalfFov, int numTiles) {
+        return Math.min(boundary(tile, near, tanHalfFov, numTiles), boundary(tile, far, tanHalfFov, numTiles));
+    }
+
+    private static float tileMax(int tile, float near, float far, float tanHalfFov, int numTiles) {
+        return Math.max(boundary(tile + 1, near, tanHalfFov, numTiles), boundary(tile + 1, far, tanHalfFov, numTiles));
+    }
+
+    private static int firstTile(float min, float near, float far, float tanHalfFov, int numTiles) {
+        int tile = 0;
+        while(tile < numTiles - 1 && tileMax(tile, near, far, tanHalfFov, numTiles) < min) {
+            tile++;
+        }
+        return tile;
+    }
+
+    private static int lastTile(float max, float near, float far, float tanHalfFov, int numTiles) {
+        int tile = numTiles - 1;
+        while(tile > 0 && tileMin(tile, near, far, tanHalfFov, numTiles) > max) {
+            tile--;
+        }
+        return tile;
+    }
+
+    // Distance from the coordinate to the tile's AABB along one axis, 0 inside.
+    private static float axisDistance(float value, int tile, float near, float far, float tanHalfFov, int numTiles) {
+        float min = tileMin(tile, near, far, tanHalfFov, numTiles);
+        float max = tileMax(tile, near, far, tanHalfFov, numTiles);
+        return value < min ? min - value : (value > max ? value - max : 0.0f);
+    }
+
+    // Scratch data of one slice, reused every build.
+    private static class SliceData {
+        private int[] pairs = new int[INITIAL_LIGHT_CAPACITY * 2];
+        private int numPairs;
+        private int[] indices = new int[INITIAL_LIGHT_CAPACITY];
+        private int numIndices;
+        private final int[] clusterOffsets = new int[CLUSTERS_PER_SLICE];
+        private final int[] clusterCounts = new int[CLUSTERS_PER_SLICE];
+
+        private void clear() {
+            numPairs = 0;
+            numIndices = 0;
+            Arrays.fill(clusterCounts, 0);
+        }
+
+        private void addPair(int cluster, int light) {
+            if(clusterCounts[cluster] >= MAX_LIGHTS_PER_CLUSTER) {
+                return;
+            }
+            clusterCounts[cluster]++;
+            if(numPairs * 2 + 2 > pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[numPairs * 2] = cluster;
+            pairs[numPairs * 2 + 1] = light;
+            numPairs++;
+        }
+
+        // Counting sort of the pairs by cluster, lights keep their order within a cluster.
+        private void sortPairs() {
+            int offset = 0;
+            for(int i = 0; i < CLUSTERS_PER_SLICE; i++) {
+                clusterOffsets[i] = offset;
+                offset += clusterCounts[i];
+            }
+            if(numPairs > indices.length) {
+                indices = new int[Math.max(numPairs, indices.length * 2)];
+            }
+            // clusterCounts is rebuilt as the write cursor of every cluster.
+            Arrays.fill(clusterCounts, 0);
+            for(int i = 0; i < numPairs; i++) {
+                int cluster = pairs[i * 2];
+                indices[clusterOffsets[cluster] + clusterCounts[cluster]++] = pairs[i * 2 + 1];
+            }
+            numIndices = numPairs;
+        }
+    }
+
+    // Fork/join tasks are never serialized.
+    @SuppressWarnings("serial")
+    private static class SliceTask extends RecursiveAction {
+        private final LightClusterGrid grid;
+        private final int start;
+        private final int end;
+
+        private SliceTask(LightClusterGrid grid, int start, int end) {
+            this.grid = grid;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= TASK_THRESHOLD) {
+                for(int i = start; i < end; i++) {
+                    grid.binSlice(i);
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new SliceTask(grid, start, middle), new SliceTask(grid, middle, end));
+        }
+    }
+}
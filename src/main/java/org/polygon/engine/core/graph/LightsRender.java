@@ -3,14 +3,13 @@ package org.polygon.engine.core.graph;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
-import org.joml.Vector2f;
-import org.polygon.engine.core.scene.Fog;
 import org.polygon.engine.core.scene.Scene;
 import org.polygon.engine.core.scene.lights.*;
 import org.polygon.engine.core.utils.ShapeGenerator;
 import org.polygon.engine.core.scene.SkyBox;
 import org.polygon.engine.core.scene.IBLData;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,11 +27,26 @@ public class LightsRender {
     // Temp vec3 and vec4 used to send light data to the shader.
     private final Vector4f auxVec4;
     private final Vector3f auxVec3;
-    private final Vector2f screenSizeVec;
+    // The LightVolumeData blocks of every light volume drawn in a frame, each draw binds its range.
+    private final UniformBuffer lightVolumeBuffer;
+    private final int lightVolumeStride;
+    // Created the first time clustered lighting is enabled.
+    private ClusteredLightsRender clusteredLightsRender;
+    private boolean clusteredLighting;
 
     private static final int IRRADIANCE_MAP_TEXTURE_UNIT = 8;
     private static final int SSAO_TEXTURE_UNIT = 11;
     public static final int POINT_SHADOW_TEXTURE_UNIT = 12;
+    private static final int SHADOW_MAP_TEXTURE_UNIT = 5;
+    private static final int INITIAL_LIGHT_VOLUME_CAPACITY = 64;
+    // std140 layout of the LightVolumeData block.
+    private static final int LIGHT_VOLUME_DATA_SIZE = 160;
+    private static final int LIGHT_COLOR_OFFSET = 64;
+    private static final int LIGHT_POSITION_VIEW_OFFSET = 80;
+    private static final int LIGHT_POSITION_WORLD_OFFSET = 96;
+    private static final int LIGHT_CONE_DIRECTION_OFFSET = 112;
+    private static final int LIGHT_ATTENUATION_OFFSET = 128;
+    private static final int LIGHT_PARAMS_OFFSET = 144;
 
     public LightsRender() {
         List<ShaderProgram.ShaderModuleData> baseShaderModules = new ArrayList<>();
@@ -57,7 +71,8 @@ public class LightsRender {
         modelMatrix = new Matrix4f();
         auxVec4 = new Vector4f();
         auxVec3 = new Vector3f();
-        screenSizeVec = new Vector2f();
+        lightVolumeStride = UniformBuffer.alignRange(LIGHT_VOLUME_DATA_SIZE);
+        lightVolumeBuffer = new UniformBuffer(INITIAL_LIGHT_VOLUME_CAPACITY * lightVolumeStride);
     }
 
     public void cleanup() {
@@ -67,6 +82,23 @@ public class LightsRender {
             sphereMesh.cleanup();
         }
         lightVolumeShaderProgram.cleanup();
+        lightVolumeBuffer.cleanup();
+        if (clusteredLightsRender != null) {
+            clusteredLightsRender.cleanup();
+        }
+    }
+
+    // Draws the point and spot lights in one fullscreen pass over the lights binned into view-space clusters
+    // instead of a light volume per light, see ClusteredLightsRender.
+    public void setClusteredLighting(boolean clusteredLighting) {
+        this.clusteredLighting = clusteredLighting;
+        if (clusteredLighting && clusteredLightsRender == null) {
+            clusteredLightsRender = new ClusteredLightsRender();
+        }
+    }
+
+    public boolean isClusteredLighting() {
+        return clusteredLighting;
     }
 
     private void createBaseLightUniforms() {
@@ -78,244 +110,172 @@ public class LightsRender {
         baseLightUniformMap.createUniform("emissiveSampler");
         baseLightUniformMap.createUniform("depthSampler");
         baseLightUniformMap.createUniform("ssaoSampler");
-        baseLightUniformMap.createUniform("invProjectionMatrix");
-        baseLightUniformMap.createUniform("invViewMatrix");
-        baseLightUniformMap.createUniform("viewMatrix");
-        baseLightUniformMap.createUniform("ambientLight.color");
-        baseLightUniformMap.createUniform("ambientLight.intensity");
-        baseLightUniformMap.createUniform("directionalLight.color");
-        baseLightUniformMap.createUniform("directionalLight.intensity");
-        baseLightUniformMap.createUniform("directionalLight.direction");
-        baseLightUniformMap.createUniform("fog.activeFog");
-        baseLightUniformMap.createUniform("fog.color");
-        baseLightUniformMap.createUniform("fog.density");
         baseLightUniformMap.createUniform("brdfLUT");
         baseLightUniformMap.createUniform("irradianceMap");
         baseLightUniformMap.createUniform("prefilterMap");
         baseLightUniformMap.createUniform("hasIBL");
+        baseLightShaderProgram.bindUniformBlock("CameraData", UniformBuffer.CAMERA_BINDING);
+        baseLightShaderProgram.bindUniformBlock("LightingData", UniformBuffer.LIGHTING_BINDING);
+
+        // The texture units never change, set the samplers once.
+        baseLightShaderProgram.bind();
+        baseLightUniformMap.setUniform("albedoSampler", 0);
+        baseLightUniformMap.setUniform("normalSampler", 1);
+        baseLightUniformMap.setUniform("materialSampler", 2);
+        baseLightUniformMap.setUniform("emissiveSampler", 3);
+        baseLightUniformMap.setUniform("depthSampler", 4);
+        baseLightUniformMap.setUniform("ssaoSampler", SSAO_TEXTURE_UNIT);
+        baseLightUniformMap.setUniform("irradianceMap", IRRADIANCE_MAP_TEXTURE_UNIT);
+        baseLightUniformMap.setUniform("brdfLUT", IRRADIANCE_MAP_TEXTURE_UNIT + 1);
+        baseLightUniformMap.setUniform("prefilterMap", IRRADIANCE_MAP_TEXTURE_UNIT + 2);
         for (int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
-            baseLightUniformMap.createUniform("shadowMap[" + i + "]");
-            baseLightUniformMap.createUniform("cascadeshadows[" + i + "]" + ".projViewMatrix");
-            baseLightUniformMap.createUniform("cascadeshadows[" + i + "]" + ".splitDistance");
+            String uniformName = "shadowMap[" + i + "]";
+            baseLightUniformMap.createUniform(uniformName);
+            baseLightUniformMap.setUniform(uniformName, SHADOW_MAP_TEXTURE_UNIT + i);
         }
+        baseLightShaderProgram.unbind();
     }
 
     private void createLightVolumeUniforms() {
         lightVolumeUniformMap = new UniformMap(lightVolumeShaderProgram.getProgramId());
-        lightVolumeUniformMap.createUniform("projectionMatrix");
-        lightVolumeUniformMap.createUniform("viewMatrix");
-        lightVolumeUniformMap.createUniform("modelMatrix");
         lightVolumeUniformMap.createUniform("albedoSampler");
         lightVolumeUniformMap.createUniform("normalSampler");
         lightVolumeUniformMap.createUniform("materialSampler");
         lightVolumeUniformMap.createUniform("depthSampler");
-        lightVolumeUniformMap.createUniform("screenSize");
-        lightVolumeUniformMap.createUniform("invProjectionMatrix");
-        lightVolumeUniformMap.createUniform("lightType");
-        lightVolumeUniformMap.createUniform("pointLight.color");
-        lightVolumeUniformMap.createUniform("pointLight.intensity");
-        lightVolumeUniformMap.createUniform("pointLight.position_view");
-        lightVolumeUniformMap.createUniform("pointLight.position_world");
-        lightVolumeUniformMap.createUniform("pointLight.attenuation.constant");
-        lightVolumeUniformMap.createUniform("pointLight.attenuation.linear");
-        lightVolumeUniformMap.createUniform("pointLight.attenuation.exponent");
-        lightVolumeUniformMap.createUniform("pointLight.shadowIndex");
-        lightVolumeUniformMap.createUniform("pointLight.farPlane");
-        lightVolumeUniformMap.createUniform("spotLight.color");
-        lightVolumeUniformMap.createUniform("spotLight.intensity");
-        lightVolumeUniformMap.createUniform("spotLight.position_view");
-        lightVolumeUniformMap.createUniform("spotLight.attenuation.constant");
-        lightVolumeUniformMap.createUniform("spotLight.attenuation.linear");
-        lightVolumeUniformMap.createUniform("spotLight.attenuation.exponent");
-        lightVolumeUniformMap.createUniform("spotLight.coneDirection_view");
-        lightVolumeUniformMap.createUniform("spotLight.cutOff");
-        lightVolumeUniformMap.createUniform("invViewMatrix");
+        lightVolumeShaderProgram.bindUniformBlock("CameraData", UniformBuffer.CAMERA_BINDING);
+        lightVolumeShaderProgram.bindUniformBlock("LightVolumeData", UniformBuffer.LIGHT_VOLUME_BINDING);
+
+        // The texture units never change, set the samplers once.
+        lightVolumeShaderProgram.bind();
+        lightVolumeUniformMap.setUniform("albedoSampler", 0);
+        lightVolumeUniformMap.setUniform("normalSampler", 1);
+        lightVolumeUniformMap.setUniform("materialSampler", 2);
+        lightVolumeUniformMap.setUniform("depthSampler", 4);
         for(int i = 0; i < PointShadowBuffer.MAX_POINT_LIGHT_SHADOWS; i++) {
-            lightVolumeUniformMap.createUniform("pointShadowMap[" + i + "]");
+            String uniformName = "pointShadowMap[" + i + "]";
+            lightVolumeUniformMap.createUniform(uniformName);
+            lightVolumeUniformMap.setUniform(uniformName, POINT_SHADOW_TEXTURE_UNIT + i);
         }
+        lightVolumeShaderProgram.unbind();
     }
 
+    // The camera, cascade, base light and fog uniforms come from the blocks uploaded by the FrameUniforms.
     public void render(Scene scene, ShadowRender shadowRender, PointShadowRender pointShadowRender
-            , GBuffer gBuffer, int ssaoTextureId, int windowWidth, int windowHeight) {
+            , GBuffer gBuffer, int ssaoTextureId) {
 
         renderBaseLighting(scene, shadowRender, gBuffer, ssaoTextureId);
 
-        if (!scene.isLightingDisabled()) {
-            renderLightVolumes(scene, gBuffer, pointShadowRender, windowWidth, windowHeight);
+        if (scene.isLightingDisabled()) {
+            return;
+        }
+        if (clusteredLighting) {
+            bindGBufferTextures(gBuffer.getTextureIds());
+            clusteredLightsRender.render(scene, pointShadowRender, quadMesh);
+        } else {
+            renderLightVolumes(scene, gBuffer, pointShadowRender);
         }
     }
 
     private void renderBaseLighting(Scene scene, ShadowRender shadowRender, GBuffer gBuffer, int ssaoTextureId) {
-        glDisable(GL_BLEND);
+        GLState.disable(GL_BLEND);
 
         // Was made so the renderBaseLighting doesn't overwrite depth blitted from the G-Buffer
-        glDepthMask(false);
-        glDisable(GL_DEPTH_TEST);
+        GLState.depthMask(false);
+        GLState.disable(GL_DEPTH_TEST);
 
         baseLightShaderProgram.bind();
 
         int[] textureIds = gBuffer.getTextureIds();
         int numTextures = textureIds != null ? textureIds.length : 0;
         for (int i = 0; i < numTextures; i++) {
-            glActiveTexture(GL_TEXTURE0 + i);
-            glBindTexture(GL_TEXTURE_2D, textureIds[i]);
+            GLState.bindTexture(GL_TEXTURE0 + i, GL_TEXTURE_2D, textureIds[i]);
         }
 
-        baseLightUniformMap.setUniform("albedoSampler", 0);
-        baseLightUniformMap.setUniform("normalSampler", 1);
-        baseLightUniformMap.setUniform("materialSampler", 2);
-        baseLightUniformMap.setUniform("emissiveSampler", 3);
-        baseLightUniformMap.setUniform("depthSampler", 4);
-
-        baseLightUniformMap.setUniform("invProjectionMatrix", scene.getProjection().getInvProjMatrix());
-        baseLightUniformMap.setUniform("invViewMatrix", scene.getCamera().getInvViewMatrix());
-        baseLightUniformMap.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
-
-        glActiveTexture(GL_TEXTURE0 + SSAO_TEXTURE_UNIT);
-        glBindTexture(GL_TEXTURE_2D, ssaoTextureId);
-        baseLightUniformMap.setUniform("ssaoSampler", SSAO_TEXTURE_UNIT);
+        GLState.bindTexture(GL_TEXTURE0 + SSAO_TEXTURE_UNIT, GL_TEXTURE_2D, ssaoTextureId);
 
         baseLightUniformMap.setUniform("bypassLighting", scene.isLightingDisabled());
 
         if (scene.isLightingDisabled()) {
-            glBindVertexArray(quadMesh.getVaoId());
+            GLState.bindVertexArray(quadMesh.getVaoId());
             glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            RenderStats.addDrawCall(RenderStats.Pass.LIGHTING, 1, quadMesh.getNumVertices());
             baseLightShaderProgram.unbind();
             // Restore depth state
-            glEnable(GL_DEPTH_TEST);
-            glDepthMask(true);
+            GLState.enable(GL_DEPTH_TEST);
+            GLState.depthMask(true);
             return;
         }
 
-        updateBaseLights(scene);
-
-        Fog fog = scene.getFog();
-        baseLightUniformMap.setUniform("fog.activeFog", fog.isActive() ? 1 : 0);
-        baseLightUniformMap.setUniform("fog.color", fog.getColor());
-        baseLightUniformMap.setUniform("fog.density", fog.getDensity());
-
         SkyBox skyBox = scene.getSkyBox();
         IBLData iblData = (skyBox != null) ? skyBox.getIBLData() : null;
 
         if (iblData != null && iblData.getIrradianceMapTextureId() != -1 && iblData.getPrefilterMapTextureId() != -1) {
-            glActiveTexture(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT);
-            glBindTexture(GL_TEXTURE_CUBE_MAP, iblData.getIrradianceMapTextureId());
-            baseLightUniformMap.setUniform("irradianceMap", IRRADIANCE_MAP_TEXTURE_UNIT);
+            GLState.bindTexture(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT, GL_TEXTURE_CUBE_MAP
+                    , iblData.getIrradianceMapTextureId());
 
             baseLightUniformMap.setUniform("hasIBL", true);
-            glActiveTexture(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT + 1);
-            Texture.BRDF_LUT.bind();
-            baseLightUniformMap.setUniform("brdfLUT", IRRADIANCE_MAP_TEXTURE_UNIT + 1);
+            Texture.BRDF_LUT.bind(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT + 1);
 
-            glActiveTexture(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT + 2);
-            glBindTexture(GL_TEXTURE_CUBE_MAP, iblData.getPrefilterMapTextureId());
-            baseLightUniformMap.setUniform("prefilterMap", IRRADIANCE_MAP_TEXTURE_UNIT + 2);
+            GLState.bindTexture(GL_TEXTURE0 + IRRADIANCE_MAP_TEXTURE_UNIT + 2, GL_TEXTURE_CUBE_MAP
+                    , iblData.getPrefilterMapTextureId());
         } else {
             baseLightUniformMap.setUniform("hasIBL", false);
         }
 
-        int shadowMapStartUnit = 5;
-        List<CascadeShadow> cascadeShadows = shadowRender.getCascadeShadowList();
-        for (int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
-            baseLightUniformMap.setUniform("shadowMap[" + i + "]", shadowMapStartUnit + i);
-            CascadeShadow cascadeShadow = cascadeShadows.get(i);
-            baseLightUniformMap.setUniform("cascadeshadows[" + i + "]" + ".projViewMatrix"
-                    , cascadeShadow.getProjViewMatrix());
-            baseLightUniformMap.setUniform("cascadeshadows[" + i + "]" + ".splitDistance"
-                    , cascadeShadow.getSplitDistance());
-        }
-        shadowRender.getShadowBuffer().bindTextures(GL_TEXTURE0 + shadowMapStartUnit);
+        shadowRender.getShadowBuffer().bindTextures(GL_TEXTURE0 + SHADOW_MAP_TEXTURE_UNIT);
 
-        glBindVertexArray(quadMesh.getVaoId());
+        GLState.bindVertexArray(quadMesh.getVaoId());
         glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+        RenderStats.addDrawCall(RenderStats.Pass.LIGHTING, 1, quadMesh.getNumVertices());
 
         baseLightShaderProgram.unbind();
 
         // Restore depth state
-        glEnable(GL_DEPTH_TEST);
-        glDepthMask(true);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.depthMask(true);
     }
 
-    private void renderLightVolumes(Scene scene, GBuffer gBuffer
-            , PointShadowRender pointShadowRender, int windowWidth, int windowHeight) {
+    private void renderLightVolumes(Scene scene, GBuffer gBuffer, PointShadowRender pointShadowRender) {
         if (sphereMesh == null) {
             throw new IllegalStateException("Error: Sphere mesh not initialized for light volume rendering.");
         }
 
-        lightVolumeShaderProgram.bind();
+        // Every light volume's block is written and uploaded at once, the draws only bind their range.
+        int numLightVolumes = updateLightVolumes(scene, pointShadowRender.getActiveShadowLights());
+        if (numLightVolumes == 0) {
+            return;
+        }
 
-        lightVolumeUniformMap.setUniform("projectionMatrix", scene.getProjection().getProjMatrix());
-        lightVolumeUniformMap.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
-        lightVolumeUniformMap.setUniform("invProjectionMatrix", scene.getProjection().getInvProjMatrix());
-        screenSizeVec.set(windowWidth, windowHeight);
-        lightVolumeUniformMap.setUniform("screenSize", screenSizeVec);
+        lightVolumeShaderProgram.bind();
 
         int[] textureIds = gBuffer.getTextureIds();
         bindGBufferTextures(textureIds);
-        lightVolumeUniformMap.setUniform("albedoSampler", 0);
-        lightVolumeUniformMap.setUniform("normalSampler", 1);
-        lightVolumeUniformMap.setUniform("materialSampler", 2);
-        lightVolumeUniformMap.setUniform("depthSampler", 4);
-
-        lightVolumeUniformMap.setUniform("invViewMatrix", scene.getCamera().getInvViewMatrix());
-        List<PointLight> activeShadowLights = pointShadowRender.getActiveShadowLights();
-        for(int i = 0; i < PointShadowBuffer.MAX_POINT_LIGHT_SHADOWS; i++) {
-            lightVolumeUniformMap.setUniform("pointShadowMap["+ i +"]", POINT_SHADOW_TEXTURE_UNIT + i);
-        }
         pointShadowRender.getPointShadowBuffer().bindTextures(GL_TEXTURE0 + POINT_SHADOW_TEXTURE_UNIT);
 
-        glEnable(GL_BLEND);
+        GLState.enable(GL_BLEND);
         glBlendEquation(GL_FUNC_ADD);
-        glBlendFunc(GL_ONE, GL_ONE);
+        GLState.blendFunc(GL_ONE, GL_ONE);
 
-        glDepthMask(false);
-        glDepthFunc(GL_GEQUAL);
+        GLState.depthMask(false);
+        GLState.depthFunc(GL_GEQUAL);
 
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_FRONT);
+        GLState.enable(GL_CULL_FACE);
+        GLState.cullFace(GL_FRONT);
 
-        Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
-        SceneLights sceneLights = scene.getSceneLights();
-
-        lightVolumeUniformMap.setUniform("lightType", 0);
-        glBindVertexArray(sphereMesh.getVaoId());
-        for (PointLight pointLight : sceneLights.getPointLightList()) {
-            if (pointLight.getIntensity() <= 0 || pointLight.getRadius() <= 0) {
-                continue;
-            }
-
-            updateLightVolumePointLightUniforms(pointLight, viewMatrix, activeShadowLights);
-
-            modelMatrix.identity()
-                    .translate(pointLight.getPosition())
-                    .scale(pointLight.getRadius());
-            lightVolumeUniformMap.setUniform("modelMatrix", modelMatrix);
-
-            glDrawElements(GL_TRIANGLES, sphereMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+        GLState.bindVertexArray(sphereMesh.getVaoId());
+        for (int i = 0; i < numLightVolumes; i++) {
+            lightVolumeBuffer.bindRange(UniformBuffer.LIGHT_VOLUME_BINDING, i * lightVolumeStride
+                    , LIGHT_VOLUME_DATA_SIZE);
+            glDrawElements(GL_TRIANGLES, sphereMesh.getNumVertices(), GL_UNSIGNED_INT, sphereMesh.getLodIndexOffset(0));
+            RenderStats.addDrawCall(RenderStats.Pass.LIGHTING, 1, sphereMesh.getNumVertices());
         }
+        GLState.bindVertexArray(0);
 
-        lightVolumeUniformMap.setUniform("lightType", 1);
-        for (SpotLight spotLight : sceneLights.getSpotLightList()) {
-            if (spotLight.getIntensity() <= 0 || spotLight.getRadius() <= 0) {
-                continue;
-            }
-
-            updateLightVolumeSpotLightUniforms(spotLight, viewMatrix);
-
-            modelMatrix.identity()
-                    .translate(spotLight.getPosition())
-                    .scale(spotLight.getRadius());
-            lightVolumeUniformMap.setUniform("modelMatrix", modelMatrix);
-
-            glDrawElements(GL_TRIANGLES, sphereMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
-        }
-        glBindVertexArray(0);
-
-        glDisable(GL_BLEND);
-        glDepthMask(true);
-        glDepthFunc(GL_LESS);
-        glDisable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
+        GLState.disable(GL_BLEND);
+        GLState.depthMask(true);
+        GLState.depthFunc(GL_LESS);
+        GLState.disable(GL_CULL_FACE);
+        GLState.cullFace(GL_BACK);
 
         lightVolumeShaderProgram.unbind();
     }
@@ -323,73 +283,76 @@ public class LightsRender {
     private void bindGBufferTextures(int[] textureIds) {
         int numTextures = textureIds != null ? textureIds.length : 0;
         for (int i = 0; i < numTextures; i++) {
-            glActiveTexture(GL_TEXTURE0 + i);
-            glBindTexture(GL_TEXTURE_2D, textureIds[i]);
+            GLState.bindTexture(GL_TEXTURE0 + i, GL_TEXTURE_2D, textureIds[i]);
         }
         if (numTextures == 0) {
-            glActiveTexture(GL_TEXTURE0);
+            GLState.activeTexture(GL_TEXTURE0);
         }
     }
 
-    private void updateBaseLights(Scene scene) {
+    // Writes the LightVolumeData blocks of the visible point and spot lights, returns the number written.
+    private int updateLightVolumes(Scene scene, List<PointLight> activeShadowLights) {
         Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
         SceneLights sceneLights = scene.getSceneLights();
+        lightVolumeBuffer.ensureCapacity((sceneLights.getPointLightList().size()
+                + sceneLights.getSpotLightList().size()) * lightVolumeStride);
+        ByteBuffer lightVolumeData = lightVolumeBuffer.getData();
 
-        AmbientLight ambientLight = sceneLights.getAmbientLight();
-        baseLightUniformMap.setUniform("ambientLight.color", ambientLight.getColor());
-        baseLightUniformMap.setUniform("ambientLight.intensity", ambientLight.getIntensity());
-
-        DirectionalLight directionalLight = sceneLights.getDirectionalLight();
-        auxVec4.set(directionalLight.getDirection(), 0).mul(viewMatrix);
-        auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z);
-        baseLightUniformMap.setUniform("directionalLight.color", directionalLight.getColor());
-        baseLightUniformMap.setUniform("directionalLight.intensity", directionalLight.getIntensity());
-        baseLightUniformMap.setUniform("directionalLight.direction", auxVec3);
-
-        Fog fog = scene.getFog();
-        baseLightUniformMap.setUniform("fog.activeFog", fog.isActive() ? 1 : 0);
-        baseLightUniformMap.setUniform("fog.color", fog.getColor());
-        baseLightUniformMap.setUniform("fog.density", fog.getDensity());
-    }
-
-    private void updateLightVolumePointLightUniforms(PointLight pointLight
-            , Matrix4f viewMatrix, List<PointLight> activeShadowLights) {
-        auxVec4.set(pointLight.getPosition(), 1).mul(viewMatrix);
-        auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z);
-
-        lightVolumeUniformMap.setUniform("pointLight.position_view", auxVec3);
-        lightVolumeUniformMap.setUniform("pointLight.position_world", pointLight.getPosition());
-
-        lightVolumeUniformMap.setUniform("pointLight.color", pointLight.getColor());
-        lightVolumeUniformMap.setUniform("pointLight.intensity", pointLight.getIntensity());
+        int numLightVolumes = 0;
+        for (PointLight pointLight : sceneLights.getPointLightList()) {
+            if (pointLight.getIntensity() <= 0 || pointLight.getRadius() <= 0) {
+                continue;
+            }
+            int offset = numLightVolumes * lightVolumeStride;
+            putLightVolume(lightVolumeData, offset, pointLight, viewMatrix);
+            lightVolumeData.putFloat(offset + LIGHT_POSITION_VIEW_OFFSET + 12, pointLight.getRadius());
+            lightVolumeData.putInt(offset + LIGHT_PARAMS_OFFSET, 0);
+            lightVolumeData.putInt(offset + LIGHT_PARAMS_OFFSET + 4, activeShadowLights.indexOf(pointLight));
+            numLightVolumes++;
+        }
 
-        PointLight.Attenuation attenuation = pointLight.getAttenuation();
-        lightVolumeUniformMap.setUniform("pointLight.attenuation.constant", attenuation.getConstant());
-        lightVolumeUniformMap.setUniform("pointLight.attenuation.linear", attenuation.getLinear());
-        lightVolumeUniformMap.setUniform("pointLight.attenuation.exponent", attenuation.getExponent());
+        for (SpotLight spotLight : sceneLights.getSpotLightList()) {
+            if (spotLight.getIntensity() <= 0 || spotLight.getRadius() <= 0) {
+                continue;
+            }
+            int offset = numLightVolumes * lightVolumeStride;
+            putLightVolume(lightVolumeData, offset, spotLight, viewMatrix);
+            lightVolumeData.putFloat(offset + LIGHT_POSITION_WORLD_OFFSET + 12, spotLight.getCutOff());
+            auxVec4.set(spotLight.getConeDirection(), 0).mul(viewMatrix);
+            auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z).normalize()
+                    .get(offset + LIGHT_CONE_DIRECTION_OFFSET, lightVolumeData);
+            lightVolumeData.putInt(offset + LIGHT_PARAMS_OFFSET, 1);
+            lightVolumeData.putInt(offset + LIGHT_PARAMS_OFFSET + 4, -1);
+            numLightVolumes++;
+        }
 
-        int shadowIndex = activeShadowLights.indexOf(pointLight);
-        lightVolumeUniformMap.setUniform("pointLight.shadowIndex", shadowIndex);
-        lightVolumeUniformMap.setUniform("pointLight.farPlane", pointLight.getRadius());
+        if (numLightVolumes > 0) {
+            lightVolumeBuffer.upload(numLightVolumes * lightVolumeStride);
+        }
+        return numLightVolumes;
     }
 
-    private void updateLightVolumeSpotLightUniforms(SpotLight spotLight, Matrix4f viewMatrix) {
-        auxVec4.set(spotLight.getPosition(), 1).mul(viewMatrix);
-        auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z);
+    // Writes the model matrix, color, positions and attenuation shared by point and spot lights.
+    private void putLightVolume(ByteBuffer lightVolumeData, int offset, PointLight light, Matrix4f viewMatrix) {
+        Vector3f position = light.getPosition();
+        PointLight.Attenuation attenuation = light.getAttenuation();
 
-        lightVolumeUniformMap.setUniform("spotLight.position_view", auxVec3);
+        modelMatrix.identity()
+                .translate(position)
+                .scale(light.getRadius());
+        modelMatrix.get(offset, lightVolumeData);
 
-        auxVec4.set(spotLight.getConeDirection(), 0).mul(viewMatrix);
-        Vector3f coneDirectionView = auxVec3.set(auxVec4.x, auxVec4.y, auxVec4.z).normalize();
-        lightVolumeUniformMap.setUniform("spotLight.coneDirection_view", coneDirectionView);
+        light.getColor().get(offset + LIGHT_COLOR_OFFSET, lightVolumeData);
+        lightVolumeData.putFloat(offset + LIGHT_COLOR_OFFSET + 12, light.getIntensity());
 
-        lightVolumeUniformMap.setUniform("spotLight.color", spotLight.getColor());
-        lightVolumeUniformMap.setUniform("spotLight.intensity", spotLight.getIntensity());
-        lightVolumeUniformMap.setUniform("spotLight.cutOff", spotLight.getCutOff());
+        auxVec4.set(position, 1).mul(viewMatrix);
+        lightVolumeData.putFloat(offset + LIGHT_POSITION_VIEW_OFFSET, auxVec4.x);
+        lightVolumeData.putFloat(offset + LIGHT_POSITION_VIEW_OFFSET + 4, auxVec4.y);
+        lightVolumeData.putFloat(offset + LIGHT_POSITION_VIEW_OFFSET + 8, auxVec4.z);
+        position.get(offset + LIGHT_POSITION_WORLD_OFFSET, lightVolumeData);
 
-        PointLight.Attenuation attenuation = spotLight.getAttenuation();
-        lightVolumeUniformMap.setUniform("spotLight.attenuation.constant", attenuation.getConstant());
-        lightVolumeUniformMap.setUniform("spotLight.attenuation.linear", attenuation.getLinear());
-        lightVolumeUniformMap.setUniform("spotLight.attenuation.exponent", attenuation.getExponent());
+        lightVolumeData.putFloat(offset + LIGHT_ATTENUATION_OFFSET, attenuation.getConstant());
+        lightVolumeData.putFloat(offset + LIGHT_ATTENUATION_OFFSET + 4, attenuation.getLinear());
+        lightVolumeData.putFloat(offset + LIGHT_ATTENUATION_OFFSET + 8, attenuation.getExponent());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.polygon.engine.core.scene.Entity;
+import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.utils.MeshSimplifier;
+
+// Picks the mesh LOD of an entity from the size of its model's bounding sphere on screen.
+// The shadow passes pick with the main camera too, so the shadows match the drawn meshes.
+// The static getScreenSize and selectLod are the math cull.comp runs per entity for the GPU culled models.
+public class LodSelector {
+    // Projected bounding sphere radius, as a fraction of half the screen height, below which LOD i + 1 is used.
+    private static final float[] LOD_SCREEN_SIZES = {0.25f, 0.12f, 0.05f};
+    // Size of the thresholds array, MAX_LOD_THRESHOLDS in cull.comp.
+    public static final int NUM_LOD_THRESHOLDS = LOD_SCREEN_SIZES.length;
+    private static boolean enabled = true;
+    // Scales the projected sizes, above 1 keeps the detailed LODs further away.
+    private static float lodBias = 1.0f;
+
+    private final Vector3f cameraPosition = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    // cot(fovY / 2), turns a size at a distance into a fraction of half the screen height.
+    private float projectionScale;
+    private final float[] lodThresholds = new float[NUM_LOD_THRESHOLDS];
+
+    // Meshes always use the full detail LOD when disabled.
+    public static void setEnabled(boolean enabled) {
+        LodSelector.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setLodBias(float lodBias) {
+        LodSelector.lodBias = lodBias;
+    }
+
+    // Screen size below which LOD lod + 1 is used, with the bias applied so it compares to the unbiased
+    // getScreenSize. 0 when there's no further LOD or the LODs are disabled.
+    public static float getLodThreshold(int lod) {
+        if(!enabled || lod >= LOD_SCREEN_SIZES.length || lod >= MeshSimplifier.MAX_LODS - 1) {
+            return 0.0f;
+        }
+        return LOD_SCREEN_SIZES[lod] / lodBias;
+    }
+
+    // Fills the NUM_LOD_THRESHOLDS thresholds, the same for the CPU selection and the GPU culling shader.
+    public static float[] getLodThresholds(float[] lodThresholds) {
+        for(int i = 0; i < NUM_LOD_THRESHOLDS; i++) {
+            lodThresholds[i] = getLodThreshold(i);
+        }
+        return lodThresholds;
+    }
+
+    // Called once per frame before selecting.
+    public void update(Scene scene) {
+        cameraPosition.set(scene.getCamera().getPosition());
+        projectionScale = scene.getProjection().getProjMatrix().m11();
+        getLodThresholds(lodThresholds);
+    }
+
+    // LOD of every mesh of the model, meshes with fewer LODs use their coarsest one.
+    public int selectLod(Model model, Entity entity) {
+        if(!enabled) {
+            return 0;
+        }
+        return selectLod(getScreenSize(model, entity));
+    }
+
+    // LOD for a screen size returned by getScreenSize.
+    public int selectLod(float screenSize) {
+        return selectLod(screenSize, lodThresholds);
+    }
+
+    // Projected bounding sphere radius of the entity as a fraction of half the screen height,
+    // Float.MAX_VALUE when the camera is inside the sphere.
+    public float getScreenSize(Model model, Entity entity) {
+        return getScreenSize(model.getAabbMinCorner(), model.getAabbMaxCorner(), entity.getRenderModelMatrix()
+                , cameraPosition, projectionScale, center);
+    }
+
+    // Number of thresholds the screen size is below, the LOD to draw. No LOD is skipped as the thresholds
+    // decrease, and a 0 threshold ends the search.
+    public static int selectLod(float screenSize, float[] lodThresholds) {
+        int lod = 0;
+        while(lod < lodThresholds.length && screenSize < lodThresholds[lod]) {
+            lod++;
+        }
+        return lod;
+    }
+
+    // Projected radius of the bounding sphere of the local box drawn with the model matrix, as a fraction of half
+    // the screen height. Float.MAX_VALUE when the camera is inside the sphere. centerAux is overwritten.
+    public static float getScreenSize(Vector3f localMin, Vector3f localMax, Matrix4f modelMatrix
+            , Vector3f cameraPosition, float projectionScale, Vector3f centerAux) {
+        centerAux.set(localMin).add(localMax).mul(0.5f);
+        modelMatrix.transformPosition(centerAux);
+        // Entities only have a uniform scale.
+        float scale = (float) Math.sqrt(modelMatrix.m00() * modelMatrix.m00() + modelMatrix.m01() * modelMatrix.m01()
+                + modelMatrix.m02() * modelMatrix.m02());
+        float radius = localMin.distance(localMax) * 0.5f * scale;
+
+        float distance = centerAux.distance(cameraPosition);
+        if(distance <= radius) {
+            return Float.MAX_VALUE;
+        }
+        return radius / distance * projectionScale;
+    }
+
+    // Texture size in pixels for a screen size, the screen size is a radius in half screen heights and the
+    // texture size a diameter in pixels.
+    public static float getScreenPixels(float screenSize, int screenHeight) {
+        return Math.min(screenSize, 1.0f) * screenHeight;
+    }
+}
@@ -3,9 +3,21 @@ package org.polygon.engine.core.graph;
 import org.joml.Vector4f;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Material {
+    // Texture units of the scene shaders, in the order of getTextures.
+    public static final int NUM_TEXTURES = 6;
+    // Materials are created on the asset loader threads too.
+    private static final AtomicInteger NEXT_MATERIAL_ID = new AtomicInteger();
+    // Ids of the distinct combinations of resolved textures, only used on the render thread.
+    private static final Map<List<Texture>, Integer> TEXTURE_SET_IDS = new HashMap<>();
+    // Compact id for the render queue sort keys.
+    private final int materialId = NEXT_MATERIAL_ID.getAndIncrement();
     // Material objects will hold the meshes that have this material assigned to them.
     private List<Mesh> meshList;
     // The Material object's won't hold the texture loaded to OpenGL; instead, the TextureCache will hold the texture
@@ -24,6 +36,16 @@ public class Material {
     private float metallic;
     private float roughness;
     private float aoStrength;
+    // Holds the scene.frag MaterialData block, created by the SceneRender when the material is first drawn
+    // and uploaded again after a setter changed the material.
+    private UniformBuffer uniformBuffer;
+    private boolean uniformBufferDirty = true;
+    // Textures of the paths resolved by getTextures, so the texture cache isn't searched on every bind.
+    private final Texture[] textures = new Texture[NUM_TEXTURES];
+    private TextureCache texturesCache;
+    private boolean texturesResolved;
+    // Id of the resolved textures in TEXTURE_SET_IDS, -1 until it's looked up.
+    private int textureSetId = -1;
 
     public Material() {
         // Initialize the meshList that will hold meshes assigned to the Material object.
@@ -50,6 +72,10 @@ public class Material {
 
     public void cleanup() {
         meshList.forEach(Mesh::cleanup);
+        if(uniformBuffer != null) {
+            uniformBuffer.cleanup();
+            uniformBuffer = null;
+        }
     }
 
     public List<Mesh> getMeshList() {
@@ -110,54 +136,134 @@ public class Material {
 
     public void setTexturePath(String texturePath) {
         this.texturePath = texturePath;
+        texturesResolved = false;
         diffuseColor = DEFAULT_COLOR;
+        uniformBufferDirty = true;
     }
 
     public void setNormalMapPath(String normalMapPath) {
         this.normalMapPath = normalMapPath;
+        texturesResolved = false;
+        uniformBufferDirty = true;
     }
 
     public void setMetallicMapPath(String metallicMapPath) {
         this.metallicMapPath = metallicMapPath;
+        texturesResolved = false;
+        uniformBufferDirty = true;
     }
 
     public void setRoughnessMapPath(String roughnessMapPath) {
         this.roughnessMapPath = roughnessMapPath;
+        texturesResolved = false;
+        uniformBufferDirty = true;
     }
 
     public void setAoMapPath(String aoMapPath) {
         this.aoMapPath = aoMapPath;
+        texturesResolved = false;
+        uniformBufferDirty = true;
     }
 
     public void setEmissiveMapPath(String emissiveMapPath) {
         this.emissiveMapPath = emissiveMapPath;
+        texturesResolved = false;
+        uniformBufferDirty = true;
     }
 
     public void setDiffuseColor(Vector4f diffuseColor) {
         this.diffuseColor = diffuseColor;
+        uniformBufferDirty = true;
     }
 
     public void setAmbientColor(Vector4f ambientColor) {
         this.ambientColor = ambientColor;
+        uniformBufferDirty = true;
     }
 
     public void setSpecularColor(Vector4f specularColor) {
         this.specularColor = specularColor;
+        uniformBufferDirty = true;
     }
 
     public void setReflectance(float reflectance) {
         this.reflectance = reflectance;
+        uniformBufferDirty = true;
     }
 
     public void setMetallic(float metallic) {
         this.metallic = metallic;
+        uniformBufferDirty = true;
     }
 
     public void setRoughness(float roughness) {
         this.roughness = roughness;
+        uniformBufferDirty = true;
     }
 
     public void setAoStrength(float aoStrength) {
         this.aoStrength = aoStrength;
+        uniformBufferDirty = true;
+    }
+
+    int getMaterialId() {
+        return materialId;
+    }
+
+    // Textures of the base color, normal, metallic, roughness, ambient occlusion and emissive maps, null for the
+    // maps the material doesn't have. Resolved once per texture cache, missing textures use the default texture
+    // and are looked up again until they're loaded.
+    Texture[] getTextures(TextureCache textureCache) {
+        if(texturesResolved && texturesCache == textureCache) {
+            return textures;
+        }
+        texturesCache = textureCache;
+        texturesResolved = true;
+        textureSetId = -1;
+        resolveTexture(textureCache, 0, texturePath);
+        resolveTexture(textureCache, 1, normalMapPath);
+        resolveTexture(textureCache, 2, metallicMapPath);
+        resolveTexture(textureCache, 3, roughnessMapPath);
+        resolveTexture(textureCache, 4, aoMapPath);
+        resolveTexture(textureCache, 5, emissiveMapPath);
+        return textures;
+    }
+
+    // Materials with the same id bind the same textures, so their draws can share the bound textures.
+    int getTextureSetId(TextureCache textureCache) {
+        Texture[] resolvedTextures = getTextures(textureCache);
+        if(textureSetId < 0) {
+            textureSetId = TEXTURE_SET_IDS.computeIfAbsent(Arrays.asList(resolvedTextures.clone())
+                    , textureSet -> TEXTURE_SET_IDS.size());
+        }
+        return textureSetId;
+    }
+
+    private void resolveTexture(TextureCache textureCache, int unit, String path) {
+        if(path == null) {
+            textures[unit] = null;
+            return;
+        }
+        Texture texture = textureCache.getTexture(path);
+        if(!path.equals(texture.getTexturePath())) {
+            texturesResolved = false;
+        }
+        textures[unit] = texture;
+    }
+
+    UniformBuffer getUniformBuffer() {
+        return uniformBuffer;
+    }
+
+    void setUniformBuffer(UniformBuffer uniformBuffer) {
+        this.uniformBuffer = uniformBuffer;
+    }
+
+    boolean isUniformBufferDirty() {
+        return uniformBufferDirty;
+    }
+
+    void setUniformBufferDirty(boolean uniformBufferDirty) {
+        this.uniformBufferDirty = uniformBufferDirty;
     }
 }
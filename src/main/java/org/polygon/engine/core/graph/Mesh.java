@@ -3,7 +3,9 @@ package org.polygon.engine.core.graph;
 import org.joml.Vector3f;
 import org.lwjgl.opengl.GL40;
 import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.Utils;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -13,16 +15,100 @@ import static org.lwjgl.opengl.GL40.*;
 
 public class Mesh {
     public static final int MAX_WEIGHTS = 4;
+    // The per-instance model matrix takes 4 attribute locations, one for each column.
+    public static final int INSTANCE_MATRIX_LOCATION = 7;
+    // Per-instance baked animation frame, see AnimationTexture.
+    public static final int INSTANCE_ANIMATION_LOCATION = 11;
+    // 3 positions, normals, tangents and bitangents, 2 texture coordinates and 4 bone weights as floats
+    // and 4 int bone indices.
+    public static final int LEGACY_BYTES_PER_VERTEX = 88;
+    public static final int PACKED_SKINNED_BYTES_PER_VERTEX = 36;
+    public static final int PACKED_STATIC_BYTES_PER_VERTEX = 28;
+    // Vertex format of the meshes created afterwards, see setPackedVertexFormat.
+    private static boolean packedVertexFormat;
+    // Arena the static meshes created afterwards are put in, see setGeometryArena.
+    private static GeometryArena geometryArena;
     private int vaoId;
     private List<Integer> vboIdList;
+    // Number of indices of the full detail LOD.
     private int numVertices;
+    // Index of the first index of every LOD in the index buffer, the last entry is the total index count.
+    private int[] lodOffsets;
+    // Ranges of the mesh in its GeometryArena, null for meshes with their own VAO and buffers.
+    private GeometryArena arena;
+    private GeometryArena.Allocation arenaAllocation;
+    // The instance VBO the instance attributes currently point to, -1 if instancing was never set up.
+    private int instanceVboId = -1;
+    private int firstInstance;
+    // Size of the vertex attributes on the GPU, the index buffer is not included.
+    private int bytesPerVertex;
+    private long vertexBytes;
     private Vector3f aabbMinCorner;
     private Vector3f aabbMaxCorner;
 
 
+    public Mesh(MeshData meshData) {
+        this(meshData.positions(), meshData.normals(), meshData.tangents(), meshData.bitangents()
+                , meshData.textCoords(), meshData.indices(), meshData.boneIndices(), meshData.weights()
+                , meshData.aabbMinCorner(), meshData.aabbMaxCorner(), meshData.lodOffsets());
+    }
+
     public Mesh(float[] positions, float[] normals, float[] tangents, float[] bitangents
             , float[] textCoords, int[] indexArray, int[] boneIndices, float[] weights
             , Vector3f aabbMinCorner, Vector3f aabbMaxCorner) {
+        this(positions, normals, tangents, bitangents, textCoords, indexArray, boneIndices, weights
+                , aabbMinCorner, aabbMaxCorner, null);
+    }
+
+    // indexArray holds the index lists of every LOD, see MeshData. Null lodOffsets means a single LOD.
+    public Mesh(float[] positions, float[] normals, float[] tangents, float[] bitangents
+            , float[] textCoords, int[] indexArray, int[] boneIndices, float[] weights
+            , Vector3f aabbMinCorner, Vector3f aabbMaxCorner, int[] lodOffsets) {
+        // Create off-heap arrays and put the passed arrays inside them to be accessed by OpenGl native API
+        FloatBuffer positionsBuffer = MemoryUtil.memCallocFloat(positions.length);
+        positionsBuffer.put(0, positions);
+        FloatBuffer normalsBuffer = MemoryUtil.memCallocFloat(normals.length);
+        normalsBuffer.put(0, normals);
+        FloatBuffer tangentsBuffer = MemoryUtil.memCallocFloat(tangents.length);
+        tangentsBuffer.put(0, tangents);
+        FloatBuffer bitangentsBuffer = MemoryUtil.memCallocFloat(bitangents.length);
+        bitangentsBuffer.put(0, bitangents);
+        FloatBuffer textCoordsBuffer = MemoryUtil.memCallocFloat(textCoords.length);
+        textCoordsBuffer.put(0, textCoords);
+        FloatBuffer weightsBuffer = MemoryUtil.memCallocFloat(weights.length);
+        weightsBuffer.put(weights).flip();
+        IntBuffer boneIndicesBuffer = MemoryUtil.memCallocInt(boneIndices.length);
+        boneIndicesBuffer.put(boneIndices).flip();
+        IntBuffer indexArrayBuffer = MemoryUtil.memCallocInt(indexArray.length);
+        indexArrayBuffer.put(0, indexArray);
+
+        upload(positionsBuffer, normalsBuffer, tangentsBuffer, bitangentsBuffer, textCoordsBuffer
+                , indexArrayBuffer, boneIndicesBuffer, weightsBuffer, aabbMinCorner, aabbMaxCorner, lodOffsets);
+
+        // Free the off-heap allocated memory.
+        MemoryUtil.memFree(positionsBuffer);
+        MemoryUtil.memFree(normalsBuffer);
+        MemoryUtil.memFree(tangentsBuffer);
+        MemoryUtil.memFree(bitangentsBuffer);
+        MemoryUtil.memFree(textCoordsBuffer);
+        MemoryUtil.memFree(weightsBuffer);
+        MemoryUtil.memFree(boneIndicesBuffer);
+        MemoryUtil.memFree(indexArrayBuffer);
+    }
+
+    // Uploads direct buffers as they are, e.g. views into a memory-mapped model cache file.
+    // The buffers are not freed, they stay owned by the caller.
+    public Mesh(FloatBuffer positions, FloatBuffer normals, FloatBuffer tangents, FloatBuffer bitangents
+            , FloatBuffer textCoords, IntBuffer indexArray, IntBuffer boneIndices, FloatBuffer weights
+            , Vector3f aabbMinCorner, Vector3f aabbMaxCorner, int[] lodOffsets) {
+        upload(positions, normals, tangents, bitangents, textCoords, indexArray, boneIndices, weights
+                , aabbMinCorner, aabbMaxCorner, lodOffsets);
+    }
+
+    private void upload(FloatBuffer positionsBuffer, FloatBuffer normalsBuffer, FloatBuffer tangentsBuffer
+            , FloatBuffer bitangentsBuffer, FloatBuffer textCoordsBuffer, IntBuffer indexArrayBuffer
+            , IntBuffer boneIndicesBuffer, FloatBuffer weightsBuffer, Vector3f aabbMinCorner, Vector3f aabbMaxCorner
+            , int[] lodOffsets) {
         // Bounding box min and max corners.
         this.aabbMinCorner = aabbMinCorner;
         this.aabbMaxCorner = aabbMaxCorner;
@@ -32,21 +118,60 @@ public class Mesh {
         int vboId;
         // Track number of vertices for draw calls later
         // Initializing VBO collections array
-        this.numVertices = indexArray.length;
+        this.lodOffsets = lodOffsets != null ? lodOffsets : new int[] {0, indexArrayBuffer.remaining()};
+        this.numVertices = this.lodOffsets[1];
         vboIdList = new ArrayList<>();
+        int vertexCount = positionsBuffer.remaining() / 3;
+
+        // Static meshes go to the arena in the packed format, whatever the vertex format of the other meshes.
+        if(geometryArena != null && !hasBoneWeights(weightsBuffer)) {
+            ByteBuffer vertexBuffer = packVertices(positionsBuffer, normalsBuffer, tangentsBuffer, bitangentsBuffer
+                    , textCoordsBuffer, boneIndicesBuffer, weightsBuffer, vertexCount, false);
+            arena = geometryArena;
+            arenaAllocation = arena.allocate(vertexBuffer, vertexCount, indexArrayBuffer);
+            MemoryUtil.memFree(vertexBuffer);
+            vaoId = arena.getVaoId();
+            bytesPerVertex = PACKED_STATIC_BYTES_PER_VERTEX;
+            vertexBytes = (long) vertexCount * bytesPerVertex;
+            return;
+        }
 
         // Creates a Vertex Array Object and binds it
         vaoId = glGenVertexArrays();
-        glBindVertexArray(vaoId);
+        GLState.bindVertexArray(vaoId);
+
+        // Vertex attributes, numVertices above is the number of indices drawn.
+        if(packedVertexFormat) {
+            uploadInterleaved(positionsBuffer, normalsBuffer, tangentsBuffer, bitangentsBuffer, textCoordsBuffer
+                    , boneIndicesBuffer, weightsBuffer, vertexCount);
+        } else {
+            uploadSeparate(positionsBuffer, normalsBuffer, tangentsBuffer, bitangentsBuffer, textCoordsBuffer
+                    , boneIndicesBuffer, weightsBuffer);
+            bytesPerVertex = LEGACY_BYTES_PER_VERTEX;
+        }
+        vertexBytes = (long) vertexCount * bytesPerVertex;
+
+        // Create Index VBO
+        vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexArrayBuffer, GL_STATIC_DRAW);
+
 
+        // Unbind both VAO and VBO
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        GLState.bindVertexArray(0);
+    }
+
+    // Legacy format, one float VBO per attribute.
+    private void uploadSeparate(FloatBuffer positionsBuffer, FloatBuffer normalsBuffer, FloatBuffer tangentsBuffer
+            , FloatBuffer bitangentsBuffer, FloatBuffer textCoordsBuffer, IntBuffer boneIndicesBuffer
+            , FloatBuffer weightsBuffer) {
+        int vboId;
         // Create Positions VBO reference
         vboId = glGenBuffers();
         // Add it to the VBO reference list
         vboIdList.add(vboId);
-        // Create an off-heap float array and put the passed positions array inside it
-        // to be accessed by OpenGl native API
-        FloatBuffer positionsBuffer = MemoryUtil.memCallocFloat(positions.length);
-        positionsBuffer.put(0, positions);
         // First we bind that VBO reference
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         // Make that reference point to a positions array
@@ -63,8 +188,6 @@ public class Mesh {
         // Create Normals VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        FloatBuffer normalsBuffer = MemoryUtil.memCallocFloat(normals.length);
-        normalsBuffer.put(0, normals);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, normalsBuffer, GL_STATIC_DRAW);
         glEnableVertexAttribArray(1);
@@ -73,8 +196,6 @@ public class Mesh {
         // Create Tangents VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        FloatBuffer tangentsBuffer = MemoryUtil.memCallocFloat(tangents.length);
-        tangentsBuffer.put(0, tangents);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, tangentsBuffer, GL_STATIC_DRAW);
         glEnableVertexAttribArray(2);
@@ -83,8 +204,6 @@ public class Mesh {
         // Create Bitangents VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        FloatBuffer bitangentsBuffer = MemoryUtil.memCallocFloat(bitangents.length);
-        bitangentsBuffer.put(0, bitangents);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, bitangentsBuffer, GL_STATIC_DRAW);
         glEnableVertexAttribArray(3);
@@ -94,8 +213,6 @@ public class Mesh {
         // Create Texture coordinates VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        FloatBuffer textCoordsBuffer = MemoryUtil.memCallocFloat(textCoords.length);
-        textCoordsBuffer.put(0, textCoords);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
         // Enable index 4 in the VAO attribute array
@@ -107,8 +224,6 @@ public class Mesh {
         // Create Bone weights VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        FloatBuffer weightsBuffer = MemoryUtil.memCallocFloat(weights.length);
-        weightsBuffer.put(weights).flip();
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, weightsBuffer, GL_STATIC_DRAW);
         glEnableVertexAttribArray(5);
@@ -118,47 +233,234 @@ public class Mesh {
         // Create Bone indices VBO reference
         vboId = glGenBuffers();
         vboIdList.add(vboId);
-        IntBuffer boneIndicesBuffer = MemoryUtil.memCallocInt(boneIndices.length);
-        boneIndicesBuffer.put(boneIndices).flip();
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         glBufferData(GL_ARRAY_BUFFER, boneIndicesBuffer, GL_STATIC_DRAW);
         glEnableVertexAttribArray(6);
         glVertexAttribIPointer(6, 4, GL_INT, 0, 0);
+    }
 
+    // Packed format, every attribute of a vertex next to each other in a single VBO.
+    // Meshes without bone weights don't store the skinning attributes, the shaders read
+    // the constant zero weights set below instead.
+    private void uploadInterleaved(FloatBuffer positionsBuffer, FloatBuffer normalsBuffer, FloatBuffer tangentsBuffer
+            , FloatBuffer bitangentsBuffer, FloatBuffer textCoordsBuffer, IntBuffer boneIndicesBuffer
+            , FloatBuffer weightsBuffer, int vertexCount) {
+        boolean skinned = hasBoneWeights(weightsBuffer);
+        bytesPerVertex = skinned ? PACKED_SKINNED_BYTES_PER_VERTEX : PACKED_STATIC_BYTES_PER_VERTEX;
+        ByteBuffer vertexBuffer = packVertices(positionsBuffer, normalsBuffer, tangentsBuffer, bitangentsBuffer
+                , textCoordsBuffer, boneIndicesBuffer, weightsBuffer, vertexCount, skinned);
 
-        // Create Index VBO
-        vboId = glGenBuffers();
+        int vboId = glGenBuffers();
         vboIdList.add(vboId);
-        IntBuffer indexArrayBuffer = MemoryUtil.memCallocInt(indexArray.length);
-        indexArrayBuffer.put(0, indexArray);
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexArrayBuffer, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertexBuffer, GL_STATIC_DRAW);
+        MemoryUtil.memFree(vertexBuffer);
+
+        int stride = bytesPerVertex;
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
+        // Normalized signed 10 bit components are read as floats in [-1, 1].
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 4, GL_INT_2_10_10_10_REV, true, stride, 12);
+        glEnableVertexAttribArray(2);
+        glVertexAttribPointer(2, 4, GL_INT_2_10_10_10_REV, true, stride, 16);
+        glEnableVertexAttribArray(3);
+        glVertexAttribPointer(3, 4, GL_INT_2_10_10_10_REV, true, stride, 20);
+        glEnableVertexAttribArray(4);
+        glVertexAttribPointer(4, 2, GL_HALF_FLOAT, false, stride, 24);
+        if(skinned) {
+            glEnableVertexAttribArray(5);
+            glVertexAttribPointer(5, 4, GL_UNSIGNED_BYTE, true, stride, 28);
+            glEnableVertexAttribArray(6);
+            glVertexAttribIPointer(6, 4, GL_UNSIGNED_BYTE, stride, 32);
+        } else {
+            // Disabled attributes read the current attribute value, which defaults to (0, 0, 0, 1)
+            // and would make the shaders skin with bone 0.
+            glVertexAttrib4f(5, 0.0f, 0.0f, 0.0f, 0.0f);
+            glVertexAttribI4i(6, 0, 0, 0, 0);
+        }
+    }
 
+    // Interleaved vertices of the packed format, freed by the caller.
+    private static ByteBuffer packVertices(FloatBuffer positionsBuffer, FloatBuffer normalsBuffer
+            , FloatBuffer tangentsBuffer, FloatBuffer bitangentsBuffer, FloatBuffer textCoordsBuffer
+            , IntBuffer boneIndicesBuffer, FloatBuffer weightsBuffer, int vertexCount, boolean skinned) {
+        int bytesPerVertex = skinned ? PACKED_SKINNED_BYTES_PER_VERTEX : PACKED_STATIC_BYTES_PER_VERTEX;
+        ByteBuffer vertexBuffer = MemoryUtil.memAlloc(vertexCount * bytesPerVertex);
+        for(int i = 0; i < vertexCount; i++) {
+            vertexBuffer.putFloat(positionsBuffer.get(i * 3));
+            vertexBuffer.putFloat(positionsBuffer.get(i * 3 + 1));
+            vertexBuffer.putFloat(positionsBuffer.get(i * 3 + 2));
+            vertexBuffer.putInt(packSnorm1010102(normalsBuffer, i));
+            vertexBuffer.putInt(packSnorm1010102(tangentsBuffer, i));
+            vertexBuffer.putInt(packSnorm1010102(bitangentsBuffer, i));
+            vertexBuffer.putShort(Utils.toHalfFloat(textCoordsBuffer.get(i * 2)));
+            vertexBuffer.putShort(Utils.toHalfFloat(textCoordsBuffer.get(i * 2 + 1)));
+            if(skinned) {
+                putWeights(vertexBuffer, weightsBuffer, i);
+                for(int j = 0; j < MAX_WEIGHTS; j++) {
+                    vertexBuffer.put((byte) boneIndicesBuffer.get(i * MAX_WEIGHTS + j));
+                }
+            }
+        }
+        vertexBuffer.flip();
+        return vertexBuffer;
+    }
 
-        // Unbind both VAO and VBO
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
+    private static boolean hasBoneWeights(FloatBuffer weightsBuffer) {
+        for(int i = 0; i < weightsBuffer.remaining(); i++) {
+            if(weightsBuffer.get(i) > 0.0f) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Free the off-heap allocated memory.
-        MemoryUtil.memFree(positionsBuffer);
-        MemoryUtil.memFree(normalsBuffer);
-        MemoryUtil.memFree(tangentsBuffer);
-        MemoryUtil.memFree(bitangentsBuffer);
-        MemoryUtil.memFree(textCoordsBuffer);
-        MemoryUtil.memFree(weightsBuffer);
-        MemoryUtil.memFree(boneIndicesBuffer);
-        MemoryUtil.memFree(indexArrayBuffer);
+    // Packs the i-th vec3 of the buffer to signed normalized 10-10-10-2, w is 0.
+    private static int packSnorm1010102(FloatBuffer buffer, int i) {
+        return packSnorm10(buffer.get(i * 3))
+                | packSnorm10(buffer.get(i * 3 + 1)) << 10
+                | packSnorm10(buffer.get(i * 3 + 2)) << 20;
+    }
+
+    private static int packSnorm10(float value) {
+        return Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * 511.0f) & 0x3FF;
+    }
+
+    // Bone weights as normalized bytes, the rounding error is moved to the first weight
+    // so the weights of a skinned vertex still sum up to 1.
+    private static void putWeights(ByteBuffer vertexBuffer, FloatBuffer weightsBuffer, int i) {
+        int[] weights = new int[MAX_WEIGHTS];
+        int sum = 0;
+        for(int j = 0; j < MAX_WEIGHTS; j++) {
+            weights[j] = Math.round(Math.max(0.0f, Math.min(1.0f, weightsBuffer.get(i * MAX_WEIGHTS + j))) * 255.0f);
+            sum += weights[j];
+        }
+        if(sum > 0) {
+            weights[0] = Math.max(0, Math.min(255, weights[0] + 255 - sum));
+        }
+        for(int weight : weights) {
+            vertexBuffer.put((byte) weight);
+        }
     }
 
     public void cleanup() {
+        if(arena != null) {
+            arena.free(arenaAllocation);
+            return;
+        }
         vboIdList.forEach(GL40::glDeleteBuffers);
-        glDeleteVertexArrays(vaoId);
+        GLState.deleteVertexArray(vaoId);
+    }
+
+    // Points the per-instance model matrix attributes of the VAO to the instance VBO.
+    // Attribute pointers are part of the VAO state, so this only needs to be done once per instance VBO.
+    // Leaves the VAO bound.
+    public void setupInstanceAttributes(int instanceVboId) {
+        setupInstanceAttributes(instanceVboId, 0);
+    }
+
+    // Starts the instances at the firstInstance-th matrix of the instance VBO, GL 4.1 has no base instance
+    // draw calls so the attribute pointers are offset instead.
+    public void setupInstanceAttributes(int instanceVboId, int firstInstance) {
+        setupInstanceAttributes(instanceVboId, firstInstance, false);
+    }
+
+    // animationFrames is set for instance VBOs holding a baked animation frame vec4 after every matrix,
+    // a VBO is always used with the same layout.
+    public void setupInstanceAttributes(int instanceVboId, int firstInstance, boolean animationFrames) {
+        if(arena != null) {
+            arena.setupInstanceAttributes(instanceVboId, firstInstance, animationFrames);
+            return;
+        }
+        GLState.bindVertexArray(vaoId);
+        if(this.instanceVboId == instanceVboId && this.firstInstance == firstInstance) {
+            return;
+        }
+        pointInstanceAttributes(instanceVboId, firstInstance, animationFrames);
+        this.instanceVboId = instanceVboId;
+        this.firstInstance = firstInstance;
+    }
+
+    // Points the instance attributes of the bound VAO to the instance VBO.
+    static void pointInstanceAttributes(int instanceVboId, int firstInstance, boolean animationFrames) {
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        // A mat4 attribute is passed as 4 vec4 columns, advanced once per instance.
+        int stride = (animationFrames ? 20 : 16) * Float.BYTES;
+        long offset = (long) firstInstance * stride;
+        for(int i = 0; i < 4; i++) {
+            int location = INSTANCE_MATRIX_LOCATION + i;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, stride, offset + (long) i * 4 * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        if(animationFrames) {
+            glEnableVertexAttribArray(INSTANCE_ANIMATION_LOCATION);
+            glVertexAttribPointer(INSTANCE_ANIMATION_LOCATION, 4, GL_FLOAT, false, stride
+                    , offset + 16 * Float.BYTES);
+            glVertexAttribDivisor(INSTANCE_ANIMATION_LOCATION, 1);
+        } else {
+            glDisableVertexAttribArray(INSTANCE_ANIMATION_LOCATION);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    // The legacy format keeps every attribute in its own float VBO.
+    // The packed format interleaves them in a single VBO: 3 float positions, 10-10-10-2 normals, tangents
+    // and bitangents, half float texture coordinates, byte bone weights and bone indices.
+    // Static meshes leave the skinning attributes out. The shaders read the same types in both formats.
+    public static void setPackedVertexFormat(boolean packedVertexFormat) {
+        Mesh.packedVertexFormat = packedVertexFormat;
+    }
+
+    public static boolean isPackedVertexFormat() {
+        return packedVertexFormat;
+    }
+
+    // Puts the static meshes created afterwards in the arena instead of their own buffers, so they share its VAO.
+    // Null keeps every mesh in its own buffers. Meshes with bone weights never go to the arena.
+    // Arena meshes start further in the shared index buffer, so every draw passes getLodIndexOffset.
+    public static void setGeometryArena(GeometryArena geometryArena) {
+        Mesh.geometryArena = geometryArena;
+    }
+
+    public boolean isInGeometryArena() {
+        return arena != null;
+    }
+
+    public int getBytesPerVertex() {
+        return bytesPerVertex;
+    }
+
+    public long getVertexBytes() {
+        return vertexBytes;
     }
 
     public int getNumVertices() {
         return numVertices;
     }
 
+    public int getNumLods() {
+        return lodOffsets.length - 1;
+    }
+
+    // Number of indices of the LOD, LODs the mesh doesn't have use its coarsest one.
+    public int getLodIndexCount(int lod) {
+        lod = Math.min(lod, lodOffsets.length - 2);
+        return lodOffsets[lod + 1] - lodOffsets[lod];
+    }
+
+    // Byte offset of the LOD in the index buffer, passed to the draw calls.
+    public long getLodIndexOffset(int lod) {
+        return (long) getLodFirstIndex(lod) * Integer.BYTES;
+    }
+
+    // Index of the first index of the LOD in the index buffer, which is the arena's one for arena meshes.
+    public int getLodFirstIndex(int lod) {
+        lod = Math.min(lod, lodOffsets.length - 2);
+        return (arena != null ? arenaAllocation.firstIndex() : 0) + lodOffsets[lod];
+    }
+
     public int getVaoId() {
         return vaoId;
     }
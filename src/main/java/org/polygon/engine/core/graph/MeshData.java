@@ -0,0 +1,18 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Vector3f;
+
+// Raw vertex data of a mesh before it's uploaded to the GPU.
+// Doesn't touch OpenGL, so it can be generated without a GL context.
+// indices holds the index lists of every LOD after each other, LOD i starts at lodOffsets[i]
+// and ends at lodOffsets[i + 1]. Null lodOffsets means the indices are a single LOD.
+public record MeshData(float[] positions, float[] normals, float[] tangents, float[] bitangents
+        , float[] textCoords, int[] indices, int[] boneIndices, float[] weights
+        , Vector3f aabbMinCorner, Vector3f aabbMaxCorner, int[] lodOffsets) {
+    public MeshData(float[] positions, float[] normals, float[] tangents, float[] bitangents
+            , float[] textCoords, int[] indices, int[] boneIndices, float[] weights
+            , Vector3f aabbMinCorner, Vector3f aabbMaxCorner) {
+        this(positions, normals, tangents, bitangents, textCoords, indices, boneIndices, weights
+                , aabbMinCorner, aabbMaxCorner, null);
+    }
+}
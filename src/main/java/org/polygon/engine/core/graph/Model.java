@@ -1,6 +1,8 @@
 package org.polygon.engine.core.graph;
 
+import org.joml.Matrix3f;
 import org.joml.Matrix4f;
+import org.joml.Quaternionf;
 import org.joml.Vector3f;
 import org.polygon.engine.core.scene.Entity;
 
@@ -11,6 +13,8 @@ public class Model {
     private final String modelId;
     private final String modelPath;
     private List<Entity> entityList;
+    // The entity list as of the last sync point, iterated by the renderers while the update changes entityList.
+    private final List<Entity> renderEntityList = new ArrayList<>();
     private List<Material> materialList;
     private List<Animation> animationList;
     private boolean hasAnimation;
@@ -65,6 +69,16 @@ public class Model {
         return entityList;
     }
 
+    public List<Entity> getRenderEntityList() {
+        return renderEntityList;
+    }
+
+    // Copies the entity list for the renderers, called by the Scene at the sync point.
+    public void syncRenderEntityList() {
+        renderEntityList.clear();
+        renderEntityList.addAll(entityList);
+    }
+
     public List<Material> getMaterialList() {
         return materialList;
     }
@@ -93,6 +107,182 @@ public class Model {
         return hasAnimation;
     }
 
+    // Bone palette of a sampled pose, the matrices past the animation's numBones are identity.
     public record AnimatedFrame(Matrix4f[] boneMatrices) {}
-    public record Animation(String name, double duration, List<AnimatedFrame> frames) {}
+
+    // How the bone transforms of an animation are packed.
+    public enum BoneEncoding {
+        // The upper 3 rows of every bone matrix, exact.
+        MATRIX(12),
+        // Rotation quaternion, translation and scale, drops any shear of the bone matrices.
+        QUAT(10);
+
+        private final int floatsPerBone;
+
+        BoneEncoding(int floatsPerBone) {
+            this.floatsPerBone = floatsPerBone;
+        }
+
+        public int getFloatsPerBone() {
+            return floatsPerBone;
+        }
+    }
+
+    // numBones is the number of bones the skeleton actually uses, bones past it are always identity.
+    // boneData holds numBones packed transforms per frame, frame after frame, so a clip is a single array.
+    public record Animation(String name, double duration, int numBones, int numFrames, BoneEncoding encoding
+            , float[] boneData) {
+        public Animation {
+            if(boneData.length != numFrames * numBones * encoding.getFloatsPerBone()) {
+                throw new RuntimeException("Animation data size mismatch [" + name + "]");
+            }
+        }
+
+        // Packs the first numBones matrices of every frame.
+        public static Animation encode(String name, double duration, int numBones, List<Matrix4f[]> frames
+                , BoneEncoding encoding) {
+            int floatsPerBone = encoding.getFloatsPerBone();
+            float[] boneData = new float[frames.size() * numBones * floatsPerBone];
+            Matrix3f rotation = new Matrix3f();
+            Quaternionf quaternion = new Quaternionf();
+            Vector3f scale = new Vector3f();
+            int offset = 0;
+            for(Matrix4f[] boneMatrices : frames) {
+                for(int i = 0; i < numBones; i++) {
+                    Matrix4f matrix = boneMatrices[i];
+                    if(encoding == BoneEncoding.MATRIX) {
+                        boneData[offset] = matrix.m00();
+                        boneData[offset + 1] = matrix.m01();
+                        boneData[offset + 2] = matrix.m02();
+                        boneData[offset + 3] = matrix.m10();
+                        boneData[offset + 4] = matrix.m11();
+                        boneData[offset + 5] = matrix.m12();
+                        boneData[offset + 6] = matrix.m20();
+                        boneData[offset + 7] = matrix.m21();
+                        boneData[offset + 8] = matrix.m22();
+                        boneData[offset + 9] = matrix.m30();
+                        boneData[offset + 10] = matrix.m31();
+                        boneData[offset + 11] = matrix.m32();
+                    } else {
+                        matrix.get3x3(rotation);
+                        rotation.getScale(scale);
+                        // A mirrored bone keeps its mirror in the scale, the quaternion can only hold a rotation.
+                        if(rotation.determinant() < 0.0f) {
+                            scale.x = -scale.x;
+                        }
+                        if(scale.x == 0.0f || scale.y == 0.0f || scale.z == 0.0f) {
+                            // Collapsed bones, usually hidden parts, have no rotation left to recover.
+                            quaternion.identity();
+                        } else {
+                            rotation.scale(1.0f / scale.x, 1.0f / scale.y, 1.0f / scale.z)
+                                    .getUnnormalizedRotation(quaternion);
+                        }
+                        boneData[offset] = quaternion.x;
+                        boneData[offset + 1] = quaternion.y;
+                        boneData[offset + 2] = quaternion.z;
+                        boneData[offset + 3] = quaternion.w;
+                        boneData[offset + 4] = matrix.m30();
+                        boneData[offset + 5] = matrix.m31();
+                        boneData[offset + 6] = matrix.m32();
+                        boneData[offset + 7] = scale.x;
+                        boneData[offset + 8] = scale.y;
+                        boneData[offset + 9] = scale.z;
+                    }
+                    offset += floatsPerBone;
+                }
+            }
+            return new Animation(name, duration, numBones, frames.size(), encoding, boneData);
+        }
+
+        // Same animation packed with another encoding.
+        public Animation withEncoding(BoneEncoding encoding) {
+            if(encoding == this.encoding) {
+                return this;
+            }
+            List<Matrix4f[]> frames = new ArrayList<>(numFrames);
+            for(int i = 0; i < numFrames; i++) {
+                Matrix4f[] boneMatrices = new Matrix4f[numBones];
+                for(int j = 0; j < numBones; j++) {
+                    boneMatrices[j] = new Matrix4f();
+                }
+                sample(i, boneMatrices);
+                frames.add(boneMatrices);
+            }
+            return encode(name, duration, numBones, frames, encoding);
+        }
+
+        // Writes the bone matrices of the frame to the first numBones palette matrices.
+        public void sample(int frame, Matrix4f[] palette) {
+            int floatsPerBone = encoding.getFloatsPerBone();
+            int offset = frame * numBones * floatsPerBone;
+            float[] data = boneData;
+            for(int i = 0; i < numBones; i++) {
+                if(encoding == BoneEncoding.MATRIX) {
+                    palette[i].set(data[offset], data[offset + 1], data[offset + 2], 0.0f
+                            , data[offset + 3], data[offset + 4], data[offset + 5], 0.0f
+                            , data[offset + 6], data[offset + 7], data[offset + 8], 0.0f
+                            , data[offset + 9], data[offset + 10], data[offset + 11], 1.0f);
+                } else {
+                    palette[i].translationRotateScale(data[offset + 4], data[offset + 5], data[offset + 6]
+                            , data[offset], data[offset + 1], data[offset + 2], data[offset + 3]
+                            , data[offset + 7], data[offset + 8], data[offset + 9]);
+                }
+                offset += floatsPerBone;
+            }
+        }
+
+        // Interpolates the bone transforms of two frames into the first numBones palette matrices.
+        // Matrices are lerped like the frames were before, quaternions are normalized lerped.
+        public void sample(int frame, int nextFrame, float factor, Matrix4f[] palette) {
+            int floatsPerBone = encoding.getFloatsPerBone();
+            int offset = frame * numBones * floatsPerBone;
+            int nextOffset = nextFrame * numBones * floatsPerBone;
+            float[] data = boneData;
+            for(int i = 0; i < numBones; i++) {
+                if(encoding == BoneEncoding.MATRIX) {
+                    palette[i].set(lerp(data, offset, nextOffset, factor)
+                            , lerp(data, offset + 1, nextOffset + 1, factor)
+                            , lerp(data, offset + 2, nextOffset + 2, factor), 0.0f
+                            , lerp(data, offset + 3, nextOffset + 3, factor)
+                            , lerp(data, offset + 4, nextOffset + 4, factor)
+                            , lerp(data, offset + 5, nextOffset + 5, factor), 0.0f
+                            , lerp(data, offset + 6, nextOffset + 6, factor)
+                            , lerp(data, offset + 7, nextOffset + 7, factor)
+                            , lerp(data, offset + 8, nextOffset + 8, factor), 0.0f
+                            , lerp(data, offset + 9, nextOffset + 9, factor)
+                            , lerp(data, offset + 10, nextOffset + 10, factor)
+                            , lerp(data, offset + 11, nextOffset + 11, factor), 1.0f);
+                } else {
+                    // Take the shortest path between the two rotations.
+                    float sign = data[offset] * data[nextOffset] + data[offset + 1] * data[nextOffset + 1]
+                            + data[offset + 2] * data[nextOffset + 2] + data[offset + 3] * data[nextOffset + 3]
+                            < 0.0f ? -1.0f : 1.0f;
+                    float qx = data[offset] + (sign * data[nextOffset] - data[offset]) * factor;
+                    float qy = data[offset + 1] + (sign * data[nextOffset + 1] - data[offset + 1]) * factor;
+                    float qz = data[offset + 2] + (sign * data[nextOffset + 2] - data[offset + 2]) * factor;
+                    float qw = data[offset + 3] + (sign * data[nextOffset + 3] - data[offset + 3]) * factor;
+                    float invLength = 1.0f / (float) Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+                    palette[i].translationRotateScale(lerp(data, offset + 4, nextOffset + 4, factor)
+                            , lerp(data, offset + 5, nextOffset + 5, factor)
+                            , lerp(data, offset + 6, nextOffset + 6, factor)
+                            , qx * invLength, qy * invLength, qz * invLength, qw * invLength
+                            , lerp(data, offset + 7, nextOffset + 7, factor)
+                            , lerp(data, offset + 8, nextOffset + 8, factor)
+                            , lerp(data, offset + 9, nextOffset + 9, factor));
+                }
+                offset += floatsPerBone;
+                nextOffset += floatsPerBone;
+            }
+        }
+
+        // Approximate heap size of the clip with compressed object pointers,
+        // the record and the float array with their object headers.
+        public long heapBytes() {
+            return 32 + 16 + (long) boneData.length * Float.BYTES;
+        }
+
+        private static float lerp(float[] data, int offset, int nextOffset, float factor) {
+            return data[offset] + (data[nextOffset] - data[offset]) * factor;
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL43.*;
+
+// Draws the static instances of the meshes in a GeometryArena with glMultiDrawElementsIndirect, one call per set
+// of material textures instead of one per mesh LOD. Every queued mesh LOD becomes a DrawElementsIndirectCommand,
+// and every instance of it a draw record with the index of its model matrix in the instance buffer and the index
+// of its material in the frame's material buffer. The records are an instanced attribute starting at the
+// command's base instance, GL 4.3 has no gl_DrawID or gl_BaseInstance. The scene shaders read the matrices and
+// materials from storage buffers in their INDIRECT variant.
+class MultiDrawRender {
+    // Storage buffer bindings of the INDIRECT variant of the scene shaders.
+    static final int INSTANCE_MATRICES_BINDING = 0;
+    static final int MATERIALS_BINDING = 1;
+    private static final int DRAW_RECORD_LOCATION = 12;
+    // DrawElementsIndirectCommand: count, instanceCount, firstIndex, baseVertex and baseInstance.
+    static final int COMMAND_SIZE_INTS = 5;
+    // Instance matrix index and material index.
+    static final int RECORD_SIZE_INTS = 2;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final GeometryArena geometryArena;
+    private final ShaderProgram shaderProgram;
+    private final int commandBufferId;
+    private final int recordBufferId;
+    private final int materialBufferId;
+    // Queued draws sorted by texture set and material, the payloads index the arrays below.
+    private final RenderQueue drawQueue = new RenderQueue();
+    private final List<Material> drawMaterials = new ArrayList<>();
+    private final List<Mesh> drawMeshes = new ArrayList<>();
+    private int[] drawLods = new int[INITIAL_CAPACITY];
+    private int[] drawFirstInstances = new int[INITIAL_CAPACITY];
+    private int[] drawInstanceCounts = new int[INITIAL_CAPACITY];
+    private int[] drawTextureSets = new int[INITIAL_CAPACITY];
+    private int numDraws;
+    private int numInstances;
+    // Staging data of the frame's commands, records and materials.
+    private IntBuffer commands = MemoryUtil.memAllocInt(INITIAL_CAPACITY * COMMAND_SIZE_INTS);
+    private IntBuffer records = MemoryUtil.memAllocInt(INITIAL_CAPACITY * RECORD_SIZE_INTS);
+    private ByteBuffer materialData = MemoryUtil.memAlloc(INITIAL_CAPACITY * SceneRender.MATERIAL_DATA_SIZE);
+
+    MultiDrawRender(GeometryArena geometryArena) {
+        this.geometryArena = geometryArena;
+        shaderProgram = createSceneShaderProgram();
+        commandBufferId = glGenBuffers();
+        recordBufferId = glGenBuffers();
+        materialBufferId = glGenBuffers();
+    }
+
+    // The INDIRECT variant of the scene shaders.
+    static ShaderProgram createSceneShaderProgram() {
+        List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
+        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData(
+                "resources/shaders/scene.frag", GL_FRAGMENT_SHADER));
+        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData(
+                "resources/shaders/scene.vert", GL_VERTEX_SHADER));
+        ShaderProgram shaderProgram = new ShaderProgram(shaderModuleDataList, List.of("INDIRECT"), "430 core");
+        shaderProgram.bindUniformBlock("CameraData", UniformBuffer.CAMERA_BINDING);
+        UniformMap uniformMap = new UniformMap(shaderProgram.getProgramId());
+        SceneRender.createSamplerUniforms(uniformMap);
+        SceneRender.setSamplers(shaderProgram, uniformMap);
+        return shaderProgram;
+    }
+
+    // Binds the arena's VAO with its draw record attribute pointing to the record buffer, every command starts
+    // at its records. The GPU culled draws use their own record buffer, so it's pointed again before each use.
+    static void bindDrawRecords(GeometryArena geometryArena, int recordBufferId) {
+        GLState.bindVertexArray(geometryArena.getVaoId());
+        glBindBuffer(GL_ARRAY_BUFFER, recordBufferId);
+        glEnableVertexAttribArray(DRAW_RECORD_LOCATION);
+        glVertexAttribIPointer(DRAW_RECORD_LOCATION, RECORD_SIZE_INTS, GL_UNSIGNED_INT, 0, 0);
+        glVertexAttribDivisor(DRAW_RECORD_LOCATION, 1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    // Writes the command-th DrawElementsIndirectCommand, its instances read the records from baseInstance on.
+    // The arena's indices already have the mesh's first vertex added, so the base vertex is always 0.
+    static void putCommand(IntBuffer commands, int command, int indexCount, int instanceCount, int firstIndex
+            , int baseInstance) {
+        int offset = command * COMMAND_SIZE_INTS;
+        commands.put(offset, indexCount);
+        commands.put(offset + 1, instanceCount);
+        commands.put(offset + 2, firstIndex);
+        commands.put(offset + 3, 0);
+        commands.put(offset + 4, baseInstance);
+    }
+
+    // Writes the records of instanceCount instances from firstRecord on, their model matrices follow each other
+    // in the instance buffer from firstInstance on.
+    static void putRecords(IntBuffer records, int firstRecord, int firstInstance, int instanceCount
+            , int materialIndex) {
+        for(int i = 0; i < instanceCount; i++) {
+            int offset = (firstRecord + i) * RECORD_SIZE_INTS;
+            records.put(offset, firstInstance + i);
+            records.put(offset + 1, materialIndex);
+        }
+    }
+
+    // Disables the draw record attribute again while the arena's VAO is still bound, the other passes draw the
+    // arena's meshes with the same VAO.
+    static void unbindDrawRecords() {
+        glDisableVertexAttribArray(DRAW_RECORD_LOCATION);
+    }
+
+    void cleanup() {
+        shaderProgram.cleanup();
+        glDeleteBuffers(commandBufferId);
+        glDeleteBuffers(recordBufferId);
+        glDeleteBuffers(materialBufferId);
+        MemoryUtil.memFree(commands);
+        MemoryUtil.memFree(records);
+        MemoryUtil.memFree(materialData);
+    }
+
+    void clear() {
+        drawQueue.clear();
+        drawMaterials.clear();
+        drawMeshes.clear();
+        numDraws = 0;
+        numInstances = 0;
+    }
+
+    // Queues a draw per LOD of the mesh with visible instances, the instance ranges are the ones of the
+    // SceneRender's instance buffer. LODs the mesh doesn't have use its coarsest one.
+    void add(Material material, Mesh mesh, int[] lodFirstInstances, int[] lodInstanceCounts
+            , TextureCache textureCache, float screenPixels) {
+        int textureSetId = material.getTextureSetId(textureCache);
+        for(Texture texture : material.getTextures(textureCache)) {
+            if(texture != null) {
+                texture.requestScreenSize(screenPixels);
+            }
+        }
+
+        int lod = 0;
+        while(lod < lodFirstInstances.length) {
+            int meshLod = Math.min(lod, mesh.getNumLods() - 1);
+            int firstInstance = lodFirstInstances[lod];
+            int instanceCount = 0;
+            while(lod < lodFirstInstances.length && Math.min(lod, mesh.getNumLods() - 1) == meshLod) {
+                instanceCount += lodInstanceCounts[lod];
+                lod++;
+            }
+            if(instanceCount > 0) {
+                addDraw(material, mesh, meshLod, firstInstance, instanceCount, textureSetId);
+            }
+        }
+    }
+
+    // Builds and uploads the commands of the queued draws and submits them, the instance buffer must hold the
+    // frame's static instances already.
+    void render(InstanceBuffer instanceBuffer, TextureCache textureCache) {
+        if(numDraws == 0) {
+            return;
+        }
+        drawQueue.sort();
+        ensureStagingCapacity();
+
+        // The materials get consecutive indices in sorted order, each is written once.
+        Material lastMaterial = null;
+        int numMaterials = 0;
+        int numRecords = 0;
+        for(int i = 0; i < numDraws; i++) {
+            int draw = drawQueue.getPayload(i);
+            Material material = drawMaterials.get(draw);
+            if(material != lastMaterial) {
+                SceneRender.putMaterialData(materialData, numMaterials * SceneRender.MATERIAL_DATA_SIZE, material
+                        , material.getTextures(textureCache));
+                numMaterials++;
+                lastMaterial = material;
+            }
+
+            Mesh mesh = drawMeshes.get(draw);
+            int indexCount = mesh.getLodIndexCount(drawLods[draw]);
+            int instanceCount = drawInstanceCounts[draw];
+            putCommand(commands, i, indexCount, instanceCount, mesh.getLodFirstIndex(drawLods[draw]), numRecords);
+            putRecords(records, numRecords, drawFirstInstances[draw], instanceCount, numMaterials - 1);
+            numRecords += instanceCount;
+            RenderStats.addIndirectDraw(RenderStats.Pass.GEOMETRY, instanceCount, indexCount
+                    , mesh.getNumVertices());
+        }
+        commands.limit(numDraws * COMMAND_SIZE_INTS);
+        records.limit(numRecords * RECORD_SIZE_INTS);
+        materialData.limit(numMaterials * SceneRender.MATERIAL_DATA_SIZE);
+        // Each upload orphans the previous storage, see InstanceBuffer.
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandBufferId);
+        glBufferData(GL_DRAW_INDIRECT_BUFFER, commands, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, recordBufferId);
+        glBufferData(GL_ARRAY_BUFFER, records, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, materialBufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, materialData, GL_STREAM_DRAW);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        RenderStats.addUploadBytes((long) (commands.remaining() + records.remaining()) * Integer.BYTES
+                + materialData.remaining());
+        commands.clear();
+        records.clear();
+        materialData.clear();
+
+        shaderProgram.bind();
+        bindDrawRecords(geometryArena, recordBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, INSTANCE_MATRICES_BINDING, instanceBuffer.getVboId());
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, MATERIALS_BINDING, materialBufferId);
+        // The command buffer is still bound to GL_DRAW_INDIRECT_BUFFER, one call per run of commands sharing the textures.
+        int runStart = 0;
+        for(int i = 0; i < numDraws; i++) {
+            int textureSetId = drawTextureSets[drawQueue.getPayload(i)];
+            if(i + 1 < numDraws && drawTextureSets[drawQueue.getPayload(i + 1)] == textureSetId) {
+                continue;
+            }
+            bindTextures(drawMaterials.get(drawQueue.getPayload(runStart)).getTextures(textureCache));
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT
+                    , (long) runStart * COMMAND_SIZE_INTS * Integer.BYTES, i + 1 - runStart, 0);
+            RenderStats.addMultiDrawCall(RenderStats.Pass.GEOMETRY);
+            runStart = i + 1;
+        }
+        unbindDrawRecords();
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    private void addDraw(Material material, Mesh mesh, int lod, int firstInstance, int instanceCount
+            , int textureSetId) {
+        if(numDraws == drawLods.length) {
+            int capacity = drawLods.length * 2;
+            drawLods = Arrays.copyOf(drawLods, capacity);
+            drawFirstInstances = Arrays.copyOf(drawFirstInstances, capacity);
+            drawInstanceCounts = Arrays.copyOf(drawInstanceCounts, capacity);
+            drawTextureSets = Arrays.copyOf(drawTextureSets, capacity);
+        }
+        drawMaterials.add(material);
+        drawMeshes.add(mesh);
+        drawLods[numDraws] = lod;
+        drawFirstInstances[numDraws] = firstInstance;
+        drawInstanceCounts[numDraws] = instanceCount;
+        drawTextureSets[numDraws] = textureSetId;
+        // Grouped by textures, then by material so each material is written once.
+        drawQueue.add(RenderQueue.createKey(0, textureSetId, material.getMaterialId(), 0.0f), numDraws);
+        numDraws++;
+        numInstances += instanceCount;
+    }
+
+    // Every draw may add a material, and a record per instance.
+    private void ensureStagingCapacity() {
+        if(commands.capacity() < numDraws * COMMAND_SIZE_INTS) {
+            commands = MemoryUtil.memRealloc(commands, numDraws * COMMAND_SIZE_INTS * 2);
+        }
+        if(records.capacity() < numInstances * RECORD_SIZE_INTS) {
+            records = MemoryUtil.memRealloc(records, numInstances * RECORD_SIZE_INTS * 2);
+        }
+        if(materialData.capacity() < numDraws * SceneRender.MATERIAL_DATA_SIZE) {
+            materialData = MemoryUtil.memRealloc(materialData, numDraws * SceneRender.MATERIAL_DATA_SIZE * 2);
+        }
+    }
+
+    // GLState skips the units still holding the texture.
+    static void bindTextures(Texture[] textures) {
+        for(int texUnit = 0; texUnit < Material.NUM_TEXTURES; texUnit++) {
+            Texture texture = textures[texUnit];
+            if(texture != null) {
+                texture.bind(GL_TEXTURE0 + texUnit);
+            }
+        }
+    }
+}
@@ -13,7 +13,7 @@ public class PointShadowBuffer {
         depthMapFBO = glGenFramebuffers();
         depthCubemaps = new CubemapTextureArray(MAX_POINT_LIGHT_SHADOWS, SHADOW_CUBEMAP_RESOLUTION);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT
                 , GL_TEXTURE_CUBE_MAP_POSITIVE_X, depthCubemaps.getIds()[0], 0);
         glDrawBuffer(GL_NONE);
@@ -23,11 +23,11 @@ public class PointShadowBuffer {
             throw new RuntimeException("Could not create PointShadowBuffer's framebuffer");
         }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     public void cleanup() {
-        glDeleteFramebuffers(depthMapFBO);
+        GLState.deleteFramebuffer(depthMapFBO);
         depthCubemaps.cleanup();
     }
 
@@ -42,8 +42,7 @@ public class PointShadowBuffer {
     public void bindTextures(int start) {
         int[]ids = depthCubemaps.getIds();
         for(int i = 0; i < MAX_POINT_LIGHT_SHADOWS; i++) {
-            glActiveTexture(start + i);
-            glBindTexture(GL_TEXTURE_CUBE_MAP, ids[i]);
+            GLState.bindTexture(start + i, GL_TEXTURE_CUBE_MAP, ids[i]);
         }
     }
 }
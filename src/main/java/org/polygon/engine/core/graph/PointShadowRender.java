@@ -2,6 +2,7 @@ package org.polygon.engine.core.graph;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 import org.polygon.engine.core.scene.AnimationData;
 import org.polygon.engine.core.scene.Entity;
 import org.polygon.engine.core.scene.Scene;
@@ -29,10 +30,29 @@ public class PointShadowRender {
             new Vector3f(0, -1, 0), new Vector3f(0, -1, 0)
     };
 
-    private ShaderProgram shaderProgram;
-    private UniformMap uniformMap;
+    // Static models are drawn without skinning and without any bone data, the animated ones with the
+    // SKINNED variant of the shader.
+    private ShaderProgram staticShaderProgram;
+    private UniformMap staticUniformMap;
+    private ShaderProgram skinnedShaderProgram;
+    private UniformMap skinnedUniformMap;
     private PointShadowBuffer pointShadowBuffer;
     private final List<PointLight> activeShadowLights;
+    // Casters in reach of the light being rendered and the ones inside the current cube face.
+    private final VisibleEntities lightEntities = new VisibleEntities();
+    private final VisibleEntities faceEntities = new VisibleEntities();
+    // Picks the LODs with the main camera, so the shadows match the drawn meshes.
+    private final LodSelector lodSelector = new LodSelector();
+    private final ShadowCasterQueue casterQueue = new ShadowCasterQueue();
+    // Skinning uniform state of the current render, see setBones.
+    private final Vector4f animationFrame = new Vector4f();
+    private boolean defaultBonesSet;
+    private int bakedAnimation;
+    private final Frustum faceFrustum = new Frustum();
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Matrix4f viewMatrix = new Matrix4f();
+    private final Matrix4f projViewMatrix = new Matrix4f();
+    private final Vector3f faceCenter = new Vector3f();
 
     public PointShadowRender() {
         List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
@@ -40,25 +60,41 @@ public class PointShadowRender {
                         "resources/shaders/point_shadow.vert", GL_VERTEX_SHADER));
         shaderModuleDataList.add(new ShaderProgram.ShaderModuleData(
                         "resources/shaders/point_shadows.frag", GL_FRAGMENT_SHADER));
-        shaderProgram = new ShaderProgram(shaderModuleDataList);
+        staticShaderProgram = new ShaderProgram(shaderModuleDataList);
+        skinnedShaderProgram = new ShaderProgram(shaderModuleDataList, List.of("SKINNED"));
 
         pointShadowBuffer = new PointShadowBuffer();
         activeShadowLights = new ArrayList<>();
 
         createUniforms();
+
+        skinnedShaderProgram.bind();
+        skinnedUniformMap.setUniform("animationSampler", AnimationTexture.TEXTURE_UNIT);
+        skinnedShaderProgram.unbind();
     }
 
     private void createUniforms() {
-        uniformMap = new UniformMap(shaderProgram.getProgramId());
+        staticUniformMap = new UniformMap(staticShaderProgram.getProgramId());
+        createLightUniforms(staticUniformMap);
+
+        skinnedUniformMap = new UniformMap(skinnedShaderProgram.getProgramId());
+        createLightUniforms(skinnedUniformMap);
+        skinnedUniformMap.createUniform("bonesMatrices");
+        skinnedUniformMap.createUniform("animationSampler");
+        skinnedUniformMap.createUniform("bakedAnimation");
+        skinnedUniformMap.createUniform("animationFrame");
+    }
+
+    private static void createLightUniforms(UniformMap uniformMap) {
         uniformMap.createUniform("modelMatrix");
         uniformMap.createUniform("projViewMatrix");
-        uniformMap.createUniform("bonesMatrices");
         uniformMap.createUniform("lightPos");
         uniformMap.createUniform("farPlane");
     }
 
     public void cleanup() {
-        shaderProgram.cleanup();
+        staticShaderProgram.cleanup();
+        skinnedShaderProgram.cleanup();
         pointShadowBuffer.cleanup();
     }
 
@@ -78,10 +114,16 @@ public class PointShadowRender {
             return;
         }
 
-        Vector3f cameraPos = scene.getCamera().getPosition();
+        selectShadowCastingLights(sceneLights.getPointLightList(), scene.getCamera().getPosition()
+                , activeShadowLights);
+    }
 
+    // Picks the shadow casting point lights closest to the camera, up to MAX_POINT_LIGHT_SHADOWS.
+    // Pure CPU work, the selected lights are added to outLights.
+    public static void selectShadowCastingLights(List<PointLight> pointLights, Vector3f cameraPos
+            , List<PointLight> outLights) {
         List<PointLight> castingShadowPointLights = new ArrayList<>();
-        for(PointLight pointLight : sceneLights.getPointLightList()) {
+        for(PointLight pointLight : pointLights) {
             if(pointLight.isShadowCasting()) {
                 castingShadowPointLights.add(pointLight);
             }
@@ -92,22 +134,28 @@ public class PointShadowRender {
 
         int count = Math.min(castingShadowPointLights.size(), PointShadowBuffer.MAX_POINT_LIGHT_SHADOWS);
         for(int i = 0; i < count; i++) {
-            activeShadowLights.add(castingShadowPointLights.get(i));
+            outLights.add(castingShadowPointLights.get(i));
         }
     }
 
-    public void render(Scene scene) {
+    public void render(Scene scene, AnimationTexture animationTexture) {
         selectShadowCastingLights(scene);
         if(activeShadowLights.isEmpty()) {
             return;
         }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, pointShadowBuffer.getDepthMapFBO());
-        glViewport(0, 0
+        lodSelector.update(scene);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, pointShadowBuffer.getDepthMapFBO());
+        GLState.viewport(0, 0
                 , PointShadowBuffer.SHADOW_CUBEMAP_RESOLUTION, PointShadowBuffer.SHADOW_CUBEMAP_RESOLUTION);
-        shaderProgram.bind();
+        if(AnimationTexture.isEnabled()) {
+            animationTexture.bind();
+        }
+        // The uniform values from the last frame aren't trusted.
+        defaultBonesSet = false;
+        bakedAnimation = -1;
 
-        Collection<Model> models = scene.getModelMap().values();
+        Collection<Model> models = scene.getRenderModels();
         int[] cubemapIds = pointShadowBuffer.getDepthCubemaps().getIds();
 
         for(int lightSlot = 0; lightSlot < activeShadowLights.size(); lightSlot++) {
@@ -115,44 +163,91 @@ public class PointShadowRender {
             Vector3f lightPos = pointLight.getPosition();
             float farPlane = pointLight.getRadius();
 
-            Matrix4f projection = new Matrix4f().perspective(
-                    (float) Math.toRadians(90.0f), 1.0f, NEAR_PLANE, farPlane);
+            projectionMatrix.setPerspective((float) Math.toRadians(90.0f), 1.0f, NEAR_PLANE, farPlane);
 
-            uniformMap.setUniform("lightPos", lightPos);
-            uniformMap.setUniform("farPlane", farPlane);
+            // Entities outside the light's radius can't cast a shadow in its cubemap.
+            lightEntities.query(scene.getBvh(), lightPos, farPlane);
 
             for(int face = 0; face < 6; face++) {
                 glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT
                         , GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, cubemapIds[lightSlot], 0);
                 glClear(GL_DEPTH_BUFFER_BIT);
 
-                Vector3f center = new Vector3f(lightPos).add(FACE_DIRECTIONS[face]);
-                Matrix4f view = new Matrix4f().lookAt(lightPos, center, FACE_UPS[face]);
-                Matrix4f projViewMatrix = new Matrix4f(projection).mul(view);
-                uniformMap.setUniform("projViewMatrix", projViewMatrix);
-
-                for(Model model : models) {
-                    List<Entity> entityList = model.getEntityList();
-                    for(Material material : model.getMaterialList()) {
-                        for(Mesh mesh : material.getMeshList()) {
-                            glBindVertexArray(mesh.getVaoId());
-                            for(Entity entity : entityList) {
-                                uniformMap.setUniform("modelMatrix", entity.getModelMatrix());
-                                AnimationData animationData = entity.getAnimationData();
-                                if(animationData == null) {
-                                    uniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
-                                } else {
-                                    uniformMap.setUniform("bonesMatrices"
-                                            , animationData.getCurrentFrame().boneMatrices());
-                                }
-                                glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
-                            }
-                        }
-                    }
+                lightPos.add(FACE_DIRECTIONS[face], faceCenter);
+                viewMatrix.setLookAt(lightPos, faceCenter, FACE_UPS[face]);
+                projectionMatrix.mul(viewMatrix, projViewMatrix);
+
+                faceFrustum.update(projViewMatrix);
+                faceEntities.filter(lightEntities, models, faceFrustum);
+
+                casterQueue.build(models, faceEntities, lodSelector, false);
+                renderCasters(lightPos, farPlane, animationTexture);
+            }
+        }
+        skinnedShaderProgram.unbind();
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    private void setLightUniforms(UniformMap uniformMap, Vector3f lightPos, float farPlane) {
+        uniformMap.setUniform("projViewMatrix", projViewMatrix);
+        uniformMap.setUniform("lightPos", lightPos);
+        uniformMap.setUniform("farPlane", farPlane);
+    }
+
+    // Draws the queued casters of the cube face, each shader program is bound once.
+    private void renderCasters(Vector3f lightPos, float farPlane, AnimationTexture animationTexture) {
+        ShaderProgram boundProgram = null;
+        for(int i = 0; i < casterQueue.size(); i++) {
+            boolean animated = casterQueue.isAnimated(i);
+            UniformMap uniformMap = animated ? skinnedUniformMap : staticUniformMap;
+            ShaderProgram shaderProgram = animated ? skinnedShaderProgram : staticShaderProgram;
+            if(shaderProgram != boundProgram) {
+                shaderProgram.bind();
+                setLightUniforms(uniformMap, lightPos, farPlane);
+                boundProgram = shaderProgram;
+            }
+
+            Mesh mesh = casterQueue.getMesh(i);
+            List<Entity> entityList = casterQueue.getEntityList(i);
+            GLState.bindVertexArray(mesh.getVaoId());
+            for(int j = 0; j < entityList.size(); j++) {
+                Entity entity = entityList.get(j);
+                uniformMap.setUniform("modelMatrix", entity.getRenderModelMatrix());
+                if(animated) {
+                    setBones(entity.getAnimationData(), animationTexture);
                 }
+                int lod = casterQueue.getEntityLod(i, j);
+                int indexCount = mesh.getLodIndexCount(lod);
+                glDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT, mesh.getLodIndexOffset(lod));
+                RenderStats.addDrawCall(RenderStats.Pass.POINT_SHADOW, 1, indexCount, mesh.getNumVertices());
             }
         }
-        shaderProgram.unbind();
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    // Sets the skinning uniforms of the entity. Entities of animated models without an animation share the
+    // default bone matrices, they're only uploaded again after an animated entity, and baked animations only
+    // need their frame.
+    private void setBones(AnimationData animationData, AnimationTexture animationTexture) {
+        if(animationData == null) {
+            setBakedAnimation(0);
+            if(!defaultBonesSet) {
+                skinnedUniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
+                defaultBonesSet = true;
+            }
+        } else if(AnimationTexture.isEnabled() && animationTexture.getFrame(animationData, animationFrame)) {
+            setBakedAnimation(1);
+            skinnedUniformMap.setUniform("animationFrame", animationFrame);
+        } else {
+            setBakedAnimation(0);
+            skinnedUniformMap.setUniform("bonesMatrices", animationData.getRenderFrame().boneMatrices());
+            defaultBonesSet = false;
+        }
+    }
+
+    private void setBakedAnimation(int bakedAnimation) {
+        if(this.bakedAnimation != bakedAnimation) {
+            skinnedUniformMap.setUniform("bakedAnimation", bakedAnimation);
+            this.bakedAnimation = bakedAnimation;
+        }
     }
 }
@@ -31,7 +31,7 @@ public class QuadMesh {
         numVertices = indices.length;
 
         vaoId = glGenVertexArrays();
-        glBindVertexArray(vaoId);
+        GLState.bindVertexArray(vaoId);
 
         // Positions VBO
         int vboId = glGenBuffers();
@@ -62,7 +62,7 @@ public class QuadMesh {
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
 
         glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
+        GLState.bindVertexArray(0);
 
         MemoryUtil.memFree(positionsBuffer);
         MemoryUtil.memFree(textCoordsBuffer);
@@ -71,7 +71,7 @@ public class QuadMesh {
 
     public void cleanup() {
         vboIdList.forEach(GL40::glDeleteBuffers);
-        glDeleteVertexArrays(vaoId);
+        GLState.deleteVertexArray(vaoId);
     }
 
     public int getVaoId() {
@@ -0,0 +1,123 @@
+package org.polygon.engine.core.graph;
+
+import java.util.Arrays;
+
+// Draw items of a render pass as 64 bit sort keys, each with an int payload the pass uses to find the item's
+// draw data, e.g. an index into its own draw records. The keys are radix sorted every frame so the items sharing
+// a shader program, material and mesh are submitted after each other, and the pass can skip the binds that
+// wouldn't change anything. Primitive arrays reused between frames, nothing is allocated once they're grown.
+// Key layout from the most significant bits: program, material, mesh and depth, see createKey.
+public class RenderQueue {
+    public static final int PROGRAM_BITS = 4;
+    public static final int MATERIAL_BITS = 20;
+    public static final int MESH_BITS = 20;
+    public static final int DEPTH_BITS = 20;
+    private static final int MESH_SHIFT = DEPTH_BITS;
+    private static final int MATERIAL_SHIFT = MESH_SHIFT + MESH_BITS;
+    private static final int PROGRAM_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int NUM_DIGITS = Long.SIZE / RADIX_BITS;
+
+    private long[] keys;
+    private int[] payloads;
+    // Scatter targets of the radix sort, swapped with the arrays above after every pass.
+    private long[] sortKeys;
+    private int[] sortPayloads;
+    private final int[] counts = new int[NUM_DIGITS * RADIX];
+    private int size;
+
+    public RenderQueue() {
+        this(1024);
+    }
+
+    public RenderQueue(int initialCapacity) {
+        keys = new long[initialCapacity];
+        payloads = new int[initialCapacity];
+        sortKeys = new long[initialCapacity];
+        sortPayloads = new int[initialCapacity];
+    }
+
+    // Ids wider than their bits wrap around, that only makes some unrelated items share a group.
+    // Depth is a view distance or its square, nearer items of the same state are drawn first.
+    public static long createKey(int program, int material, int mesh, float depth) {
+        long depthBits = (Float.floatToRawIntBits(Math.max(depth, 0.0f)) >>> (Integer.SIZE - 1 - DEPTH_BITS));
+        return ((long) (program & ((1 << PROGRAM_BITS) - 1)) << PROGRAM_SHIFT)
+                | ((long) (material & ((1 << MATERIAL_BITS) - 1)) << MATERIAL_SHIFT)
+                | ((long) (mesh & ((1 << MESH_BITS) - 1)) << MESH_SHIFT)
+                | depthBits;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long key, int payload) {
+        if(size == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            sortKeys = new long[capacity];
+            sortPayloads = new int[capacity];
+        }
+        keys[size] = key;
+        payloads[size] = payload;
+        size++;
+    }
+
+    // Least significant digit first radix sort of the keys as unsigned values, stable, so items with equal keys
+    // keep the order they were added in. The digits every key shares are skipped, usually the high program bits.
+    public void sort() {
+        if(size < 2) {
+            return;
+        }
+        Arrays.fill(counts, 0);
+        for(int i = 0; i < size; i++) {
+            long key = keys[i];
+            for(int digit = 0; digit < NUM_DIGITS; digit++) {
+                counts[digit * RADIX + (int) ((key >>> (digit * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        for(int digit = 0; digit < NUM_DIGITS; digit++) {
+            int countsStart = digit * RADIX;
+            int shift = digit * RADIX_BITS;
+            if(counts[countsStart + (int) ((keys[0] >>> shift) & (RADIX - 1))] == size) {
+                continue;
+            }
+
+            // Counts to the start offsets of the buckets.
+            int offset = 0;
+            for(int bucket = countsStart; bucket < countsStart + RADIX; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = offset;
+                offset += count;
+            }
+            for(int i = 0; i < size; i++) {
+                long key = keys[i];
+                int target = counts[countsStart + (int) ((key >>> shift) & (RADIX - 1))]++;
+                sortKeys[target] = key;
+                sortPayloads[target] = payloads[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortKeys;
+            sortKeys = swapKeys;
+            int[] swapPayloads = payloads;
+            payloads = sortPayloads;
+            sortPayloads = swapPayloads;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getPayload(int index) {
+        return payloads[index];
+    }
+}
@@ -0,0 +1,193 @@
+package org.polygon.engine.core.graph;
+
+// Per-frame render counters, reset by the EngineRender at the start of every frame.
+// Render passes report each draw call they issue so batching can be measured without a GPU profiler.
+public class RenderStats {
+    // Every pass of the EngineRender, in render order.
+    public enum Pass {
+        // GPU culling dispatch, see GpuCulling.
+        CULLING,
+        SHADOW,
+        POINT_SHADOW,
+        GEOMETRY,
+        POST_GEOMETRY,
+        SSAO,
+        LIGHTING,
+        POST_LIGHTING,
+        SKYBOX,
+        FXAA,
+        GUI,
+    }
+
+    private static final int[] drawCalls = new int[Pass.values().length];
+    private static final int[] instances = new int[Pass.values().length];
+    private static final int[] triangles = new int[Pass.values().length];
+    // Triangles the draw calls would have rendered with the full detail LODs.
+    private static final int[] fullDetailTriangles = new int[Pass.values().length];
+    private static final int[] uniformUploads = new int[Pass.values().length];
+    // Bytes of the uniform uploads alone, also counted in uploadBytes.
+    private static final long[] uniformBytes = new long[Pass.values().length];
+    // Bytes sent to the GPU through uniforms, uniform blocks and streamed buffers.
+    private static final long[] uploadBytes = new long[Pass.values().length];
+    // GL state changes that reached GL and the redundant ones GLState elided.
+    private static final int[] stateCalls = new int[Pass.values().length];
+    private static final int[] elidedStateCalls = new int[Pass.values().length];
+    // Pass the uniform uploads are counted to, set by the FrameProfiler.
+    private static Pass currentPass = Pass.GEOMETRY;
+
+    private RenderStats() {
+
+    }
+
+    public static void reset() {
+        for(int i = 0; i < drawCalls.length; i++) {
+            drawCalls[i] = 0;
+            instances[i] = 0;
+            triangles[i] = 0;
+            fullDetailTriangles[i] = 0;
+            uniformUploads[i] = 0;
+            uniformBytes[i] = 0;
+            uploadBytes[i] = 0;
+            stateCalls[i] = 0;
+            elidedStateCalls[i] = 0;
+        }
+    }
+
+    // Records a single indexed triangles draw call that rendered instanceCount instances.
+    public static void addDrawCall(Pass pass, int instanceCount, int indexCount) {
+        addDrawCall(pass, instanceCount, indexCount, indexCount);
+    }
+
+    // Records a draw call of a mesh LOD, fullDetailIndexCount is the index count of the mesh's full detail LOD.
+    public static void addDrawCall(Pass pass, int instanceCount, int indexCount, int fullDetailIndexCount) {
+        drawCalls[pass.ordinal()]++;
+        addIndirectDraw(pass, instanceCount, indexCount, fullDetailIndexCount);
+    }
+
+    // Records one call submitting many draws, e.g. glMultiDrawElementsIndirect, see addIndirectDraw.
+    public static void addMultiDrawCall(Pass pass) {
+        drawCalls[pass.ordinal()]++;
+    }
+
+    // Records a draw submitted by a multi-draw call, its instances and triangles without a draw call.
+    public static void addIndirectDraw(Pass pass, int instanceCount, int indexCount, int fullDetailIndexCount) {
+        instances[pass.ordinal()] += instanceCount;
+        triangles[pass.ordinal()] += indexCount / 3 * instanceCount;
+        fullDetailTriangles[pass.ordinal()] += fullDetailIndexCount / 3 * instanceCount;
+    }
+
+    public static void addUniformUpload(int size) {
+        uniformUploads[currentPass.ordinal()]++;
+        uniformBytes[currentPass.ordinal()] += size;
+        uploadBytes[currentPass.ordinal()] += size;
+    }
+
+    // Counts buffer data streamed every frame, e.g. the instance matrices.
+    public static void addUploadBytes(long size) {
+        uploadBytes[currentPass.ordinal()] += size;
+    }
+
+    public static void addStateCall() {
+        stateCalls[currentPass.ordinal()]++;
+    }
+
+    public static void addElidedStateCall() {
+        elidedStateCalls[currentPass.ordinal()]++;
+    }
+
+    public static void setCurrentPass(Pass pass) {
+        currentPass = pass;
+    }
+
+    public static int getDrawCalls(Pass pass) {
+        return drawCalls[pass.ordinal()];
+    }
+
+    public static int getInstances(Pass pass) {
+        return instances[pass.ordinal()];
+    }
+
+    public static int getTriangles(Pass pass) {
+        return triangles[pass.ordinal()];
+    }
+
+    public static int getFullDetailTriangles(Pass pass) {
+        return fullDetailTriangles[pass.ordinal()];
+    }
+
+    public static int getUniformUploads(Pass pass) {
+        return uniformUploads[pass.ordinal()];
+    }
+
+    public static long getUniformBytes(Pass pass) {
+        return uniformBytes[pass.ordinal()];
+    }
+
+    public static long getUploadBytes(Pass pass) {
+        return uploadBytes[pass.ordinal()];
+    }
+
+    public static int getStateCalls(Pass pass) {
+        return stateCalls[pass.ordinal()];
+    }
+
+    public static int getElidedStateCalls(Pass pass) {
+        return elidedStateCalls[pass.ordinal()];
+    }
+
+    public static int getTotalDrawCalls() {
+        int total = 0;
+        for(int count : drawCalls) {
+            total += count;
+        }
+        return total;
+    }
+
+    public static int getTotalTriangles() {
+        int total = 0;
+        for(int count : triangles) {
+            total += count;
+        }
+        return total;
+    }
+
+    public static int getTotalFullDetailTriangles() {
+        int total = 0;
+        for(int count : fullDetailTriangles) {
+            total += count;
+        }
+        return total;
+    }
+
+    public static int getTotalStateCalls() {
+        int total = 0;
+        for(int count : stateCalls) {
+            total += count;
+        }
+        return total;
+    }
+
+    public static int getTotalElidedStateCalls() {
+        int total = 0;
+        for(int count : elidedStateCalls) {
+            total += count;
+        }
+        return total;
+    }
+
+    public static long getTotalUniformBytes() {
+        long total = 0;
+        for(long size : uniformBytes) {
+            total += size;
+        }
+        return total;
+    }
+
+    public static long getTotalUploadBytes() {
+        long total = 0;
+        for(long size : uploadBytes) {
+            total += size;
+        }
+        return total;
+    }
+}
@@ -31,7 +31,7 @@ public class SSAOBuffer {
 
     private int createTargetTexture(int width, int height){
         int textureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, width, height, 0, GL_RED, GL_UNSIGNED_BYTE
                 , (ByteBuffer) null);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
@@ -45,7 +45,7 @@ public class SSAOBuffer {
     private void createBuffers() {
         ssaoFboId = glGenFramebuffers();
         ssaoTextureId = createTargetTexture(width, height);
-        glBindFramebuffer(GL_FRAMEBUFFER, ssaoFboId);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, ssaoFboId);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, ssaoTextureId, 0);
 
         if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
@@ -54,32 +54,32 @@ public class SSAOBuffer {
 
         blurFboId = glGenFramebuffers();
         blurTextureId = createTargetTexture(width, height);
-        glBindFramebuffer(GL_FRAMEBUFFER, blurFboId);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, blurFboId);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, blurTextureId, 0);
 
         if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
             throw new IllegalStateException("ERROR: SSAO Blur Framebuffer is not complete!");
         }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     private void handleResize(long windowHandle, int newWidth, int newHeight) {
         width = newWidth;
         height = newHeight;
 
-        glBindTexture(GL_TEXTURE_2D, ssaoTextureId);
+        GLState.bindTexture(GL_TEXTURE_2D, ssaoTextureId);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, newWidth, newHeight, 0, GL_RED, GL_UNSIGNED_BYTE
                 , (ByteBuffer) null);
 
-        glBindTexture(GL_TEXTURE_2D, blurTextureId);
+        GLState.bindTexture(GL_TEXTURE_2D, blurTextureId);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, newWidth, newHeight, 0, GL_RED, GL_UNSIGNED_BYTE
                 , (ByteBuffer) null);
     }
 
     private int createFallbackWhiteTexture() {
         int textureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
 
         try(MemoryStack stack  = MemoryStack.stackPush()) {
             ByteBuffer whitePixel = stack.malloc(1);
@@ -89,30 +89,30 @@ public class SSAOBuffer {
 
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
 
         return textureId;
     }
 
     public void cleanup() {
         if(ssaoFboId != -1) {
-            glDeleteFramebuffers(ssaoFboId);
+            GLState.deleteFramebuffer(ssaoFboId);
             ssaoFboId = -1;
         }
         if(blurFboId != -1) {
-            glDeleteFramebuffers(blurFboId);
+            GLState.deleteFramebuffer(blurFboId);
             blurFboId = -1;
         }
         if(ssaoTextureId != -1) {
-            glDeleteTextures(ssaoTextureId);
+            GLState.deleteTexture(ssaoTextureId);
             ssaoTextureId = -1;
         }
         if(blurTextureId != -1) {
-            glDeleteTextures(blurTextureId);
+            GLState.deleteTexture(blurTextureId);
             blurTextureId = -1;
         }
         if(fallbackWhiteTextureId != -1) {
-            glDeleteTextures(fallbackWhiteTextureId);
+            GLState.deleteTexture(fallbackWhiteTextureId);
             fallbackWhiteTextureId = -1;
         }
     }
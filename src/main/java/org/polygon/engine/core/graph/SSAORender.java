@@ -60,7 +60,7 @@ public class SSAORender {
     }
 
     public void cleanup() {
-        glDeleteTextures(noiseTextureId);
+        GLState.deleteTexture(noiseTextureId);
         ssaoShaderProgram.cleanup();
         blurShaderProgram.cleanup();
         quadMesh.cleanup();
@@ -130,7 +130,7 @@ public class SSAORender {
             noiseData.flip();
 
             textureId = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, textureId);
+            GLState.bindTexture(GL_TEXTURE_2D, textureId);
             glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB16F, noiseSize, noiseSize, 0, GL_RGB, GL_FLOAT, noiseData);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
@@ -138,30 +138,27 @@ public class SSAORender {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 
-            glBindTexture(GL_TEXTURE_2D, 0);
+            GLState.bindTexture(GL_TEXTURE_2D, 0);
         }
 
         return textureId;
     }
 
     public void render(Scene scene, GBuffer gBuffer, SSAOBuffer ssaoBuffer) {
-        glDisable(GL_DEPTH_TEST);
-        glDisable(GL_BLEND);
+        GLState.disable(GL_DEPTH_TEST);
+        GLState.disable(GL_BLEND);
 
         // PASS 1 : raw ssao
-        glBindFramebuffer(GL_FRAMEBUFFER, ssaoBuffer.getSSAOFramebufferId());
-        glViewport(0, 0, ssaoBuffer.getWidth(), ssaoBuffer.getHeight());
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, ssaoBuffer.getSSAOFramebufferId());
+        GLState.viewport(0, 0, ssaoBuffer.getWidth(), ssaoBuffer.getHeight());
         glClear(GL_COLOR_BUFFER_BIT);
 
         ssaoShaderProgram.bind();
 
         int[] textureIds = gBuffer.getTextureIds();
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, textureIds[GBuffer.GBUFFER_IDX_DEPTH]);
-        glActiveTexture(GL_TEXTURE1);
-        glBindTexture(GL_TEXTURE_2D, textureIds[GBuffer.GBUFFER_IDX_NORMAL]);
-        glActiveTexture(GL_TEXTURE2);
-        glBindTexture(GL_TEXTURE_2D, noiseTextureId);
+        GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_2D, textureIds[GBuffer.GBUFFER_IDX_DEPTH]);
+        GLState.bindTexture(GL_TEXTURE1, GL_TEXTURE_2D, textureIds[GBuffer.GBUFFER_IDX_NORMAL]);
+        GLState.bindTexture(GL_TEXTURE2, GL_TEXTURE_2D, noiseTextureId);
 
         ssaoUniformMap.setUniform("depthSampler", 0);
         ssaoUniformMap.setUniform("normalSampler", 1);
@@ -175,27 +172,28 @@ public class SSAORender {
         ssaoUniformMap.setUniform("radius", radius);
         ssaoUniformMap.setUniform("bias", bias);
 
-        glBindVertexArray(quadMesh.getVaoId());
+        GLState.bindVertexArray(quadMesh.getVaoId());
         glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+        RenderStats.addDrawCall(RenderStats.Pass.SSAO, 1, quadMesh.getNumVertices());
 
         ssaoShaderProgram.unbind();
 
         // PASS 2 : blur. Note: same quad is still in bind mode no need to rebind the quad mesh again.
-        glBindFramebuffer(GL_FRAMEBUFFER, ssaoBuffer.getBlurFramebufferId());
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, ssaoBuffer.getBlurFramebufferId());
         glClear(GL_COLOR_BUFFER_BIT);
 
         blurShaderProgram.bind();
 
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, ssaoBuffer.getSSAOTextureId());
+        GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_2D, ssaoBuffer.getSSAOTextureId());
         blurUniformMap.setUniform("ssaoSampler", 0);
 
         glDrawElements(GL_TRIANGLES, quadMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+        RenderStats.addDrawCall(RenderStats.Pass.SSAO, 1, quadMesh.getNumVertices());
 
-        glBindVertexArray(0);
+        GLState.bindVertexArray(0);
         blurShaderProgram.unbind();
 
-        glEnable(GL_DEPTH_TEST);
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 }
@@ -25,11 +25,11 @@ public class SceneFBO {
     private void createFramebuffer() {
         // Create FBO
         fboId = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fboId);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, fboId);
 
         // Create Color Texture Attachment
         textureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA16F, width, height, 0, GL_RGBA, GL_FLOAT
                 , (ByteBuffer) null);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
@@ -54,17 +54,17 @@ public class SceneFBO {
         }
 
         // Unbind
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
         glBindRenderbuffer(GL_RENDERBUFFER, 0);
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     public void bind() {
-        glBindFramebuffer(GL_FRAMEBUFFER, fboId);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, fboId);
     }
 
     public void unbind() {
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     private void handleResize(long windowHandle, int newWidth, int newHeight) {
@@ -75,9 +75,9 @@ public class SceneFBO {
         this.height = newHeight;
 
         // Resize Texture
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA16F, width, height, 0, GL_RGBA, GL_FLOAT, (ByteBuffer) null);
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
 
         // Resize Depth Renderbuffer
         glBindRenderbuffer(GL_RENDERBUFFER, depthRenderBufferId);
@@ -87,11 +87,11 @@ public class SceneFBO {
 
     public void cleanup() {
         if (fboId != -1) {
-            glDeleteFramebuffers(fboId);
+            GLState.deleteFramebuffer(fboId);
             fboId = -1;
         }
         if (textureId != -1) {
-            glDeleteTextures(textureId);
+            GLState.deleteTexture(textureId);
             textureId = -1;
         }
         if (depthRenderBufferId != -1) {
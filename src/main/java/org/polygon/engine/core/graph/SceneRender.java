@@ -2,21 +2,82 @@ package org.polygon.engine.core.graph;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 import org.polygon.engine.core.scene.AnimationData;
 import org.polygon.engine.core.scene.Entity;
 import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.utils.MeshSimplifier;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import static org.lwjgl.opengl.GL40.*;
 
 public class SceneRender {
-    private ShaderProgram shaderProgram;
-    private UniformMap uniformMap;
+    private static final int INITIAL_INSTANCE_CAPACITY = 256;
+    // std140 size of the scene.frag MaterialData block, also the std430 stride of its Material struct.
+    static final int MATERIAL_DATA_SIZE = 64;
+    // Static models are drawn with a variant of the shaders without skinning, always instanced and without
+    // any bone data, the animated models with the SKINNED variant.
+    private ShaderProgram staticShaderProgram;
+    private UniformMap staticUniformMap;
+    private ShaderProgram skinnedShaderProgram;
+    private UniformMap skinnedUniformMap;
+    private InstanceBuffer instanceBuffer;
+    // Instances of the animated entities sampling a baked animation, with their animation frames.
+    private InstanceBuffer bakedInstanceBuffer;
     private final Matrix4f projViewAux = new Matrix4f();
+    // Draws of the visible meshes, sorted by program, material, mesh and depth before they're submitted.
+    private final RenderQueue renderQueue = new RenderQueue();
+    // Draw records of the queued items and the visible models, pooled between frames.
+    private final List<DrawItem> drawItems = new ArrayList<>();
+    private int numDrawItems;
+    private final List<ModelBatch> modelBatches = new ArrayList<>();
+    private int numModelBatches;
+    // Instances of all the visible models, every model's entities are uploaded after each other and split by LOD,
+    // so every LOD of a model draws a range of the instances.
+    private final List<Entity> staticEntities = new ArrayList<>();
+    // Same as above for the animated entities with a baked animation, instanced like the static ones.
+    private final List<Entity> bakedEntities = new ArrayList<>();
+    // Animated entities with their own bone matrices, drawn one by one.
+    private final List<Entity> animatedEntities = new ArrayList<>();
+    private int[] animatedLods = new int[INITIAL_INSTANCE_CAPACITY];
+    // Reused to split the visible entities of a model.
+    private final List<List<Entity>> lodEntities = new ArrayList<>();
+    private final List<List<Entity>> bakedLodEntities = new ArrayList<>();
+    private final Vector4f animationFrame = new Vector4f();
+    private final LodSelector lodSelector = new LodSelector();
+    private final VisibleEntities visibleEntities = new VisibleEntities();
+    // Draws the static instances of the arena meshes with multi-draw indirect calls, null when disabled.
+    private MultiDrawRender multiDrawRender;
+    // Draws the entities of the GPU culled models, which are skipped here, null when disabled.
+    private GpuCulling gpuCulling;
     public SceneRender() {
+        staticShaderProgram = createShaderProgram(List.of());
+        skinnedShaderProgram = createShaderProgram(List.of("SKINNED"));
+
+        // Initialize the uniformMaps
+        createUniforms();
+
+        // The texture units never change, set the samplers once.
+        setSamplers(staticShaderProgram, staticUniformMap);
+        setSamplers(skinnedShaderProgram, skinnedUniformMap);
+        skinnedShaderProgram.bind();
+        skinnedUniformMap.setUniform("animationSampler", AnimationTexture.TEXTURE_UNIT);
+        skinnedShaderProgram.unbind();
+
+        instanceBuffer = new InstanceBuffer(INITIAL_INSTANCE_CAPACITY);
+        bakedInstanceBuffer = new InstanceBuffer(INITIAL_INSTANCE_CAPACITY, true);
+        for(int i = 0; i < MeshSimplifier.MAX_LODS; i++) {
+            lodEntities.add(new ArrayList<>());
+            bakedLodEntities.add(new ArrayList<>());
+        }
+    }
+
+    static ShaderProgram createShaderProgram(List<String> defines) {
         // This will hold shader modules
         List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
         shaderModuleDataList.add(new ShaderProgram.ShaderModuleData(
@@ -24,172 +85,418 @@ public class SceneRender {
         shaderModuleDataList.add(new ShaderProgram.ShaderModuleData(
                 "resources/shaders/scene.vert", GL_VERTEX_SHADER));
         // Initialize A shader program
-        shaderProgram = new ShaderProgram(shaderModuleDataList);
-
-        // Initialize a uniformMap
-        createUniforms();
+        ShaderProgram shaderProgram = new ShaderProgram(shaderModuleDataList, defines);
+        shaderProgram.bindUniformBlock("CameraData", UniformBuffer.CAMERA_BINDING);
+        shaderProgram.bindUniformBlock("MaterialData", UniformBuffer.MATERIAL_BINDING);
+        return shaderProgram;
     }
 
     private void createUniforms() {
-        uniformMap = new UniformMap(shaderProgram.getProgramId());
-        uniformMap.createUniform("projectionMatrix");
-        uniformMap.createUniform("viewMatrix");
-        uniformMap.createUniform("modelMatrix");
+        staticUniformMap = new UniformMap(staticShaderProgram.getProgramId());
+        createSamplerUniforms(staticUniformMap);
+
+        skinnedUniformMap = new UniformMap(skinnedShaderProgram.getProgramId());
+        createSamplerUniforms(skinnedUniformMap);
+        skinnedUniformMap.createUniform("modelMatrix");
+        skinnedUniformMap.createUniform("instanced");
+        skinnedUniformMap.createUniform("bonesMatrices");
+        skinnedUniformMap.createUniform("animationSampler");
+        skinnedUniformMap.createUniform("bakedAnimation");
+    }
 
+    static void createSamplerUniforms(UniformMap uniformMap) {
         uniformMap.createUniform("baseColorSampler");
         uniformMap.createUniform("normalSampler");
         uniformMap.createUniform("metallicSampler");
         uniformMap.createUniform("roughnessSampler");
         uniformMap.createUniform("aoSampler");
         uniformMap.createUniform("emissiveSampler");
+    }
 
-        uniformMap.createUniform("material.diffuseColor");
-        uniformMap.createUniform("material.metallic");
-        uniformMap.createUniform("material.roughness");
-        uniformMap.createUniform("material.aoStrength");
-        uniformMap.createUniform("material.hasTexture");
-        uniformMap.createUniform("material.hasNormalMap");
-        uniformMap.createUniform("material.hasMetallicMap");
-        uniformMap.createUniform("material.hasRoughnessMap");
-        uniformMap.createUniform("material.hasAoMap");
-        uniformMap.createUniform("material.hasEmissiveMap");
-
-        uniformMap.createUniform("bonesMatrices");
+    static void setSamplers(ShaderProgram shaderProgram, UniformMap uniformMap) {
+        shaderProgram.bind();
+        uniformMap.setUniform("baseColorSampler", 0);
+        uniformMap.setUniform("normalSampler", 1);
+        uniformMap.setUniform("metallicSampler", 2);
+        uniformMap.setUniform("roughnessSampler", 3);
+        uniformMap.setUniform("aoSampler", 4);
+        uniformMap.setUniform("emissiveSampler", 5);
+        shaderProgram.unbind();
     }
 
     public void cleanup() {
-        // Destroy programId reference from shader program
-        shaderProgram.cleanup();
+        // Destroy programId reference from shader programs
+        staticShaderProgram.cleanup();
+        skinnedShaderProgram.cleanup();
+        instanceBuffer.cleanup();
+        bakedInstanceBuffer.cleanup();
+        if(multiDrawRender != null) {
+            multiDrawRender.cleanup();
+        }
     }
 
-    private List<Entity> getVisibleEntities(Model model, Frustum frustum) {
-        List<Entity> visible = new ArrayList<>();
-        Vector3f localMin = model.getAabbMinCorner();
-        Vector3f localMax = model.getAabbMaxCorner();
-
-        for(Entity entity : model.getEntityList()) {
-            if(frustum.isBoxVisible(localMin, localMax, entity.getModelMatrix())) {
-                visible.add(entity);
-            }
+    // Draws the static instances of the meshes in the arena with glMultiDrawElementsIndirect, needs GL 4.3.
+    // Null draws them one instanced call per mesh LOD like the other meshes.
+    public void setGeometryArena(GeometryArena geometryArena) {
+        if(multiDrawRender != null) {
+            multiDrawRender.cleanup();
         }
+        multiDrawRender = geometryArena != null ? new MultiDrawRender(geometryArena) : null;
+    }
 
-        return visible;
+    void setGpuCulling(GpuCulling gpuCulling) {
+        this.gpuCulling = gpuCulling;
     }
 
-    public void render(Scene scene, GBuffer gBuffer, Frustum frustum) {
-        glEnable(GL_FRAMEBUFFER_SRGB);
-        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, gBuffer.getGBufferId());
+    public void render(Scene scene, GBuffer gBuffer, Frustum frustum, AnimationTexture animationTexture) {
+        GLState.enable(GL_FRAMEBUFFER_SRGB);
+        GLState.bindFramebuffer(GL_DRAW_FRAMEBUFFER, gBuffer.getGBufferId());
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        glViewport(0, 0, gBuffer.getWidth(), gBuffer.getHeight());
+        GLState.viewport(0, 0, gBuffer.getWidth(), gBuffer.getHeight());
 
         // Ensure correct state for GBuffer pass
-        glEnable(GL_DEPTH_TEST);
-        glDepthMask(true);
-        glDisable(GL_BLEND);
-        glEnable(GL_CULL_FACE); // Standard back-face culling
-        glCullFace(GL_BACK);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.depthMask(true);
+        GLState.disable(GL_BLEND);
+        GLState.enable(GL_CULL_FACE); // Standard back-face culling
+        GLState.cullFace(GL_BACK);
 
         // update view Frustum
         projViewAux.set(scene.getProjection().getProjMatrix())
                 .mul(scene.getCamera().getViewMatrix());
         frustum.update(projViewAux);
 
-        shaderProgram.bind();
-
-        // Set the projectionMatrix uniform with the projection matrix stored in scene.
-        uniformMap.setUniform("projectionMatrix", scene.getProjection().getProjMatrix());
-        // set the viewMatrix uniform with the scene's camera viewMatrix.
-        uniformMap.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
-        // Set the texture sampler uniforms (texture units)
-        uniformMap.setUniform("baseColorSampler", 0);
-        uniformMap.setUniform("normalSampler", 1);
-        uniformMap.setUniform("metallicSampler", 2);
-        uniformMap.setUniform("roughnessSampler", 3);
-        uniformMap.setUniform("aoSampler", 4);
-        uniformMap.setUniform("emissiveSampler", 5);
+        boolean bakedAnimations = AnimationTexture.isEnabled();
+        visibleEntities.query(scene.getBvh(), frustum);
+        lodSelector.update(scene);
+        queueDraws(scene, gBuffer, bakedAnimations ? animationTexture : null);
 
+        // The instance data of all the models is uploaded once, the draws use ranges of it.
+        if(!staticEntities.isEmpty()) {
+            instanceBuffer.upload(staticEntities);
+        }
+        if(!bakedEntities.isEmpty()) {
+            bakedInstanceBuffer.upload(bakedEntities, animationTexture);
+        }
 
         // Draw calls initiated here
-
-        Collection<Model> models = scene.getModelMap().values();
+        // The projection and view matrices come from the CameraData block.
         TextureCache textureCache = scene.getTextureCache();
-        for(Model model : models) {
-            List<Entity> entityList = getVisibleEntities(model, frustum);
-            if(entityList.isEmpty()) {
-                continue;
-            }
+        if(multiDrawRender != null) {
+            multiDrawRender.render(instanceBuffer, textureCache);
+        }
+        if(gpuCulling != null) {
+            gpuCulling.renderGeometry(textureCache);
+        }
+        renderQueue.sort();
+        ShaderProgram boundProgram = null;
+        Material boundMaterial = null;
+        // Entities of animated models without an animation use the default bone matrices,
+        // upload them once for every instanced draw.
+        boolean defaultBonesSet = false;
+        // Last value of the instanced and bakedAnimation uniforms, -1 until they're set this frame.
+        int instanced = -1;
+        int bakedAnimation = -1;
+        for(int i = 0; i < renderQueue.size(); i++) {
+            DrawItem drawItem = drawItems.get(renderQueue.getPayload(i));
+            ModelBatch batch = drawItem.batch;
+            Mesh mesh = drawItem.mesh;
 
-            for(Material material : model.getMaterialList()) {
-                boolean hasTexture = material.getTexturePath() != null;
-                boolean hasNormalMap = material.getNormalMapPath() != null;
-                boolean hasMetallicMap = material.getMetallicMapPath() != null;
-                boolean hasRoughnessMap = material.getRoughnessMapPath() != null;
-                boolean hasAoMap = material.getAoMapPath() != null;
-                boolean hasEmissiveMap = material.getEmissiveMapPath() != null;
-
-                uniformMap.setUniform("material.diffuseColor", material.getDiffuseColor());
-                uniformMap.setUniform("material.metallic", material.getMetallic());
-                uniformMap.setUniform("material.roughness", material.getRoughness());
-                uniformMap.setUniform("material.aoStrength", material.getAoStrength());
-                uniformMap.setUniform("material.hasTexture", hasTexture ? 1 : 0);
-                uniformMap.setUniform("material.hasNormalMap", hasNormalMap ? 1 : 0);
-                uniformMap.setUniform("material.hasMetallicMap", hasMetallicMap ? 1 : 0);
-                uniformMap.setUniform("material.hasRoughnessMap", hasRoughnessMap ? 1 : 0);
-                uniformMap.setUniform("material.hasAoMap", hasAoMap ? 1 : 0);
-                uniformMap.setUniform("material.hasEmissiveMap", hasEmissiveMap ? 1 : 0);
-
-                // Bind textures
-                int texUnit = 0;
-                if (hasTexture) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getTexturePath()).bind();
+            ShaderProgram shaderProgram = drawItem.kind == DrawItem.STATIC ? staticShaderProgram
+                    : skinnedShaderProgram;
+            if(shaderProgram != boundProgram) {
+                shaderProgram.bind();
+                if(shaderProgram == skinnedShaderProgram && bakedAnimations) {
+                    animationTexture.bind();
                 }
-                texUnit++;
-                if(hasNormalMap) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getNormalMapPath()).bind();
-                }
-                texUnit++;
-                if(hasMetallicMap) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getMetallicMapPath()).bind();
+                boundProgram = shaderProgram;
+            }
+            if(drawItem.material != boundMaterial) {
+                bindMaterial(drawItem.material, textureCache, batch.screenPixels);
+                boundMaterial = drawItem.material;
+            }
+
+            switch(drawItem.kind) {
+                case DrawItem.STATIC -> drawInstancedLods(mesh, instanceBuffer, batch.lodFirstInstances
+                        , batch.lodInstanceCounts);
+                case DrawItem.DEFAULT_BONES -> {
+                    if(instanced != 1) {
+                        skinnedUniformMap.setUniform("instanced", 1);
+                        instanced = 1;
+                    }
+                    if(bakedAnimation != 0) {
+                        skinnedUniformMap.setUniform("bakedAnimation", 0);
+                        bakedAnimation = 0;
+                    }
+                    if(!defaultBonesSet) {
+                        skinnedUniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
+                        defaultBonesSet = true;
+                    }
+                    drawInstancedLods(mesh, instanceBuffer, batch.lodFirstInstances, batch.lodInstanceCounts);
                 }
-                texUnit++;
-                if(hasRoughnessMap) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getRoughnessMapPath()).bind();
+                // Baked animations are fetched by the vertex shader, only the instance data differs.
+                case DrawItem.BAKED -> {
+                    if(instanced != 1) {
+                        skinnedUniformMap.setUniform("instanced", 1);
+                        instanced = 1;
+                    }
+                    if(bakedAnimation != 1) {
+                        skinnedUniformMap.setUniform("bakedAnimation", 1);
+                        bakedAnimation = 1;
+                    }
+                    drawInstancedLods(mesh, bakedInstanceBuffer, batch.bakedLodFirstInstances
+                            , batch.bakedLodInstanceCounts);
                 }
-                texUnit++;
-                if(hasAoMap) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getAoMapPath()).bind();
+                // Animated entities need their own bone matrices, draw them one by one.
+                default -> {
+                    if(instanced != 0) {
+                        skinnedUniformMap.setUniform("instanced", 0);
+                        instanced = 0;
+                    }
+                    if(bakedAnimation != 0) {
+                        skinnedUniformMap.setUniform("bakedAnimation", 0);
+                        bakedAnimation = 0;
+                    }
+                    GLState.bindVertexArray(mesh.getVaoId());
+                    for(int j = batch.firstAnimatedEntity; j < batch.firstAnimatedEntity + batch.numAnimatedEntities
+                            ; j++) {
+                        Entity entity = animatedEntities.get(j);
+                        skinnedUniformMap.setUniform("modelMatrix", entity.getRenderModelMatrix());
+                        skinnedUniformMap.setUniform("bonesMatrices"
+                                , entity.getAnimationData().getRenderFrame().boneMatrices());
+                        int indexCount = mesh.getLodIndexCount(animatedLods[j]);
+                        glDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT
+                                , mesh.getLodIndexOffset(animatedLods[j]));
+                        RenderStats.addDrawCall(RenderStats.Pass.GEOMETRY, 1, indexCount, mesh.getNumVertices());
+                    }
+                    defaultBonesSet = false;
                 }
-                texUnit++;
-                if(hasEmissiveMap) {
-                    glActiveTexture(GL_TEXTURE0 + texUnit);
-                    textureCache.getTexture(material.getEmissiveMapPath()).bind();
+            }
+        }
+
+        GLState.bindVertexArray(0);
+        GLState.enable(GL_BLEND);
+        GLState.disable(GL_FRAMEBUFFER_SRGB);
+        if(boundProgram != null) {
+            boundProgram.unbind();
+        }
+    }
+
+    // Splits the visible entities of every model by LOD and kind of draw into the frame's instance lists,
+    // and queues a draw item per mesh and kind.
+    private void queueDraws(Scene scene, GBuffer gBuffer, AnimationTexture animationTexture) {
+        renderQueue.clear();
+        if(multiDrawRender != null) {
+            multiDrawRender.clear();
+        }
+        numDrawItems = 0;
+        numModelBatches = 0;
+        staticEntities.clear();
+        bakedEntities.clear();
+        animatedEntities.clear();
+        Vector3f cameraPosition = scene.getCamera().getPosition();
+
+        for(Model model : scene.getRenderModels()) {
+            if(gpuCulling != null && GpuCulling.isCulled(model)) {
+                continue;
+            }
+            List<Entity> entityList = visibleEntities.getEntityList(model.getModelId());
+            if(entityList.isEmpty()) {
+                continue;
+            }
+
+            ModelBatch batch = nextModelBatch();
+            for(int lod = 0; lod < MeshSimplifier.MAX_LODS; lod++) {
+                lodEntities.get(lod).clear();
+                bakedLodEntities.get(lod).clear();
+            }
+            batch.firstAnimatedEntity = animatedEntities.size();
+            // Largest projected size of the visible entities, the model's textures are streamed for it.
+            float maxScreenSize = 0.0f;
+            // Nearest visible entity, the model's draws are sorted front to back with it.
+            float minDistanceSquared = Float.MAX_VALUE;
+            for(Entity entity : entityList) {
+                float screenSize = lodSelector.getScreenSize(model, entity);
+                maxScreenSize = Math.max(maxScreenSize, screenSize);
+                Matrix4f modelMatrix = entity.getRenderModelMatrix();
+                minDistanceSquared = Math.min(minDistanceSquared, cameraPosition.distanceSquared(
+                        modelMatrix.m30(), modelMatrix.m31(), modelMatrix.m32()));
+                int lod = lodSelector.selectLod(screenSize);
+                AnimationData animationData = entity.getAnimationData();
+                if(!model.isAnimated() || animationData == null) {
+                    lodEntities.get(lod).add(entity);
+                } else if(animationTexture != null && animationTexture.getFrame(animationData, animationFrame)) {
+                    bakedLodEntities.get(lod).add(entity);
+                } else {
+                    addAnimatedEntity(entity, lod);
                 }
+            }
+            int numInstances = 0;
+            int numBakedInstances = 0;
+            for(int lod = 0; lod < MeshSimplifier.MAX_LODS; lod++) {
+                batch.lodFirstInstances[lod] = staticEntities.size();
+                batch.lodInstanceCounts[lod] = lodEntities.get(lod).size();
+                staticEntities.addAll(lodEntities.get(lod));
+                numInstances += batch.lodInstanceCounts[lod];
+                batch.bakedLodFirstInstances[lod] = bakedEntities.size();
+                batch.bakedLodInstanceCounts[lod] = bakedLodEntities.get(lod).size();
+                bakedEntities.addAll(bakedLodEntities.get(lod));
+                numBakedInstances += batch.bakedLodInstanceCounts[lod];
+            }
+            batch.numAnimatedEntities = animatedEntities.size() - batch.firstAnimatedEntity;
+            batch.screenPixels = LodSelector.getScreenPixels(maxScreenSize, gBuffer.getHeight());
 
+            for(Material material : model.getMaterialList()) {
                 for(Mesh mesh : material.getMeshList()) {
-                    glBindVertexArray(mesh.getVaoId());
-                    for(Entity entity : entityList) {
-                        uniformMap.setUniform("modelMatrix", entity.getModelMatrix());
-                        AnimationData animationData = entity.getAnimationData();
-                        if(animationData == null) {
-                            uniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
-                        } else {
-                            uniformMap.setUniform("bonesMatrices"
-                                    , animationData.getCurrentFrame().boneMatrices());
-                        }
-                        glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                    if(numInstances > 0 && !model.isAnimated() && multiDrawRender != null
+                            && mesh.isInGeometryArena()) {
+                        multiDrawRender.add(material, mesh, batch.lodFirstInstances, batch.lodInstanceCounts
+                                , scene.getTextureCache(), batch.screenPixels);
+                    } else if(numInstances > 0) {
+                        queueDraw(model.isAnimated() ? DrawItem.DEFAULT_BONES : DrawItem.STATIC, batch, material
+                                , mesh, minDistanceSquared);
+                    }
+                    if(numBakedInstances > 0) {
+                        queueDraw(DrawItem.BAKED, batch, material, mesh, minDistanceSquared);
+                    }
+                    if(batch.numAnimatedEntities > 0) {
+                        queueDraw(DrawItem.SKINNED, batch, material, mesh, minDistanceSquared);
                     }
                 }
             }
         }
+    }
 
-        glBindVertexArray(0);
-        glEnable(GL_BLEND);
-        glDisable(GL_FRAMEBUFFER_SRGB);
-        shaderProgram.unbind();
+    private void queueDraw(int kind, ModelBatch batch, Material material, Mesh mesh, float depth) {
+        if(numDrawItems == drawItems.size()) {
+            drawItems.add(new DrawItem());
+        }
+        DrawItem drawItem = drawItems.get(numDrawItems);
+        drawItem.kind = kind;
+        drawItem.batch = batch;
+        drawItem.material = material;
+        drawItem.mesh = mesh;
+        renderQueue.add(RenderQueue.createKey(kind, material.getMaterialId(), mesh.getVaoId(), depth), numDrawItems);
+        numDrawItems++;
+    }
+
+    private ModelBatch nextModelBatch() {
+        if(numModelBatches == modelBatches.size()) {
+            modelBatches.add(new ModelBatch());
+        }
+        return modelBatches.get(numModelBatches++);
+    }
+
+    private void addAnimatedEntity(Entity entity, int lod) {
+        if(animatedEntities.size() == animatedLods.length) {
+            animatedLods = Arrays.copyOf(animatedLods, animatedLods.length * 2);
+        }
+        animatedLods[animatedEntities.size()] = lod;
+        animatedEntities.add(entity);
+    }
+
+    static void drawInstancedLods(Mesh mesh, InstanceBuffer instanceBuffer, int[] lodFirstInstances
+            , int[] lodInstanceCounts) {
+        drawInstancedLods(mesh.getNumLods(), lodFirstInstances, lodInstanceCounts, mesh.getNumVertices()
+                , (meshLod, firstInstance, numInstances) -> {
+                    mesh.setupInstanceAttributes(instanceBuffer.getVboId(), firstInstance
+                            , instanceBuffer.hasAnimationFrames());
+                    int indexCount = mesh.getLodIndexCount(meshLod);
+                    glDrawElementsInstanced(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT
+                            , mesh.getLodIndexOffset(meshLod), numInstances);
+                    return indexCount;
+                });
+    }
+
+    // One instanced draw per LOD of the mesh, recorded in RenderStats. The LODs the mesh doesn't have use its
+    // coarsest one, their instances follow each other in the instance buffer so they're drawn together.
+    static void drawInstancedLods(int numMeshLods, int[] lodFirstInstances, int[] lodInstanceCounts
+            , int fullDetailIndexCount, InstancedDraw instancedDraw) {
+        int lod = 0;
+        while(lod < MeshSimplifier.MAX_LODS) {
+            int meshLod = Math.min(lod, numMeshLods - 1);
+            int firstInstance = lodFirstInstances[lod];
+            int numInstances = 0;
+            while(lod < MeshSimplifier.MAX_LODS && Math.min(lod, numMeshLods - 1) == meshLod) {
+                numInstances += lodInstanceCounts[lod];
+                lod++;
+            }
+            if(numInstances == 0) {
+                continue;
+            }
+
+            int indexCount = instancedDraw.draw(meshLod, firstInstance, numInstances);
+            RenderStats.addDrawCall(RenderStats.Pass.GEOMETRY, numInstances, indexCount, fullDetailIndexCount);
+        }
+    }
+
+    private void bindMaterial(Material material, TextureCache textureCache, float screenPixels) {
+        Texture[] textures = material.getTextures(textureCache);
+
+        // The material's block is only uploaded when it's first drawn or after it changed.
+        UniformBuffer materialBuffer = material.getUniformBuffer();
+        if(materialBuffer == null) {
+            materialBuffer = new UniformBuffer(MATERIAL_DATA_SIZE);
+            material.setUniformBuffer(materialBuffer);
+        }
+        if(material.isUniformBufferDirty()) {
+            putMaterialData(materialBuffer.getData(), 0, material, textures);
+            materialBuffer.upload();
+            material.setUniformBufferDirty(false);
+        }
+        materialBuffer.bind(UniformBuffer.MATERIAL_BINDING);
+
+        // Bind textures, GLState skips the units still holding the texture
+        for(int texUnit = 0; texUnit < Material.NUM_TEXTURES; texUnit++) {
+            Texture texture = textures[texUnit];
+            if(texture == null) {
+                continue;
+            }
+            texture.requestScreenSize(screenPixels);
+            texture.bind(GL_TEXTURE0 + texUnit);
+        }
+    }
+
+    // Writes the Material struct of scene.frag at the offset, std140 and std430 lay it out the same.
+    static void putMaterialData(ByteBuffer materialData, int offset, Material material, Texture[] textures) {
+        material.getDiffuseColor().get(offset, materialData);
+        materialData.putFloat(offset + 16, material.getMetallic());
+        materialData.putFloat(offset + 20, material.getRoughness());
+        materialData.putFloat(offset + 24, material.getAoStrength());
+        // The has-map flags of the base color, normal, metallic, roughness, ao and emissive maps.
+        for(int texUnit = 0; texUnit < Material.NUM_TEXTURES; texUnit++) {
+            materialData.putInt(offset + 28 + texUnit * Integer.BYTES, textures[texUnit] != null ? 1 : 0);
+        }
+    }
+
+    // Issues the instanced draw of a mesh LOD and returns its index count.
+    @FunctionalInterface
+    interface InstancedDraw {
+        int draw(int meshLod, int firstInstance, int numInstances);
+    }
+
+    // Draw record of a queued item, the kind picks the shader program and the skinning uniforms.
+    private static class DrawItem {
+        private static final int STATIC = 0;
+        // Entities of an animated model without an animation, instanced with the default bone matrices.
+        private static final int DEFAULT_BONES = 1;
+        private static final int BAKED = 2;
+        private static final int SKINNED = 3;
+
+        private int kind;
+        private ModelBatch batch;
+        private Material material;
+        private Mesh mesh;
+    }
+
+    // Instance ranges of a visible model, shared by the draw items of its meshes.
+    private static class ModelBatch {
+        private final int[] lodFirstInstances = new int[MeshSimplifier.MAX_LODS];
+        private final int[] lodInstanceCounts = new int[MeshSimplifier.MAX_LODS];
+        private final int[] bakedLodFirstInstances = new int[MeshSimplifier.MAX_LODS];
+        private final int[] bakedLodInstanceCounts = new int[MeshSimplifier.MAX_LODS];
+        private int firstAnimatedEntity;
+        private int numAnimatedEntities;
+        private float screenPixels;
     }
 }
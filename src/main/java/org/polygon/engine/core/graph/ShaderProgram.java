@@ -12,6 +12,17 @@ public class ShaderProgram {
     private final int programId;
 
     public ShaderProgram(List<ShaderModuleData> shaderModuleDataList) {
+        this(shaderModuleDataList, List.of());
+    }
+
+    // Compiles every module with a #define for each of the defines, used to build variants of the same shaders.
+    public ShaderProgram(List<ShaderModuleData> shaderModuleDataList, List<String> defines) {
+        this(shaderModuleDataList, defines, null);
+    }
+
+    // Also replaces the #version directive of the modules, e.g. with "430 core" for variants using GLSL features
+    // the modules' version doesn't have. Null keeps the modules' version.
+    public ShaderProgram(List<ShaderModuleData> shaderModuleDataList, List<String> defines, String version) {
         // Creates a shader program, we keep a reference to that program in programId
         programId = glCreateProgram();
         if(programId == 0) {
@@ -21,7 +32,8 @@ public class ShaderProgram {
         // Creates a list of shader Ids referencing all compiled shaders
         List<Integer> shaderModuleIdsList = new ArrayList<>();
         shaderModuleDataList.forEach((shaderModule) -> shaderModuleIdsList.add(
-                createShader(Utils.readFile(shaderModule.shaderFilePath), shaderModule.shaderType)));
+                createShader(insertDefines(replaceVersion(Utils.readFile(shaderModule.shaderFilePath), version)
+                        , defines), shaderModule.shaderType)));
 
         // Links all shaders and free them from memory
         link(shaderModuleIdsList);
@@ -29,12 +41,12 @@ public class ShaderProgram {
 
     public void bind() {
         // Mounts the shader program to use in rendering
-        glUseProgram(programId);
+        GLState.useProgram(programId);
     }
 
     public void unbind() {
         // Remove current shader program object from use in rendering
-        glUseProgram(0);
+        GLState.useProgram(0);
     }
 
     public void cleanup() {
@@ -49,6 +61,16 @@ public class ShaderProgram {
         return programId;
     }
 
+    // Assigns the uniform block to one of the UniformBuffer binding points.
+    public void bindUniformBlock(String blockName, int binding) {
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if(blockIndex == GL_INVALID_INDEX) {
+            throw new RuntimeException("Could not find uniform block [" + blockName + "] in shader program ["
+                    + programId + "]");
+        }
+        glUniformBlockBinding(programId, blockIndex, binding);
+    }
+
     public void validate() {
         glValidateProgram(programId);
         if(glGetProgrami(programId, GL_VALIDATE_STATUS) == 0) {
@@ -57,6 +79,37 @@ public class ShaderProgram {
         }
     }
 
+    static String replaceVersion(String shaderCode, String version) {
+        int versionStart = shaderCode.indexOf("#version");
+        if(version == null || versionStart < 0) {
+            return shaderCode;
+        }
+        int versionEnd = shaderCode.indexOf('\n', versionStart);
+        return shaderCode.substring(0, versionStart) + "#version " + version
+                + (versionEnd < 0 ? "" : shaderCode.substring(versionEnd));
+    }
+
+    // The defines go right after the #version directive, which has to stay the first line.
+    static String insertDefines(String shaderCode, List<String> defines) {
+        if(defines.isEmpty()) {
+            return shaderCode;
+        }
+        StringBuilder defineLines = new StringBuilder();
+        for(String define : defines) {
+            defineLines.append("#define ").append(define).append('\n');
+        }
+
+        int versionStart = shaderCode.indexOf("#version");
+        if(versionStart < 0) {
+            return defineLines + shaderCode;
+        }
+        int versionEnd = shaderCode.indexOf('\n', versionStart);
+        if(versionEnd < 0) {
+            return shaderCode + '\n' + defineLines;
+        }
+        return shaderCode.substring(0, versionEnd + 1) + defineLines + shaderCode.substring(versionEnd + 1);
+    }
+
     protected int createShader(String shaderCode, int shaderType) {
         // Create a shader, we keep a reference for it stored in shaderId
         int shaderId = glCreateShader(shaderType);
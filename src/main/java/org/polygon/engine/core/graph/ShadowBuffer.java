@@ -17,7 +17,7 @@ public class ShadowBuffer {
                 , SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, GL_DEPTH_COMPONENT);
 
         // Attach the depth map texture to the FBO
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthMap.getIds()[0], 0);
         // Only depth FBO setup.
         glDrawBuffer(GL_NONE);
@@ -27,11 +27,11 @@ public class ShadowBuffer {
             throw new RuntimeException("Could not create FrameBuffer");
         }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     public void cleanup() {
-        glDeleteFramebuffers(depthMapFBO);
+        GLState.deleteFramebuffer(depthMapFBO);
         depthMap.cleanup();
     }
 
@@ -45,8 +45,7 @@ public class ShadowBuffer {
 
     public void bindTextures(int start) {
         for (int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
-            glActiveTexture(start + i);
-            glBindTexture(GL_TEXTURE_2D, depthMap.getIds()[i]);
+            GLState.bindTexture(start + i, GL_TEXTURE_2D, depthMap.getIds()[i]);
         }
     }
 }
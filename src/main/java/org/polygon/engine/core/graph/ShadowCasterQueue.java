@@ -0,0 +1,96 @@
+package org.polygon.engine.core.graph;
+
+import org.polygon.engine.core.scene.Entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Meshes of the visible shadow casters of a cascade or cube face, sorted by shader program and VAO with a
+// RenderQueue, so the shadow passes bind each program once and each VAO once. Every item draws the mesh for
+// all the visible entities of its model.
+class ShadowCasterQueue {
+    // Programs of the sort keys, the static casters are drawn first.
+    static final int STATIC_PROGRAM = 0;
+    static final int SKINNED_PROGRAM = 1;
+
+    private final RenderQueue renderQueue = new RenderQueue();
+    // Draw records of the queued items, the payloads index them.
+    private final List<Mesh> meshes = new ArrayList<>();
+    private final List<List<Entity>> entityLists = new ArrayList<>();
+    private final List<Model> models = new ArrayList<>();
+    private int[] firstLods = new int[64];
+    private int numItems;
+    // LOD of every visible entity, the entities of a model follow each other.
+    private int[] entityLods = new int[64];
+    private int numEntityLods;
+
+    // The models GpuCulling draws are skipped when skipGpuCulled is set.
+    void build(Collection<Model> modelCollection, VisibleEntities visibleEntities, LodSelector lodSelector
+            , boolean skipGpuCulled) {
+        renderQueue.clear();
+        meshes.clear();
+        entityLists.clear();
+        models.clear();
+        numItems = 0;
+        numEntityLods = 0;
+
+        for(Model model : modelCollection) {
+            if(skipGpuCulled && GpuCulling.isCulled(model)) {
+                continue;
+            }
+            List<Entity> entityList = visibleEntities.getEntityList(model.getModelId());
+            if(entityList.isEmpty()) {
+                continue;
+            }
+
+            int firstLod = numEntityLods;
+            if(numEntityLods + entityList.size() > entityLods.length) {
+                entityLods = Arrays.copyOf(entityLods
+                        , Math.max(numEntityLods + entityList.size(), entityLods.length * 2));
+            }
+            for(Entity entity : entityList) {
+                entityLods[numEntityLods++] = lodSelector.selectLod(model, entity);
+            }
+
+            int program = model.isAnimated() ? SKINNED_PROGRAM : STATIC_PROGRAM;
+            for(Material material : model.getMaterialList()) {
+                for(Mesh mesh : material.getMeshList()) {
+                    if(numItems == firstLods.length) {
+                        firstLods = Arrays.copyOf(firstLods, firstLods.length * 2);
+                    }
+                    meshes.add(mesh);
+                    entityLists.add(entityList);
+                    models.add(model);
+                    firstLods[numItems] = firstLod;
+                    renderQueue.add(RenderQueue.createKey(program, 0, mesh.getVaoId(), 0.0f), numItems);
+                    numItems++;
+                }
+            }
+        }
+        renderQueue.sort();
+    }
+
+    int size() {
+        return renderQueue.size();
+    }
+
+    // The items in sorted order.
+    Mesh getMesh(int index) {
+        return meshes.get(renderQueue.getPayload(index));
+    }
+
+    List<Entity> getEntityList(int index) {
+        return entityLists.get(renderQueue.getPayload(index));
+    }
+
+    boolean isAnimated(int index) {
+        return models.get(renderQueue.getPayload(index)).isAnimated();
+    }
+
+    // LOD of the entityIndex-th entity of the item's entity list.
+    int getEntityLod(int index, int entityIndex) {
+        return entityLods[firstLods[renderQueue.getPayload(index)] + entityIndex];
+    }
+}
@@ -1,5 +1,7 @@
 package org.polygon.engine.core.graph;
 
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
 import org.polygon.engine.core.scene.AnimationData;
 import org.polygon.engine.core.scene.Entity;
 import org.polygon.engine.core.scene.Scene;
@@ -12,15 +14,32 @@ import static org.lwjgl.opengl.GL40.*;
 
 public class ShadowRender {
     private List<CascadeShadow> cascadeShadowList;
-    private ShaderProgram shaderProgram;
+    // Static models are drawn without skinning and without any bone data, the animated ones with the
+    // SKINNED variant of the shader.
+    private ShaderProgram staticShaderProgram;
+    private UniformMap staticUniformMap;
+    private ShaderProgram skinnedShaderProgram;
+    private UniformMap skinnedUniformMap;
     private ShadowBuffer shadowBuffer;
-    private UniformMap uniformMap;
+    // Light space frustum of the cascade being rendered, used to cull the shadow casters.
+    private final Frustum cascadeFrustum = new Frustum();
+    private final VisibleEntities visibleEntities = new VisibleEntities();
+    // Picks the LODs with the main camera, so the shadows match the drawn meshes.
+    private final LodSelector lodSelector = new LodSelector();
+    private final ShadowCasterQueue casterQueue = new ShadowCasterQueue();
+    // Draws the GPU culled casters of every cascade, null when disabled.
+    private GpuCulling gpuCulling;
+    // Skinning uniform state of the current render, see setBones.
+    private final Vector4f animationFrame = new Vector4f();
+    private boolean defaultBonesSet;
+    private int bakedAnimation;
 
     public ShadowRender() {
         List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
         shaderModuleDataList.add(
                 new ShaderProgram.ShaderModuleData("resources/shaders/shadow.vert", GL_VERTEX_SHADER));
-        shaderProgram = new ShaderProgram(shaderModuleDataList);
+        staticShaderProgram = new ShaderProgram(shaderModuleDataList);
+        skinnedShaderProgram = new ShaderProgram(shaderModuleDataList, List.of("SKINNED"));
 
         shadowBuffer = new ShadowBuffer();
 
@@ -31,18 +50,30 @@ public class ShadowRender {
         }
 
         createUniforms();
+
+        skinnedShaderProgram.bind();
+        skinnedUniformMap.setUniform("animationSampler", AnimationTexture.TEXTURE_UNIT);
+        skinnedShaderProgram.unbind();
     }
 
     public void cleanup() {
-        shaderProgram.cleanup();
+        staticShaderProgram.cleanup();
+        skinnedShaderProgram.cleanup();
         shadowBuffer.cleanup();
     }
 
     private void createUniforms() {
-        uniformMap = new UniformMap(shaderProgram.getProgramId());
-        uniformMap.createUniform("modelMatrix");
-        uniformMap.createUniform("projViewMatrix");
-        uniformMap.createUniform("bonesMatrices");
+        staticUniformMap = new UniformMap(staticShaderProgram.getProgramId());
+        staticUniformMap.createUniform("modelMatrix");
+        staticUniformMap.createUniform("projViewMatrix");
+
+        skinnedUniformMap = new UniformMap(skinnedShaderProgram.getProgramId());
+        skinnedUniformMap.createUniform("modelMatrix");
+        skinnedUniformMap.createUniform("projViewMatrix");
+        skinnedUniformMap.createUniform("bonesMatrices");
+        skinnedUniformMap.createUniform("animationSampler");
+        skinnedUniformMap.createUniform("bakedAnimation");
+        skinnedUniformMap.createUniform("animationFrame");
     }
 
     public List<CascadeShadow> getCascadeShadowList() {
@@ -53,44 +84,108 @@ public class ShadowRender {
         return shadowBuffer;
     }
 
-    public void render(Scene scene) {
+    void setGpuCulling(GpuCulling gpuCulling) {
+        this.gpuCulling = gpuCulling;
+    }
+
+    // Fits the cascades to the camera, before the GPU culling and the shadow pass of the frame.
+    public void updateCascades(Scene scene) {
         CascadeShadow.updateCascadeShadows(cascadeShadowList, scene);
+    }
+
+    public void render(Scene scene, AnimationTexture animationTexture) {
+        lodSelector.update(scene);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, shadowBuffer.getDepthMapFBO());
-        glViewport(0, 0, ShadowBuffer.SHADOW_MAP_WIDTH, ShadowBuffer.SHADOW_MAP_HEIGHT);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, shadowBuffer.getDepthMapFBO());
+        GLState.viewport(0, 0, ShadowBuffer.SHADOW_MAP_WIDTH, ShadowBuffer.SHADOW_MAP_HEIGHT);
 
-        shaderProgram.bind();
+        if(AnimationTexture.isEnabled()) {
+            animationTexture.bind();
+        }
+        // The uniform values from the last frame aren't trusted.
+        defaultBonesSet = false;
+        bakedAnimation = -1;
 
-        Collection<Model> models = scene.getModelMap().values();
+        Collection<Model> models = scene.getRenderModels();
         for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
             glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, shadowBuffer.getDepthMapTexture().getIds()[i], 0);
             glClear(GL_DEPTH_BUFFER_BIT);
 
             CascadeShadow cascadeShadow = cascadeShadowList.get(i);
-            uniformMap.setUniform("projViewMatrix", cascadeShadow.getProjViewMatrix());
-
-            for(Model model : models) {
-                List<Entity> entityList = model.getEntityList();
-                for(Material material : model.getMaterialList()) {
-                    for(Mesh mesh : material.getMeshList()) {
-                        glBindVertexArray(mesh.getVaoId());
-                        for(Entity entity : entityList) {
-                            uniformMap.setUniform("modelMatrix", entity.getModelMatrix());
-                            AnimationData animationData = entity.getAnimationData();
-                            if(animationData == null) {
-                                uniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
-                            } else {
-                                uniformMap.setUniform("bonesMatrices"
-                                        , animationData.getCurrentFrame().boneMatrices());
-                            }
-                            glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
-                        }
-                    }
+
+            // Only the casters inside the cascade's orthographic volume end up in its shadow map.
+            cascadeFrustum.update(cascadeShadow.getProjViewMatrix());
+            visibleEntities.query(scene.getBvh(), cascadeFrustum);
+
+            casterQueue.build(models, visibleEntities, lodSelector, gpuCulling != null);
+            renderCasters(cascadeShadow.getProjViewMatrix(), animationTexture);
+            if(gpuCulling != null) {
+                gpuCulling.renderShadow(i, cascadeShadow.getProjViewMatrix());
+            }
+        }
+
+        skinnedShaderProgram.unbind();
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    private static void setViewUniforms(UniformMap uniformMap, Matrix4f projViewMatrix) {
+        uniformMap.setUniform("projViewMatrix", projViewMatrix);
+    }
+
+    // Draws the queued casters, each shader program is bound once.
+    private void renderCasters(Matrix4f projViewMatrix, AnimationTexture animationTexture) {
+        ShaderProgram boundProgram = null;
+        for(int i = 0; i < casterQueue.size(); i++) {
+            boolean animated = casterQueue.isAnimated(i);
+            UniformMap uniformMap = animated ? skinnedUniformMap : staticUniformMap;
+            ShaderProgram shaderProgram = animated ? skinnedShaderProgram : staticShaderProgram;
+            if(shaderProgram != boundProgram) {
+                shaderProgram.bind();
+                setViewUniforms(uniformMap, projViewMatrix);
+                boundProgram = shaderProgram;
+            }
+
+            Mesh mesh = casterQueue.getMesh(i);
+            List<Entity> entityList = casterQueue.getEntityList(i);
+            GLState.bindVertexArray(mesh.getVaoId());
+            for(int j = 0; j < entityList.size(); j++) {
+                Entity entity = entityList.get(j);
+                uniformMap.setUniform("modelMatrix", entity.getRenderModelMatrix());
+                if(animated) {
+                    setBones(entity.getAnimationData(), animationTexture);
                 }
+                int lod = casterQueue.getEntityLod(i, j);
+                int indexCount = mesh.getLodIndexCount(lod);
+                glDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT, mesh.getLodIndexOffset(lod));
+                RenderStats.addDrawCall(RenderStats.Pass.SHADOW, 1, indexCount, mesh.getNumVertices());
             }
         }
+    }
 
-        shaderProgram.unbind();
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    // Sets the skinning uniforms of the entity. Entities of animated models without an animation share the
+    // default bone matrices, they're only uploaded again after an animated entity, and baked animations only
+    // need their frame.
+    private void setBones(AnimationData animationData, AnimationTexture animationTexture) {
+        if(animationData == null) {
+            setBakedAnimation(0);
+            if(!defaultBonesSet) {
+                skinnedUniformMap.setUniform("bonesMatrices", AnimationData.DEFAULT_BONES_MATRICES);
+                defaultBonesSet = true;
+            }
+        } else if(AnimationTexture.isEnabled() && animationTexture.getFrame(animationData, animationFrame)) {
+            setBakedAnimation(1);
+            skinnedUniformMap.setUniform("animationFrame", animationFrame);
+        } else {
+            setBakedAnimation(0);
+            skinnedUniformMap.setUniform("bonesMatrices", animationData.getRenderFrame().boneMatrices());
+            defaultBonesSet = false;
+        }
+    }
+
+    private void setBakedAnimation(int bakedAnimation) {
+        if(this.bakedAnimation != bakedAnimation) {
+            skinnedUniformMap.setUniform("bakedAnimation", bakedAnimation);
+            this.bakedAnimation = bakedAnimation;
+        }
     }
 }
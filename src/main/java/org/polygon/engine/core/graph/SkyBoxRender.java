@@ -57,10 +57,10 @@ public class SkyBoxRender {
             return;
         }
 
-        glEnable(GL_DEPTH_TEST);
-        glDepthFunc(GL_LEQUAL);
-        glDepthMask(false);
-        glDisable(GL_CULL_FACE);
+        GLState.enable(GL_DEPTH_TEST);
+        GLState.depthFunc(GL_LEQUAL);
+        GLState.depthMask(false);
+        GLState.disable(GL_CULL_FACE);
 
         shaderProgram.bind();
 
@@ -85,11 +85,11 @@ public class SkyBoxRender {
                  System.err.println("Error: Invalid cubemap texture ID!");
             }
 
-            glActiveTexture(GL_TEXTURE0 + SKYBOX_TEXTURE_UNIT);
-            glBindTexture(GL_TEXTURE_CUBE_MAP, textureId);
+            GLState.bindTexture(GL_TEXTURE0 + SKYBOX_TEXTURE_UNIT, GL_TEXTURE_CUBE_MAP, textureId);
 
-            glBindVertexArray(cubeMesh.getVaoId());
-            glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            GLState.bindVertexArray(cubeMesh.getVaoId());
+            glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, cubeMesh.getLodIndexOffset(0));
+            RenderStats.addDrawCall(RenderStats.Pass.SKYBOX, 1, cubeMesh.getNumVertices());
 
         } else if (skyBox.getSkyBoxModel() != null && skyBox.getSkyBoxEntity() != null) {
             uniformMap.setUniform("hasIBLData", false);
@@ -99,25 +99,27 @@ public class SkyBoxRender {
 
             for(Material material : skyBox.getSkyBoxModel().getMaterialList()) {
                 Texture texture = textureCache.getTexture(material.getTexturePath());
-                glActiveTexture(GL_TEXTURE0 + SKYBOX_TEXTURE_UNIT);
-                texture.bind();
+                // The sky box covers the screen, its texture is always streamed in whole.
+                texture.requestScreenSize(Float.MAX_VALUE);
+                texture.bind(GL_TEXTURE0 + SKYBOX_TEXTURE_UNIT);
 
                 uniformMap.setUniform("diffuse", material.getDiffuseColor());
                 uniformMap.setUniform("hasTexture", !texture.getTexturePath().equals(TextureCache.DEFAULT_TEXTURE));
 
                 for(Mesh mesh : material.getMeshList()) {
-                    glBindVertexArray(mesh.getVaoId());
+                    GLState.bindVertexArray(mesh.getVaoId());
 
                     uniformMap.setUniform("modelMatrix", skyBox.getSkyBoxEntity().getModelMatrix());
-                    glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                    glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, mesh.getLodIndexOffset(0));
+                    RenderStats.addDrawCall(RenderStats.Pass.SKYBOX, 1, mesh.getNumVertices());
                 }
             }
         }
 
-        glBindVertexArray(0);
+        GLState.bindVertexArray(0);
         shaderProgram.unbind();
-        glEnable(GL_CULL_FACE);
-        glDepthFunc(GL_LESS);
-        glDepthMask(true);
+        GLState.enable(GL_CULL_FACE);
+        GLState.depthFunc(GL_LESS);
+        GLState.depthMask(true);
     }
 }
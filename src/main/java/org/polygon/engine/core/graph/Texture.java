@@ -1,17 +1,44 @@
 package org.polygon.engine.core.graph;
 
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.EXTTextureSRGB.GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureSRGB.GL_COMPRESSED_SRGB_S3TC_DXT1_EXT;
 import static org.lwjgl.opengl.GL46.*;
-import static org.lwjgl.stb.STBImage.*;
 
 public class Texture {
     private final int textureId;
     private final String texturePath;
     private final boolean sRGB;
+    private int width;
+    private int height;
+    private int numLevels;
+    // Block compression format of the levels, null for RGBA8 textures.
+    private CompressedTextureData.Format compressedFormat;
+    private CompressedTextureData.Usage compressedUsage;
+
+    // Streaming state, see TextureStreamer. Textures that aren't streamed keep all their levels resident.
+    private boolean streamed;
+    // Finest resident level, the levels from it to the last one are uploaded.
+    private int residentLevel;
+    // Coarsest level a streamed texture can drop to, always resident.
+    private int minResidentLevel;
+    // Largest on-screen size the texture was drawn at since the last streamer update, in pixels.
+    private float requestedScreenSize;
+    // Level wanted for the screen size requested before the last streamer update.
+    private int requestedLevel;
+    private long lastUsedFrame;
+    // Set from the load until its levels are uploaded or dropped, the texture's levels must not change meanwhile.
+    private boolean streamingPending;
+    // Set once decoding its levels failed, the source isn't read again.
+    private boolean streamingFailed;
+    private boolean deleted;
 
     public static final Texture BRDF_LUT = new Texture("resources/textures/brdf.png", false);
 
@@ -27,6 +54,63 @@ public class Texture {
         this.sRGB = sRGB;
     }
 
+    // Uploads an image decoded beforehand, e.g. on an asset loader thread. The image is not freed.
+    public Texture(String texturePath, TextureData textureData, boolean sRGB) {
+        this.texturePath = texturePath;
+        this.textureId = generateTexture(textureData.width(), textureData.height(), textureData.pixels(), sRGB);
+        this.sRGB = sRGB;
+    }
+
+    // Streamed texture, only the levels up to residentSize pixels are uploaded, the TextureStreamer
+    // uploads the finer levels once the texture is drawn large enough. The image is not freed.
+    public Texture(String texturePath, TextureData textureData, boolean sRGB, int residentSize) {
+        this.texturePath = texturePath;
+        this.sRGB = sRGB;
+        int firstLevel = getFirstResidentLevel(textureData.width(), textureData.height(), residentSize);
+        if(firstLevel == 0) {
+            this.textureId = generateTexture(textureData.width(), textureData.height(), textureData.pixels(), sRGB);
+            return;
+        }
+
+        textureId = glGenTextures();
+        width = textureData.width();
+        height = textureData.height();
+        numLevels = getNumLevels(width, height);
+        streamed = true;
+        minResidentLevel = firstLevel;
+        residentLevel = numLevels;
+        setupParameters();
+        List<ByteBuffer> levels = createLevels(textureData, sRGB, firstLevel, numLevels);
+        try {
+            uploadLevels(levels, firstLevel);
+        } finally {
+            levels.forEach(MemoryUtil::memFree);
+        }
+    }
+
+    // Uploads a block-compressed image and its mip chain as they are, see CompressedTextureCache.
+    public Texture(String texturePath, CompressedTextureData compressedTextureData) {
+        this(texturePath, compressedTextureData, Integer.MAX_VALUE);
+    }
+
+    // Streamed block-compressed texture, only the levels up to residentSize pixels are uploaded.
+    public Texture(String texturePath, CompressedTextureData compressedTextureData, int residentSize) {
+        this.texturePath = texturePath;
+        this.sRGB = compressedTextureData.isSRGB();
+        textureId = glGenTextures();
+        width = compressedTextureData.width();
+        height = compressedTextureData.height();
+        numLevels = compressedTextureData.getNumLevels();
+        compressedFormat = compressedTextureData.format();
+        compressedUsage = compressedTextureData.usage();
+        int firstLevel = getFirstResidentLevel(width, height, residentSize);
+        streamed = firstLevel > 0;
+        minResidentLevel = firstLevel;
+        residentLevel = numLevels;
+        setupParameters();
+        uploadLevels(compressedTextureData.levels().subList(firstLevel, numLevels), firstLevel);
+    }
+
     public String getTexturePath() {
         return texturePath;
     }
@@ -39,23 +123,252 @@ public class Texture {
         return textureId;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumLevels() {
+        return numLevels;
+    }
+
+    public boolean isCompressed() {
+        return compressedFormat != null;
+    }
+
+    public CompressedTextureData.Format getCompressedFormat() {
+        return compressedFormat;
+    }
+
+    public CompressedTextureData.Usage getCompressedUsage() {
+        return compressedUsage;
+    }
+
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    public int getResidentLevel() {
+        return residentLevel;
+    }
+
+    public int getMinResidentLevel() {
+        return minResidentLevel;
+    }
+
+    // GPU memory of the resident levels.
+    public long getResidentBytes() {
+        long bytes = 0;
+        for(int level = residentLevel; level < numLevels; level++) {
+            bytes += getLevelBytes(level);
+        }
+        return bytes;
+    }
+
+    public long getLevelBytes(int level) {
+        if(compressedFormat != null) {
+            return compressedFormat.getLevelBytes(width >> level, height >> level);
+        }
+        return (long) Math.max(1, width >> level) * Math.max(1, height >> level) * 4;
+    }
+
+    // Called by the render passes drawing the texture, with the on-screen size of what it's mapped on.
+    public void requestScreenSize(float screenSize) {
+        requestedScreenSize = Math.max(requestedScreenSize, screenSize);
+    }
+
+    public int getRequestedLevel() {
+        return requestedLevel;
+    }
+
+    // Turns the on-screen size requested since the last call into the finest level worth having,
+    // assuming the texture is mapped once over the drawn object. Unused textures want their coarsest level.
+    void updateRequest(long frame) {
+        if(requestedScreenSize <= 0.0f) {
+            requestedLevel = minResidentLevel;
+            return;
+        }
+        float texelsPerPixel = Math.max(width, height) / requestedScreenSize;
+        int level = texelsPerPixel <= 1.0f ? 0 : (int) (Math.log(texelsPerPixel) / Math.log(2));
+        requestedLevel = Math.min(level, minResidentLevel);
+        lastUsedFrame = frame;
+        requestedScreenSize = 0.0f;
+    }
+
+    public long getLastUsedFrame() {
+        return lastUsedFrame;
+    }
+
+    boolean isStreamingPending() {
+        return streamingPending;
+    }
+
+    void setStreamingPending(boolean streamingPending) {
+        this.streamingPending = streamingPending;
+    }
+
+    boolean isStreamingFailed() {
+        return streamingFailed;
+    }
+
+    void setStreamingFailed(boolean streamingFailed) {
+        this.streamingFailed = streamingFailed;
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    // Uploads the levels from firstLevel on, right above the resident ones, and makes them resident.
+    // The levels are RGBA8 pixels or blocks in the compressed format of the texture, they're not freed.
+    void uploadLevels(List<ByteBuffer> levels, int firstLevel) {
+        GLState.activeTexture(GL_TEXTURE0);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
+        int internalFormat = getInternalFormat();
+        for(int i = 0; i < levels.size(); i++) {
+            int level = firstLevel + i;
+            ByteBuffer pixels = levels.get(i);
+            if(compressedFormat != null) {
+                glCompressedTexImage2D(GL_TEXTURE_2D, level, internalFormat, Math.max(1, width >> level)
+                        , Math.max(1, height >> level), 0, pixels);
+            } else {
+                glTexImage2D(GL_TEXTURE_2D, level, internalFormat, Math.max(1, width >> level)
+                        , Math.max(1, height >> level), 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            }
+            RenderStats.addUploadBytes(pixels.remaining());
+        }
+        residentLevel = firstLevel;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, residentLevel);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    // Frees the finest resident level, returns the bytes freed.
+    long evictLevel() {
+        if(residentLevel >= minResidentLevel) {
+            return 0;
+        }
+        GLState.activeTexture(GL_TEXTURE0);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
+        // The level is outside the base level range first, then its storage is released.
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, residentLevel + 1);
+        if(compressedFormat != null) {
+            glCompressedTexImage2D(GL_TEXTURE_2D, residentLevel, getInternalFormat(), 0, 0, 0, 0, MemoryUtil.NULL);
+        } else {
+            glTexImage2D(GL_TEXTURE_2D, residentLevel, getInternalFormat(), 0, 0, 0
+                    , GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        }
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
+        return getLevelBytes(residentLevel++);
+    }
+
+    // Resizes the image into the levels from firstLevel to lastLevel - 1, each level from the previous one.
+    // The image itself is not freed, the returned levels must be freed with memFree.
+    static List<ByteBuffer> createLevels(TextureData textureData, boolean sRGB, int firstLevel, int lastLevel) {
+        List<ByteBuffer> levels = new ArrayList<>(lastLevel - firstLevel);
+        try {
+            ByteBuffer source = textureData.pixels();
+            int sourceWidth = textureData.width();
+            int sourceHeight = textureData.height();
+            for(int level = firstLevel; level < lastLevel; level++) {
+                int levelWidth = Math.max(1, textureData.width() >> level);
+                int levelHeight = Math.max(1, textureData.height() >> level);
+                ByteBuffer pixels;
+                if(level == 0) {
+                    pixels = MemoryUtil.memAlloc(source.remaining());
+                    MemoryUtil.memCopy(source, pixels);
+                } else {
+                    pixels = TextureData.resize(source, sourceWidth, sourceHeight, levelWidth, levelHeight, sRGB);
+                }
+                levels.add(pixels);
+                source = pixels;
+                sourceWidth = levelWidth;
+                sourceHeight = levelHeight;
+            }
+        } catch (RuntimeException e) {
+            levels.forEach(MemoryUtil::memFree);
+            throw e;
+        }
+        return levels;
+    }
+
+    // Copies the compressed levels from firstLevel to lastLevel - 1, the copies must be freed with memFree.
+    // Reading them here rather than on the GL thread keeps the page faults of a mapped cache file off it.
+    static List<ByteBuffer> createLevels(CompressedTextureData compressedTextureData, int firstLevel
+            , int lastLevel) {
+        List<ByteBuffer> levels = new ArrayList<>(lastLevel - firstLevel);
+        for(int level = firstLevel; level < lastLevel; level++) {
+            ByteBuffer source = compressedTextureData.levels().get(level);
+            ByteBuffer copy = MemoryUtil.memAlloc(source.remaining());
+            MemoryUtil.memCopy(source, copy);
+            levels.add(copy);
+        }
+        return levels;
+    }
+
+    // Finest level that is at most residentSize pixels wide and high.
+    static int getFirstResidentLevel(int width, int height, int residentSize) {
+        int level = 0;
+        while(Math.max(width >> level, height >> level) > residentSize) {
+            level++;
+        }
+        return level;
+    }
+
+    static int getNumLevels(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
     public void bind() {
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
+    }
+
+    // Binds the texture to the texture unit for sampling, e.g. GL_TEXTURE5.
+    public void bind(int textureUnit) {
+        GLState.bindTexture(textureUnit, GL_TEXTURE_2D, textureId);
     }
 
     public void cleanup() {
-        glDeleteTextures(textureId);
+        GLState.deleteTexture(textureId);
+        deleted = true;
+    }
+
+    private int getInternalFormat() {
+        if(compressedFormat == null) {
+            return sRGB ? GL_SRGB8_ALPHA8 : GL_RGBA8;
+        }
+        return switch(compressedFormat) {
+            case BC1 -> sRGB ? GL_COMPRESSED_SRGB_S3TC_DXT1_EXT : GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+            case BC3 -> sRGB ? GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT : GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+            case BC5 -> GL_COMPRESSED_RG_RGTC2;
+            case BC7 -> sRGB ? GL_COMPRESSED_SRGB_ALPHA_BPTC_UNORM : GL_COMPRESSED_RGBA_BPTC_UNORM;
+        };
+    }
+
+    private void setupParameters() {
+        GLState.activeTexture(GL_TEXTURE0);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY, 16.0f);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, numLevels - 1);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
     }
 
     private int generateTexture(int width, int height, ByteBuffer bfr, boolean sRGB) {
+        this.width = width;
+        this.height = height;
+        numLevels = getNumLevels(width, height);
+
         // Generate a texture in the GPU
         int textureId = glGenTextures();
 
-        int previousActiveTextureUnit = glGetInteger(GL_ACTIVE_TEXTURE);
-        glActiveTexture(GL_TEXTURE0);
+        GLState.activeTexture(GL_TEXTURE0);
 
         // Bind that texture
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLState.bindTexture(GL_TEXTURE_2D, textureId);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
         // TODO - HARDCODED MAX_ANISOTROPY for ANISOTROPIC FILTERING, rework when implementing graphics settings
@@ -72,31 +385,17 @@ public class Texture {
         // Generate a mipmap for our HD image when mapped object is scaled
         glGenerateMipmap(GL_TEXTURE_2D);
 
-        glBindTexture(GL_TEXTURE_2D, 0);
-        glActiveTexture(previousActiveTextureUnit);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
         return textureId;
     }
 
     private int generateTexture(String texturePath, boolean sRGB) {
-        try(MemoryStack stack = MemoryStack.stackPush()) {
-            // Allocate off-heap memory for the width, height and image channels
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
-
-            // Load a picture into a buffer using stb
-            ByteBuffer bfr = stbi_load(texturePath, w, h, channels, 4);
-
-            if(bfr == null) {
-                throw new RuntimeException("Couldn't load image file [" + texturePath + "] "
-                        + stbi_failure_reason());
-            }
-
-            int width = w.get();
-            int height = h.get();
-
+        TextureData textureData = TextureData.load(texturePath);
+        try {
             // This will generate a texture in the gpu based on the Image buffer
-            return generateTexture(width, height, bfr, sRGB);
+            return generateTexture(textureData.width(), textureData.height(), textureData.pixels(), sRGB);
+        } finally {
+            textureData.free();
         }
     }
 }
@@ -11,11 +11,10 @@ public class TextureArray {
         ids = new int[numTextures];
         glGenTextures(ids);
 
-        int previousActiveTextureUnit = glGetInteger(GL_ACTIVE_TEXTURE);
-        glActiveTexture(GL_TEXTURE0);
+        GLState.activeTexture(GL_TEXTURE0);
 
         for(int i = 0; i < numTextures; i++) {
-            glBindTexture(GL_TEXTURE_2D, ids[i]);
+            GLState.bindTexture(GL_TEXTURE_2D, ids[i]);
             glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT
                     , width, height, 0, pixelFormat, GL_FLOAT, (ByteBuffer) null);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
@@ -24,14 +23,11 @@ public class TextureArray {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         }
-        glBindTexture(GL_TEXTURE_2D, 0);
-        glActiveTexture(previousActiveTextureUnit);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
     }
 
     public void cleanup() {
-        for(int id : ids) {
-            glDeleteTextures(id);
-        }
+        GLState.deleteTextures(ids);
     }
 
     public int[] getIds() {
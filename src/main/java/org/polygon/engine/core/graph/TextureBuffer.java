@@ -0,0 +1,55 @@
+package org.polygon.engine.core.graph;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// A buffer read by shaders through a samplerBuffer with texelFetch, the texel format is fixed at creation.
+// Every upload orphans the previous storage so the draw calls still reading from it don't stall the upload.
+public class TextureBuffer {
+    private final int bufferId;
+    private final int textureId;
+    private final int usage;
+
+    public TextureBuffer(int internalFormat) {
+        this(internalFormat, GL_STREAM_DRAW);
+    }
+
+    // Usage hint of the buffer storage, e.g. GL_STATIC_DRAW for data uploaded once.
+    public TextureBuffer(int internalFormat, int usage) {
+        this.usage = usage;
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, 16, usage);
+        textureId = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, internalFormat, bufferId);
+        GLState.bindTexture(GL_TEXTURE_BUFFER, 0);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    public void upload(FloatBuffer data) {
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, data, usage);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+        RenderStats.addUploadBytes((long) data.remaining() * Float.BYTES);
+    }
+
+    public void upload(IntBuffer data) {
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, data, usage);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+        RenderStats.addUploadBytes((long) data.remaining() * Integer.BYTES);
+    }
+
+    // Binds the texture to the texture unit, e.g. GL_TEXTURE5.
+    public void bind(int textureUnit) {
+        GLState.bindTexture(textureUnit, GL_TEXTURE_BUFFER, textureId);
+    }
+
+    public void cleanup() {
+        GLState.deleteTexture(textureId);
+        glDeleteBuffers(bufferId);
+    }
+}
@@ -9,9 +9,9 @@ public class TextureCache {
     // Hashmap to check if texture was already generated, stores texture path and texture object
     private Map<String, Texture> textureMap;
 
+    // The default texture is created on first use, so a Scene can be built without a GL context.
     public TextureCache() {
         textureMap = new HashMap<>();
-        textureMap.put(DEFAULT_TEXTURE, new Texture(DEFAULT_TEXTURE, true));
     }
 
     public void cleanup() {
@@ -19,7 +19,40 @@ public class TextureCache {
     }
 
     public Texture createTexture(String texturePath, boolean sRGB) {
-        return textureMap.computeIfAbsent(texturePath, key -> new Texture(key, sRGB));
+        return createTexture(texturePath, sRGB ? CompressedTextureData.Usage.COLOR
+                : CompressedTextureData.Usage.DATA);
+    }
+
+    // The usage picks the compression format when the CompressedTextureCache is enabled.
+    public Texture createTexture(String texturePath, CompressedTextureData.Usage usage) {
+        if(!textureMap.containsKey(texturePath)) {
+            if(CompressedTextureCache.isEnabled()) {
+                return createTexture(texturePath, CompressedTextureCache.load(texturePath, usage));
+            }
+            if(TextureStreamer.isEnabled()) {
+                return createTexture(texturePath, TextureData.load(texturePath), usage.isSRGB());
+            }
+        }
+        return textureMap.computeIfAbsent(texturePath, key -> new Texture(key, usage.isSRGB()));
+    }
+
+    // Creates the texture from a compressed image loaded beforehand, e.g. on an asset loader thread.
+    public Texture createTexture(String texturePath, CompressedTextureData compressedTextureData) {
+        return textureMap.computeIfAbsent(texturePath, key -> TextureStreamer.isEnabled()
+                ? new Texture(key, compressedTextureData, TextureStreamer.RESIDENT_SIZE)
+                : new Texture(key, compressedTextureData));
+    }
+
+    // Creates the texture from an image decoded beforehand, the image is freed either way.
+    // Textures created while streaming is enabled start with their small levels only, see TextureStreamer.
+    public Texture createTexture(String texturePath, TextureData textureData, boolean sRGB) {
+        try {
+            return textureMap.computeIfAbsent(texturePath, key -> TextureStreamer.isEnabled()
+                    ? new Texture(key, textureData, sRGB, TextureStreamer.RESIDENT_SIZE)
+                    : new Texture(key, textureData, sRGB));
+        } finally {
+            textureData.free();
+        }
     }
 
     public Texture getTexture(String texturePath) {
@@ -30,7 +63,7 @@ public class TextureCache {
 
         // If the texture is not found we return a default texture
         if(texture == null) {
-            texture = textureMap.get(DEFAULT_TEXTURE);
+            texture = createTexture(DEFAULT_TEXTURE, true);
         }
 
         return texture;
@@ -41,6 +74,11 @@ public class TextureCache {
         return textureList;
     }
 
+    // View of the cached textures, no copy.
+    public Collection<Texture> getTextures() {
+        return textureMap.values();
+    }
+
     public Set<String> getTexturePaths() {
         return textureMap.keySet();
     }
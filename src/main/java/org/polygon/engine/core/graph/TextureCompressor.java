@@ -0,0 +1,510 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// CPU encoders of the BC1, BC3, BC5 and BC7 block compression formats, so textures are compressed once at
+// import, see CompressedTextureCache, instead of being uploaded as RGBA8 and mipmapped on every load.
+// Every 4x4 block is encoded on its own: the endpoints are fit along the principal axis of the block's
+// pixels, refined once with least squares for the chosen indices, and every pixel takes the nearest
+// palette entry. BC7 only uses mode 6, its single subset RGBA mode with 16 interpolants, which gets most
+// of BC7's quality without searching its partitions.
+// Doesn't touch OpenGL. The block rows of a level are encoded in parallel on the common fork/join pool.
+public class TextureCompressor {
+    // Block rows a task encodes before splitting.
+    private static final int TASK_THRESHOLD = 8;
+    private static final int[] BC7_WEIGHTS = {0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64};
+    // Interpolation factor of the BC1 color indices.
+    private static final float[] BC1_WEIGHTS = {0.0f, 1.0f, 1.0f / 3.0f, 2.0f / 3.0f};
+
+    private TextureCompressor() {
+
+    }
+
+    // Compresses the image and its whole mip chain. The image is not freed.
+    public static CompressedTextureData compress(TextureData textureData, CompressedTextureData.Usage usage
+            , boolean bc7) {
+        CompressedTextureData.Format format = selectFormat(textureData, usage, bc7);
+        int width = textureData.width();
+        int height = textureData.height();
+        int numLevels = Texture.getNumLevels(width, height);
+        int size = 0;
+        for(int level = 0; level < numLevels; level++) {
+            size += format.getLevelBytes(width >> level, height >> level);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        List<ByteBuffer> levels = new ArrayList<>(numLevels);
+        List<ByteBuffer> levelPixels = Texture.createLevels(textureData, usage.isSRGB(), 1, numLevels);
+        try {
+            int offset = 0;
+            for(int level = 0; level < numLevels; level++) {
+                int levelWidth = Math.max(1, width >> level);
+                int levelHeight = Math.max(1, height >> level);
+                int levelBytes = format.getLevelBytes(levelWidth, levelHeight);
+                ByteBuffer levelData = buffer.slice(offset, levelBytes);
+                encode(level == 0 ? textureData.pixels() : levelPixels.get(level - 1), levelWidth, levelHeight
+                        , format, levelData);
+                levels.add(levelData);
+                offset += levelBytes;
+            }
+        } finally {
+            levelPixels.forEach(MemoryUtil::memFree);
+        }
+        return new CompressedTextureData(width, height, format, usage, levels);
+    }
+
+    // Normal maps use BC5, colors with transparent pixels BC3 and everything else BC1, unless bc7 is set.
+    public static CompressedTextureData.Format selectFormat(TextureData textureData
+            , CompressedTextureData.Usage usage, boolean bc7) {
+        if(usage == CompressedTextureData.Usage.NORMAL_MAP) {
+            return CompressedTextureData.Format.BC5;
+        }
+        if(bc7) {
+            return CompressedTextureData.Format.BC7;
+        }
+        if(usage == CompressedTextureData.Usage.COLOR && hasAlpha(textureData)) {
+            return CompressedTextureData.Format.BC3;
+        }
+        return CompressedTextureData.Format.BC1;
+    }
+
+    // Encodes RGBA8 pixels into dest from its position, dest needs format.getLevelBytes(width, height)
+    // bytes remaining. Blocks crossing the image edges repeat the last row and column.
+    public static void encode(ByteBuffer pixels, int width, int height, CompressedTextureData.Format format
+            , ByteBuffer dest) {
+        if(dest.remaining() < format.getLevelBytes(width, height)) {
+            throw new RuntimeException("Compressed level doesn't fit [" + width + "x" + height + " " + format + "]");
+        }
+        // Blocks are written as little endian longs.
+        ByteBuffer out = dest.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int blocksY = (height + 3) / 4;
+        EncodeTask task = new EncodeTask(pixels, width, height, format, out, 0, blocksY);
+        if(blocksY <= TASK_THRESHOLD) {
+            task.encodeRows();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+    }
+
+    private static boolean hasAlpha(TextureData textureData) {
+        ByteBuffer pixels = textureData.pixels();
+        int end = pixels.position() + textureData.width() * textureData.height() * 4;
+        for(int i = pixels.position() + 3; i < end; i += 4) {
+            if(pixels.get(i) != (byte) 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // RGBA of the 16 block pixels, row by row.
+    private static void readBlock(ByteBuffer pixels, int width, int height, int blockX, int blockY, int[] block) {
+        for(int y = 0; y < 4; y++) {
+            int pixelY = Math.min(blockY * 4 + y, height - 1);
+            for(int x = 0; x < 4; x++) {
+                int pixelX = Math.min(blockX * 4 + x, width - 1);
+                int index = pixels.position() + (pixelY * width + pixelX) * 4;
+                int blockIndex = (y * 4 + x) * 4;
+                for(int c = 0; c < 4; c++) {
+                    block[blockIndex + c] = pixels.get(index + c) & 0xFF;
+                }
+            }
+        }
+    }
+
+    // c0 and c1 as RGB565 in the first 32 bits, then 2 bits per pixel.
+    static long encodeBC1(int[] block) {
+        float[] e0 = new float[4];
+        float[] e1 = new float[4];
+        fitEndpoints(block, 3, e0, e1);
+        // Insetting the endpoints by 1/16 of the range lowers the error of the pixels in between.
+        for(int c = 0; c < 3; c++) {
+            float inset = (e1[c] - e0[c]) / 16.0f;
+            e0[c] += inset;
+            e1[c] -= inset;
+        }
+        long bits = bc1Block(block, toRGB565(e0), toRGB565(e1));
+
+        float[] weights = new float[16];
+        for(int i = 0; i < 16; i++) {
+            weights[i] = BC1_WEIGHTS[(int) (bits >>> (32 + i * 2)) & 3];
+        }
+        if(fitLeastSquares(block, 3, weights, e0, e1)) {
+            long refinedBits = bc1Block(block, toRGB565(e0), toRGB565(e1));
+            if(bc1Error(block, refinedBits) < bc1Error(block, bits)) {
+                bits = refinedBits;
+            }
+        }
+        return bits;
+    }
+
+    // Always in the 4 color mode, c0 > c1, so the block decodes the same in BC1 and BC3.
+    private static long bc1Block(int[] block, int c0, int c1) {
+        if(c0 < c1) {
+            int swap = c0;
+            c0 = c1;
+            c1 = swap;
+        }
+        if(c0 == c1) {
+            return c0 | (long) c1 << 16;
+        }
+
+        int[] palette = new int[16];
+        bc1Palette(c0, c1, palette);
+        long indices = 0;
+        for(int i = 0; i < 16; i++) {
+            int bestIndex = 0;
+            int bestError = Integer.MAX_VALUE;
+            for(int j = 0; j < 4; j++) {
+                int error = colorError(block, i * 4, palette, j * 4, 3);
+                if(error < bestError) {
+                    bestError = error;
+                    bestIndex = j;
+                }
+            }
+            indices |= (long) bestIndex << (i * 2);
+        }
+        return c0 | (long) c1 << 16 | indices << 32;
+    }
+
+    private static void bc1Palette(int c0, int c1, int[] palette) {
+        fromRGB565(c0, palette, 0);
+        fromRGB565(c1, palette, 4);
+        for(int c = 0; c < 3; c++) {
+            palette[8 + c] = (2 * palette[c] + palette[4 + c]) / 3;
+            palette[12 + c] = (palette[c] + 2 * palette[4 + c]) / 3;
+        }
+    }
+
+    private static long bc1Error(int[] block, long bits) {
+        int[] palette = new int[16];
+        bc1Palette((int) bits & 0xFFFF, (int) (bits >>> 16) & 0xFFFF, palette);
+        long error = 0;
+        for(int i = 0; i < 16; i++) {
+            error += colorError(block, i * 4, palette, ((int) (bits >>> (32 + i * 2)) & 3) * 4, 3);
+        }
+        return error;
+    }
+
+    // One channel of the block with 8 interpolated values, a0 and a1 in the first 16 bits, then 3 bits
+    // per pixel. The alpha block of BC3 and both blocks of BC5.
+    static long encodeBC4(int[] block, int channel) {
+        int min = 255;
+        int max = 0;
+        for(int i = 0; i < 16; i++) {
+            min = Math.min(min, block[i * 4 + channel]);
+            max = Math.max(max, block[i * 4 + channel]);
+        }
+        if(min == max) {
+            return max | (long) max << 8;
+        }
+
+        long indices = 0;
+        for(int i = 0; i < 16; i++) {
+            // Step from a1 to a0, index 0 is a0, 1 is a1 and 2 to 7 are the steps in between from a0 down.
+            int step = Math.round((block[i * 4 + channel] - min) * 7.0f / (max - min));
+            int index = step == 7 ? 0 : step == 0 ? 1 : 8 - step;
+            indices |= (long) index << (i * 3);
+        }
+        return max | (long) min << 8 | indices << 16;
+    }
+
+    // Mode 6: 7 bit RGBA endpoints with a p-bit each and 4 bit indices.
+    static void encodeBC7(int[] block, ByteBuffer out, int offset) {
+        float[] e0 = new float[4];
+        float[] e1 = new float[4];
+        fitEndpoints(block, 4, e0, e1);
+        int[] q0 = new int[5];
+        int[] q1 = new int[5];
+        quantizeBC7(e0, q0);
+        quantizeBC7(e1, q1);
+        int[] indices = new int[16];
+        long error = bc7Indices(block, q0, q1, indices);
+
+        float[] weights = new float[16];
+        for(int i = 0; i < 16; i++) {
+            weights[i] = BC7_WEIGHTS[indices[i]] / 64.0f;
+        }
+        if(fitLeastSquares(block, 4, weights, e0, e1)) {
+            int[] refined0 = new int[5];
+            int[] refined1 = new int[5];
+            int[] refinedIndices = new int[16];
+            quantizeBC7(e0, refined0);
+            quantizeBC7(e1, refined1);
+            if(bc7Indices(block, refined0, refined1, refinedIndices) < error) {
+                q0 = refined0;
+                q1 = refined1;
+                indices = refinedIndices;
+            }
+        }
+
+        // The first index is stored with 3 bits, its top bit must be 0. The weights are symmetric,
+        // so swapping the endpoints and mirroring the indices decodes the same.
+        if(indices[0] >= 8) {
+            int[] swap = q0;
+            q0 = q1;
+            q1 = swap;
+            for(int i = 0; i < 16; i++) {
+                indices[i] = 15 - indices[i];
+            }
+        }
+
+        long[] bits = new long[2];
+        int position = putBits(bits, 0, 1 << 6, 7);
+        for(int c = 0; c < 4; c++) {
+            position = putBits(bits, position, q0[c], 7);
+            position = putBits(bits, position, q1[c], 7);
+        }
+        position = putBits(bits, position, q0[4], 1);
+        position = putBits(bits, position, q1[4], 1);
+        position = putBits(bits, position, indices[0], 3);
+        for(int i = 1; i < 16; i++) {
+            position = putBits(bits, position, indices[i], 4);
+        }
+        out.putLong(offset, bits[0]);
+        out.putLong(offset + 8, bits[1]);
+    }
+
+    // 7 bits per channel and the p-bit shared by the channels, whichever p-bit is closer.
+    private static void quantizeBC7(float[] endpoint, int[] dest) {
+        float bestError = Float.MAX_VALUE;
+        for(int p = 0; p < 2; p++) {
+            float error = 0.0f;
+            for(int c = 0; c < 4; c++) {
+                int q = Math.max(0, Math.min(127, Math.round((endpoint[c] - p) / 2.0f)));
+                float difference = ((q << 1) | p) - endpoint[c];
+                error += difference * difference;
+            }
+            if(error < bestError) {
+                bestError = error;
+                for(int c = 0; c < 4; c++) {
+                    dest[c] = Math.max(0, Math.min(127, Math.round((endpoint[c] - p) / 2.0f)));
+                }
+                dest[4] = p;
+            }
+        }
+    }
+
+    // Picks the nearest of the 16 interpolated colors for every pixel, returns the block error.
+    private static long bc7Indices(int[] block, int[] q0, int[] q1, int[] indices) {
+        int[] palette = new int[64];
+        for(int j = 0; j < 16; j++) {
+            for(int c = 0; c < 4; c++) {
+                int v0 = (q0[c] << 1) | q0[4];
+                int v1 = (q1[c] << 1) | q1[4];
+                palette[j * 4 + c] = ((64 - BC7_WEIGHTS[j]) * v0 + BC7_WEIGHTS[j] * v1 + 32) >> 6;
+            }
+        }
+        long error = 0;
+        for(int i = 0; i < 16; i++) {
+            int bestError = Integer.MAX_VALUE;
+            for(int j = 0; j < 16; j++) {
+                int pixelError = colorError(block, i * 4, palette, j * 4, 4);
+                if(pixelError < bestError) {
+                    bestError = pixelError;
+                    indices[i] = j;
+                }
+            }
+            error += bestError;
+        }
+        return error;
+    }
+
+    // The ends of the block's pixels projected on their principal axis.
+    private static void fitEndpoints(int[] block, int channels, float[] e0, float[] e1) {
+        float[] mean = new float[4];
+        for(int i = 0; i < 16; i++) {
+            for(int c = 0; c < channels; c++) {
+                mean[c] += block[i * 4 + c] / 16.0f;
+            }
+        }
+        float[] covariance = new float[16];
+        for(int i = 0; i < 16; i++) {
+            for(int a = 0; a < channels; a++) {
+                float da = block[i * 4 + a] - mean[a];
+                for(int b = 0; b < channels; b++) {
+                    covariance[a * 4 + b] += da * (block[i * 4 + b] - mean[b]);
+                }
+            }
+        }
+
+        // Power iteration, from the covariance column of the channel that varies the most.
+        int maxChannel = 0;
+        for(int c = 1; c < channels; c++) {
+            if(covariance[c * 4 + c] > covariance[maxChannel * 4 + maxChannel]) {
+                maxChannel = c;
+            }
+        }
+        float[] axis = new float[4];
+        float[] next = new float[4];
+        for(int c = 0; c < channels; c++) {
+            axis[c] = covariance[c * 4 + maxChannel];
+        }
+        for(int iteration = 0; iteration < 8; iteration++) {
+            float length = 0.0f;
+            for(int a = 0; a < channels; a++) {
+                next[a] = 0.0f;
+                for(int b = 0; b < channels; b++) {
+                    next[a] += covariance[a * 4 + b] * axis[b];
+                }
+                length += next[a] * next[a];
+            }
+            if(length < 1e-12f) {
+                break;
+            }
+            length = (float) Math.sqrt(length);
+            for(int c = 0; c < channels; c++) {
+                axis[c] = next[c] / length;
+            }
+        }
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for(int i = 0; i < 16; i++) {
+            float t = 0.0f;
+            for(int c = 0; c < channels; c++) {
+                t += (block[i * 4 + c] - mean[c]) * axis[c];
+            }
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        for(int c = 0; c < channels; c++) {
+            e0[c] = Math.max(0.0f, Math.min(255.0f, mean[c] + axis[c] * min));
+            e1[c] = Math.max(0.0f, Math.min(255.0f, mean[c] + axis[c] * max));
+        }
+    }
+
+    // Endpoints that minimize the squared error of the pixels interpolated with the given weights of e1.
+    // Returns false if the weights don't determine them, e.g. all pixels use the same index.
+    private static boolean fitLeastSquares(int[] block, int channels, float[] weights, float[] e0, float[] e1) {
+        float a = 0.0f;
+        float b = 0.0f;
+        float d = 0.0f;
+        float[] x = new float[4];
+        float[] y = new float[4];
+        for(int i = 0; i < 16; i++) {
+            float w = weights[i];
+            a += (1.0f - w) * (1.0f - w);
+            b += (1.0f - w) * w;
+            d += w * w;
+            for(int c = 0; c < channels; c++) {
+                x[c] += (1.0f - w) * block[i * 4 + c];
+                y[c] += w * block[i * 4 + c];
+            }
+        }
+        float determinant = a * d - b * b;
+        if(Math.abs(determinant) < 1e-6f) {
+            return false;
+        }
+        for(int c = 0; c < channels; c++) {
+            e0[c] = Math.max(0.0f, Math.min(255.0f, (d * x[c] - b * y[c]) / determinant));
+            e1[c] = Math.max(0.0f, Math.min(255.0f, (a * y[c] - b * x[c]) / determinant));
+        }
+        return true;
+    }
+
+    private static int colorError(int[] block, int blockIndex, int[] palette, int paletteIndex, int channels) {
+        int error = 0;
+        for(int c = 0; c < channels; c++) {
+            int difference = block[blockIndex + c] - palette[paletteIndex + c];
+            error += difference * difference;
+        }
+        return error;
+    }
+
+    private static int toRGB565(float[] color) {
+        int r = Math.max(0, Math.min(31, Math.round(color[0] * 31.0f / 255.0f)));
+        int g = Math.max(0, Math.min(63, Math.round(color[1] * 63.0f / 255.0f)));
+        int b = Math.max(0, Math.min(31, Math.round(color[2] * 31.0f / 255.0f)));
+        return (r << 11) | (g << 5) | b;
+    }
+
+    private static void fromRGB565(int color, int[] dest, int index) {
+        int r = (color >> 11) & 31;
+        int g = (color >> 5) & 63;
+        int b = color & 31;
+        dest[index] = (r << 3) | (r >> 2);
+        dest[index + 1] = (g << 2) | (g >> 4);
+        dest[index + 2] = (b << 3) | (b >> 2);
+    }
+
+    // Writes the low count bits of value at the bit position of the 128 bit block, returns the next position.
+    private static int putBits(long[] bits, int position, long value, int count) {
+        if(position < 64) {
+            bits[0] |= value << position;
+            if(position + count > 64) {
+                bits[1] |= value >>> (64 - position);
+            }
+        } else {
+            bits[1] |= value << (position - 64);
+        }
+        return position + count;
+    }
+
+    // Fork/join tasks are never serialized.
+    @SuppressWarnings("serial")
+    private static class EncodeTask extends RecursiveAction {
+        private final ByteBuffer pixels;
+        private final int width;
+        private final int height;
+        private final CompressedTextureData.Format format;
+        private final ByteBuffer out;
+        private final int startRow;
+        private final int endRow;
+
+        private EncodeTask(ByteBuffer pixels, int width, int height, CompressedTextureData.Format format
+                , ByteBuffer out, int startRow, int endRow) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.out = out;
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            if(endRow - startRow <= TASK_THRESHOLD) {
+                encodeRows();
+                return;
+            }
+
+            int middle = (startRow + endRow) >>> 1;
+            invokeAll(new EncodeTask(pixels, width, height, format, out, startRow, middle)
+                    , new EncodeTask(pixels, width, height, format, out, middle, endRow));
+        }
+
+        // Every block is written at its own offset, the tasks never touch the same bytes.
+        private void encodeRows() {
+            int[] block = new int[64];
+            int blocksX = (width + 3) / 4;
+            int blockBytes = format.getBlockBytes();
+            for(int blockY = startRow; blockY < endRow; blockY++) {
+                for(int blockX = 0; blockX < blocksX; blockX++) {
+                    readBlock(pixels, width, height, blockX, blockY, block);
+                    int offset = out.position() + (blockY * blocksX + blockX) * blockBytes;
+                    switch(format) {
+                        case BC1 -> out.putLong(offset, encodeBC1(block));
+                        case BC3 -> {
+                            out.putLong(offset, encodeBC4(block, 3));
+                            out.putLong(offset + 8, encodeBC1(block));
+                        }
+                        case BC5 -> {
+                            out.putLong(offset, encodeBC4(block, 0));
+                            out.putLong(offset + 8, encodeBC4(block, 1));
+                        }
+                        case BC7 -> encodeBC7(block, out, offset);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageResize.*;
+
+// RGBA8 image decoded by stb_image, before it's uploaded to a Texture.
+// Doesn't touch OpenGL, so images can be decoded on any thread.
+// The pixels are owned by stb_image and must be freed once uploaded.
+public record TextureData(int width, int height, ByteBuffer pixels) {
+    public static TextureData load(String texturePath) {
+        try(MemoryStack stack = MemoryStack.stackPush()) {
+            // Allocate off-heap memory for the width, height and image channels
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            // Load a picture into a buffer using stb
+            ByteBuffer pixels = stbi_load(texturePath, w, h, channels, 4);
+
+            if(pixels == null) {
+                throw new RuntimeException("Couldn't load image file [" + texturePath + "] "
+                        + stbi_failure_reason());
+            }
+
+            return new TextureData(w.get(0), h.get(0), pixels);
+        }
+    }
+
+    public void free() {
+        stbi_image_free(pixels);
+    }
+
+    // Resizes RGBA8 pixels, sRGB colors are filtered in linear space and the alpha of data textures isn't
+    // used as a weight. The returned pixels are allocated with MemoryUtil and must be freed with memFree.
+    public static ByteBuffer resize(ByteBuffer pixels, int width, int height, int newWidth, int newHeight
+            , boolean sRGB) {
+        ByteBuffer resized = MemoryUtil.memAlloc(newWidth * newHeight * 4);
+        ByteBuffer result = sRGB
+                ? stbir_resize_uint8_srgb(pixels, width, height, 0, resized, newWidth, newHeight, 0, STBIR_RGBA)
+                : stbir_resize_uint8_linear(pixels, width, height, 0, resized, newWidth, newHeight, 0
+                , STBIR_4CHANNEL);
+        if(result == null) {
+            MemoryUtil.memFree(resized);
+            throw new RuntimeException("Couldn't resize image [" + width + "x" + height + " to " + newWidth
+                    + "x" + newHeight + "]");
+        }
+        return resized;
+    }
+}
@@ -0,0 +1,235 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Streams the fine mip levels of the scene textures in and out within a GPU memory budget.
+// Streamed textures are created with only their small levels, see TextureCache. The render passes report
+// the on-screen size every texture is drawn at, and once per frame the streamer decodes the levels the
+// textures are missing on its loader thread and uploads them. When the budget is exceeded, the finest
+// levels of the least recently drawn textures are freed. Textures that aren't streamed count
+// towards the budget but are never evicted. A texture's levels don't change while a load of it is queued,
+// decoding or waiting for its upload, and textures whose levels failed to decode aren't streamed again.
+public class TextureStreamer {
+    // Streamed textures always keep the levels up to this size resident.
+    public static final int RESIDENT_SIZE = 128;
+    // Textures drawn in the last frames are never evicted to make room for others, it would only thrash.
+    private static final int RECENTLY_USED_FRAMES = 30;
+    // Level bytes uploaded per frame, a load is always uploaded whole.
+    private static final long UPLOAD_BUDGET_BYTES = 32L * 1024 * 1024;
+    private static long budgetBytes;
+
+    private final ExecutorService loader;
+    private final Queue<LoadedLevels> loadedQueue = new ConcurrentLinkedQueue<>();
+    // Reused every frame.
+    private final List<Texture> streamedTextures = new ArrayList<>();
+    private final List<Texture> requests = new ArrayList<>();
+    private long frame;
+    private long residentBytes;
+    private long pendingBytes;
+    private int pendingLoads;
+    private int numStreamedTextures;
+    private int numTextures;
+
+    public TextureStreamer() {
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Polygon-TextureStreamer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Textures created afterwards are streamed, 0 disables streaming.
+    public static void setBudgetBytes(long budgetBytes) {
+        TextureStreamer.budgetBytes = budgetBytes;
+    }
+
+    public static long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public static boolean isEnabled() {
+        return budgetBytes > 0;
+    }
+
+    // Called once per frame after the passes that request textures.
+    public void update(TextureCache textureCache) {
+        frame++;
+        uploadLoadedLevels();
+
+        Collection<Texture> textures = textureCache.getTextures();
+        streamedTextures.clear();
+        requests.clear();
+        residentBytes = 0;
+        numTextures = textures.size();
+        for(Texture texture : textures) {
+            residentBytes += texture.getResidentBytes();
+            if(!texture.isStreamed()) {
+                continue;
+            }
+            streamedTextures.add(texture);
+            texture.updateRequest(frame);
+            if(!texture.isStreamingPending() && !texture.isStreamingFailed()
+                    && texture.getRequestedLevel() < texture.getResidentLevel()) {
+                requests.add(texture);
+            }
+        }
+        numStreamedTextures = streamedTextures.size();
+        if(!isEnabled()) {
+            return;
+        }
+
+        // Least recently drawn textures first.
+        streamedTextures.sort(Comparator.comparingLong(Texture::getLastUsedFrame));
+        evict(budgetBytes, false);
+
+        // The textures drawn the largest on screen stream first.
+        requests.sort(Comparator.comparingInt(Texture::getRequestedLevel));
+        for(Texture texture : requests) {
+            int level = texture.getRequestedLevel();
+            long bytes = getLoadBytes(texture, level);
+            if(residentBytes + pendingBytes + bytes > budgetBytes) {
+                evict(budgetBytes - bytes, true);
+            }
+            // Settle for a coarser level if the finest one doesn't fit.
+            while(level < texture.getResidentLevel() && residentBytes + pendingBytes + bytes > budgetBytes) {
+                level++;
+                bytes = getLoadBytes(texture, level);
+            }
+            if(level < texture.getResidentLevel()) {
+                load(texture, level, bytes);
+            }
+        }
+    }
+
+    // Frees levels from the least recently drawn textures until the resident and pending levels fit
+    // in targetBytes. onlyUnused keeps the recently drawn textures.
+    private void evict(long targetBytes, boolean onlyUnused) {
+        for(Texture texture : streamedTextures) {
+            if(residentBytes + pendingBytes <= targetBytes) {
+                return;
+            }
+            if(onlyUnused && frame - texture.getLastUsedFrame() < RECENTLY_USED_FRAMES) {
+                return;
+            }
+            // Its load was decoded for the current levels.
+            if(texture.isStreamingPending()) {
+                continue;
+            }
+            while(residentBytes + pendingBytes > targetBytes
+                    && texture.getResidentLevel() < texture.getMinResidentLevel()) {
+                residentBytes -= texture.evictLevel();
+            }
+        }
+    }
+
+    // Bytes of the levels from level to the finest resident one.
+    private static long getLoadBytes(Texture texture, int level) {
+        long bytes = 0;
+        for(int i = level; i < texture.getResidentLevel(); i++) {
+            bytes += texture.getLevelBytes(i);
+        }
+        return bytes;
+    }
+
+    private void load(Texture texture, int firstLevel, long bytes) {
+        int lastLevel = texture.getResidentLevel();
+        String texturePath = texture.getTexturePath();
+        boolean sRGB = texture.isInternalFormatSRGB();
+        CompressedTextureData.Usage compressedUsage = texture.getCompressedUsage();
+        texture.setStreamingPending(true);
+        pendingLoads++;
+        pendingBytes += bytes;
+        loader.execute(() -> {
+            List<ByteBuffer> levels = null;
+            try {
+                if(compressedUsage != null) {
+                    // Compressed textures read their levels back from the texture cache.
+                    levels = Texture.createLevels(CompressedTextureCache.load(texturePath, compressedUsage)
+                            , firstLevel, lastLevel);
+                } else {
+                    TextureData textureData = TextureData.load(texturePath);
+                    try {
+                        levels = Texture.createLevels(textureData, sRGB, firstLevel, lastLevel);
+                    } finally {
+                        textureData.free();
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Couldn't stream texture [" + texturePath + "], keeping its resident levels "
+                        + e.getMessage());
+            }
+            loadedQueue.add(new LoadedLevels(texture, firstLevel, lastLevel, bytes, levels));
+        });
+    }
+
+    private void uploadLoadedLevels() {
+        long uploadedBytes = 0;
+        LoadedLevels loadedLevels;
+        while(uploadedBytes < UPLOAD_BUDGET_BYTES && (loadedLevels = loadedQueue.poll()) != null) {
+            Texture texture = loadedLevels.texture();
+            pendingLoads--;
+            pendingBytes -= loadedLevels.bytes();
+            texture.setStreamingPending(false);
+            if(loadedLevels.levels() == null) {
+                texture.setStreamingFailed(true);
+                continue;
+            }
+            // The levels only fit right above the resident ones they were decoded for.
+            if(!texture.isDeleted() && texture.getResidentLevel() == loadedLevels.lastLevel()) {
+                texture.uploadLevels(loadedLevels.levels(), loadedLevels.firstLevel());
+                uploadedBytes += loadedLevels.bytes();
+            }
+            loadedLevels.free();
+        }
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public int getNumTextures() {
+        return numTextures;
+    }
+
+    public int getNumStreamedTextures() {
+        return numStreamedTextures;
+    }
+
+    public int getPendingLoads() {
+        return pendingLoads;
+    }
+
+    public void cleanup() {
+        loader.shutdownNow();
+        try {
+            loader.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LoadedLevels loadedLevels;
+        while((loadedLevels = loadedQueue.poll()) != null) {
+            loadedLevels.free();
+        }
+    }
+
+    // levels is null if decoding failed.
+    private record LoadedLevels(Texture texture, int firstLevel, int lastLevel, long bytes, List<ByteBuffer> levels) {
+        private void free() {
+            if(levels != null) {
+                levels.forEach(MemoryUtil::memFree);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// A buffer backing std140 uniform blocks. Blocks are assigned to the binding points below with
+// ShaderProgram.bindUniformBlock, GL 4.1 shaders can't declare the binding themselves.
+// The data is written to a staging buffer at the block's std140 offsets, upload orphans the previous
+// storage so the draw calls still reading from it don't stall the upload.
+public class UniformBuffer {
+    // Per-frame camera matrices and screen size, see FrameUniforms.
+    public static final int CAMERA_BINDING = 0;
+    // Per-frame cascades, base lights and fog, see FrameUniforms.
+    public static final int LIGHTING_BINDING = 1;
+    // Material of the meshes drawn by the SceneRender.
+    public static final int MATERIAL_BINDING = 2;
+    // One light volume drawn by the LightsRender, bound as a range of the frame's light volumes.
+    public static final int LIGHT_VOLUME_BINDING = 3;
+
+    private static int offsetAlignment = -1;
+    private final int bufferId;
+    private ByteBuffer data;
+
+    public UniformBuffer(int size) {
+        data = MemoryUtil.memCalloc(size);
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    // Required alignment of the offsets passed to bindRange.
+    public static int getOffsetAlignment() {
+        if(offsetAlignment < 0) {
+            offsetAlignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+        }
+        return offsetAlignment;
+    }
+
+    // Rounds size up to the offset alignment, the stride of blocks bound as ranges of one buffer.
+    public static int alignRange(int size) {
+        int alignment = getOffsetAlignment();
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    // Staging data, written with absolute offsets.
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int getCapacity() {
+        return data.capacity();
+    }
+
+    // Grows the staging data, the contents are kept.
+    public void ensureCapacity(int size) {
+        if(size <= data.capacity()) {
+            return;
+        }
+        int capacity = data.capacity();
+        while(capacity < size) {
+            capacity *= 2;
+        }
+        data = MemoryUtil.memRealloc(data, capacity);
+    }
+
+    public void upload() {
+        upload(data.capacity());
+    }
+
+    // Uploads the first size bytes of the staging data.
+    public void upload(int size) {
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, data.slice(0, size), GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        RenderStats.addUniformUpload(size);
+    }
+
+    public void bind(int binding) {
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, bufferId);
+    }
+
+    public void bindRange(int binding, int offset, int size) {
+        glBindBufferRange(GL_UNIFORM_BUFFER, binding, bufferId, offset, size);
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(bufferId);
+        MemoryUtil.memFree(data);
+    }
+}
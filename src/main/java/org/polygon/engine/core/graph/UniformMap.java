@@ -31,8 +31,9 @@ public class UniformMap {
         uniformReferences.put(uniformName, uniformLocation);
     }
 
-    // Get uniform location for setUniform methods
-    private Integer getUniformLocation(String uniformName) {
+    // Get uniform location for setUniform methods, every setUniform call is counted as an upload of size bytes.
+    private Integer getUniformLocation(String uniformName, int size) {
+        RenderStats.addUniformUpload(size);
         Integer location = uniformReferences.get(uniformName);
         if(location == null) {
             throw new RuntimeException("Could not set value to uniform ["
@@ -45,7 +46,7 @@ public class UniformMap {
     // set's the uniform reference with value.
     public void setUniform(String uniformName, Matrix4f value) {
         try(MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix4fv(getUniformLocation(uniformName), false, value.get(stack.mallocFloat(16)));
+            glUniformMatrix4fv(getUniformLocation(uniformName, 16 * Float.BYTES), false, value.get(stack.mallocFloat(16)));
         }
     }
 
@@ -56,7 +57,7 @@ public class UniformMap {
             for(int i = 0; i < length; i++) {
                 values[i].get(16 * i, floatBuffer);
             }
-            glUniformMatrix4fv(getUniformLocation(uniformName), false, floatBuffer);
+            glUniformMatrix4fv(getUniformLocation(uniformName, 16 * length * Float.BYTES), false, floatBuffer);
         }
     }
 
@@ -69,10 +70,25 @@ public class UniformMap {
                 floatBuffer.put(3 * i + 1, values[i].y);
                 floatBuffer.put(3 * i + 2, values[i].z);
             }
-            glUniform3fv(getUniformLocation(uniformName), floatBuffer);
+            glUniform3fv(getUniformLocation(uniformName, 3 * length * Float.BYTES), floatBuffer);
         }
     }
 
+    public void setUniform(String uniformName, Vector4f[] values) {
+        try(MemoryStack stack = MemoryStack.stackPush()) {
+            int length = values != null ? values.length : 0;
+            FloatBuffer floatBuffer = stack.mallocFloat(4 * length);
+            for(int i = 0; i < length; i++) {
+                values[i].get(4 * i, floatBuffer);
+            }
+            glUniform4fv(getUniformLocation(uniformName, 4 * length * Float.BYTES), floatBuffer);
+        }
+    }
+
+    public void setUniform(String uniformName, float[] values) {
+        glUniform1fv(getUniformLocation(uniformName, values.length * Float.BYTES), values);
+    }
+
     public void setUniform(String uniformName, boolean value) {
         if(value == true) {
             setUniform(uniformName, 1);
@@ -81,21 +97,21 @@ public class UniformMap {
         }
     }
     public void setUniform(String uniformName, int value) {
-        glUniform1i(getUniformLocation(uniformName), value);
+        glUniform1i(getUniformLocation(uniformName, Integer.BYTES), value);
     }
 
     public void setUniform(String uniformName, float value) {
-        glUniform1f(getUniformLocation(uniformName), value);
+        glUniform1f(getUniformLocation(uniformName, Float.BYTES), value);
     }
 
     public void setUniform(String uniformName, Vector4f value) {
-        glUniform4f(getUniformLocation(uniformName), value.x, value.y, value.z, value.w);
+        glUniform4f(getUniformLocation(uniformName, 4 * Float.BYTES), value.x, value.y, value.z, value.w);
     }
     public void setUniform(String uniformName, Vector3f value) {
-        glUniform3f(getUniformLocation(uniformName), value.x, value.y, value.z);
+        glUniform3f(getUniformLocation(uniformName, 3 * Float.BYTES), value.x, value.y, value.z);
     }
 
     public void setUniform(String uniformName, Vector2f value) {
-        glUniform2f(getUniformLocation(uniformName), value.x, value.y);
+        glUniform2f(getUniformLocation(uniformName, 2 * Float.BYTES), value.x, value.y);
     }
 }
@@ -0,0 +1,68 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Vector3f;
+import org.polygon.engine.core.scene.BoundingVolumeHierarchy;
+import org.polygon.engine.core.scene.Entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Result of a culling query grouped by model id, so render passes can keep drawing model by model.
+// The lists are reused between frames to avoid allocating in the render loop.
+public class VisibleEntities {
+    private final List<Entity> entities = new ArrayList<>();
+    private final Map<String, List<Entity>> modelEntitiesMap = new HashMap<>();
+
+    // Collects the entities of the BVH inside the frustum.
+    public void query(BoundingVolumeHierarchy bvh, Frustum frustum) {
+        clear();
+        bvh.query(frustum, entities);
+        groupByModel();
+    }
+
+    // Collects the entities of the BVH touching the sphere.
+    public void query(BoundingVolumeHierarchy bvh, Vector3f center, float radius) {
+        clear();
+        bvh.query(center, radius, entities);
+        groupByModel();
+    }
+
+    // Keeps the entities of another result that are inside the frustum, tested with their model's bounding box.
+    public void filter(VisibleEntities source, Collection<Model> models, Frustum frustum) {
+        clear();
+        for(Model model : models) {
+            for(Entity entity : source.getEntityList(model.getModelId())) {
+                if(frustum.isBoxVisible(model.getAabbMinCorner(), model.getAabbMaxCorner(), entity.getRenderModelMatrix())) {
+                    entities.add(entity);
+                }
+            }
+        }
+        groupByModel();
+    }
+
+    public List<Entity> getEntityList(String modelId) {
+        List<Entity> entityList = modelEntitiesMap.get(modelId);
+        return entityList != null ? entityList : Collections.emptyList();
+    }
+
+    public int size() {
+        return entities.size();
+    }
+
+    private void clear() {
+        entities.clear();
+        for(List<Entity> entityList : modelEntitiesMap.values()) {
+            entityList.clear();
+        }
+    }
+
+    private void groupByModel() {
+        for(Entity entity : entities) {
+            modelEntitiesMap.computeIfAbsent(entity.getModelId(), modelId -> new ArrayList<>()).add(entity);
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.util.Arrays;
 
 // Entity can store AnimationData to animate Model.
 // AnimationData returns animation frames based on the currentTime in the animation timeline.
+// The game logic advances the animation state, the renderers read a copy of it taken by the Scene
+// at the update/render sync point, so the update can run on another thread while a frame is rendered.
 public class AnimationData {
     // Initialize a default bone transformation matrices array with zero matrices.
     // used for static meshes in the vertex shader.
@@ -28,9 +30,20 @@ public class AnimationData {
     // Used to decide interpolation between animation frames.
     private boolean interpolate = true;
 
+    // Animation state seen by the renderers, copied from the state above in syncRenderState.
+    private Model.Animation renderAnimation;
+    private float renderTime;
+    private boolean renderInterpolate;
+
+    // Interpolated poses, the render pose is shared by every render pass that asks for the render frame.
+    // The update pose is only allocated if the game logic asks for the current frame itself.
+    private final Pose renderPose = new Pose();
+    private Pose updatePose;
+
     public AnimationData(Model.Animation currentAnimation) {
         this.currentAnimation = currentAnimation;
         this.currentTime = 0.0f;
+        syncRenderState();
     }
 
     public Model.Animation getCurrentAnimation() {
@@ -38,31 +51,47 @@ public class AnimationData {
     }
 
     // Returns current frame or interpolated frame if interpolation is set to true.
+    // The interpolated frame is a reused buffer, it is only valid until the animation time changes.
+    // Renderers must use getRenderFrame instead.
     public Model.AnimatedFrame getCurrentFrame() {
-        Model.AnimatedFrame currentFrame = currentAnimation.frames().get(getCurrentFrameIndex());
-        if(interpolate) {
-            // Get current and next frame matrices.
-            Matrix4f[] currentFrameMatrices = currentFrame.boneMatrices();
-            Matrix4f[] nextFrameMatrices = currentAnimation.frames().get(getNextFrameIndex()).boneMatrices();
-            float interpolationFactor = getInterpolationFactor();
-
-            // Create interpolated matrices.
-            Matrix4f[] interpolatedMatrices = new Matrix4f[ModelLoader.MAX_BONES];
-            for (int i = 0; i < ModelLoader.MAX_BONES; i++) {
-                interpolatedMatrices[i] = new Matrix4f();
-                // Linear interpolation between current and next frame.
-                currentFrameMatrices[i].lerp(nextFrameMatrices[i], interpolationFactor, interpolatedMatrices[i]);
-            }
-
-            return new Model.AnimatedFrame(interpolatedMatrices);
+        if(updatePose == null) {
+            updatePose = new Pose();
         }
-        return currentFrame;
+        return updatePose.evaluate(currentAnimation, currentTime, interpolate);
+    }
+
+    // Returns the frame of the animation state taken at the last sync point.
+    public Model.AnimatedFrame getRenderFrame() {
+        return renderPose.evaluate(renderAnimation, renderTime, renderInterpolate);
+    }
+
+    // Render state frames for the renderers sampling baked animations, the next frame and the
+    // interpolation factor match getRenderFrame, so without interpolation the next frame is the current one.
+    public Model.Animation getRenderAnimation() {
+        return renderAnimation;
+    }
+
+    public int getRenderFrameIndex() {
+        return getFrameIndex(renderAnimation, renderTime);
+    }
+
+    public int getRenderNextFrameIndex() {
+        return renderInterpolate ? getNextFrameIndex(renderAnimation, renderTime) : getRenderFrameIndex();
+    }
+
+    public float getRenderInterpolationFactor() {
+        return renderInterpolate ? getInterpolationFactor(renderAnimation, renderTime) : 0.0f;
+    }
+
+    // Copies the animation state for the renderers, called by the Scene while the update is not running.
+    void syncRenderState() {
+        renderAnimation = currentAnimation;
+        renderTime = currentTime;
+        renderInterpolate = interpolate;
     }
 
     public int getCurrentFrameIndex() {
-        int frameIndex = (int) Math.floor(currentTime * currentAnimation.frames().size() / currentAnimation.duration());
-        // Ensure the frame index never exceeds the last valid frame
-        return Math.min(frameIndex, currentAnimation.frames().size() - 1);
+        return getFrameIndex(currentAnimation, currentTime);
     }
 
     public float getCurrentTime() {
@@ -70,24 +99,17 @@ public class AnimationData {
     }
 
     public int getNextFrameIndex() {
-        int currentIndex = getCurrentFrameIndex();
-        int nextIndex = currentIndex + 1;
-        if (nextIndex >= currentAnimation.frames().size()) {
-            nextIndex = 0;
-        }
-        return nextIndex;
+        return getNextFrameIndex(currentAnimation, currentTime);
     }
 
     public float getInterpolationFactor() {
-        float frameTime = (float)currentAnimation.duration() / currentAnimation.frames().size();
-        float currentFrameTime = currentTime % frameTime;
-        return currentFrameTime / frameTime;
+        return getInterpolationFactor(currentAnimation, currentTime);
     }
 
     public void nextFrame(float deltaTime) {
         // Update the current time based on delta time and animation speed
         currentTime += deltaTime * animationSpeed;
-        
+
         // Loop the animation when we reach the end
         if (currentTime >= currentAnimation.duration()) {
             currentTime = 0.0f;
@@ -123,4 +145,66 @@ public class AnimationData {
         }
         this.currentTime = time;
     }
+
+    private static int getFrameIndex(Model.Animation animation, float time) {
+        int frameIndex = (int) Math.floor(time * animation.numFrames() / animation.duration());
+        // Ensure the frame index never exceeds the last valid frame
+        return Math.min(frameIndex, animation.numFrames() - 1);
+    }
+
+    private static int getNextFrameIndex(Model.Animation animation, float time) {
+        int nextIndex = getFrameIndex(animation, time) + 1;
+        if (nextIndex >= animation.numFrames()) {
+            nextIndex = 0;
+        }
+        return nextIndex;
+    }
+
+    private static float getInterpolationFactor(Model.Animation animation, float time) {
+        float frameTime = (float)animation.duration() / animation.numFrames();
+        float currentFrameTime = time % frameTime;
+        return currentFrameTime / frameTime;
+    }
+
+    // Preallocated bone palette the animation frames are sampled into,
+    // only resampled when the animation, time or interpolation changes.
+    private static class Pose {
+        private final Matrix4f[] matrices = new Matrix4f[ModelLoader.MAX_BONES];
+        private final Model.AnimatedFrame frame = new Model.AnimatedFrame(matrices);
+        private Model.Animation animation;
+        private float time;
+        private boolean interpolate;
+
+        private Pose() {
+            for(int i = 0; i < matrices.length; i++) {
+                matrices[i] = new Matrix4f();
+            }
+        }
+
+        private Model.AnimatedFrame evaluate(Model.Animation animation, float time, boolean interpolate) {
+            if(this.animation == animation && this.time == time && this.interpolate == interpolate) {
+                return frame;
+            }
+
+            if(this.animation != null && this.animation.numBones() > animation.numBones()) {
+                // Bones past the new animation's numBones may still hold the previous animation's pose.
+                for(int i = animation.numBones(); i < this.animation.numBones(); i++) {
+                    matrices[i].identity();
+                }
+            }
+
+            // Only the bones in use are sampled, the remaining palette matrices stay identity.
+            int frameIndex = getFrameIndex(animation, time);
+            if(interpolate) {
+                animation.sample(frameIndex, getNextFrameIndex(animation, time)
+                        , getInterpolationFactor(animation, time), matrices);
+            } else {
+                animation.sample(frameIndex, matrices);
+            }
+            this.animation = animation;
+            this.time = time;
+            this.interpolate = interpolate;
+            return frame;
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package org.polygon.engine.core.scene;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Advances animations and evaluates the bone palettes of all the animated entities in parallel.
+// The work is split into fork/join tasks over the entity list, every task owns a distinct range of
+// AnimationData objects so no synchronization is needed between them.
+public class AnimationSystem {
+    // Number of entities a task processes before splitting.
+    private static final int TASK_THRESHOLD = 16;
+    private final ForkJoinPool pool;
+
+    // Uses the common fork/join pool.
+    public AnimationSystem() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AnimationSystem(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // Advances every animation by deltaTime in seconds.
+    public void advance(List<AnimationData> animations, float deltaTime) {
+        run(animations, animationData -> animationData.nextFrame(deltaTime));
+    }
+
+    // Evaluates the render pose of every animation so the render passes only read the cached palettes.
+    public void evaluateRenderPoses(List<AnimationData> animations) {
+        run(animations, AnimationData::getRenderFrame);
+    }
+
+    private void run(List<AnimationData> animations, AnimationTask.Work work) {
+        if(animations.isEmpty()) {
+            return;
+        }
+        // Not worth handing a single batch over to the pool.
+        if(animations.size() <= TASK_THRESHOLD) {
+            for(AnimationData animationData : animations) {
+                work.apply(animationData);
+            }
+            return;
+        }
+        pool.invoke(new AnimationTask(animations, 0, animations.size(), work));
+    }
+
+    // Fork/join tasks are never serialized.
+    @SuppressWarnings("serial")
+    private static class AnimationTask extends RecursiveAction {
+        private final List<AnimationData> animations;
+        private final int start;
+        private final int end;
+        private final Work work;
+
+        private AnimationTask(List<AnimationData> animations, int start, int end, Work work) {
+            this.animations = animations;
+            this.start = start;
+            this.end = end;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= TASK_THRESHOLD) {
+                for(int i = start; i < end; i++) {
+                    work.apply(animations.get(i));
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new AnimationTask(animations, start, middle, work)
+                    , new AnimationTask(animations, middle, end, work));
+        }
+
+        private interface Work {
+            void apply(AnimationData animationData);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package org.polygon.engine.core.scene;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.polygon.engine.core.graph.Frustum;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Dynamic AABB tree used by the Scene to cull entities without testing every one of them.
+// Every entity is a leaf holding a fat AABB, its world AABB grown by a margin, so small movements
+// don't need to touch the tree. Internal nodes hold the union of their children and the tree is kept
+// balanced with rotations on insertion and removal.
+// Nodes are stored in flat arrays indexed by node id, freed nodes are reused through a free list.
+public class BoundingVolumeHierarchy {
+    public static final int NULL_NODE = -1;
+    private static final float DEFAULT_AABB_MARGIN = 0.1f;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final float aabbMargin;
+    private int root = NULL_NODE;
+    private int freeList = NULL_NODE;
+    private int leafCount;
+
+    // Node data, bounds stores minX, minY, minZ, maxX, maxY, maxZ for each node.
+    // parent doubles as the next free node for nodes in the free list.
+    private float[] bounds;
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    private int[] height;
+    private Entity[] entities;
+
+    // Reused traversal stack for the queries.
+    private int[] stack = new int[INITIAL_CAPACITY];
+    private final Vector3f worldMinAux = new Vector3f();
+    private final Vector3f worldMaxAux = new Vector3f();
+
+    public BoundingVolumeHierarchy() {
+        this(DEFAULT_AABB_MARGIN);
+    }
+
+    public BoundingVolumeHierarchy(float aabbMargin) {
+        this.aabbMargin = aabbMargin;
+        bounds = new float[0];
+        parent = new int[0];
+        child1 = new int[0];
+        child2 = new int[0];
+        height = new int[0];
+        entities = new Entity[0];
+        growNodes(INITIAL_CAPACITY);
+    }
+
+    // Adds the entity's local AABB transformed by the model matrix, returns the proxy id used to move or remove it.
+    public int createProxy(Entity entity, Vector3f localMin, Vector3f localMax, Matrix4f modelMatrix) {
+        Frustum.transformAABB(localMin, localMax, modelMatrix, worldMinAux, worldMaxAux);
+        int proxyId = allocateNode();
+        setFatBounds(proxyId, worldMinAux, worldMaxAux);
+        entities[proxyId] = entity;
+        height[proxyId] = 0;
+        insertLeaf(proxyId);
+        leafCount++;
+        return proxyId;
+    }
+
+    public void destroyProxy(int proxyId) {
+        checkProxy(proxyId);
+        removeLeaf(proxyId);
+        freeNode(proxyId);
+        leafCount--;
+    }
+
+    // Updates the proxy with the new model matrix, the tree is only changed if the new AABB
+    // leaves the fat AABB. Returns true if the proxy was reinserted.
+    public boolean moveProxy(int proxyId, Vector3f localMin, Vector3f localMax, Matrix4f modelMatrix) {
+        checkProxy(proxyId);
+        Frustum.transformAABB(localMin, localMax, modelMatrix, worldMinAux, worldMaxAux);
+        int offset = proxyId * 6;
+        if(bounds[offset] <= worldMinAux.x && bounds[offset + 1] <= worldMinAux.y
+                && bounds[offset + 2] <= worldMinAux.z && bounds[offset + 3] >= worldMaxAux.x
+                && bounds[offset + 4] >= worldMaxAux.y && bounds[offset + 5] >= worldMaxAux.z) {
+            return false;
+        }
+
+        removeLeaf(proxyId);
+        setFatBounds(proxyId, worldMinAux, worldMaxAux);
+        insertLeaf(proxyId);
+        return true;
+    }
+
+    public void clear() {
+        root = NULL_NODE;
+        freeList = NULL_NODE;
+        leafCount = 0;
+        Arrays.fill(entities, null);
+        linkFreeNodes(0);
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+    // Adds every entity whose fat AABB is inside or crossing the frustum to outEntities.
+    // Subtrees fully inside the frustum are collected without testing their nodes.
+    public void query(Frustum frustum, List<Entity> outEntities) {
+        if(root == NULL_NODE) {
+            return;
+        }
+
+        // Nodes pushed as ~nodeId are known to be fully inside the frustum.
+        int stackSize = 0;
+        stack[stackSize++] = root;
+        while(stackSize > 0) {
+            int value = stack[--stackSize];
+            boolean inside = value < 0;
+            int nodeId = inside ? ~value : value;
+
+            if(!inside) {
+                int offset = nodeId * 6;
+                int result = frustum.classifyAABB(bounds[offset], bounds[offset + 1], bounds[offset + 2]
+                        , bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+                if(result == Frustum.OUTSIDE) {
+                    continue;
+                }
+                inside = result == Frustum.INSIDE;
+            }
+
+            if(isLeaf(nodeId)) {
+                outEntities.add(entities[nodeId]);
+                continue;
+            }
+
+            ensureStackCapacity(stackSize + 2);
+            stack[stackSize++] = inside ? ~child1[nodeId] : child1[nodeId];
+            stack[stackSize++] = inside ? ~child2[nodeId] : child2[nodeId];
+        }
+    }
+
+    // Adds every entity whose fat AABB overlaps the sphere to outEntities.
+    public void query(Vector3f center, float radius, List<Entity> outEntities) {
+        if(root == NULL_NODE) {
+            return;
+        }
+
+        float radiusSquared = radius * radius;
+        int stackSize = 0;
+        stack[stackSize++] = root;
+        while(stackSize > 0) {
+            int nodeId = stack[--stackSize];
+            int offset = nodeId * 6;
+            // Squared distance from the sphere center to the closest point of the AABB.
+            float dx = Math.max(Math.max(bounds[offset] - center.x, 0.0f), center.x - bounds[offset + 3]);
+            float dy = Math.max(Math.max(bounds[offset + 1] - center.y, 0.0f), center.y - bounds[offset + 4]);
+            float dz = Math.max(Math.max(bounds[offset + 2] - center.z, 0.0f), center.z - bounds[offset + 5]);
+            if(dx * dx + dy * dy + dz * dz > radiusSquared) {
+                continue;
+            }
+
+            if(isLeaf(nodeId)) {
+                outEntities.add(entities[nodeId]);
+                continue;
+            }
+
+            ensureStackCapacity(stackSize + 2);
+            stack[stackSize++] = child1[nodeId];
+            stack[stackSize++] = child2[nodeId];
+        }
+    }
+
+    // Adds every entity whose fat AABB overlaps the given world AABB to outEntities.
+    public void query(Vector3f worldMin, Vector3f worldMax, List<Entity> outEntities) {
+        if(root == NULL_NODE) {
+            return;
+        }
+
+        int stackSize = 0;
+        stack[stackSize++] = root;
+        while(stackSize > 0) {
+            int nodeId = stack[--stackSize];
+            int offset = nodeId * 6;
+            if(bounds[offset] > worldMax.x || bounds[offset + 1] > worldMax.y || bounds[offset + 2] > worldMax.z
+                    || bounds[offset + 3] < worldMin.x || bounds[offset + 4] < worldMin.y
+                    || bounds[offset + 5] < worldMin.z) {
+                continue;
+            }
+
+            if(isLeaf(nodeId)) {
+                outEntities.add(entities[nodeId]);
+                continue;
+            }
+
+            ensureStackCapacity(stackSize + 2);
+            stack[stackSize++] = child1[nodeId];
+            stack[stackSize++] = child2[nodeId];
+        }
+    }
+
+    private boolean isLeaf(int nodeId) {
+        return child1[nodeId] == NULL_NODE;
+    }
+
+    private void checkProxy(int proxyId) {
+        if(proxyId < 0 || proxyId >= entities.length || entities[proxyId] == null) {
+            throw new RuntimeException("Invalid BVH proxy [" + proxyId + "]");
+        }
+    }
+
+    private void setFatBounds(int nodeId, Vector3f worldMin, Vector3f worldMax) {
+        int offset = nodeId * 6;
+        bounds[offset] = worldMin.x - aabbMargin;
+        bounds[offset + 1] = worldMin.y - aabbMargin;
+        bounds[offset + 2] = worldMin.z - aabbMargin;
+        bounds[offset + 3] = worldMax.x + aabbMargin;
+        bounds[offset + 4] = worldMax.y + aabbMargin;
+        bounds[offset + 5] = worldMax.z + aabbMargin;
+    }
+
+    // Sets the node bounds to the union of the two other nodes.
+    private void setUnion(int nodeId, int a, int b) {
+        int offset = nodeId * 6;
+        int offsetA = a * 6;
+        int offsetB = b * 6;
+        for(int i = 0; i < 3; i++) {
+            bounds[offset + i] = Math.min(bounds[offsetA + i], bounds[offsetB + i]);
+            bounds[offset + 3 + i] = Math.max(bounds[offsetA + 3 + i], bounds[offsetB + 3 + i]);
+        }
+    }
+
+    private float surfaceArea(int nodeId) {
+        int offset = nodeId * 6;
+        return surfaceArea(bounds[offset + 3] - bounds[offset], bounds[offset + 4] - bounds[offset + 1]
+                , bounds[offset + 5] - bounds[offset + 2]);
+    }
+
+    private float unionSurfaceArea(int a, int b) {
+        int offsetA = a * 6;
+        int offsetB = b * 6;
+        float dx = Math.max(bounds[offsetA + 3], bounds[offsetB + 3]) - Math.min(bounds[offsetA], bounds[offsetB]);
+        float dy = Math.max(bounds[offsetA + 4], bounds[offsetB + 4])
+                - Math.min(bounds[offsetA + 1], bounds[offsetB + 1]);
+        float dz = Math.max(bounds[offsetA + 5], bounds[offsetB + 5])
+                - Math.min(bounds[offsetA + 2], bounds[offsetB + 2]);
+        return surfaceArea(dx, dy, dz);
+    }
+
+    private static float surfaceArea(float dx, float dy, float dz) {
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private int allocateNode() {
+        if(freeList == NULL_NODE) {
+            growNodes(entities.length * 2);
+        }
+        int nodeId = freeList;
+        freeList = parent[nodeId];
+        parent[nodeId] = NULL_NODE;
+        child1[nodeId] = NULL_NODE;
+        child2[nodeId] = NULL_NODE;
+        height[nodeId] = 0;
+        return nodeId;
+    }
+
+    private void freeNode(int nodeId) {
+        parent[nodeId] = freeList;
+        height[nodeId] = -1;
+        entities[nodeId] = null;
+        freeList = nodeId;
+    }
+
+    private void growNodes(int newCapacity) {
+        int oldCapacity = entities.length;
+        bounds = Arrays.copyOf(bounds, newCapacity * 6);
+        parent = Arrays.copyOf(parent, newCapacity);
+        child1 = Arrays.copyOf(child1, newCapacity);
+        child2 = Arrays.copyOf(child2, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        entities = Arrays.copyOf(entities, newCapacity);
+        linkFreeNodes(oldCapacity);
+    }
+
+    // Links the nodes from the first id to the end of the arrays into the free list.
+    private void linkFreeNodes(int firstNodeId) {
+        int capacity = entities.length;
+        for(int i = firstNodeId; i < capacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[capacity - 1] = freeList;
+        height[capacity - 1] = -1;
+        freeList = firstNodeId;
+    }
+
+    private void ensureStackCapacity(int capacity) {
+        if(capacity > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(capacity, stack.length * 2));
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if(root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        // Find the best sibling for the new leaf using the surface area heuristic.
+        int index = root;
+        while(!isLeaf(index)) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = surfaceArea(index);
+            float combinedArea = unionSurfaceArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the new leaf.
+            float cost = 2.0f * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree.
+            float inheritanceCost = 2.0f * (combinedArea - area);
+
+            float cost1 = unionSurfaceArea(leaf, c1) + inheritanceCost;
+            if(!isLeaf(c1)) {
+                cost1 -= surfaceArea(c1);
+            }
+            float cost2 = unionSurfaceArea(leaf, c2) + inheritanceCost;
+            if(!isLeaf(c2)) {
+                cost2 -= surfaceArea(c2);
+            }
+
+            if(cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf.
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if(oldParent != NULL_NODE) {
+            if(child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if(leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int leafParent = parent[leaf];
+        int grandParent = parent[leafParent];
+        int sibling = child1[leafParent] == leaf ? child2[leafParent] : child1[leafParent];
+
+        if(grandParent != NULL_NODE) {
+            // Replace the parent with the sibling.
+            if(child1[grandParent] == leafParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(leafParent);
+            refitAncestors(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(leafParent);
+        }
+    }
+
+    // Walks back up to the root fixing the heights and bounds, rebalancing on the way.
+    private void refitAncestors(int nodeId) {
+        int index = nodeId;
+        while(index != NULL_NODE) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    // Performs a left or right rotation if node A is imbalanced, returns the new root of the subtree.
+    private int balance(int a) {
+        if(isLeaf(a) || height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        // Rotate C up.
+        if(balance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if(height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        // Rotate B up.
+        if(balance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if(height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    // Points the parent's link from the old child to the new child, or makes the new child the root.
+    private void replaceChild(int parentId, int oldChild, int newChild) {
+        if(parentId == NULL_NODE) {
+            root = newChild;
+        } else if(child1[parentId] == oldChild) {
+            child1[parentId] = newChild;
+        } else {
+            child2[parentId] = newChild;
+        }
+    }
+}
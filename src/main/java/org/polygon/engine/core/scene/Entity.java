@@ -5,13 +5,39 @@ import org.joml.Quaternionf;
 import org.joml.Vector3f;
 
 public class Entity {
+    // Scratch values of interpolateRenderState, only used on the render thread.
+    private static final Vector3f INTERPOLATED_POSITION = new Vector3f();
+    private static final Quaternionf INTERPOLATED_ROTATION = new Quaternionf();
     private final String entityId;
     private final String modelId;
     private Matrix4f modelMatrix;
+    // Copy of the model matrix used by the renderers, updated at the update/render sync point.
+    private final Matrix4f renderModelMatrix;
     private Vector3f position;
     private Quaternionf rotation;
     private float scale;
     private AnimationData animationData;
+    // Set by the Scene when the entity is added, changes are reported to it and applied to the
+    // render state and the scene's BVH at the next sync point.
+    private Scene scene;
+    private boolean renderStateDirty;
+    private int bvhProxyId = BoundingVolumeHierarchy.NULL_NODE;
+    private Vector3f aabbMinCorner;
+    private Vector3f aabbMaxCorner;
+    // Transform at the start of the update tick that last changed it, the renderers interpolate from it.
+    private final Vector3f previousPosition;
+    private final Quaternionf previousRotation;
+    private float previousScale;
+    // Update tick the transform was last changed in, -1 if it was changed outside the update ticks.
+    private long changedTick = -1;
+    // Transforms the renderers interpolate between, copied at the sync point.
+    private final Vector3f renderFromPosition;
+    private final Quaternionf renderFromRotation;
+    private float renderFromScale;
+    private final Vector3f renderToPosition;
+    private final Quaternionf renderToRotation;
+    private float renderToScale;
+    private boolean renderInterpolated;
 
     public Entity(String entityId, String modelId) {
         // entity object stores its ID and the referenced model ID in ordered to be rendered
@@ -19,9 +45,16 @@ public class Entity {
         this.entityId = entityId;
         this.modelId = modelId;
         modelMatrix = new Matrix4f();
+        renderModelMatrix = new Matrix4f();
         position = new Vector3f();
         rotation = new Quaternionf();
         scale = 1;
+        previousPosition = new Vector3f();
+        previousRotation = new Quaternionf();
+        renderFromPosition = new Vector3f();
+        renderFromRotation = new Quaternionf();
+        renderToPosition = new Vector3f();
+        renderToRotation = new Quaternionf();
     }
 
     public String getEntityId() {
@@ -36,6 +69,10 @@ public class Entity {
         return modelMatrix;
     }
 
+    public Matrix4f getRenderModelMatrix() {
+        return renderModelMatrix;
+    }
+
     public Vector3f getPosition() {
         return position;
     }
@@ -52,6 +89,7 @@ public class Entity {
     }
 
     public void setPosition(float x, float y, float z) {
+        beginTransformChange();
         position.x = x;
         position.y = y;
         position.z = z;
@@ -60,12 +98,14 @@ public class Entity {
     }
 
     public void setRotation(float x, float y, float z, float angle) {
+        beginTransformChange();
         rotation.fromAxisAngleRad(x, y, z, angle);
 
         updateModelMatrix();
     }
 
     public void setScale(float scale) {
+        beginTransformChange();
         this.scale = scale;
 
         updateModelMatrix();
@@ -74,8 +114,122 @@ public class Entity {
         this.animationData = animationData;
     }
 
+    void attachToScene(Scene scene, Vector3f aabbMinCorner, Vector3f aabbMaxCorner) {
+        if(this.scene != null) {
+            throw new RuntimeException("Entity already added to a scene [" + entityId + "]");
+        }
+        this.scene = scene;
+        this.aabbMinCorner = aabbMinCorner;
+        this.aabbMaxCorner = aabbMaxCorner;
+        markRenderStateDirty();
+    }
+
+    void detachFromScene() {
+        // The BVH proxy is removed at the next sync point.
+        markRenderStateDirty();
+        scene = null;
+    }
+
+    // Called by Scene.reset, its BVH is dropped with the proxy and the entity can be added to a scene again.
+    void resetSceneState() {
+        scene = null;
+        renderStateDirty = false;
+        renderInterpolated = false;
+        bvhProxyId = BoundingVolumeHierarchy.NULL_NODE;
+        changedTick = -1;
+    }
+
+    // Copies the model matrix for the renderers and updates the BVH, called by the Scene at the sync point.
+    // Returns true if the entity moved in the last update tick and is drawn interpolated from its previous
+    // transform, see interpolateRenderState.
+    boolean syncRenderState(BoundingVolumeHierarchy bvh, long lastUpdateTick, boolean interpolate) {
+        renderStateDirty = false;
+        renderInterpolated = false;
+        if(scene == null) {
+            if(bvhProxyId != BoundingVolumeHierarchy.NULL_NODE) {
+                bvh.destroyProxy(bvhProxyId);
+                bvhProxyId = BoundingVolumeHierarchy.NULL_NODE;
+            }
+            return false;
+        }
+
+        // Entities that weren't drawn yet start at their current transform.
+        if(interpolate && changedTick == lastUpdateTick && bvhProxyId != BoundingVolumeHierarchy.NULL_NODE) {
+            renderFromPosition.set(previousPosition);
+            renderFromRotation.set(previousRotation);
+            renderFromScale = previousScale;
+            renderToPosition.set(position);
+            renderToRotation.set(rotation);
+            renderToScale = scale;
+            renderInterpolated = true;
+            return true;
+        }
+
+        renderModelMatrix.set(modelMatrix);
+        updateProxy(bvh);
+        return false;
+    }
+
+    // Sets the render model matrix between the previous and the current transform, alpha is the fraction
+    // of the next update tick elapsed. Returns false once the entity isn't interpolated anymore.
+    boolean interpolateRenderState(BoundingVolumeHierarchy bvh, float alpha) {
+        if(!renderInterpolated) {
+            return false;
+        }
+        renderFromPosition.lerp(renderToPosition, alpha, INTERPOLATED_POSITION);
+        renderFromRotation.nlerp(renderToRotation, alpha, INTERPOLATED_ROTATION);
+        float interpolatedScale = renderFromScale + (renderToScale - renderFromScale) * alpha;
+        renderModelMatrix.translationRotateScale(INTERPOLATED_POSITION, INTERPOLATED_ROTATION, interpolatedScale);
+        updateProxy(bvh);
+        return true;
+    }
+
+    // Snaps to the current transform, once a newer update tick ran.
+    void endInterpolation(BoundingVolumeHierarchy bvh) {
+        if(!renderInterpolated) {
+            return;
+        }
+        renderInterpolated = false;
+        renderModelMatrix.translationRotateScale(renderToPosition, renderToRotation, renderToScale);
+        updateProxy(bvh);
+    }
+
+    private void updateProxy(BoundingVolumeHierarchy bvh) {
+        if(bvhProxyId == BoundingVolumeHierarchy.NULL_NODE) {
+            bvhProxyId = bvh.createProxy(this, aabbMinCorner, aabbMaxCorner, renderModelMatrix);
+        } else {
+            bvh.moveProxy(bvhProxyId, aabbMinCorner, aabbMaxCorner, renderModelMatrix);
+        }
+    }
+
+    // Keeps the transform from before the first change of an update tick to interpolate from.
+    private void beginTransformChange() {
+        long updateTick = scene != null ? scene.getRunningUpdateTick() : -1;
+        if(updateTick < 0) {
+            changedTick = -1;
+        } else if(changedTick != updateTick) {
+            changedTick = updateTick;
+            previousPosition.set(position);
+            previousRotation.set(rotation);
+            previousScale = scale;
+        }
+    }
+
+    private void markRenderStateDirty() {
+        if(!renderStateDirty) {
+            renderStateDirty = true;
+            scene.markDirty(this);
+        }
+    }
+
     // We need to call this every time we edit the attributes of the entity
     private void updateModelMatrix() {
         modelMatrix.translationRotateScale(position, rotation, scale);
+        if(scene != null) {
+            markRenderStateDirty();
+        } else {
+            // Entities outside a scene aren't synced, e.g. the skybox entity.
+            renderModelMatrix.set(modelMatrix);
+        }
     }
 }
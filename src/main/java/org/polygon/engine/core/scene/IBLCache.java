@@ -0,0 +1,198 @@
+package org.polygon.engine.core.scene;
+
+import org.polygon.engine.core.graph.GLState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.opengl.GL40.*;
+
+// On-disk cache of the irradiance and prefilter cubemaps a SkyBox generates from an HDR environment map,
+// so the convolution passes only run the first time an HDR is used with a given set of resolutions.
+// The maps are stored as RGB16F, the format they are rendered in, and read back and uploaded as half floats,
+// so a cached map is identical to a generated one. Like the ModelCache, a cache file is keyed by the HDR path
+// and the resolutions, its header holds the HDR's size and modification time to detect stale entries.
+// The environment cubemap itself isn't cached: at 1024 with its mips it takes ~100MB as RGB32F (~50MB as RGB16F)
+// against the few MB of the HDR, so reading it back costs more than decoding the HDR and its six capture draws.
+public class IBLCache {
+    private static final int MAGIC = 0x4C424950;
+    // Bump when the file layout or the IBL shaders change.
+    private static final int VERSION = 1;
+    private static final String FILE_EXTENSION = ".pibl";
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    // RGB half floats.
+    private static final int BYTES_PER_PIXEL = 6;
+
+    private static Path cacheDirectory = Paths.get("cache", "ibl");
+
+    private IBLCache() {
+
+    }
+
+    // Null disables the cache, the IBL maps are then generated for every SkyBox.
+    public static void setCacheDirectory(Path cacheDirectory) {
+        IBLCache.cacheDirectory = cacheDirectory;
+    }
+
+    public static Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    // Creates the irradiance and prefilter maps of the cache file and sets them on the iblData.
+    // Returns false, leaving the iblData untouched, if caching is disabled or there's no valid cache file.
+    static boolean load(Key key, IBLData iblData) {
+        if(cacheDirectory == null) {
+            return false;
+        }
+        Path cacheFile = getCacheFile(key);
+        if(!Files.exists(cacheFile)) {
+            return false;
+        }
+
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(BYTE_ORDER);
+            if(!readHeader(buffer, key) || buffer.remaining() != getDataSize(key)) {
+                return false;
+            }
+        } catch(IOException | RuntimeException e) {
+            System.err.println("Failed to read the IBL cache file [" + cacheFile + "]");
+            return false;
+        }
+
+        int unpackAlignment = glGetInteger(GL_UNPACK_ALIGNMENT);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        int irradianceMap = createCubemap(key.irradianceResolution(), 1, GL_LINEAR, buffer);
+        int prefilterMap = createCubemap(key.prefilterResolution(), key.prefilterMipLevels(), GL_LINEAR_MIPMAP_LINEAR, buffer);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, unpackAlignment);
+
+        iblData.setIrradianceMapTextureId(irradianceMap);
+        iblData.setPrefilterMapTextureId(prefilterMap);
+        return true;
+    }
+
+    // Reads the iblData maps back from the GPU and writes them to the cache file.
+    static void store(Key key, IBLData iblData) {
+        if(cacheDirectory == null) {
+            return;
+        }
+        byte[] sourcePath = key.sourcePath().getBytes(StandardCharsets.UTF_8);
+        int headerSize = 6 * Integer.BYTES + 2 * Long.BYTES + ModelCache.stringSize(sourcePath);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(headerSize + getDataSize(key)).order(BYTE_ORDER);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(key.lastModified());
+        buffer.putLong(key.sourceSize());
+        buffer.putInt(key.environmentResolution());
+        buffer.putInt(key.irradianceResolution());
+        buffer.putInt(key.prefilterResolution());
+        buffer.putInt(key.prefilterMipLevels());
+        ModelCache.putString(buffer, sourcePath);
+
+        int packAlignment = glGetInteger(GL_PACK_ALIGNMENT);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        readCubemap(iblData.getIrradianceMapTextureId(), key.irradianceResolution(), 1, buffer);
+        readCubemap(iblData.getPrefilterMapTextureId(), key.prefilterResolution(), key.prefilterMipLevels(), buffer);
+        glPixelStorei(GL_PACK_ALIGNMENT, packAlignment);
+
+        buffer.flip();
+        ModelCache.write(getCacheFile(key), buffer);
+    }
+
+    static Key createKey(String environmentMapPath, int environmentResolution, int irradianceResolution
+            , int prefilterResolution, int prefilterMipLevels) {
+        File file = new File(environmentMapPath);
+        return new Key(file.getAbsolutePath(), file.lastModified(), file.length(), environmentResolution
+                , irradianceResolution, prefilterResolution, prefilterMipLevels);
+    }
+
+    static Path getCacheFile(Key key) {
+        String name = new File(key.sourcePath()).getName() + "-" + Integer.toHexString(key.sourcePath().hashCode())
+                + "-" + key.environmentResolution() + "-" + key.irradianceResolution()
+                + "-" + key.prefilterResolution() + "-" + key.prefilterMipLevels();
+        return cacheDirectory.resolve(name + FILE_EXTENSION);
+    }
+
+    private static boolean readHeader(ByteBuffer buffer, Key key) {
+        return buffer.getInt() == MAGIC
+                && buffer.getInt() == VERSION
+                && buffer.getLong() == key.lastModified()
+                && buffer.getLong() == key.sourceSize()
+                && buffer.getInt() == key.environmentResolution()
+                && buffer.getInt() == key.irradianceResolution()
+                && buffer.getInt() == key.prefilterResolution()
+                && buffer.getInt() == key.prefilterMipLevels()
+                && key.sourcePath().equals(ModelCache.getString(buffer));
+    }
+
+    // Six faces per mip level, the levels in order, every face is resolution >> level pixels wide.
+    private static int getDataSize(Key key) {
+        return getCubemapSize(key.irradianceResolution(), 1)
+                + getCubemapSize(key.prefilterResolution(), key.prefilterMipLevels());
+    }
+
+    private static int getCubemapSize(int resolution, int mipLevels) {
+        int size = 0;
+        for(int mip = 0; mip < mipLevels; mip++) {
+            int mipResolution = getMipResolution(resolution, mip);
+            size += 6 * mipResolution * mipResolution * BYTES_PER_PIXEL;
+        }
+        return size;
+    }
+
+    private static int getMipResolution(int resolution, int mip) {
+        return Math.max(1, resolution >> mip);
+    }
+
+    // Uploads the cubemap's mip levels from the buffer's position and advances it past them.
+    private static int createCubemap(int resolution, int mipLevels, int minFilter, ByteBuffer buffer) {
+        int textureId = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, textureId);
+        for(int mip = 0; mip < mipLevels; mip++) {
+            int mipResolution = getMipResolution(resolution, mip);
+            int faceSize = mipResolution * mipResolution * BYTES_PER_PIXEL;
+            for(int i = 0; i < 6; i++) {
+                ByteBuffer face = buffer.slice(buffer.position(), faceSize);
+                glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, mip, GL_RGB16F, mipResolution, mipResolution
+                        , 0, GL_RGB, GL_HALF_FLOAT, face);
+                buffer.position(buffer.position() + faceSize);
+            }
+        }
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAX_LEVEL, mipLevels - 1);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        return textureId;
+    }
+
+    // Reads the cubemap's mip levels as half floats into the buffer at its position and advances it past them.
+    private static void readCubemap(int textureId, int resolution, int mipLevels, ByteBuffer buffer) {
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, textureId);
+        for(int mip = 0; mip < mipLevels; mip++) {
+            int mipResolution = getMipResolution(resolution, mip);
+            int faceSize = mipResolution * mipResolution * BYTES_PER_PIXEL;
+            for(int i = 0; i < 6; i++) {
+                ByteBuffer face = buffer.slice(buffer.position(), faceSize);
+                glGetTexImage(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, mip, GL_RGB, GL_HALF_FLOAT, face);
+                buffer.position(buffer.position() + faceSize);
+            }
+        }
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
+    }
+
+    record Key(String sourcePath, long lastModified, long sourceSize, int environmentResolution
+            , int irradianceResolution, int prefilterResolution, int prefilterMipLevels) {
+
+    }
+}
@@ -0,0 +1,380 @@
+package org.polygon.engine.core.scene;
+
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.polygon.engine.core.graph.Material;
+import org.polygon.engine.core.graph.MeshData;
+import org.polygon.engine.core.graph.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// On-disk cache of the post-processed model data, so assimp only imports a model once.
+// A cache file is named after the model path and the import flags, its header holds the source file's
+// size and modification time to detect stale entries. Only the model file itself is checked,
+// files it references like a glTF .bin are not, delete the cache directory after changing them.
+// Cache files are memory-mapped and the mesh buffers are views into the mapping,
+// uploaded to the VBOs without being copied to Java arrays first.
+public class ModelCache {
+    private static final int MAGIC = 0x4C444D50;
+    // Bump when the file layout or the imported data changes.
+    private static final int VERSION = 3;
+    private static final String FILE_EXTENSION = ".pmdl";
+    // The buffers are handed to OpenGL as they are, so they have to be in the native byte order.
+    // Every platform LWJGL ships natives for is little endian.
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static Path cacheDirectory = Paths.get("cache", "models");
+
+    private ModelCache() {
+
+    }
+
+    // Null disables the cache, models are then imported with assimp on every load.
+    public static void setCacheDirectory(Path cacheDirectory) {
+        ModelCache.cacheDirectory = cacheDirectory;
+    }
+
+    public static Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    // Returns the cached model data, imports and caches the model first if there's no valid cache file.
+    static CachedModel load(String modelPath, int flags) {
+        Key key = createKey(modelPath, flags);
+        if(cacheDirectory == null) {
+            return decode(encode(ModelLoader.importModel(modelPath, flags), key), key);
+        }
+
+        Path cacheFile = getCacheFile(key);
+        CachedModel cachedModel = read(cacheFile, key);
+        if(cachedModel != null) {
+            return cachedModel;
+        }
+
+        ByteBuffer buffer = encode(ModelLoader.importModel(modelPath, flags), key);
+        write(cacheFile, buffer);
+        return decode(buffer, key);
+    }
+
+    // Maps the cache file, returns null if it doesn't exist or it's stale.
+    static CachedModel read(Path cacheFile, Key key) {
+        if(!Files.exists(cacheFile)) {
+            return null;
+        }
+
+        // The mapping stays valid after the channel is closed, it's released once the buffer is collected.
+        try(FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer, key);
+        } catch(IOException | RuntimeException e) {
+            // A truncated or corrupted file is treated like a stale one.
+            System.err.println("Failed to read the model cache file [" + cacheFile + "]");
+            return null;
+        }
+    }
+
+    // Writes to a temporary file first, so a crash never leaves a truncated cache file behind.
+    // Failing to write only costs the next load another import.
+    public static void write(Path cacheFile, ByteBuffer buffer) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try(FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer source = buffer.duplicate();
+                while(source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            System.err.println("Failed to write the cache file [" + cacheFile + "]");
+        }
+    }
+
+    static Key createKey(String modelPath, int flags) {
+        File file = new File(modelPath);
+        return new Key(file.getAbsolutePath(), file.lastModified(), file.length(), flags);
+    }
+
+    static Path getCacheFile(Key key) {
+        String name = new File(key.sourcePath()).getName() + "-"
+                + Integer.toHexString(key.sourcePath().hashCode()) + "-" + Integer.toHexString(key.flags());
+        return cacheDirectory.resolve(name + FILE_EXTENSION);
+    }
+
+    // Layout, every section is 4 byte aligned:
+    // header: magic, version, source modification time, source size, import flags, source path
+    // materials: count, then per material the texture paths, colors and factors
+    // meshes: count, then per material index, AABB corners, the vertex attribute and index arrays
+    //      and the LOD offsets into the index array
+    // animations: count, then per animation name, duration, numBones, frame count, bone encoding
+    //      and the packed bone data.
+    static ByteBuffer encode(ModelLoader.ModelData modelData, Key key) {
+        byte[] sourcePath = key.sourcePath().getBytes(StandardCharsets.UTF_8);
+        int size = 3 * Integer.BYTES + 2 * Long.BYTES + stringSize(sourcePath);
+
+        List<byte[][]> materialStrings = new ArrayList<>();
+        size += Integer.BYTES;
+        for(Material material : modelData.materials()) {
+            byte[][] strings = materialStrings(material);
+            materialStrings.add(strings);
+            for(byte[] string : strings) {
+                size += stringSize(string);
+            }
+            size += 3 * 4 * Float.BYTES + 4 * Float.BYTES;
+        }
+
+        size += Integer.BYTES;
+        for(MeshData meshData : modelData.meshes()) {
+            size += Integer.BYTES + 6 * Float.BYTES;
+            size += arraySize(meshData.positions().length) + arraySize(meshData.normals().length)
+                    + arraySize(meshData.tangents().length) + arraySize(meshData.bitangents().length)
+                    + arraySize(meshData.textCoords().length) + arraySize(meshData.weights().length)
+                    + arraySize(meshData.boneIndices().length) + arraySize(meshData.indices().length)
+                    + arraySize(lodOffsets(meshData).length);
+        }
+
+        List<byte[]> animationNames = new ArrayList<>();
+        size += Integer.BYTES;
+        for(Model.Animation animation : modelData.animations()) {
+            byte[] name = toBytes(animation.name());
+            animationNames.add(name);
+            size += stringSize(name) + Double.BYTES + 3 * Integer.BYTES + arraySize(animation.boneData().length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(BYTE_ORDER);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(key.lastModified());
+        buffer.putLong(key.sourceSize());
+        buffer.putInt(key.flags());
+        putString(buffer, sourcePath);
+
+        buffer.putInt(modelData.materials().size());
+        for(int i = 0; i < modelData.materials().size(); i++) {
+            Material material = modelData.materials().get(i);
+            for(byte[] string : materialStrings.get(i)) {
+                putString(buffer, string);
+            }
+            putVector(buffer, material.getDiffuseColor());
+            putVector(buffer, material.getAmbientColor());
+            putVector(buffer, material.getSpecularColor());
+            buffer.putFloat(material.getReflectance());
+            buffer.putFloat(material.getMetallic());
+            buffer.putFloat(material.getRoughness());
+            buffer.putFloat(material.getAoStrength());
+        }
+
+        buffer.putInt(modelData.meshes().size());
+        for(int i = 0; i < modelData.meshes().size(); i++) {
+            MeshData meshData = modelData.meshes().get(i);
+            buffer.putInt(modelData.meshMaterialIndices()[i]);
+            Vector3f min = meshData.aabbMinCorner();
+            Vector3f max = meshData.aabbMaxCorner();
+            buffer.putFloat(min.x).putFloat(min.y).putFloat(min.z);
+            buffer.putFloat(max.x).putFloat(max.y).putFloat(max.z);
+            putFloats(buffer, meshData.positions());
+            putFloats(buffer, meshData.normals());
+            putFloats(buffer, meshData.tangents());
+            putFloats(buffer, meshData.bitangents());
+            putFloats(buffer, meshData.textCoords());
+            putFloats(buffer, meshData.weights());
+            putInts(buffer, meshData.boneIndices());
+            putInts(buffer, meshData.indices());
+            putInts(buffer, lodOffsets(meshData));
+        }
+
+        buffer.putInt(modelData.animations().size());
+        for(int i = 0; i < modelData.animations().size(); i++) {
+            Model.Animation animation = modelData.animations().get(i);
+            putString(buffer, animationNames.get(i));
+            buffer.putDouble(animation.duration());
+            buffer.putInt(animation.numBones());
+            buffer.putInt(animation.numFrames());
+            buffer.putInt(animation.encoding().ordinal());
+            putFloats(buffer, animation.boneData());
+        }
+
+        if(buffer.hasRemaining()) {
+            throw new RuntimeException("Model cache size mismatch [" + key.sourcePath() + "]");
+        }
+        return buffer.flip();
+    }
+
+    // Returns null if the buffer doesn't hold a cache entry for the key.
+    static CachedModel decode(ByteBuffer buffer, Key key) {
+        buffer.order(BYTE_ORDER);
+        if(buffer.remaining() < 4 * Integer.BYTES + 2 * Long.BYTES
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getLong() != key.lastModified() || buffer.getLong() != key.sourceSize()
+                || buffer.getInt() != key.flags() || !key.sourcePath().equals(getString(buffer))) {
+            return null;
+        }
+
+        int numMaterials = buffer.getInt();
+        List<Material> materialList = new ArrayList<>(numMaterials);
+        for(int i = 0; i < numMaterials; i++) {
+            Material material = new Material();
+            material.setTexturePath(getString(buffer));
+            material.setNormalMapPath(getString(buffer));
+            material.setMetallicMapPath(getString(buffer));
+            material.setRoughnessMapPath(getString(buffer));
+            material.setAoMapPath(getString(buffer));
+            material.setEmissiveMapPath(getString(buffer));
+            material.setDiffuseColor(getVector(buffer));
+            material.setAmbientColor(getVector(buffer));
+            material.setSpecularColor(getVector(buffer));
+            material.setReflectance(buffer.getFloat());
+            material.setMetallic(buffer.getFloat());
+            material.setRoughness(buffer.getFloat());
+            material.setAoStrength(buffer.getFloat());
+            materialList.add(material);
+        }
+
+        int numMeshes = buffer.getInt();
+        List<CachedMesh> meshList = new ArrayList<>(numMeshes);
+        for(int i = 0; i < numMeshes; i++) {
+            int materialIndex = buffer.getInt();
+            Vector3f min = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+            Vector3f max = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+            FloatBuffer positions = getFloats(buffer);
+            FloatBuffer normals = getFloats(buffer);
+            FloatBuffer tangents = getFloats(buffer);
+            FloatBuffer bitangents = getFloats(buffer);
+            FloatBuffer textCoords = getFloats(buffer);
+            FloatBuffer weights = getFloats(buffer);
+            IntBuffer boneIndices = getInts(buffer);
+            IntBuffer indices = getInts(buffer);
+            IntBuffer lodOffsetsBuffer = getInts(buffer);
+            int[] lodOffsets = new int[lodOffsetsBuffer.remaining()];
+            lodOffsetsBuffer.get(lodOffsets);
+            meshList.add(new CachedMesh(materialIndex, positions, normals, tangents, bitangents, textCoords
+                    , indices, boneIndices, weights, min, max, lodOffsets));
+        }
+
+        int numAnimations = buffer.getInt();
+        List<Model.Animation> animationList = new ArrayList<>(numAnimations);
+        for(int i = 0; i < numAnimations; i++) {
+            String name = getString(buffer);
+            double duration = buffer.getDouble();
+            int numBones = buffer.getInt();
+            int numFrames = buffer.getInt();
+            Model.BoneEncoding encoding = Model.BoneEncoding.values()[buffer.getInt()];
+            FloatBuffer boneDataBuffer = getFloats(buffer);
+            float[] boneData = new float[boneDataBuffer.remaining()];
+            boneDataBuffer.get(boneData);
+            animationList.add(new Model.Animation(name, duration, numBones, numFrames, encoding, boneData));
+        }
+
+        return new CachedModel(materialList, meshList, animationList);
+    }
+
+    private static int[] lodOffsets(MeshData meshData) {
+        return meshData.lodOffsets() != null ? meshData.lodOffsets() : new int[] {0, meshData.indices().length};
+    }
+
+    private static byte[][] materialStrings(Material material) {
+        return new byte[][] {
+                toBytes(material.getTexturePath()),
+                toBytes(material.getNormalMapPath()),
+                toBytes(material.getMetallicMapPath()),
+                toBytes(material.getRoughnessMapPath()),
+                toBytes(material.getAoMapPath()),
+                toBytes(material.getEmissiveMapPath()),
+        };
+    }
+
+    private static byte[] toBytes(String string) {
+        return string != null ? string.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    // Length, -1 for null, followed by the UTF-8 bytes padded to 4 bytes.
+    public static int stringSize(byte[] string) {
+        return Integer.BYTES + (string != null ? align(string.length) : 0);
+    }
+
+    private static int arraySize(int length) {
+        return Integer.BYTES + length * Float.BYTES;
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    public static void putString(ByteBuffer buffer, byte[] string) {
+        if(string == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(string.length);
+        buffer.put(string);
+        buffer.position(buffer.position() + align(string.length) - string.length);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] string = new byte[length];
+        buffer.get(string);
+        buffer.position(buffer.position() + align(length) - length);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    private static void putVector(ByteBuffer buffer, Vector4f vector) {
+        buffer.putFloat(vector.x).putFloat(vector.y).putFloat(vector.z).putFloat(vector.w);
+    }
+
+    private static Vector4f getVector(ByteBuffer buffer) {
+        return new Vector4f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] array) {
+        buffer.putInt(array.length);
+        buffer.asFloatBuffer().put(array);
+        buffer.position(buffer.position() + array.length * Float.BYTES);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] array) {
+        buffer.putInt(array.length);
+        buffer.asIntBuffer().put(array);
+        buffer.position(buffer.position() + array.length * Integer.BYTES);
+    }
+
+    // Views into the buffer, no copy.
+    private static FloatBuffer getFloats(ByteBuffer buffer) {
+        int length = buffer.getInt() * Float.BYTES;
+        FloatBuffer floats = buffer.slice(buffer.position(), length).order(BYTE_ORDER).asFloatBuffer();
+        buffer.position(buffer.position() + length);
+        return floats;
+    }
+
+    private static IntBuffer getInts(ByteBuffer buffer) {
+        int length = buffer.getInt() * Integer.BYTES;
+        IntBuffer ints = buffer.slice(buffer.position(), length).order(BYTE_ORDER).asIntBuffer();
+        buffer.position(buffer.position() + length);
+        return ints;
+    }
+
+    record Key(String sourcePath, long lastModified, long sourceSize, int flags) {}
+    // The mesh buffers are views into the cache file mapping, they stay valid as long as they're referenced.
+    record CachedMesh(int materialIndex, FloatBuffer positions, FloatBuffer normals, FloatBuffer tangents
+            , FloatBuffer bitangents, FloatBuffer textCoords, IntBuffer indices, IntBuffer boneIndices
+            , FloatBuffer weights, Vector3f aabbMinCorner, Vector3f aabbMaxCorner, int[] lodOffsets) {}
+    record CachedModel(List<Material> materials, List<CachedMesh> meshes, List<Model.Animation> animations) {}
+}
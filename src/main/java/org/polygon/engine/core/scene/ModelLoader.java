@@ -8,10 +8,15 @@ import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
 import org.lwjgl.system.MemoryStack;
 import org.polygon.engine.core.Utils;
+import org.polygon.engine.core.graph.CompressedTextureCache;
+import org.polygon.engine.core.graph.CompressedTextureData;
 import org.polygon.engine.core.graph.Material;
 import org.polygon.engine.core.graph.Mesh;
+import org.polygon.engine.core.graph.MeshData;
 import org.polygon.engine.core.graph.Model;
 import org.polygon.engine.core.graph.TextureCache;
+import org.polygon.engine.core.graph.TextureData;
+import org.polygon.engine.core.utils.MeshSimplifier;
 
 import java.io.File;
 import java.nio.IntBuffer;
@@ -23,11 +28,27 @@ import static org.lwjgl.assimp.Assimp.*;
 public class ModelLoader {
     public static final int MAX_BONES = 250;
     private static final Matrix4f IDENTITY_MATRIX = new Matrix4f();
+    // Usage of the material textures, in the order of getTexturePaths.
+    private static final CompressedTextureData.Usage[] TEXTURE_USAGES = {
+            CompressedTextureData.Usage.COLOR, CompressedTextureData.Usage.NORMAL_MAP
+            , CompressedTextureData.Usage.DATA, CompressedTextureData.Usage.DATA
+            , CompressedTextureData.Usage.DATA, CompressedTextureData.Usage.COLOR };
+    // How loaded animation clips pack their bone transforms.
+    private static Model.BoneEncoding animationEncoding = Model.BoneEncoding.MATRIX;
 
     private ModelLoader() {
 
     }
 
+    // Animations read from the model cache with another encoding are converted when the model is created.
+    public static void setAnimationEncoding(Model.BoneEncoding animationEncoding) {
+        ModelLoader.animationEncoding = animationEncoding;
+    }
+
+    public static Model.BoneEncoding getAnimationEncoding() {
+        return animationEncoding;
+    }
+
     // Calls the second loadModel method with assimp flags.
     // aiProcess_JoinIdenticalVertices, reduces the number of vertices by
     //      identifying those that can be reused between two faces.
@@ -38,11 +59,15 @@ public class ModelLoader {
     // aiProcess_PreTransformVertices, transforms loaded model to the OpenGL origin.
     //      DO NOT THIS FLAG USE WITH ANIMATED MODELS.
     public static Model loadModel(String modelId, String modelPath, TextureCache textureCache, boolean importAnimations) {
-        return loadModel(modelId, modelPath, textureCache
-                , aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices
-                        | aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_CalcTangentSpace
-                        | aiProcess_LimitBoneWeights | aiProcess_GenBoundingBoxes
-                        | (importAnimations ? 0 : aiProcess_PreTransformVertices), importAnimations);
+        return loadModel(modelId, modelPath, textureCache, getImportFlags(importAnimations), importAnimations);
+    }
+
+    // Package-private so the benchmarks import models the same way.
+    static int getImportFlags(boolean importAnimations) {
+        return aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices
+                | aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_CalcTangentSpace
+                | aiProcess_LimitBoneWeights | aiProcess_GenBoundingBoxes
+                | (importAnimations ? 0 : aiProcess_PreTransformVertices);
     }
 
     public static Model loadAnimation(String modelId, String modelPath, TextureCache textureCache) {
@@ -53,13 +78,91 @@ public class ModelLoader {
     }
 
     private static Model loadModel(String modelId, String modelPath, TextureCache textureCache, int flags, boolean hasAnimation) {
+        checkModelPath(modelPath);
+        // Read the post-processed model data from the model cache, assimp only runs on a cache miss.
+        // The textures are loaded by the textureCache while the model is created.
+        DecodedModel decodedModel = new DecodedModel(modelPath, hasAnimation, ModelCache.load(modelPath, flags)
+                , new HashMap<>(), new HashMap<>());
+        return createModel(modelId, decodedModel, textureCache);
+    }
+
+    // First half of an asynchronous model load, reads the model data and decodes its textures
+    // without touching OpenGL so it can run on an asset loader thread.
+    // Textures are loaded from the CompressedTextureCache instead when it's enabled, compressed on a miss.
+    public static DecodedModel decodeModel(String modelPath, boolean importAnimations) {
+        checkModelPath(modelPath);
+        ModelCache.CachedModel cachedModel = ModelCache.load(modelPath, getImportFlags(importAnimations));
+
+        Map<String, TextureData> textures = new HashMap<>();
+        Map<String, CompressedTextureData> compressedTextures = new HashMap<>();
+        try {
+            for (Material material : cachedModel.materials()) {
+                String[] texturePaths = getTexturePaths(material);
+                for (int i = 0; i < texturePaths.length; i++) {
+                    String texturePath = texturePaths[i];
+                    if (texturePath == null || textures.containsKey(texturePath)
+                            || compressedTextures.containsKey(texturePath)) {
+                        continue;
+                    }
+                    if (CompressedTextureCache.isEnabled()) {
+                        compressedTextures.put(texturePath
+                                , CompressedTextureCache.load(texturePath, TEXTURE_USAGES[i]));
+                    } else {
+                        textures.put(texturePath, TextureData.load(texturePath));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            textures.values().forEach(TextureData::free);
+            throw e;
+        }
+
+        return new DecodedModel(modelPath, importAnimations, cachedModel, textures, compressedTextures);
+    }
+
+    // Second half of a model load, creates the textures and meshes, must run on the GL thread.
+    public static Model createModel(String modelId, DecodedModel decodedModel, TextureCache textureCache) {
+        ModelCache.CachedModel cachedModel = decodedModel.cachedModel();
+
+        // load materials to the textureCache
+        List<Material> materialList = cachedModel.materials();
+        for (Material material : materialList) {
+            createTextures(material, textureCache, decodedModel);
+        }
+        // Textures the cache already had.
+        decodedModel.free();
+
+        // Upload the meshes straight from the cache buffers and assign them to their materials.
+        for (ModelCache.CachedMesh cachedMesh : cachedModel.meshes()) {
+            Mesh mesh = new Mesh(cachedMesh.positions(), cachedMesh.normals(), cachedMesh.tangents()
+                    , cachedMesh.bitangents(), cachedMesh.textCoords(), cachedMesh.indices()
+                    , cachedMesh.boneIndices(), cachedMesh.weights()
+                    , cachedMesh.aabbMinCorner(), cachedMesh.aabbMaxCorner(), cachedMesh.lodOffsets());
+            materialList.get(cachedMesh.materialIndex()).getMeshList().add(mesh);
+        }
+
+        List<Model.Animation> animationList = new ArrayList<>(cachedModel.animations().size());
+        for (Model.Animation animation : cachedModel.animations()) {
+            animationList.add(animation.withEncoding(animationEncoding));
+        }
+
+        return new Model(modelId, decodedModel.modelPath(), materialList, animationList
+                , decodedModel.hasAnimation());
+    }
+
+    private static void checkModelPath(String modelPath) {
         // check if the model path exists
         File file = new File(modelPath);
         if (!file.exists()) {
             throw new RuntimeException("Model path does not exists + [" + modelPath + "]");
         }
+    }
+
+    // Imports the model with assimp into plain Java data, doesn't touch OpenGL.
+    // Package-private so the model cache and the benchmarks can call it directly.
+    static ModelData importModel(String modelPath, int flags) {
         // hold the parent directory of the model file
-        String modelDir = file.getParent();
+        String modelDir = new File(modelPath).getParent();
 
         // load the model with the selected flags
         AIScene aiScene = aiImportFile(modelPath, flags);
@@ -67,38 +170,37 @@ public class ModelLoader {
             throw new RuntimeException("Error loading model [modelPath: " + modelPath + "]");
         }
 
-        // load materials to the textureCache
         List<Material> materialList = new ArrayList<>();
         for (int i = 0; i < aiScene.mNumMaterials(); i++) {
             AIMaterial aiMaterial = AIMaterial.create(aiScene.mMaterials().get(i));
-            materialList.add(processMaterial(aiMaterial, modelDir, textureCache));
+            materialList.add(processMaterial(aiMaterial, modelDir));
         }
 
         // Load the model's 3D meshes.
         // Assign meshes for each material.
         // If the mesh doesn't have a material assigned to it then assign the default material to it instead.
         // If the defaultMaterial has meshes assigned to it then add the defaultMaterial to the materialList.
-        // create model with model id and the meshList and return it.
-        Material defaultMaterial = new Material();
+        int numMaterials = materialList.size();
+        boolean usesDefaultMaterial = false;
         // Populate the boneList if the model contains bone data.
         List<Bone> boneList = new ArrayList<>();
+        List<MeshData> meshDataList = new ArrayList<>();
+        int[] meshMaterialIndices = new int[aiScene.mNumMeshes()];
         for (int i = 0; i < aiScene.mNumMeshes(); i++) {
             AIMesh aiMesh = AIMesh.create(aiScene.mMeshes().get(i));
-            Mesh mesh = processMesh(aiMesh, boneList);
+            meshDataList.add(processMesh(aiMesh, boneList));
             int materialIndex = aiMesh.mMaterialIndex();
-            Material material;
-            if (materialIndex >= 0 && materialIndex < materialList.size()) {
-                material = materialList.get(materialIndex);
-            } else {
-                // Load the default material.
-                material = defaultMaterial;
+            if (materialIndex < 0 || materialIndex >= numMaterials) {
+                // Use the default material.
+                materialIndex = numMaterials;
+                usesDefaultMaterial = true;
             }
-            material.getMeshList().add(mesh);
+            meshMaterialIndices[i] = materialIndex;
         }
 
         // Check if the model contains a mesh with unassigned material.
-        if (!defaultMaterial.getMeshList().isEmpty()) {
-            materialList.add(defaultMaterial);
+        if (usesDefaultMaterial) {
+            materialList.add(new Material());
         }
 
         // Populate the model's animation list if the model contains animation data.
@@ -115,7 +217,7 @@ public class ModelLoader {
 
         aiReleaseImport(aiScene);
 
-        return new Model(modelId, modelPath, materialList, animationList, hasAnimation);
+        return new ModelData(materialList, meshDataList, meshMaterialIndices, animationList);
     }
 
     private static Model loadAnimation(String modelId, String modelPath, int flags) {
@@ -150,7 +252,37 @@ public class ModelLoader {
         return new Model(modelId, modelPath, null, animationList, true);
     }
 
-    private static Material processMaterial(AIMaterial aiMaterial, String modelDir, TextureCache textureCache) {
+    // Loads the material's textures to the textureCache, using the decoded images if there are any.
+    private static void createTextures(Material material, TextureCache textureCache, DecodedModel decodedModel) {
+        String[] texturePaths = getTexturePaths(material);
+        for (int i = 0; i < texturePaths.length; i++) {
+            createTexture(texturePaths[i], TEXTURE_USAGES[i], textureCache, decodedModel);
+        }
+    }
+
+    private static void createTexture(String texturePath, CompressedTextureData.Usage usage
+            , TextureCache textureCache, DecodedModel decodedModel) {
+        if (texturePath == null) {
+            return;
+        }
+        TextureData textureData = decodedModel.textures().remove(texturePath);
+        CompressedTextureData compressedTextureData = decodedModel.compressedTextures().remove(texturePath);
+        if (textureData != null) {
+            textureCache.createTexture(texturePath, textureData, usage.isSRGB());
+        } else if (compressedTextureData != null) {
+            textureCache.createTexture(texturePath, compressedTextureData);
+        } else {
+            textureCache.createTexture(texturePath, usage);
+        }
+    }
+
+    // In the order of TEXTURE_USAGES.
+    private static String[] getTexturePaths(Material material) {
+        return new String[] { material.getTexturePath(), material.getNormalMapPath(), material.getMetallicMapPath()
+                , material.getRoughnessMapPath(), material.getAoMapPath(), material.getEmissiveMapPath() };
+    }
+
+    private static Material processMaterial(AIMaterial aiMaterial, String modelDir) {
         Material material = new Material();
         try (MemoryStack stack = MemoryStack.stackPush()) {
             AIColor4D aiColor4D = AIColor4D.create();
@@ -171,7 +303,6 @@ public class ModelLoader {
             String texturePath = aiTexturePath.dataString();
             if (texturePath != null && texturePath.length() > 0) {
                 material.setTexturePath(modelDir + File.separator + new File(texturePath).getName());
-                textureCache.createTexture(material.getTexturePath(), true);
                 material.setDiffuseColor(Material.DEFAULT_COLOR);
             }
 
@@ -181,7 +312,6 @@ public class ModelLoader {
             String normalMapPath = aiNormalMapPath.dataString();
             if(normalMapPath != null && normalMapPath.length() > 0) {
                 material.setNormalMapPath(modelDir + File.separator + new File(normalMapPath).getName());
-                textureCache.createTexture(material.getNormalMapPath(), false);
             }
 
             float[] metallicFactor = { 0.0f };
@@ -198,7 +328,6 @@ public class ModelLoader {
             String metallicMapPath = aiMetallicMapPath.dataString();
             if (metallicMapPath != null && metallicMapPath.length() > 0) {
                 material.setMetallicMapPath(modelDir + File.separator + new File(metallicMapPath).getName());
-                textureCache.createTexture(material.getMetallicMapPath(),false);
             }
 
             float[] roughnessFactor = { 0.5f };
@@ -219,7 +348,6 @@ public class ModelLoader {
             String roughnessMapPath = aiRoughnessMapPath.dataString();
             if (roughnessMapPath != null && roughnessMapPath.length() > 0 && !roughnessMapPath.equals(metallicMapPath)) {
                 material.setRoughnessMapPath(modelDir + File.separator + new File(roughnessMapPath).getName());
-                textureCache.createTexture(material.getRoughnessMapPath(),false);
             } else if (metallicMapPath != null && metallicMapPath.length() > 0) {
                 // If we found a metallic map path via UNKNOWN, assume it's a combined MetallicRoughness texture
                 // Point roughness path to the same texture. Shader will need logic to sample correct channels.
@@ -242,7 +370,6 @@ public class ModelLoader {
             String aoMapPath = aiAoMapPath.dataString();
             if (aoMapPath != null && aoMapPath.length() > 0 && !aoMapPath.equals(texturePath)) {
                 material.setAoMapPath(modelDir + File.separator + new File(aoMapPath).getName());
-                textureCache.createTexture(material.getAoMapPath(), false);
             }
 
             AIString aiEmissiveMapPath = AIString.calloc(stack);
@@ -251,14 +378,13 @@ public class ModelLoader {
             String emissiveMapPath = aiEmissiveMapPath.dataString();
             if(emissiveMapPath != null && emissiveMapPath.length() > 0) {
                 material.setEmissiveMapPath(modelDir + File.separator + new File(emissiveMapPath).getName());
-                textureCache.createTexture(material.getEmissiveMapPath(), true);
             }
 
             return material;
         }
     }
 
-    private static Mesh processMesh(AIMesh aiMesh, List<Bone> boneList) {
+    private static MeshData processMesh(AIMesh aiMesh, List<Bone> boneList) {
         float[] vertices = processVertices(aiMesh);
         float[] normals = processNormals(aiMesh);
         float[] tangents = processTangents(aiMesh, normals);
@@ -279,8 +405,12 @@ public class ModelLoader {
         Vector3f aabbMinCorner = new Vector3f(aabb.mMin().x(), aabb.mMin().y(), aabb.mMin().z());
         Vector3f aabbMaxCorner = new Vector3f(aabb.mMax().x(), aabb.mMax().y(), aabb.mMax().z());
 
-        return new Mesh(vertices, normals, tangents, bitangents, textCoords, indexArray
-                , animMeshData.boneIds(), animMeshData.weights(), aabbMinCorner, aabbMaxCorner);
+        // The simplified LODs share the vertices, their indices are stored after the full detail ones.
+        MeshSimplifier.LodIndices lodIndices = MeshSimplifier.generateLods(vertices, indexArray);
+
+        return new MeshData(vertices, normals, tangents, bitangents, textCoords, lodIndices.indices()
+                , animMeshData.boneIds(), animMeshData.weights(), aabbMinCorner, aabbMaxCorner
+                , lodIndices.lodOffsets());
     }
 
     private static float[] processVertices(AIMesh aiMesh) {
@@ -375,7 +505,8 @@ public class ModelLoader {
         return indexArray.stream().mapToInt(Integer::intValue).toArray();
     }
 
-    private static AnimMeshData processBones(AIMesh aiMesh, List<Bone> boneList) {
+    // Package-private so the benchmarks can call it directly.
+    static AnimMeshData processBones(AIMesh aiMesh, List<Bone> boneList) {
         List<Integer> boneIds = new ArrayList<>();
         List<Float> weights = new ArrayList<>();
 
@@ -446,19 +577,17 @@ public class ModelLoader {
             AIAnimation aiAnimation = AIAnimation.create(aiAnimations.get(i));
             int maxFrames = calcAnimationMaxFrames(aiAnimation);
 
-            List<Model.AnimatedFrame> frames = new ArrayList<>();
-            Model.Animation animation = new Model.Animation(aiAnimation.mName().dataString()
-                    , aiAnimation.mDuration(), frames);
-            animationList.add(animation);
-
+            // The frame matrices are only kept until the clip is packed.
+            List<Matrix4f[]> frames = new ArrayList<>(maxFrames);
             for(int j = 0; j < maxFrames; j++) {
                 Matrix4f[] boneMatrices = new Matrix4f[MAX_BONES];
                 Arrays.fill(boneMatrices, IDENTITY_MATRIX);
-                Model.AnimatedFrame animatedFrame = new Model.AnimatedFrame(boneMatrices);
-                buildFrameMatrices(aiAnimation, boneList, animatedFrame, j, rootNode
+                buildFrameMatrices(aiAnimation, boneList, boneMatrices, j, rootNode
                         , rootNode.getTransform(), globalInverseTransformation);
-                frames.add(animatedFrame);
+                frames.add(boneMatrices);
             }
+            animationList.add(Model.Animation.encode(aiAnimation.mName().dataString(), aiAnimation.mDuration()
+                    , Math.min(boneList.size(), MAX_BONES), frames, animationEncoding));
         }
 
         return animationList;
@@ -479,7 +608,7 @@ public class ModelLoader {
     }
 
     private static void buildFrameMatrices(AIAnimation aiAnimation, List<Bone> boneList
-            , Model.AnimatedFrame animatedFrame, int frame, Joint node, Matrix4f parentTransformation
+            , Matrix4f[] boneMatrices, int frame, Joint node, Matrix4f parentTransformation
             , Matrix4f globalInverseTransformation) {
         String nodeName = node.getName();
         AINodeAnim aiNodeAnim = findAINodeAnim(aiAnimation, nodeName);
@@ -493,11 +622,11 @@ public class ModelLoader {
         for(Bone bone : affectedBones) {
             Matrix4f boneTransform = new Matrix4f(globalInverseTransformation).mul(nodeGlobalTransform)
                     .mul(bone.offsetMatrix());
-            animatedFrame.boneMatrices()[bone.boneId()] = boneTransform;
+            boneMatrices[bone.boneId()] = boneTransform;
         }
 
         for(Joint childNode : node.getChildren()) {
-            buildFrameMatrices(aiAnimation, boneList, animatedFrame, frame, childNode
+            buildFrameMatrices(aiAnimation, boneList, boneMatrices, frame, childNode
                     , nodeGlobalTransform, globalInverseTransformation);
         }
     }
@@ -575,6 +704,19 @@ public class ModelLoader {
     }
 
     public record AnimMeshData(float[] weights, int[] boneIds) {}
-    private record Bone(int boneId, String boneName, Matrix4f offsetMatrix) {}
+    // Model data and decoded textures of a model, not uploaded to the GPU yet.
+    public record DecodedModel(String modelPath, boolean hasAnimation, ModelCache.CachedModel cachedModel
+            , Map<String, TextureData> textures, Map<String, CompressedTextureData> compressedTextures) {
+        // Frees the decoded textures that weren't uploaded.
+        public void free() {
+            textures.values().forEach(TextureData::free);
+            textures.clear();
+            compressedTextures.clear();
+        }
+    }
+    // Imported model before any GL objects are created, mesh i uses material meshMaterialIndices[i].
+    record ModelData(List<Material> materials, List<MeshData> meshes, int[] meshMaterialIndices
+            , List<Model.Animation> animations) {}
+    record Bone(int boneId, String boneName, Matrix4f offsetMatrix) {}
     private record VertexWeight(int boneId, int vertexId, float weight) {}
 }
\ No newline at end of file
@@ -6,15 +6,27 @@ import org.polygon.engine.core.graph.TextureCache;
 import org.polygon.engine.core.scene.lights.SceneLights;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Scene {
     // Holds projection matrix and updating projection matrix logic
     Projection projection;
     // Holds all Models that are going to be rendered
     private Map<String, Model> modelMap;
+    // The models as of the last sync point, iterated by the renderers while the update may add models or reset.
+    private final List<Model> renderModels = new ArrayList<>();
+    private boolean modelsDirty;
+    // Models whose entity list changed since the last sync point.
+    private final Set<Model> dirtyModels = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Incremented by the sync points that changed the render models or an entity list.
+    private long renderListsVersion;
+    // Number of sync points so far.
+    private long renderSyncCount;
     // Scene objects can hold a reference to a selectedEntity used for game interactions.
     private Entity selectedEntity;
     // Holds textures used in the scene
@@ -32,6 +44,26 @@ public class Scene {
     private SkyBox skyBox;
     // Holds the scene's fog instance.
     private Fog fog;
+    // Spatial index of all the scene's entities, used for culling. Only changed at the sync point.
+    private BoundingVolumeHierarchy bvh;
+    // Entities changed since the last sync point.
+    private final List<Entity> dirtyEntities = new ArrayList<>();
+    // Entities moved in the last update tick, drawn between their previous and current transform.
+    private final List<Entity> interpolatedEntities = new ArrayList<>();
+    // Entities whose render transform was set by the last sync point.
+    private final List<Entity> syncedEntities = new ArrayList<>();
+    private boolean interpolationEnabled = true;
+    // Number of the last update tick, see beginUpdateTick.
+    private long updateTick;
+    private boolean updateTickRunning;
+    private long syncedUpdateTick;
+    // Advances animations and evaluates the bone palettes in parallel.
+    private final AnimationSystem animationSystem = new AnimationSystem();
+    // Animations of the scene's entities, reused lists for the update side and the render side.
+    private final List<AnimationData> updateAnimations = new ArrayList<>();
+    private final List<AnimationData> renderAnimations = new ArrayList<>();
+    // Entities may share an AnimationData, it must only be advanced once and by a single task.
+    private final Set<AnimationData> collectedAnimations = Collections.newSetFromMap(new IdentityHashMap<>());
 
     // Flag to bypass lighting in the shader.
     private boolean bypassLighting;
@@ -39,6 +71,7 @@ public class Scene {
     public Scene(int width, int height) {
         // Initialize the scene with empty Model map and a projection matrix
         modelMap = new HashMap<>();
+        bvh = new BoundingVolumeHierarchy();
         projection = new Projection(width, height);
         // Initialize the textureCache
         textureCache = new TextureCache();
@@ -65,9 +98,22 @@ public class Scene {
 
     public void reset() {
         // Removes VAO and VBO for each mesh and reset modelMap and textureCache.
-        // Ideal for level resets.
+        // Ideal for level resets. Frees GL resources, so only call it from the main thread, e.g. from input.
         cleanup();
+        // The entities leave the scene with their models, removed ones may still wait for the sync point.
+        for(Model model : modelMap.values()) {
+            model.getEntityList().forEach(Entity::resetSceneState);
+        }
+        dirtyEntities.forEach(Entity::resetSceneState);
         modelMap = new HashMap<>();
+        modelsDirty = true;
+        dirtyModels.clear();
+        bvh = new BoundingVolumeHierarchy();
+        dirtyEntities.clear();
+        interpolatedEntities.clear();
+        syncedEntities.clear();
+        updateAnimations.clear();
+        renderAnimations.clear();
         textureCache = new TextureCache();
         camera = new Camera();
         bypassLighting = true;
@@ -82,12 +128,164 @@ public class Scene {
                     + entity.getEntityId() + "]");
         }
         model.getEntityList().add(entity);
+        dirtyModels.add(model);
+        entity.attachToScene(this, model.getAabbMinCorner(), model.getAabbMaxCorner());
+    }
+
+    public void removeEntity(Entity entity) {
+        Model model = modelMap.get(entity.getModelId());
+        if(model == null || !model.getEntityList().remove(entity)) {
+            throw new RuntimeException("Entity is not part of the scene [" + entity.getEntityId() + "]");
+        }
+        dirtyModels.add(model);
+        entity.detachFromScene();
+    }
+
+    void markDirty(Entity entity) {
+        dirtyEntities.add(entity);
+    }
+
+    // Entities moved in the update ticks are drawn interpolated between their last two tick transforms,
+    // smooth at any frame rate but a tick behind. Changes made outside the ticks are drawn as they are.
+    public void setInterpolationEnabled(boolean interpolationEnabled) {
+        this.interpolationEnabled = interpolationEnabled;
+    }
+
+    public boolean isInterpolationEnabled() {
+        return interpolationEnabled;
+    }
+
+    // Called by the Engine around each fixed update tick, entity transform changes in between are interpolated.
+    public void beginUpdateTick() {
+        updateTick++;
+        updateTickRunning = true;
+    }
+
+    public void endUpdateTick() {
+        updateTickRunning = false;
+    }
+
+    // The running update tick, -1 outside of the update ticks.
+    long getRunningUpdateTick() {
+        return updateTickRunning ? updateTick : -1;
+    }
+
+    // Update/render sync point, copies the models, the entity lists, the entities' transforms and animation state
+    // for the renderers and applies the changes to the BVH. Called by the Engine before rendering while the update
+    // is not running.
+    public void syncRenderState() {
+        renderSyncCount++;
+        if(modelsDirty || !dirtyModels.isEmpty()) {
+            renderListsVersion++;
+        }
+        if(modelsDirty) {
+            renderModels.clear();
+            renderModels.addAll(modelMap.values());
+            modelsDirty = false;
+        }
+        for(Model model : dirtyModels) {
+            model.syncRenderEntityList();
+        }
+        dirtyModels.clear();
+
+        // The interpolations of the previous tick are over once a newer one ran.
+        syncedEntities.clear();
+        if(syncedUpdateTick != updateTick) {
+            for(Entity entity : interpolatedEntities) {
+                entity.endInterpolation(bvh);
+            }
+            syncedEntities.addAll(interpolatedEntities);
+            interpolatedEntities.clear();
+            syncedUpdateTick = updateTick;
+        }
+
+        syncedEntities.addAll(dirtyEntities);
+        for(Entity entity : dirtyEntities) {
+            if(entity.syncRenderState(bvh, updateTick, interpolationEnabled)) {
+                interpolatedEntities.add(entity);
+            }
+        }
+        dirtyEntities.clear();
+
+        collectAnimations(renderAnimations);
+        for(AnimationData animationData : renderAnimations) {
+            animationData.syncRenderState();
+        }
+    }
+
+    // Places the interpolated entities alpha of the way from their previous to their current transform,
+    // alpha being the fraction of the next update tick elapsed. Only touches render state like evaluateRenderPoses.
+    public void interpolateRenderState(float alpha) {
+        interpolatedEntities.removeIf(entity -> !entity.interpolateRenderState(bvh, alpha));
+    }
+
+    // Evaluates the bone palettes of the synced animations in parallel, the render passes then only read them.
+    // Only touches render state, so it doesn't need to hold off the update thread.
+    public void evaluateRenderPoses() {
+        animationSystem.evaluateRenderPoses(renderAnimations);
+    }
+
+    // Advances the animations of all the scene's animated entities in parallel,
+    // instead of calling AnimationData.nextFrame for each of them in the game logic.
+    public void advanceAnimations(float deltaTime) {
+        collectAnimations(updateAnimations);
+        animationSystem.advance(updateAnimations, deltaTime);
+    }
+
+    private void collectAnimations(List<AnimationData> animations) {
+        animations.clear();
+        collectedAnimations.clear();
+        for(Model model : modelMap.values()) {
+            if(!model.isAnimated()) {
+                continue;
+            }
+            for(Entity entity : model.getEntityList()) {
+                AnimationData animationData = entity.getAnimationData();
+                if(animationData != null && collectedAnimations.add(animationData)) {
+                    animations.add(animationData);
+                }
+            }
+        }
+    }
+
+    public AnimationSystem getAnimationSystem() {
+        return animationSystem;
+    }
+
+    public BoundingVolumeHierarchy getBvh() {
+        return bvh;
     }
 
     public Map<String, Model> getModelMap() {
         return modelMap;
     }
 
+    // The models for the renderers, see syncRenderState.
+    public List<Model> getRenderModels() {
+        return renderModels;
+    }
+
+    // Changes when a sync point changed the render models or their entity lists, renderers keeping data per
+    // entity rebuild it then.
+    public long getRenderListsVersion() {
+        return renderListsVersion;
+    }
+
+    public long getRenderSyncCount() {
+        return renderSyncCount;
+    }
+
+    // Entities whose render model matrix the last sync point may have changed, removed ones included.
+    // With the interpolated entities these are all the matrices that changed since the previous frame.
+    public List<Entity> getSyncedEntities() {
+        return syncedEntities;
+    }
+
+    // Entities whose render model matrix interpolateRenderState sets every frame.
+    public List<Entity> getInterpolatedEntities() {
+        return interpolatedEntities;
+    }
+
     public Entity getSelectedEntity() {
         return selectedEntity;
     }
@@ -151,6 +349,8 @@ public class Scene {
 
     public void addModel(Model model) {
         modelMap.put(model.getModelId(), model);
+        modelsDirty = true;
+        dirtyModels.add(model);
     }
 
     public void resize(int width, int height) {
@@ -3,6 +3,7 @@ package org.polygon.engine.core.scene;
 import org.joml.Matrix4f;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
+import org.polygon.engine.core.graph.GLState;
 import org.polygon.engine.core.graph.Mesh;
 import org.polygon.engine.core.graph.Model;
 import org.polygon.engine.core.graph.ShaderProgram;
@@ -30,6 +31,11 @@ public class SkyBox {
     private static final int CUBEMAP_RESOLUTION = 1024;
     private static final int IRRADIANCE_MAP_RESOLUTION = 32;
     private static final int PREFILTER_MAP_RESOLUTION = 128;
+    // Roughness levels of the prefilter map, lights.frag samples up to MAX_REFLECTION_LOD.
+    private static final int PREFILTER_MIP_LEVELS = 5;
+    // Time the environment and IBL maps took to set up, and if the IBL maps came from the IBLCache.
+    private float iblSetupTimeMS;
+    private boolean iblDataCached;
     private static ShaderProgram equirectangularToCubemapShader;
     private static ShaderProgram irradianceConvolutionShader;
     private static ShaderProgram prefilterShader;
@@ -63,20 +69,27 @@ public class SkyBox {
         this.skyBoxEntity = null;
         int generatedIrradianceMapId = -1;
         int generatedPrefilterMapId = -1;
+        long startTime = System.nanoTime();
+        int environmentMapRes = envMapRes > 0 ? envMapRes : CUBEMAP_RESOLUTION;
+        int irradianceRes = irradianceMapRes > 0 ? irradianceMapRes : IRRADIANCE_MAP_RESOLUTION;
+        int prefilterRes = prefilterMapRes > 0 ? prefilterMapRes : PREFILTER_MAP_RESOLUTION;
 
         try {
             // Load HDR into environment cubemap
-            this.environmentMapTextureId = loadHDRTexture(environmentMapPath, envMapRes > 0 ? envMapRes : CUBEMAP_RESOLUTION);
+            this.environmentMapTextureId = loadHDRTexture(environmentMapPath, environmentMapRes);
             
-            // Create Irradiance Map from environment map
-            if (this.environmentMapTextureId != -1) { 
-                generatedIrradianceMapId = createIrradianceMap(this.environmentMapTextureId, 
-                        irradianceMapRes > 0 ? irradianceMapRes : IRRADIANCE_MAP_RESOLUTION);
-                generatedPrefilterMapId = createPrefilterMap(this.environmentMapTextureId
-                        , prefilterMapRes > 0 ? prefilterMapRes : PREFILTER_MAP_RESOLUTION);
+            // Load the IBL maps generated for this HDR on a previous run, or create them from the environment map
+            IBLCache.Key cacheKey = IBLCache.createKey(environmentMapPath, environmentMapRes
+                    , irradianceRes, prefilterRes, PREFILTER_MIP_LEVELS);
+            if (this.environmentMapTextureId != -1 && IBLCache.load(cacheKey, this.iblData)) {
+                this.iblDataCached = true;
+            } else if (this.environmentMapTextureId != -1) {
+                generatedIrradianceMapId = createIrradianceMap(this.environmentMapTextureId, irradianceRes);
+                generatedPrefilterMapId = createPrefilterMap(this.environmentMapTextureId, prefilterRes);
                 // Store the generated ID in the IBLData object
                 this.iblData.setIrradianceMapTextureId(generatedIrradianceMapId);
                 this.iblData.setPrefilterMapTextureId(generatedPrefilterMapId);
+                IBLCache.store(cacheKey, this.iblData);
             } else {
                  this.iblData.setIrradianceMapTextureId(-1);
                  this.iblData.setPrefilterMapTextureId(-1);
@@ -87,13 +100,13 @@ public class SkyBox {
             e.printStackTrace();
             // Clean up partially created resources
             if(this.environmentMapTextureId != -1) {
-                glDeleteTextures(this.environmentMapTextureId);
+                GLState.deleteTexture(this.environmentMapTextureId);
             }
             if(generatedIrradianceMapId != -1) {
-                glDeleteTextures(generatedIrradianceMapId); // Use local var for cleanup
+                GLState.deleteTexture(generatedIrradianceMapId); // Use local var for cleanup
             }
             if(generatedPrefilterMapId != -1) {
-                glDeleteTextures(generatedPrefilterMapId);
+                GLState.deleteTexture(generatedPrefilterMapId);
             }
             this.environmentMapTextureId = -1;
             // Ensure IBLData reflects failure
@@ -102,6 +115,7 @@ public class SkyBox {
                 this.iblData.setPrefilterMapTextureId(-1);
             }
         }
+        this.iblSetupTimeMS = (System.nanoTime() - startTime) / 1_000_000.0f;
     }
 
     public IBLData getIBLData() {
@@ -112,6 +126,14 @@ public class SkyBox {
         return iblData;
     }
 
+    public float getIBLSetupTimeMS() {
+        return iblSetupTimeMS;
+    }
+
+    public boolean isIBLDataCached() {
+        return iblDataCached;
+    }
+
     public int getEnvironmentMapTextureId() {
         return environmentMapTextureId;
     }
@@ -188,7 +210,7 @@ public class SkyBox {
             cubeMesh = null;
         }
         if (captureFBO != -1) {
-            glDeleteFramebuffers(captureFBO);
+            GLState.deleteFramebuffer(captureFBO);
             glDeleteRenderbuffers(captureRBO);
             captureFBO = -1;
             captureRBO = -1;
@@ -212,11 +234,10 @@ public class SkyBox {
             }
 
             // Create a 2D texture from the loaded HDR data
-            int previousActiveTextureUnit = glGetInteger(GL_ACTIVE_TEXTURE);
-            glActiveTexture(GL_TEXTURE0);
+            GLState.activeTexture(GL_TEXTURE0);
 
             int hdrTexture2D = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, hdrTexture2D);
+            GLState.bindTexture(GL_TEXTURE_2D, hdrTexture2D);
             // Use GL_RGB32F for HDR
             glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB32F, width.get(0), height.get(0), 0, GL_RGB, GL_FLOAT, hdrImageData);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
@@ -228,7 +249,7 @@ public class SkyBox {
 
             // Create the destination Cubemap texture
             hdrTexture = glGenTextures();
-            glBindTexture(GL_TEXTURE_CUBE_MAP, hdrTexture);
+            GLState.bindTexture(GL_TEXTURE_CUBE_MAP, hdrTexture);
             for (int i = 0; i < 6; ++i) {
                 glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_RGB32F, resolution, resolution, 0, GL_RGB, GL_FLOAT, (ByteBuffer) null);
             }
@@ -239,14 +260,14 @@ public class SkyBox {
             glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
 
             // Setup Framebuffer
-            glBindFramebuffer(GL_FRAMEBUFFER, captureFBO);
+            GLState.bindFramebuffer(GL_FRAMEBUFFER, captureFBO);
             glBindRenderbuffer(GL_RENDERBUFFER, captureRBO); 
             glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, resolution, resolution); 
             glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, captureRBO); 
 
             // Ensure framebuffer is complete
             if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
-                glBindFramebuffer(GL_FRAMEBUFFER, 0); 
+                GLState.bindFramebuffer(GL_FRAMEBUFFER, 0); 
                 throw new IllegalStateException(" SkyBox Framebuffer is not complete!");
             }
 
@@ -254,11 +275,10 @@ public class SkyBox {
             equirectangularToCubemapShader.bind();
             equirectangularToCubemapUniformMap.setUniform("equirectangularMap", 0);
             equirectangularToCubemapUniformMap.setUniform("projection", captureProjection);
-            glActiveTexture(GL_TEXTURE0);
-            glBindTexture(GL_TEXTURE_2D, hdrTexture2D); 
+            GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_2D, hdrTexture2D); 
 
-            glViewport(0, 0, resolution, resolution);
-            glBindVertexArray(cubeMesh.getVaoId()); 
+            GLState.viewport(0, 0, resolution, resolution);
+            GLState.bindVertexArray(cubeMesh.getVaoId()); 
 
 
             for (int i = 0; i < 6; ++i) {
@@ -266,22 +286,21 @@ public class SkyBox {
                 glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, hdrTexture, 0);
 
                 glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); 
-                glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, cubeMesh.getLodIndexOffset(0));
             }
 
-            glBindVertexArray(0);
-            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            GLState.bindVertexArray(0);
+            GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
             equirectangularToCubemapShader.unbind();
 
-            glDeleteTextures(hdrTexture2D);
+            GLState.deleteTexture(hdrTexture2D);
 
             // Mipmaps for the cubemap
-            glBindTexture(GL_TEXTURE_CUBE_MAP, hdrTexture);
+            GLState.bindTexture(GL_TEXTURE_CUBE_MAP, hdrTexture);
             glGenerateMipmap(GL_TEXTURE_CUBE_MAP);
 
-            glBindTexture(GL_TEXTURE_2D, 0);
-            glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
-            glActiveTexture(previousActiveTextureUnit);
+            GLState.bindTexture(GL_TEXTURE_2D, 0);
+            GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
         }
 
         return hdrTexture;
@@ -292,7 +311,7 @@ public class SkyBox {
         setupIBLResources(); 
 
         int irradianceMap = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, irradianceMap);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, irradianceMap);
         for (int i = 0; i < 6; ++i) {
             glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_RGB16F, resolution, resolution, 0, GL_RGB, GL_FLOAT, (ByteBuffer) null);
         }
@@ -302,7 +321,7 @@ public class SkyBox {
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR); 
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, captureFBO);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, captureFBO);
         glBindRenderbuffer(GL_RENDERBUFFER, captureRBO);
         glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, resolution, resolution);
         glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, captureRBO);
@@ -314,27 +333,26 @@ public class SkyBox {
         irradianceConvolutionShader.bind();
         irradianceConvolutionUniformMap.setUniform("environmentMap", 0);
         irradianceConvolutionUniformMap.setUniform("projection", captureProjection);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_CUBE_MAP, environmentMapId); 
+        GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_CUBE_MAP, environmentMapId); 
 
-        glViewport(0, 0, resolution, resolution); 
-        glBindVertexArray(cubeMesh.getVaoId());
+        GLState.viewport(0, 0, resolution, resolution); 
+        GLState.bindVertexArray(cubeMesh.getVaoId());
 
-        glDisable(GL_DEPTH_TEST); 
+        GLState.disable(GL_DEPTH_TEST); 
 
         for (int i = 0; i < 6; ++i) {
             irradianceConvolutionUniformMap.setUniform("view", captureViews[i]);
             glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, irradianceMap, 0);
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); 
-            glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, cubeMesh.getLodIndexOffset(0));
         }
 
-        glEnable(GL_DEPTH_TEST); 
+        GLState.enable(GL_DEPTH_TEST); 
 
-        glBindVertexArray(0);
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindVertexArray(0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
         irradianceConvolutionShader.unbind();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
         
         return irradianceMap;
     }
@@ -343,7 +361,7 @@ public class SkyBox {
         setupIBLResources();
 
         int prefilterMap = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, prefilterMap);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, prefilterMap);
         for (int i = 0; i < 6; ++i)
         {
             glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_RGB16F, resolution, resolution, 0, GL_RGB, GL_FLOAT, (ByteBuffer) null);
@@ -353,25 +371,26 @@ public class SkyBox {
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        // Only the roughness levels are rendered, the IBLCache stores the same levels.
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAX_LEVEL, PREFILTER_MIP_LEVELS - 1);
         // generate mipmaps for the cubemap
         glGenerateMipmap(GL_TEXTURE_CUBE_MAP);
 
         prefilterShader.bind();
         prefilterUniformMap.setUniform("environmentMap", 0);
         prefilterUniformMap.setUniform("projection", captureProjection);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_CUBE_MAP, environmentMapId);
+        GLState.bindTexture(GL_TEXTURE0, GL_TEXTURE_CUBE_MAP, environmentMapId);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, captureFBO);
-        int maxMipLevels = 5;
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, captureFBO);
+        int maxMipLevels = PREFILTER_MIP_LEVELS;
         for (int mip = 0; mip < maxMipLevels; ++mip)
         {
             // resize framebuffer according to mip-level size.
-            int mipWidth = (int)(resolution * Math.pow(0.5, mip));
-            int mipHeight = (int)(resolution * Math.pow(0.5, mip));
+            int mipWidth = Math.max(1, resolution >> mip);
+            int mipHeight = Math.max(1, resolution >> mip);
             glBindRenderbuffer(GL_RENDERBUFFER, captureRBO);
             glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, mipWidth, mipHeight);
-            glViewport(0, 0, mipWidth, mipHeight);
+            GLState.viewport(0, 0, mipWidth, mipHeight);
 
             float roughness = (float)mip / (float)(maxMipLevels - 1);
             prefilterUniformMap.setUniform("roughness", roughness);
@@ -381,14 +400,14 @@ public class SkyBox {
                 glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, prefilterMap, mip);
 
                 glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-                glBindVertexArray(cubeMesh.getVaoId());
-                glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                GLState.bindVertexArray(cubeMesh.getVaoId());
+                glDrawElements(GL_TRIANGLES, cubeMesh.getNumVertices(), GL_UNSIGNED_INT, cubeMesh.getLodIndexOffset(0));
             }
         }
-        glBindVertexArray(0);
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GLState.bindVertexArray(0);
+        GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
         prefilterShader.unbind();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
 
         return prefilterMap;
     }
@@ -19,12 +19,23 @@ public class SoundBuffer {
     private ShortBuffer pcm;
 
     public SoundBuffer(String path) {
+        this(decode(path));
+    }
+
+    // Uploads sound data decoded beforehand, e.g. on an asset loader thread.
+    // The buffer takes ownership of the pcm data.
+    public SoundBuffer(SoundData soundData) {
         this.bufferId = alGenBuffers();
-        try (STBVorbisInfo info = STBVorbisInfo.malloc()) {
-            pcm = readVorbis(path, info);
+        pcm = soundData.pcm();
+        alBufferData(bufferId, soundData.channels() == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16
+                , pcm, soundData.sampleRate());
+    }
 
-            alBufferData(bufferId, info.channels() == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16
-                    , pcm, info.sample_rate());
+    // Decodes the .OGG file, doesn't touch OpenAL so it can run on any thread.
+    public static SoundData decode(String path) {
+        try (STBVorbisInfo info = STBVorbisInfo.malloc()) {
+            ShortBuffer pcm = readVorbis(path, info);
+            return new SoundData(pcm, info.channels(), info.sample_rate());
         }
     }
 
@@ -39,7 +50,7 @@ public class SoundBuffer {
         return bufferId;
     }
 
-    private ShortBuffer readVorbis(String path, STBVorbisInfo info) {
+    private static ShortBuffer readVorbis(String path, STBVorbisInfo info) {
         try(MemoryStack stack = MemoryStack.stackPush()) {
             IntBuffer error = stack.mallocInt(1);
             long decoder = stb_vorbis_open_filename(path, error, null);
@@ -62,4 +73,10 @@ public class SoundBuffer {
             return result;
         }
     }
+
+    public record SoundData(ShortBuffer pcm, int channels, int sampleRate) {
+        public void free() {
+            MemoryUtil.memFree(pcm);
+        }
+    }
 }
@@ -0,0 +1,442 @@
+package org.polygon.engine.core.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Quadric error edge collapse simplification of triangle index lists, used to generate the mesh LODs.
+// Vertices are never moved or created, an edge collapse moves one vertex onto the other so the simplified
+// index lists share the vertex buffer of the full detail mesh.
+// Vertices sharing a position, like the copies along UV seams, collapse together and only along edges
+// every copy has, so seams don't tear. Open borders are locked to keep the mesh silhouette and its holes.
+// Doesn't touch OpenGL.
+public class MeshSimplifier {
+    public static final int MAX_LODS = 4;
+    // Meshes with fewer triangles only have the full detail LOD.
+    private static final int MIN_LOD_TRIANGLES = 64;
+    // Each LOD targets this fraction of the previous LOD's triangles.
+    private static final float LOD_REDUCTION = 0.5f;
+    // A LOD is only kept if it removes at least this fraction of the previous LOD's triangles.
+    private static final float MIN_LOD_REDUCTION = 0.2f;
+    // Largest collapse error allowed for LOD 1, 2 and 3, relative to the mesh's bounding box diagonal.
+    private static final float[] LOD_ERRORS = {0.005f, 0.015f, 0.04f};
+    private static final int QUADRIC_SIZE = 11;
+
+    private MeshSimplifier() {
+
+    }
+
+    // Simplifies every LOD from the previous one, returns the index lists of all LODs after each other.
+    public static LodIndices generateLods(float[] positions, int[] indices) {
+        int[][] lods = new int[MAX_LODS][];
+        lods[0] = indices;
+        int numLods = 1;
+        if(indices.length / 3 >= MIN_LOD_TRIANGLES) {
+            for(int i = 1; i < MAX_LODS; i++) {
+                int[] previous = lods[i - 1];
+                int target = (int) (previous.length / 3 * LOD_REDUCTION) * 3;
+                int[] simplified = simplify(positions, previous, target, LOD_ERRORS[i - 1]);
+                if(simplified.length == 0 || simplified.length > previous.length * (1.0f - MIN_LOD_REDUCTION)) {
+                    break;
+                }
+                lods[numLods++] = simplified;
+            }
+        }
+
+        int[] lodOffsets = new int[numLods + 1];
+        for(int i = 0; i < numLods; i++) {
+            lodOffsets[i + 1] = lodOffsets[i] + lods[i].length;
+        }
+        int[] lodIndices = new int[lodOffsets[numLods]];
+        for(int i = 0; i < numLods; i++) {
+            System.arraycopy(lods[i], 0, lodIndices, lodOffsets[i], lods[i].length);
+        }
+        return new LodIndices(lodIndices, lodOffsets);
+    }
+
+    // Collapses edges, cheapest first, until there are at most targetIndexCount indices left
+    // or the next collapse would move the surface further than targetError times the bounding box diagonal.
+    public static int[] simplify(float[] positions, int[] indices, int targetIndexCount, float targetError) {
+        return new Simplification(positions, indices).run(targetIndexCount, targetError);
+    }
+
+    // indices holds the index lists of all LODs, LOD i starts at lodOffsets[i] and ends at lodOffsets[i + 1].
+    public record LodIndices(int[] indices, int[] lodOffsets) {}
+
+    private record Collapse(double cost, int from, int to, int fromVersion, int toVersion) {}
+
+    private record PositionKey(int x, int y, int z) {}
+
+    // State of a single simplify call. Vertices sharing a position are grouped in a class,
+    // collapses move every vertex of a class to the matching vertices of another class.
+    private static class Simplification {
+        private final float[] positions;
+        private final int[] indices;
+        private final int numTriangles;
+        private final boolean[] deadTriangles;
+        private int liveTriangles;
+
+        private final int[] vertexClass;
+        private final int[] nextClassVertex;
+        private int[] firstClassVertex;
+        private int numClasses;
+        // Position of the first vertex of every class.
+        private float[] classPositions;
+        private double[] quadrics;
+        private boolean[] lockedClasses;
+        private boolean[] deadClasses;
+        private int[] classVersions;
+        // Live triangles touching every class, dead ones are removed lazily.
+        private int[][] classTriangles;
+        private int[] classTriangleCounts;
+
+        // Collapse target of every vertex of the class being collapsed, -1 none yet, -2 not connected.
+        private final int[] vertexTargets;
+        private final PriorityQueue<Collapse> collapses = new PriorityQueue<>(
+                (a, b) -> Double.compare(a.cost(), b.cost()));
+
+        private Simplification(float[] positions, int[] indices) {
+            this.positions = positions;
+            this.indices = Arrays.copyOf(indices, indices.length);
+            numTriangles = indices.length / 3;
+            deadTriangles = new boolean[numTriangles];
+            liveTriangles = numTriangles;
+
+            int numVertices = positions.length / 3;
+            vertexClass = new int[numVertices];
+            nextClassVertex = new int[numVertices];
+            vertexTargets = new int[numVertices];
+            Arrays.fill(vertexTargets, -1);
+            buildClasses(numVertices);
+            buildTriangles();
+            buildCollapses();
+        }
+
+        private void buildClasses(int numVertices) {
+            Map<PositionKey, Integer> classMap = new HashMap<>();
+            firstClassVertex = new int[numVertices];
+            classPositions = new float[numVertices * 3];
+            for(int i = 0; i < numVertices; i++) {
+                PositionKey key = new PositionKey(Float.floatToIntBits(positions[i * 3])
+                        , Float.floatToIntBits(positions[i * 3 + 1]), Float.floatToIntBits(positions[i * 3 + 2]));
+                Integer existing = classMap.get(key);
+                if(existing == null) {
+                    existing = numClasses++;
+                    classMap.put(key, existing);
+                    firstClassVertex[existing] = -1;
+                    System.arraycopy(positions, i * 3, classPositions, existing * 3, 3);
+                }
+                vertexClass[i] = existing;
+                nextClassVertex[i] = firstClassVertex[existing];
+                firstClassVertex[existing] = i;
+            }
+
+            quadrics = new double[numClasses * QUADRIC_SIZE];
+            lockedClasses = new boolean[numClasses];
+            deadClasses = new boolean[numClasses];
+            classVersions = new int[numClasses];
+            classTriangles = new int[numClasses][];
+            classTriangleCounts = new int[numClasses];
+        }
+
+        // Adds the triangle plane quadrics and the triangle lists, drops the triangles that are already degenerate.
+        private void buildTriangles() {
+            for(int t = 0; t < numTriangles; t++) {
+                int a = vertexClass[indices[t * 3]];
+                int b = vertexClass[indices[t * 3 + 1]];
+                int c = vertexClass[indices[t * 3 + 2]];
+                if(a == b || b == c || a == c) {
+                    deadTriangles[t] = true;
+                    liveTriangles--;
+                    continue;
+                }
+                addPlaneQuadric(t, a, b, c);
+                addClassTriangle(a, t);
+                addClassTriangle(b, t);
+                addClassTriangle(c, t);
+            }
+        }
+
+        // Area weighted plane quadric, the last entry sums the weights so the error can be averaged.
+        private void addPlaneQuadric(int t, int a, int b, int c) {
+            double ux = classPositions[b * 3] - classPositions[a * 3];
+            double uy = classPositions[b * 3 + 1] - classPositions[a * 3 + 1];
+            double uz = classPositions[b * 3 + 2] - classPositions[a * 3 + 2];
+            double vx = classPositions[c * 3] - classPositions[a * 3];
+            double vy = classPositions[c * 3 + 1] - classPositions[a * 3 + 1];
+            double vz = classPositions[c * 3 + 2] - classPositions[a * 3 + 2];
+            double nx = uy * vz - uz * vy;
+            double ny = uz * vx - ux * vz;
+            double nz = ux * vy - uy * vx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if(length == 0.0) {
+                return;
+            }
+            double weight = length * 0.5;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * classPositions[a * 3] + ny * classPositions[a * 3 + 1] + nz * classPositions[a * 3 + 2]);
+            double[] plane = {nx * nx, nx * ny, nx * nz, nx * d, ny * ny, ny * nz, ny * d, nz * nz, nz * d, d * d, 1.0};
+            for(int corner : new int[] {a, b, c}) {
+                int offset = corner * QUADRIC_SIZE;
+                for(int i = 0; i < QUADRIC_SIZE; i++) {
+                    quadrics[offset + i] += plane[i] * weight;
+                }
+            }
+        }
+
+        private void addClassTriangle(int c, int t) {
+            int[] triangles = classTriangles[c];
+            if(triangles == null) {
+                triangles = new int[8];
+                classTriangles[c] = triangles;
+            } else if(classTriangleCounts[c] == triangles.length) {
+                triangles = Arrays.copyOf(triangles, triangles.length * 2);
+                classTriangles[c] = triangles;
+            }
+            triangles[classTriangleCounts[c]++] = t;
+        }
+
+        // Locks the classes on open or non-manifold edges and queues both directions of every other edge.
+        private void buildCollapses() {
+            Map<Long, Integer> edgeCounts = new HashMap<>();
+            for(int t = 0; t < numTriangles; t++) {
+                if(deadTriangles[t]) {
+                    continue;
+                }
+                for(int i = 0; i < 3; i++) {
+                    int a = vertexClass[indices[t * 3 + i]];
+                    int b = vertexClass[indices[t * 3 + (i + 1) % 3]];
+                    edgeCounts.merge(edgeKey(a, b), 1, Integer::sum);
+                }
+            }
+            for(Map.Entry<Long, Integer> edge : edgeCounts.entrySet()) {
+                if(edge.getValue() != 2) {
+                    lockedClasses[(int) (edge.getKey() >>> 32)] = true;
+                    lockedClasses[(int) (long) edge.getKey()] = true;
+                }
+            }
+            for(long key : edgeCounts.keySet()) {
+                int a = (int) (key >>> 32);
+                int b = (int) key;
+                queueCollapse(a, b);
+                queueCollapse(b, a);
+            }
+        }
+
+        private static long edgeKey(int a, int b) {
+            return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        }
+
+        private void queueCollapse(int from, int to) {
+            if(lockedClasses[from]) {
+                return;
+            }
+            collapses.add(new Collapse(collapseCost(from, to), from, to, classVersions[from], classVersions[to]));
+        }
+
+        // Average squared distance of the target position to the planes of both classes.
+        private double collapseCost(int from, int to) {
+            double x = classPositions[to * 3];
+            double y = classPositions[to * 3 + 1];
+            double z = classPositions[to * 3 + 2];
+            int f = from * QUADRIC_SIZE;
+            int t = to * QUADRIC_SIZE;
+            double error = 0.0;
+            double[] q = quadrics;
+            error += (q[f] + q[t]) * x * x + 2 * (q[f + 1] + q[t + 1]) * x * y + 2 * (q[f + 2] + q[t + 2]) * x * z
+                    + 2 * (q[f + 3] + q[t + 3]) * x + (q[f + 4] + q[t + 4]) * y * y + 2 * (q[f + 5] + q[t + 5]) * y * z
+                    + 2 * (q[f + 6] + q[t + 6]) * y + (q[f + 7] + q[t + 7]) * z * z + 2 * (q[f + 8] + q[t + 8]) * z
+                    + (q[f + 9] + q[t + 9]);
+            double weight = q[f + 10] + q[t + 10];
+            return weight > 0.0 ? Math.max(0.0, error / weight) : 0.0;
+        }
+
+        private int[] run(int targetIndexCount, float targetError) {
+            double maxCost = targetError * (double) targetError * boundsDiagonalSquared();
+            while(liveTriangles * 3 > targetIndexCount && !collapses.isEmpty()) {
+                Collapse collapse = collapses.poll();
+                int from = collapse.from();
+                int to = collapse.to();
+                if(deadClasses[from] || deadClasses[to] || classVersions[from] != collapse.fromVersion()
+                        || classVersions[to] != collapse.toVersion()) {
+                    continue;
+                }
+                if(collapse.cost() > maxCost) {
+                    break;
+                }
+                if(findTargets(from, to) && !flipsTriangles(from, to)) {
+                    applyCollapse(from, to);
+                }
+                resetTargets(from);
+            }
+
+            int[] result = new int[liveTriangles * 3];
+            int count = 0;
+            for(int t = 0; t < numTriangles; t++) {
+                if(!deadTriangles[t]) {
+                    System.arraycopy(indices, t * 3, result, count, 3);
+                    count += 3;
+                }
+            }
+            return result;
+        }
+
+        private double boundsDiagonalSquared() {
+            float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+            float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for(int i = 0; i < numClasses * 3; i++) {
+                min[i % 3] = Math.min(min[i % 3], classPositions[i]);
+                max[i % 3] = Math.max(max[i % 3], classPositions[i]);
+            }
+            double diagonal = 0.0;
+            for(int i = 0; i < 3; i++) {
+                diagonal += (double) (max[i] - min[i]) * (max[i] - min[i]);
+            }
+            return diagonal;
+        }
+
+        // Maps every vertex of the from class to the vertex of the to class it shares an edge with.
+        // Fails if a vertex has no such edge or more than one, the collapse would tear a seam.
+        private boolean findTargets(int from, int to) {
+            int[] triangles = classTriangles[from];
+            for(int i = 0; i < classTriangleCounts[from]; i++) {
+                int t = triangles[i];
+                if(deadTriangles[t]) {
+                    continue;
+                }
+                int fromVertex = -1;
+                int toVertex = -1;
+                for(int j = 0; j < 3; j++) {
+                    int vertex = indices[t * 3 + j];
+                    if(vertexClass[vertex] == from) {
+                        fromVertex = vertex;
+                    } else if(vertexClass[vertex] == to) {
+                        toVertex = vertex;
+                    }
+                }
+                if(toVertex >= 0) {
+                    if(vertexTargets[fromVertex] >= 0 && vertexTargets[fromVertex] != toVertex) {
+                        return false;
+                    }
+                    vertexTargets[fromVertex] = toVertex;
+                } else if(vertexTargets[fromVertex] == -1) {
+                    vertexTargets[fromVertex] = -2;
+                }
+            }
+            for(int vertex = firstClassVertex[from]; vertex >= 0; vertex = nextClassVertex[vertex]) {
+                if(vertexTargets[vertex] == -2) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void resetTargets(int from) {
+            for(int vertex = firstClassVertex[from]; vertex >= 0; vertex = nextClassVertex[vertex]) {
+                vertexTargets[vertex] = -1;
+            }
+        }
+
+        // Checks if moving the from class onto the to class turns any remaining triangle around.
+        private boolean flipsTriangles(int from, int to) {
+            int[] triangles = classTriangles[from];
+            for(int i = 0; i < classTriangleCounts[from]; i++) {
+                int t = triangles[i];
+                if(deadTriangles[t]) {
+                    continue;
+                }
+                int a = vertexClass[indices[t * 3]];
+                int b = vertexClass[indices[t * 3 + 1]];
+                int c = vertexClass[indices[t * 3 + 2]];
+                if(a == to || b == to || c == to) {
+                    // Collapses to a degenerate triangle.
+                    continue;
+                }
+                double[] before = normal(a, b, c, -1, -1);
+                double[] after = normal(a, b, c, from, to);
+                double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+                double afterLength = after[0] * after[0] + after[1] * after[1] + after[2] * after[2];
+                if(afterLength == 0.0 || dot <= 0.0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Unnormalized normal of the triangle, with the replaced class moved to the replacement's position.
+        private double[] normal(int a, int b, int c, int replaced, int replacement) {
+            int pa = (a == replaced ? replacement : a) * 3;
+            int pb = (b == replaced ? replacement : b) * 3;
+            int pc = (c == replaced ? replacement : c) * 3;
+            double ux = classPositions[pb] - classPositions[pa];
+            double uy = classPositions[pb + 1] - classPositions[pa + 1];
+            double uz = classPositions[pb + 2] - classPositions[pa + 2];
+            double vx = classPositions[pc] - classPositions[pa];
+            double vy = classPositions[pc + 1] - classPositions[pa + 1];
+            double vz = classPositions[pc + 2] - classPositions[pa + 2];
+            return new double[] {uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+        }
+
+        private void applyCollapse(int from, int to) {
+            int[] triangles = classTriangles[from];
+            for(int i = 0; i < classTriangleCounts[from]; i++) {
+                int t = triangles[i];
+                if(deadTriangles[t]) {
+                    continue;
+                }
+                boolean degenerate = false;
+                for(int j = 0; j < 3; j++) {
+                    int vertex = indices[t * 3 + j];
+                    if(vertexClass[vertex] == from) {
+                        indices[t * 3 + j] = vertexTargets[vertex];
+                    } else if(vertexClass[vertex] == to) {
+                        degenerate = true;
+                    }
+                }
+                if(degenerate) {
+                    deadTriangles[t] = true;
+                    liveTriangles--;
+                } else {
+                    addClassTriangle(to, t);
+                }
+            }
+            classTriangles[from] = null;
+            classTriangleCounts[from] = 0;
+            deadClasses[from] = true;
+            int f = from * QUADRIC_SIZE;
+            int t = to * QUADRIC_SIZE;
+            for(int i = 0; i < QUADRIC_SIZE; i++) {
+                quadrics[t + i] += quadrics[f + i];
+            }
+            classVersions[to]++;
+            compactTriangles(to);
+
+            // The cost of every edge of the to class changed.
+            triangles = classTriangles[to];
+            for(int i = 0; i < classTriangleCounts[to]; i++) {
+                int triangle = triangles[i];
+                for(int j = 0; j < 3; j++) {
+                    int neighbor = vertexClass[indices[triangle * 3 + j]];
+                    if(neighbor != to) {
+                        queueCollapse(to, neighbor);
+                        queueCollapse(neighbor, to);
+                    }
+                }
+            }
+        }
+
+        private void compactTriangles(int c) {
+            int[] triangles = classTriangles[c];
+            int count = 0;
+            for(int i = 0; i < classTriangleCounts[c]; i++) {
+                if(!deadTriangles[triangles[i]]) {
+                    triangles[count++] = triangles[i];
+                }
+            }
+            classTriangleCounts[c] = count;
+        }
+    }
+}
@@ -2,12 +2,18 @@ package org.polygon.engine.core.utils;
 
 import org.joml.Vector3f;
 import org.polygon.engine.core.graph.Mesh;
+import org.polygon.engine.core.graph.MeshData;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ShapeGenerator {
     public static Mesh generateSphere(float radius, int sectors, int stacks) {
+        return new Mesh(generateSphereData(radius, sectors, stacks));
+    }
+
+    // Generates the sphere vertex data only, doesn't need a GL context.
+    public static MeshData generateSphereData(float radius, int sectors, int stacks) {
         List<Float> positionsList = new ArrayList<>();
         List<Float> normalsList = new ArrayList<>();
         List<Float> texCoordsList = new ArrayList<>();
@@ -75,7 +81,7 @@ public class ShapeGenerator {
         Vector3f aabbMin = new Vector3f(-radius, -radius, -radius);
         Vector3f aabbMax = new Vector3f(radius, radius, radius);
 
-        return new Mesh(positions, normals, tangents, bitangents, texCoords, indices, boneIndices
+        return new MeshData(positions, normals, tangents, bitangents, texCoords, indices, boneIndices
                 , weights, aabbMin, aabbMax);
     }
 
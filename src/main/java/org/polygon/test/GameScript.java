@@ -22,7 +22,7 @@ public class GameScript implements IGameLogic {
 
     @Override
     public void init(Window window, EngineRender render) {
-        window.addGuiInstance(new PerformanceGUI(true));
+        window.addGuiInstance(new PerformanceGUI(true, render.getFrameProfiler(), render.getTextureStreamer()));
         scenes.add(new CubeScene(window));
         scenes.add(new NormalTestScene(window));
         scenes.add(new IBLTestScene(window));
@@ -48,7 +48,7 @@ public class GameScript implements IGameLogic {
     }
 
     @Override
-    public void input(Window window, long diffTimeMS, boolean inputConsumed) {
+    public void input(Window window, float diffTimeMS, boolean inputConsumed) {
         // Stop handling scene input if a GUI instance is on focus of the mouse or keyboard.
         if(inputConsumed) {
             return;
@@ -57,7 +57,7 @@ public class GameScript implements IGameLogic {
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
+    public void update(Window window, float diffTimeMS) {
         scenes.get(currentSceneIndex).update(window, diffTimeMS);
     }
 
@@ -7,14 +7,31 @@ import imgui.flag.ImGuiStyleVar;
 import imgui.flag.ImGuiWindowFlags;
 import org.polygon.engine.core.IGuiInstance;
 import org.polygon.engine.core.Window;
+import org.polygon.engine.core.graph.FrameProfiler;
+import org.polygon.engine.core.graph.RenderStats;
+import org.polygon.engine.core.graph.TextureStreamer;
 
 public class PerformanceGUI implements IGuiInstance {
     boolean showFPS;
+    FrameProfiler frameProfiler;
+    TextureStreamer textureStreamer;
 
     public PerformanceGUI(boolean showFPS) {
         this.showFPS = showFPS;
     }
 
+    // Also shows the average per-pass timings of the frameProfiler.
+    public PerformanceGUI(boolean showFPS, FrameProfiler frameProfiler) {
+        this.showFPS = showFPS;
+        this.frameProfiler = frameProfiler;
+    }
+
+    // Also shows the texture residency of the textureStreamer.
+    public PerformanceGUI(boolean showFPS, FrameProfiler frameProfiler, TextureStreamer textureStreamer) {
+        this(showFPS, frameProfiler);
+        this.textureStreamer = textureStreamer;
+    }
+
     public static void renderFPS() {
         ImGui.pushStyleVar(ImGuiStyleVar.WindowBorderSize, 0.0f);
         ImGui.setNextWindowPos(ImGui.getIO().getDisplaySizeX() - 130, 10, ImGuiCond.Always);
@@ -31,9 +48,47 @@ public class PerformanceGUI implements IGuiInstance {
         ImGui.popStyleVar();
     }
 
+    public static void renderPassTimes(FrameProfiler frameProfiler) {
+        renderPassTimes(frameProfiler, null);
+    }
+
+    public static void renderPassTimes(FrameProfiler frameProfiler, TextureStreamer textureStreamer) {
+        ImGui.setNextWindowPos(10, 10, ImGuiCond.FirstUseEver);
+        ImGui.setNextWindowSize(new ImVec2(460, 300), ImGuiCond.FirstUseEver);
+
+        if (ImGui.begin("Frame Profiler")) {
+            ImGui.text(String.format("CPU frame: %.2f ms", frameProfiler.getAverageFrameCpuTimeMS()));
+            ImGui.text(String.format("Triangles: %d of %d full detail", RenderStats.getTotalTriangles()
+                    , RenderStats.getTotalFullDetailTriangles()));
+            ImGui.text(String.format("Uploads: %.1f KB, uniforms %.1f KB", RenderStats.getTotalUploadBytes() / 1024.0f
+                    , RenderStats.getTotalUniformBytes() / 1024.0f));
+            ImGui.text(String.format("GL state calls: %d issued, %d elided", RenderStats.getTotalStateCalls()
+                    , RenderStats.getTotalElidedStateCalls()));
+            if(textureStreamer != null) {
+                ImGui.text(String.format("Textures: %.1f / %.1f MB, %d of %d streamed, %d pending"
+                        , textureStreamer.getResidentBytes() / (1024.0f * 1024.0f)
+                        , TextureStreamer.getBudgetBytes() / (1024.0f * 1024.0f)
+                        , textureStreamer.getNumStreamedTextures(), textureStreamer.getNumTextures()
+                        , textureStreamer.getPendingLoads()));
+            }
+            ImGui.text(String.format("%-14s %8s %8s %6s %9s %10s", "Pass", "CPU ms", "GPU ms", "Draws", "Tris"
+                    , "Upload KB"));
+            boolean hasFrame = frameProfiler.getRecordedFrames() > 0;
+            for(RenderStats.Pass pass : RenderStats.Pass.values()) {
+                ImGui.text(String.format("%-14s %8.3f %8.3f %6d %9d %10.1f", pass
+                        , frameProfiler.getAverageCpuTimeMS(pass), frameProfiler.getAverageGpuTimeMS(pass)
+                        , hasFrame ? frameProfiler.getDrawCalls(0, pass) : 0
+                        , hasFrame ? frameProfiler.getTriangles(0, pass) : 0
+                        , hasFrame ? frameProfiler.getUploadBytes(0, pass) / 1024.0f : 0.0f));
+            }
+        }
+        ImGui.end();
+    }
+
     @Override
     public void drawGui() {
         if(showFPS) renderFPS();
+        if(frameProfiler != null && frameProfiler.isEnabled()) renderPassTimes(frameProfiler, textureStreamer);
     }
 
     @Override
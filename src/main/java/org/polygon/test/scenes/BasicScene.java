@@ -22,9 +22,9 @@ public abstract class BasicScene {
         init();
     }
 
-    public abstract void input(Window window, long diffTimeMS);
+    public abstract void input(Window window, float diffTimeMS);
 
-    public abstract void update(Window window, long diffTimeMS);
+    public abstract void update(Window window, float diffTimeMS);
 
     public abstract void cleanup();
 }
@@ -35,7 +35,7 @@ public class CubeScene extends BasicScene {
     }
 
     @Override
-    public void input(Window window, long diffTimeMS) {
+    public void input(Window window, float diffTimeMS) {
         float incrementMovement = diffTimeMS * MOVEMENT_SPEED;
         Camera camera = window.getCurrentScene().getCamera();
         if(window.isKeyPressed(GLFW_KEY_W)) {
@@ -65,7 +65,7 @@ public class CubeScene extends BasicScene {
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
+    public void update(Window window, float diffTimeMS) {
         rotation += 15 * diffTimeMS / 1000.0f;
         if (rotation > 360) {
             rotation = 0;
@@ -76,7 +76,7 @@ public class NormalTestScene extends BasicScene {
     }
 
     @Override
-    public void input(Window window, long diffTimeMS) {
+    public void input(Window window, float diffTimeMS) {
         int factor = window.isKeyPressed(GLFW_KEY_LEFT_SHIFT) ? 3 : 1;
         float incrementMovement = diffTimeMS * MOVEMENT_SPEED * factor;
         Camera camera = window.getCurrentScene().getCamera();
@@ -107,7 +107,7 @@ public class NormalTestScene extends BasicScene {
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
+    public void update(Window window, float diffTimeMS) {
 
     }
 
@@ -45,9 +45,11 @@ public class AnimationTestGUI implements IGuiInstance {
         }
 
         // Animation info
-        ImGui.text(String.format("Total Frames: %d", currentAnimation.frames().size()));
+        ImGui.text(String.format("Total Frames: %d", currentAnimation.numFrames()));
         ImGui.text(String.format("Current Frame: %d", animationData.getCurrentFrameIndex()));
         ImGui.text(String.format("Duration: %.2f seconds", currentAnimation.duration()));
+        ImGui.text(String.format("Clip Heap: %.1f KB (%s)", currentAnimation.heapBytes() / 1024.0f
+                , currentAnimation.encoding()));
         ImGui.text(String.format("Current Time: %.2f seconds", animationData.getCurrentTime()));
 
         // Timeline section
@@ -70,8 +72,8 @@ public class AnimationTestGUI implements IGuiInstance {
         );
 
         // Draw frame markers
-        float markerSpacing = totalWidth / (currentAnimation.frames().size() - 1);
-        for (int i = 0; i < currentAnimation.frames().size(); i++) {
+        float markerSpacing = totalWidth / (currentAnimation.numFrames() - 1);
+        for (int i = 0; i < currentAnimation.numFrames(); i++) {
             float x = startX + (i * markerSpacing);
             boolean isCurrentFrame = i == animationData.getCurrentFrameIndex();
             float markerHeight = isCurrentFrame ? timelineHeight * 0.75f : timelineHeight * 0.5f;
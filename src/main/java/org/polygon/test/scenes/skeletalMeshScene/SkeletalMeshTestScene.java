@@ -6,7 +6,6 @@ import org.polygon.engine.core.Window;
 import org.polygon.engine.core.graph.Model;
 import org.polygon.engine.core.scene.*;
 import org.polygon.engine.core.scene.lights.*;
-import org.polygon.engine.core.sound.SoundBuffer;
 import org.polygon.engine.core.sound.SoundListener;
 import org.polygon.engine.core.sound.SoundManager;
 import org.polygon.engine.core.sound.SoundSource;
@@ -57,23 +56,26 @@ public class SkeletalMeshTestScene extends BasicScene {
         soundManager.setAttenuationModel(AL11.AL_EXPONENT_DISTANCE);
         soundManager.setSoundListener(new SoundListener(camera.getPosition()));
 
-        SoundBuffer creakBuffer = new SoundBuffer("resources/sounds/creak1.ogg");
-        soundManager.addSoundBuffer(creakBuffer);
         playerSoundSource = new SoundSource(false, false);
         playerSoundSource.setPosition(position);
-        playerSoundSource.setBuffer(creakBuffer.getBufferId());
         soundManager.addSoundSource("CREAK", playerSoundSource);
-
-        SoundBuffer backgroundSoundBuffer = new SoundBuffer("resources/sounds/woo_scary.ogg");
-        soundManager.addSoundBuffer(backgroundSoundBuffer);
         SoundSource backgroundSoundSource = new SoundSource(true, true);
-        backgroundSoundSource.setBuffer(backgroundSoundBuffer.getBufferId());
         soundManager.addSoundSource("MUSIC", backgroundSoundSource);
-        backgroundSoundSource.play();
+
+        // The sounds are decoded in the background, the sources play nothing until their buffer is set.
+        window.getAssetLoader().loadSound("resources/sounds/creak1.ogg").thenAccept(creakBuffer -> {
+            soundManager.addSoundBuffer(creakBuffer);
+            playerSoundSource.setBuffer(creakBuffer.getBufferId());
+        });
+        window.getAssetLoader().loadSound("resources/sounds/woo_scary.ogg").thenAccept(backgroundSoundBuffer -> {
+            soundManager.addSoundBuffer(backgroundSoundBuffer);
+            backgroundSoundSource.setBuffer(backgroundSoundBuffer.getBufferId());
+            backgroundSoundSource.play();
+        });
     }
 
     @Override
-    public void input(Window window, long diffTimeMS) {
+    public void input(Window window, float diffTimeMS) {
         float incrementMovement = diffTimeMS * MOVEMENT_SPEED;
         Camera camera = window.getCurrentScene().getCamera();
         if(window.isKeyPressed(GLFW_KEY_W)) {
@@ -110,8 +112,8 @@ public class SkeletalMeshTestScene extends BasicScene {
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
-        animationData.nextFrame(diffTimeMS / 1000.0f);
+    public void update(Window window, float diffTimeMS) {
+        scene.advanceAnimations(diffTimeMS / 1000.0f);
         if (animationData.getCurrentFrameIndex() == 45) {
             playerSoundSource.play();
         }
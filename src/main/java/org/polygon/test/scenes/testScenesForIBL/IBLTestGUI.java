@@ -0,0 +1,42 @@
+package org.polygon.test.scenes.testScenesForIBL;
+
+import imgui.ImGui;
+import imgui.ImGuiIO;
+import imgui.flag.ImGuiCond;
+import org.polygon.engine.core.IGuiInstance;
+import org.polygon.engine.core.Window;
+import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.scene.SkyBox;
+
+public class IBLTestGUI implements IGuiInstance {
+    Scene scene;
+
+    public IBLTestGUI(Scene scene) {
+        this.scene = scene;
+    }
+
+    @Override
+    public void drawGui() {
+        ImGui.setNextWindowPos(0, 410, ImGuiCond.Once);
+        ImGui.setNextWindowSize(300, 80, ImGuiCond.Once);
+
+        if(ImGui.begin("IBL setup")) {
+            // Cold start generates the IBL maps, the following starts load them from the IBLCache.
+            SkyBox skyBox = scene.getSkyBox();
+            if(skyBox == null) {
+                ImGui.text("No skybox");
+            } else {
+                ImGui.text(String.format("IBL setup: %.1f ms (%s)", skyBox.getIBLSetupTimeMS()
+                        , skyBox.isIBLDataCached() ? "cached" : "generated"));
+            }
+        }
+        ImGui.end();
+    }
+
+    @Override
+    public boolean handleGuiInput(Window window) {
+        ImGuiIO imGuiIO = ImGui.getIO();
+
+        return imGuiIO.getWantCaptureKeyboard() || imGuiIO.getWantCaptureMouse();
+    }
+}
@@ -89,12 +89,13 @@ public class IBLTestScene extends BasicScene {
         SkyBox skyBox = new SkyBox("resources/models/skybox/newport_loft.hdr"
                 , 1024, 32, 128);
         scene.setSkyBox(skyBox);
+        scene.addGuiInstance(new IBLTestGUI(scene));
 
 //        scene.setFog(new Fog(true, new Vector3f(0.5f, 0.5f, 0.5f), 0.02f));
     }
 
     @Override
-    public void input(Window window, long diffTimeMS) {
+    public void input(Window window, float diffTimeMS) {
         int factor = window.isKeyPressed(GLFW_KEY_LEFT_SHIFT) ? 3 : 1;
         float incrementMovement = diffTimeMS * MOVEMENT_SPEED * factor;
         Camera camera = window.getCurrentScene().getCamera();
@@ -220,7 +221,7 @@ public class IBLTestScene extends BasicScene {
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
+    public void update(Window window, float diffTimeMS) {
 
     }
 
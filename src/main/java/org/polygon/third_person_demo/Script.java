@@ -11,12 +11,12 @@ public class Script implements IGameLogic {
     }
 
     @Override
-    public void input(Window window, long diffTimeMS, boolean inputConsumed) {
+    public void input(Window window, float diffTimeMS, boolean inputConsumed) {
 
     }
 
     @Override
-    public void update(Window window, long diffTimeMS) {
+    public void update(Window window, float diffTimeMS) {
 
     }
 
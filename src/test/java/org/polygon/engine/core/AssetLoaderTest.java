@@ -0,0 +1,212 @@
+package org.polygon.engine.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Decodes run on the worker threads, uploads on the calling thread within the budget of a fake clock.
+// The uploads are plain callbacks, no GL context is needed.
+class AssetLoaderTest {
+    private static final int NUM_THREADS = 4;
+    private static final long UPLOAD_NANOS = 1_000_000;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private FakeClock clock;
+    private AssetLoader assetLoader;
+
+    @BeforeEach
+    void createLoader() {
+        clock = new FakeClock();
+        assetLoader = new AssetLoader(NUM_THREADS, clock);
+    }
+
+    @AfterEach
+    void cleanupLoader() {
+        assetLoader.cleanup();
+    }
+
+    // Every upload takes UPLOAD_NANOS of the fake clock and checks it runs on the thread processing the uploads.
+    private CompletableFuture<Integer> submit(int asset, CountDownLatch decodeLatch, Thread uploadThread) {
+        return assetLoader.submit(() -> {
+            assertTrue(Thread.currentThread().getName().startsWith("Polygon-AssetLoader-"));
+            if(decodeLatch != null) {
+                decodeLatch.countDown();
+                // Only returns once all the workers decode at the same time.
+                if(!decodeLatch.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Decodes didn't run concurrently");
+                }
+            }
+            return asset;
+        }, decoded -> {
+            assertSame(uploadThread, Thread.currentThread());
+            clock.advance(UPLOAD_NANOS);
+            return decoded;
+        }, decoded -> {});
+    }
+
+    private void awaitPendingUploads(int numUploads) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while(assetLoader.getPendingUploads() < numUploads) {
+            if(System.nanoTime() > deadline) {
+                fail("Only [" + assetLoader.getPendingUploads() + "] of [" + numUploads + "] assets decoded");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void decodesRunConcurrently() throws Exception {
+        CountDownLatch decodeLatch = new CountDownLatch(NUM_THREADS);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for(int i = 0; i < NUM_THREADS; i++) {
+            futures.add(submit(i, decodeLatch, Thread.currentThread()));
+        }
+        awaitPendingUploads(NUM_THREADS);
+
+        // Nothing completes before the uploads run.
+        for(CompletableFuture<Integer> future : futures) {
+            assertFalse(future.isDone());
+        }
+        while(assetLoader.getPendingUploads() > 0) {
+            assetLoader.processUploads(Long.MAX_VALUE);
+        }
+        for(int i = 0; i < NUM_THREADS; i++) {
+            assertEquals(i, futures.get(i).get(0, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void uploadsDrainWithinTheBudget() throws Exception {
+        int numAssets = 50;
+        int uploadsPerBudget = 3;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for(int i = 0; i < numAssets; i++) {
+            futures.add(submit(i, null, Thread.currentThread()));
+        }
+        awaitPendingUploads(numAssets);
+
+        int uploaded = 0;
+        int calls = 0;
+        while(uploaded < numAssets) {
+            int numUploads = assetLoader.processUploads(uploadsPerBudget * UPLOAD_NANOS);
+            assertTrue(numUploads <= uploadsPerBudget, "Uploaded [" + numUploads + "] in one budget");
+            assertTrue(numUploads > 0);
+            uploaded += numUploads;
+            calls++;
+        }
+        assertEquals(numAssets, uploaded);
+        assertEquals((numAssets + uploadsPerBudget - 1) / uploadsPerBudget, calls);
+        assertEquals(0, assetLoader.getPendingUploads());
+        for(int i = 0; i < numAssets; i++) {
+            assertEquals(i, futures.get(i).get());
+        }
+    }
+
+    @Test
+    void anExhaustedBudgetStillUploadsOne() throws Exception {
+        int numAssets = 5;
+        for(int i = 0; i < numAssets; i++) {
+            submit(i, null, Thread.currentThread());
+        }
+        awaitPendingUploads(numAssets);
+
+        for(int i = 0; i < numAssets; i++) {
+            assertEquals(1, assetLoader.processUploads(0));
+        }
+        assertEquals(0, assetLoader.processUploads(0));
+    }
+
+    @Test
+    void decodeFailuresCompleteExceptionally() throws Exception {
+        AtomicInteger uploads = new AtomicInteger();
+        CompletableFuture<Object> future = assetLoader.submit(() -> {
+            throw new IllegalStateException("Broken asset");
+        }, decoded -> {
+            uploads.incrementAndGet();
+            return decoded;
+        }, decoded -> {});
+
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while(!future.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, assetLoader.processUploads(Long.MAX_VALUE));
+        assertEquals(0, uploads.get());
+    }
+
+    // A decode outlasting the cleanup frees its data instead of queueing an upload nobody runs.
+    @Test
+    void decodesFinishingAfterCleanupAreDiscarded() throws Exception {
+        CountDownLatch decodeStarted = new CountDownLatch(1);
+        CountDownLatch decodeRelease = new CountDownLatch(1);
+        AtomicInteger uploads = new AtomicInteger();
+        AtomicInteger discards = new AtomicInteger();
+        CompletableFuture<Integer> future = assetLoader.submit(() -> {
+            decodeStarted.countDown();
+            // Ignores the interrupt of the cleanup like a blocking file read does.
+            while(true) {
+                try {
+                    decodeRelease.await();
+                    return 1;
+                } catch (InterruptedException e) {
+                    // Keep decoding.
+                }
+            }
+        }, decoded -> {
+            uploads.incrementAndGet();
+            return decoded;
+        }, decoded -> discards.incrementAndGet());
+        assertTrue(decodeStarted.await(10, TimeUnit.SECONDS));
+
+        assetLoader.cleanup();
+        assertFalse(future.isDone());
+        decodeRelease.countDown();
+
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while(!future.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(future.isCancelled());
+        assertEquals(1, discards.get());
+        assertEquals(0, assetLoader.getPendingUploads());
+        assertEquals(0, assetLoader.processUploads(Long.MAX_VALUE));
+        assertEquals(0, uploads.get());
+    }
+
+    private static class FakeClock implements GameLoopTimer.Clock {
+        private long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            now += nanos;
+        }
+
+        @Override
+        public void yieldThread() {
+
+        }
+
+        private void advance(long nanos) {
+            now += nanos;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.polygon.engine.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the fixed timestep loop with a fake clock, every frame takes exactly as long as the test says.
+class GameLoopTimerTest {
+    private static final long STEP_NANOS = 10_000_000;
+
+    private FakeClock clock;
+    private GameLoopTimer timer;
+
+    @BeforeEach
+    void createTimer() {
+        clock = new FakeClock();
+        timer = new GameLoopTimer(clock);
+    }
+
+    // Advances the clock by frameNanos and runs the frame's ticks like the Engine does.
+    private int runFrame(long frameNanos) {
+        clock.advance(frameNanos);
+        assertEquals(frameNanos, timer.beginFrame());
+        return timer.consumeTicks(STEP_NANOS);
+    }
+
+    @Test
+    void ticksSpendTheAccumulatedTime() {
+        assertEquals(0, runFrame(STEP_NANOS / 2));
+        assertEquals(1, runFrame(STEP_NANOS / 2));
+        assertEquals(2, runFrame(STEP_NANOS * 2 + STEP_NANOS / 4));
+        assertEquals(STEP_NANOS * 3, timer.getSimulationTime());
+        assertEquals(STEP_NANOS * 4, timer.getNextTickTime(STEP_NANOS));
+        assertEquals(0, timer.getDroppedNanos());
+    }
+
+    @Test
+    void ticksPerFrameAreClampedAndTheLagDropped() {
+        long frameNanos = STEP_NANOS * 12 + STEP_NANOS / 4;
+        assertEquals(GameLoopTimer.MAX_TICKS_PER_FRAME, runFrame(frameNanos));
+        assertEquals(STEP_NANOS * (12 - GameLoopTimer.MAX_TICKS_PER_FRAME), timer.getDroppedNanos());
+
+        // The fraction of a tick is kept, the next frame doesn't catch up on the dropped ticks.
+        assertEquals(clock.nanoTime() - STEP_NANOS / 4, timer.getSimulationTime());
+        assertEquals(1, runFrame(STEP_NANOS));
+        assertEquals(STEP_NANOS * (12 - GameLoopTimer.MAX_TICKS_PER_FRAME), timer.getDroppedNanos());
+    }
+
+    // Every nanosecond ends up in a tick, in the dropped lag or in the accumulator, which stays below a tick.
+    @Test
+    void noTimeIsLostOverRandomFrames() {
+        Random random = new Random(1);
+        long elapsed = 0;
+        long ticked = 0;
+        for(int i = 0; i < 10000; i++) {
+            long frameNanos = random.nextInt(10) == 0 ? (long) (random.nextDouble() * STEP_NANOS * 20)
+                    : (long) (random.nextDouble() * STEP_NANOS * 2);
+            int ticks = runFrame(frameNanos);
+            assertTrue(ticks >= 0 && ticks <= GameLoopTimer.MAX_TICKS_PER_FRAME);
+            elapsed += frameNanos;
+            ticked += ticks * STEP_NANOS;
+
+            long accumulator = elapsed - ticked - timer.getDroppedNanos();
+            assertTrue(accumulator >= 0 && accumulator < STEP_NANOS, "Accumulator [" + accumulator + "]");
+            assertEquals(ticked + timer.getDroppedNanos(), timer.getSimulationTime());
+
+            float alpha = timer.getAlpha(timer.getSimulationTime(), STEP_NANOS);
+            assertTrue(alpha >= 0.0f && alpha < 1.0f, "Alpha [" + alpha + "]");
+            assertEquals((float) accumulator / STEP_NANOS, alpha, 1e-6f);
+        }
+        assertTrue(timer.getDroppedNanos() > 0);
+    }
+
+    // A tick of the update thread may lag the frame or just have passed its time, alpha stays in range.
+    @Test
+    void alphaIsClamped() {
+        clock.advance(STEP_NANOS * 3);
+        assertEquals(0.0f, timer.getAlpha(clock.nanoTime(), STEP_NANOS));
+        assertEquals(0.25f, timer.getAlpha(clock.nanoTime() - STEP_NANOS / 4, STEP_NANOS));
+        assertEquals(1.0f, timer.getAlpha(clock.nanoTime() - STEP_NANOS, STEP_NANOS));
+        assertEquals(1.0f, timer.getAlpha(0, STEP_NANOS));
+        assertEquals(0.0f, timer.getAlpha(clock.nanoTime() + STEP_NANOS, STEP_NANOS));
+    }
+
+    @Test
+    void framesKeepASteadyCadence() {
+        long renderStepNanos = STEP_NANOS;
+        runFrame(renderStepNanos / 2);
+        assertFalse(timer.isRenderDue(renderStepNanos));
+
+        // A late frame doesn't push back the following ones.
+        runFrame(renderStepNanos / 2 + renderStepNanos / 5);
+        assertTrue(timer.isRenderDue(renderStepNanos));
+        timer.renderDone(renderStepNanos);
+        assertEquals(renderStepNanos * 2, timer.getNextRenderTime(renderStepNanos));
+
+        // A whole frame behind, the cadence starts over from this frame.
+        runFrame(renderStepNanos * 3);
+        assertTrue(timer.isRenderDue(renderStepNanos));
+        timer.renderDone(renderStepNanos);
+        assertEquals(clock.nanoTime() + renderStepNanos, timer.getNextRenderTime(renderStepNanos));
+
+        assertTrue(timer.isRenderDue(0));
+    }
+
+    @Test
+    void waitsSleepThenSpinToTheDeadline() throws InterruptedException {
+        long deadline = clock.nanoTime() + STEP_NANOS;
+        timer.waitUntil(deadline);
+        assertTrue(clock.nanoTime() >= deadline);
+        assertEquals(1, clock.sleeps);
+        assertTrue(clock.yields > 0);
+
+        // Past deadlines return at once.
+        long now = clock.nanoTime();
+        timer.waitUntil(now - STEP_NANOS);
+        assertEquals(now, clock.nanoTime());
+    }
+
+    private static class FakeClock implements GameLoopTimer.Clock {
+        private static final long YIELD_NANOS = 50_000;
+
+        private long now;
+        private int sleeps;
+        private int yields;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            sleeps++;
+            now += nanos;
+        }
+
+        @Override
+        public void yieldThread() {
+            yields++;
+            now += YIELD_NANOS;
+        }
+
+        private void advance(long nanos) {
+            now += nanos;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The per-entity culling math, cull.comp tests every view of the GPU culled entities with the planes laid out
+// like GpuCulling does.
+class FrustumTest {
+    private static final int NUM_VIEWS = 4;
+
+    // A perspective camera and orthographic views like the shadow cascades.
+    private static Frustum[] createFrustums() {
+        Frustum[] frustums = new Frustum[NUM_VIEWS];
+        Matrix4f viewMatrix = new Matrix4f().lookAt(0.0f, 5.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        frustums[0] = new Frustum();
+        frustums[0].update(new Matrix4f().perspective((float) Math.toRadians(60.0f), 16.0f / 9.0f, 0.1f, 100.0f)
+                .mul(viewMatrix));
+        Matrix4f lightViewMatrix = new Matrix4f().lookAt(20.0f, 40.0f, 20.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        for(int view = 1; view < NUM_VIEWS; view++) {
+            float size = 10.0f * view;
+            frustums[view] = new Frustum();
+            frustums[view].update(new Matrix4f().ortho(-size, size, -size, size, 0.1f, 150.0f).mul(lightViewMatrix));
+        }
+        return frustums;
+    }
+
+    private static Vector4f[] getPlanes(Frustum[] frustums) {
+        Vector4f[] planes = new Vector4f[frustums.length * 6];
+        for(int view = 0; view < frustums.length; view++) {
+            System.arraycopy(frustums[view].getPlanes(), 0, planes, view * 6, 6);
+        }
+        return planes;
+    }
+
+    @Test
+    void everyViewOfThePlaneArrayMatchesItsFrustum() {
+        Frustum[] frustums = createFrustums();
+        Vector4f[] planes = getPlanes(frustums);
+        Vector3f localMin = new Vector3f(-0.5f, 0.0f, -0.5f);
+        Vector3f localMax = new Vector3f(0.5f, 2.0f, 0.5f);
+        Vector3f worldMin = new Vector3f();
+        Vector3f worldMax = new Vector3f();
+        Matrix4f modelMatrix = new Matrix4f();
+
+        Random random = new Random(1);
+        int[] visibleCounts = new int[NUM_VIEWS];
+        int numEntities = 5000;
+        for(int i = 0; i < numEntities; i++) {
+            modelMatrix.translation(random.nextFloat() * 160 - 80, random.nextFloat() * 40 - 20
+                    , random.nextFloat() * 160 - 80)
+                    .rotateY(random.nextFloat() * 6.3f)
+                    .scale(0.2f + random.nextFloat() * 4);
+            Frustum.transformAABB(localMin, localMax, modelMatrix, worldMin, worldMax);
+            for(int view = 0; view < NUM_VIEWS; view++) {
+                boolean visible = Frustum.isAABBVisible(planes, view * 6, worldMin, worldMax);
+                assertEquals(frustums[view].isBoxVisible(localMin, localMax, modelMatrix), visible);
+                assertEquals(frustums[view].classifyAABB(worldMin, worldMax) != Frustum.OUTSIDE, visible);
+                if(visible) {
+                    visibleCounts[view]++;
+                }
+            }
+        }
+        for(int visibleCount : visibleCounts) {
+            assertTrue(visibleCount > 0 && visibleCount < numEntities);
+        }
+    }
+
+    @Test
+    void boxesInFrontAreVisibleAndBehindAreNot() {
+        Frustum frustum = createFrustums()[0];
+        Vector3f localMin = new Vector3f(-1.0f);
+        Vector3f localMax = new Vector3f(1.0f);
+
+        assertTrue(frustum.isBoxVisible(localMin, localMax, new Matrix4f()));
+        assertFalse(frustum.isBoxVisible(localMin, localMax, new Matrix4f().translation(0.0f, 10.0f, 30.0f)));
+        assertFalse(frustum.isBoxVisible(localMin, localMax, new Matrix4f().translation(0.0f, -50.0f, -200.0f)));
+        // Partly inside.
+        assertTrue(frustum.isBoxVisible(localMin, localMax, new Matrix4f().translation(0.0f, 5.0f, 10.5f)));
+    }
+
+    // The world box holds the transformed corners of the local box.
+    @Test
+    void transformedBoxesHoldTheirCorners() {
+        Vector3f localMin = new Vector3f(-1.0f, 0.0f, -2.0f);
+        Vector3f localMax = new Vector3f(3.0f, 1.0f, 0.5f);
+        Vector3f worldMin = new Vector3f();
+        Vector3f worldMax = new Vector3f();
+        Vector3f corner = new Vector3f();
+        Matrix4f modelMatrix = new Matrix4f();
+        Random random = new Random(2);
+        for(int i = 0; i < 1000; i++) {
+            modelMatrix.translation(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10
+                    , random.nextFloat() * 20 - 10)
+                    .rotateXYZ(random.nextFloat() * 6.3f, random.nextFloat() * 6.3f, random.nextFloat() * 6.3f)
+                    .scale(0.1f + random.nextFloat() * 5);
+            Frustum.transformAABB(localMin, localMax, modelMatrix, worldMin, worldMax);
+            for(int j = 0; j < 8; j++) {
+                corner.set((j & 1) == 0 ? localMin.x : localMax.x, (j & 2) == 0 ? localMin.y : localMax.y
+                        , (j & 4) == 0 ? localMin.z : localMax.z);
+                modelMatrix.transformPosition(corner);
+                assertTrue(corner.x >= worldMin.x - 1e-4f && corner.x <= worldMax.x + 1e-4f);
+                assertTrue(corner.y >= worldMin.y - 1e-4f && corner.y <= worldMax.y + 1e-4f);
+                assertTrue(corner.z >= worldMin.z - 1e-4f && corner.z <= worldMax.z + 1e-4f);
+            }
+        }
+
+        // Without a rotation the box is exact.
+        modelMatrix.translation(1.0f, 2.0f, 3.0f).scale(2.0f);
+        Frustum.transformAABB(localMin, localMax, modelMatrix, worldMin, worldMax);
+        assertEquals(new Vector3f(-1.0f, 2.0f, -1.0f), worldMin);
+        assertEquals(new Vector3f(7.0f, 4.0f, 4.0f), worldMax);
+    }
+}
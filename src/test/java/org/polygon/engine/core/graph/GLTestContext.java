@@ -0,0 +1,63 @@
+package org.polygon.engine.core.graph;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+// Hidden GL 4.3 core context for the tests drawing on the GPU, created once on the test thread.
+// Without a display it tries the OSMesa context of GLFW's null platform, e.g. Mesa's llvmpipe on a CI machine.
+// The tests are skipped when no context can be created. The context lives until the test JVM exits.
+final class GLTestContext {
+    private static boolean created;
+    private static String unavailableReason;
+
+    private GLTestContext() {
+    }
+
+    static void assumeAvailable() {
+        if(!created && unavailableReason == null) {
+            create();
+        }
+        assumeTrue(created, () -> "No GL 4.3 context [" + unavailableReason + "]");
+    }
+
+    private static void create() {
+        try {
+            boolean headless = System.getenv("DISPLAY") == null && System.getenv("WAYLAND_DISPLAY") == null;
+            if(headless) {
+                glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+            }
+            if(!glfwInit()) {
+                unavailableReason = "glfwInit failed";
+                return;
+            }
+            glfwDefaultWindowHints();
+            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 4);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+            if(headless) {
+                glfwWindowHint(GLFW_CONTEXT_CREATION_API, GLFW_OSMESA_CONTEXT_API);
+            }
+            long windowHandle = glfwCreateWindow(64, 64, "Polygon-Test", NULL, NULL);
+            if(windowHandle == NULL) {
+                unavailableReason = "glfwCreateWindow failed";
+                glfwTerminate();
+                return;
+            }
+            glfwMakeContextCurrent(windowHandle);
+            GLCapabilities capabilities = GL.createCapabilities();
+            if(!capabilities.OpenGL43) {
+                unavailableReason = "GL 4.3 unsupported";
+                return;
+            }
+            created = true;
+        } catch (Throwable e) {
+            // No GLFW natives or no GL library on the machine.
+            unavailableReason = e.toString();
+        }
+    }
+}
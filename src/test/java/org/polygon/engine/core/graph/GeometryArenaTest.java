@@ -0,0 +1,130 @@
+package org.polygon.engine.core.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The arena's sub-allocation: the range allocator its vertex and index buffers are split with, their growth and
+// the rebasing of the mesh indices. All plain CPU math, the buffer copies need a GL context.
+class GeometryArenaTest {
+    @Test
+    void rangesAreAllocatedFirstFit() {
+        GeometryArena.RangeAllocator allocator = new GeometryArena.RangeAllocator(100);
+        assertEquals(0, allocator.allocate(30));
+        assertEquals(30, allocator.allocate(20));
+        assertEquals(50, allocator.allocate(40));
+        assertEquals(-1, allocator.allocate(11));
+        assertEquals(90, allocator.allocate(10));
+        assertEquals(-1, allocator.allocate(1));
+
+        // The freed range is reused before the end, a larger one doesn't fit in it.
+        allocator.free(30, 20);
+        assertEquals(-1, allocator.allocate(21));
+        assertEquals(30, allocator.allocate(15));
+        assertEquals(45, allocator.allocate(5));
+    }
+
+    @Test
+    void freedNeighboursMerge() {
+        GeometryArena.RangeAllocator allocator = new GeometryArena.RangeAllocator(90);
+        int first = allocator.allocate(30);
+        int second = allocator.allocate(30);
+        int third = allocator.allocate(30);
+
+        // Freed out of order, the three ranges end up as one again.
+        allocator.free(first, 30);
+        allocator.free(third, 30);
+        assertEquals(-1, allocator.allocate(31));
+        allocator.free(second, 30);
+        assertEquals(0, allocator.allocate(90));
+    }
+
+    @Test
+    void grownSpaceMergesWithTheFreeEnd() {
+        GeometryArena.RangeAllocator allocator = new GeometryArena.RangeAllocator(64);
+        assertEquals(0, allocator.allocate(40));
+        assertEquals(-1, allocator.allocate(40));
+
+        allocator.grow(GeometryArena.grownCapacity(allocator.getCapacity(), 40));
+        assertEquals(128, allocator.getCapacity());
+        // The 24 free elements before the old end and the new space are a single range.
+        assertEquals(40, allocator.allocate(88));
+        assertEquals(-1, allocator.allocate(1));
+    }
+
+    @Test
+    void capacityDoublesUntilTheCountFits() {
+        assertEquals(128, GeometryArena.grownCapacity(64, 1));
+        assertEquals(128, GeometryArena.grownCapacity(64, 64));
+        assertEquals(256, GeometryArena.grownCapacity(64, 65));
+        assertEquals(1 << 21, GeometryArena.grownCapacity(1 << 20, 1000));
+        assertThrows(RuntimeException.class, () -> GeometryArena.grownCapacity(1 << 30, 1 << 30));
+    }
+
+    @Test
+    void emptyRangesTakeNoSpace() {
+        GeometryArena.RangeAllocator allocator = new GeometryArena.RangeAllocator(10);
+        assertEquals(0, allocator.allocate(0));
+        assertEquals(0, allocator.allocate(10));
+        allocator.free(0, 0);
+        assertEquals(0, allocator.allocate(0));
+        assertEquals(-1, allocator.allocate(1));
+    }
+
+    // Random allocations and frees never hand out an element twice, and everything freed can be allocated again.
+    @Test
+    void rangesNeverOverlap() {
+        int capacity = 4096;
+        GeometryArena.RangeAllocator allocator = new GeometryArena.RangeAllocator(capacity);
+        boolean[] used = new boolean[capacity];
+        List<int[]> ranges = new ArrayList<>();
+        Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            if(!ranges.isEmpty() && random.nextInt(3) == 0) {
+                int[] range = ranges.remove(random.nextInt(ranges.size()));
+                allocator.free(range[0], range[1]);
+                for(int j = range[0]; j < range[0] + range[1]; j++) {
+                    used[j] = false;
+                }
+                continue;
+            }
+            int size = 1 + random.nextInt(64);
+            int start = allocator.allocate(size);
+            if(start < 0) {
+                continue;
+            }
+            assertTrue(start + size <= capacity);
+            for(int j = start; j < start + size; j++) {
+                assertFalse(used[j], "Element [" + j + "] allocated twice");
+                used[j] = true;
+            }
+            ranges.add(new int[] {start, size});
+        }
+        assertFalse(ranges.isEmpty());
+
+        for(int[] range : ranges) {
+            allocator.free(range[0], range[1]);
+        }
+        assertEquals(0, allocator.allocate(capacity));
+    }
+
+    @Test
+    void indicesAreRebasedToTheFirstVertex() {
+        IntBuffer indices = IntBuffer.wrap(new int[] {7, 7, 0, 1, 2, 2, 3, 0});
+        indices.position(2);
+        IntBuffer rebasedIndices = IntBuffer.allocate(6);
+        GeometryArena.rebaseIndices(indices, 100, rebasedIndices);
+        assertArrayEquals(new int[] {100, 101, 102, 102, 103, 100}, rebasedIndices.array());
+        assertEquals(2, indices.position());
+        assertEquals(0, rebasedIndices.position());
+    }
+}
@@ -0,0 +1,220 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+import org.polygon.engine.core.scene.Entity;
+import org.polygon.engine.core.scene.Scene;
+import org.polygon.engine.core.utils.ShapeGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.lwjgl.opengl.GL43.*;
+
+// cull.comp against the CPU math it mirrors, Frustum.isAABBVisible for every view and LodSelector.selectLod,
+// after the first upload, after uploading the changed matrices only and after the entity lists changed.
+// Needs a GL 4.3 context for the compute dispatch.
+class GpuCullingTest {
+    // Half size of the band around the frustum planes where the GPU and CPU tests may disagree by rounding.
+    private static final float PLANE_EPSILON = 1e-3f;
+    // Relative band around the LOD thresholds.
+    private static final float SCREEN_SIZE_EPSILON = 1e-4f;
+    private static final int NUM_ENTITIES = 2000;
+
+    @Test
+    void gpuCullingMatchesTheCpuMath() {
+        GLTestContext.assumeAvailable();
+        GLState.invalidate();
+        List<Mesh> meshes = new ArrayList<>();
+        GeometryArena geometryArena = new GeometryArena();
+        GpuCulling gpuCulling = null;
+        try {
+            Mesh.setGeometryArena(geometryArena);
+            try {
+                meshes.add(new Mesh(TestMeshes.createLodMeshData()));
+                meshes.add(new Mesh(ShapeGenerator.generateSphereData(0.5f, 8, 6)));
+                meshes.add(new Mesh(ShapeGenerator.generateSphereData(2.0f, 8, 6)));
+            } finally {
+                Mesh.setGeometryArena(null);
+            }
+
+            // Two models of different sizes, the second with two meshes, so the entities index their models.
+            Scene scene = new Scene(800, 600);
+            Material lodMaterial = new Material();
+            lodMaterial.getMeshList().add(meshes.get(0));
+            Material smallMaterial = new Material(new Vector4f(1.0f, 0.0f, 0.0f, 1.0f), 0.0f, 0.5f, 1.0f);
+            smallMaterial.getMeshList().add(meshes.get(1));
+            Material largeMaterial = new Material(new Vector4f(0.0f, 1.0f, 0.0f, 1.0f), 0.0f, 0.5f, 1.0f);
+            largeMaterial.getMeshList().add(meshes.get(2));
+            Model lodModel = new Model("lod", "lod", List.of(lodMaterial), new ArrayList<>(), false);
+            Model pairModel = new Model("pair", "pair", List.of(smallMaterial, largeMaterial), new ArrayList<>()
+                    , false);
+            scene.addModel(lodModel);
+            scene.addModel(pairModel);
+            assertTrue(GpuCulling.isCulled(lodModel) && GpuCulling.isCulled(pairModel));
+
+            Random random = new Random(1);
+            List<Entity> sceneEntities = new ArrayList<>();
+            for(int i = 0; i < NUM_ENTITIES; i++) {
+                Entity entity = new Entity("entity" + i, i % 3 == 0 ? "pair" : "lod");
+                placeRandomly(entity, random);
+                scene.addEntity(entity);
+                sceneEntities.add(entity);
+            }
+            scene.getCamera().setPosition(5.0f, 4.0f, 10.0f);
+            scene.getCamera().setRotation(0.2f, 0.7f);
+            scene.syncRenderState();
+
+            List<CascadeShadow> cascadeShadowList = new ArrayList<>();
+            for(int i = 0; i < CascadeShadow.SHADOW_MAP_CASCADE_COUNT; i++) {
+                cascadeShadowList.add(new CascadeShadow());
+            }
+            Matrix4f projectionMatrix = scene.getProjection().getProjMatrix();
+            CascadeShadow.updateCascadeShadows(cascadeShadowList, scene.getCamera().getViewMatrix()
+                    , projectionMatrix, new Vector3f(0.3f, 1.0f, 0.2f).normalize());
+
+            gpuCulling = new GpuCulling(geometryArena);
+            cullAndCheck(gpuCulling, scene, cascadeShadowList, NUM_ENTITIES);
+
+            // Scattered moves and a run of neighbours, only their matrices are uploaded.
+            for(int i = 0; i < NUM_ENTITIES; i += 37) {
+                placeRandomly(sceneEntities.get(i), random);
+            }
+            for(int i = 500; i < 600; i++) {
+                placeRandomly(sceneEntities.get(i), random);
+            }
+            scene.syncRenderState();
+            cullAndCheck(gpuCulling, scene, cascadeShadowList, NUM_ENTITIES);
+
+            // Changed entity lists lay everything out again.
+            scene.removeEntity(sceneEntities.get(0));
+            Entity added = new Entity("added", "pair");
+            placeRandomly(added, random);
+            scene.addEntity(added);
+            scene.syncRenderState();
+            cullAndCheck(gpuCulling, scene, cascadeShadowList, NUM_ENTITIES);
+        } finally {
+            GLState.useProgram(0);
+            if(gpuCulling != null) {
+                gpuCulling.cleanup();
+            }
+            meshes.forEach(Mesh::cleanup);
+            geometryArena.cleanup();
+        }
+    }
+
+    private static void placeRandomly(Entity entity, Random random) {
+        entity.setPosition(random.nextFloat() * 200 - 100, random.nextFloat() * 20 - 5, random.nextFloat() * 200 - 100);
+        entity.setRotation(0.0f, 1.0f, 0.0f, random.nextFloat() * 6.3f);
+        entity.setScale(0.2f + random.nextFloat() * 3);
+    }
+
+    private static void cullAndCheck(GpuCulling gpuCulling, Scene scene, List<CascadeShadow> cascadeShadowList
+            , int numEntities) {
+        gpuCulling.cull(scene, cascadeShadowList, 600);
+        int[] visibility = gpuCulling.readVisibility();
+        assertEquals(GL_NO_ERROR, glGetError());
+
+        List<Entity> entities = gpuCulling.getEntities();
+        assertEquals(numEntities, entities.size());
+        assertCullingMatches(visibility, entities, scene, cascadeShadowList);
+    }
+
+    private static void assertCullingMatches(int[] visibility, List<Entity> entities, Scene scene
+            , List<CascadeShadow> cascadeShadowList) {
+        int numViews = GpuCulling.NUM_VIEWS;
+        Map<String, Model> models = new HashMap<>();
+        for(Model model : scene.getRenderModels()) {
+            models.put(model.getModelId(), model);
+        }
+        // The views laid out like GpuCulling does, and the same planes pushed out and pulled in by the epsilon.
+        Matrix4f projViewMatrix = new Matrix4f(scene.getProjection().getProjMatrix())
+                .mul(scene.getCamera().getViewMatrix());
+        Vector4f[] planes = new Vector4f[numViews * 6];
+        for(int view = 0; view < numViews; view++) {
+            Frustum frustum = new Frustum();
+            frustum.update(view == 0 ? projViewMatrix : cascadeShadowList.get(view - 1).getProjViewMatrix());
+            System.arraycopy(frustum.getPlanes(), 0, planes, view * 6, 6);
+        }
+        Vector4f[] outerPlanes = offsetPlanes(planes, PLANE_EPSILON);
+        Vector4f[] innerPlanes = offsetPlanes(planes, -PLANE_EPSILON);
+        float[] lodThresholds = LodSelector.getLodThresholds(new float[LodSelector.NUM_LOD_THRESHOLDS]);
+        Vector3f cameraPosition = scene.getCamera().getPosition();
+        float projectionScale = scene.getProjection().getProjMatrix().m11();
+
+        Vector3f worldMin = new Vector3f();
+        Vector3f worldMax = new Vector3f();
+        Vector3f centerAux = new Vector3f();
+        int[] gpuViewCounts = new int[numViews];
+        int[] cpuCounts = new int[numViews];
+        // Entities near a plane of the view, its visible count may differ by as many.
+        int[] borderlineCounts = new int[numViews];
+        int[] lodCounts = new int[LodSelector.NUM_LOD_THRESHOLDS + 1];
+        int viewMask = (1 << GpuCulling.VISIBILITY_LOD_SHIFT) - 1;
+        for(int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            Model model = models.get(entity.getModelId());
+            Matrix4f modelMatrix = entity.getRenderModelMatrix();
+            int entityViews = visibility[numViews + i];
+
+            Frustum.transformAABB(model.getAabbMinCorner(), model.getAabbMaxCorner(), modelMatrix, worldMin
+                    , worldMax);
+            for(int view = 0; view < numViews; view++) {
+                boolean gpuVisible = (entityViews & (1 << view)) != 0;
+                if(gpuVisible) {
+                    gpuViewCounts[view]++;
+                }
+                boolean cpuVisible = Frustum.isAABBVisible(planes, view * 6, worldMin, worldMax);
+                if(cpuVisible) {
+                    cpuCounts[view]++;
+                }
+                if(Frustum.isAABBVisible(outerPlanes, view * 6, worldMin, worldMax)
+                        != Frustum.isAABBVisible(innerPlanes, view * 6, worldMin, worldMax)) {
+                    borderlineCounts[view]++;
+                    continue;
+                }
+                assertEquals(cpuVisible, gpuVisible, "Visibility of entity [" + entity.getEntityId()
+                        + "] in view [" + view + "]");
+            }
+            assertEquals(0, entityViews & viewMask & ~((1 << numViews) - 1));
+
+            float screenSize = LodSelector.getScreenSize(model.getAabbMinCorner(), model.getAabbMaxCorner()
+                    , modelMatrix, cameraPosition, projectionScale, centerAux);
+            int lod = LodSelector.selectLod(screenSize, lodThresholds);
+            lodCounts[lod]++;
+            if(LodSelector.selectLod(screenSize * (1.0f + SCREEN_SIZE_EPSILON), lodThresholds)
+                    == LodSelector.selectLod(screenSize * (1.0f - SCREEN_SIZE_EPSILON), lodThresholds)) {
+                assertEquals(lod, entityViews >>> GpuCulling.VISIBILITY_LOD_SHIFT, "LOD of entity ["
+                        + entity.getEntityId() + "]");
+            }
+        }
+
+        for(int view = 0; view < numViews; view++) {
+            // The shader's counts match its entity bits, and the CPU counts up to the borderline entities.
+            assertEquals(gpuViewCounts[view], visibility[view], "Visible count of view [" + view + "]");
+            assertTrue(Math.abs(visibility[view] - cpuCounts[view]) <= borderlineCounts[view]
+                    , "Visible count of view [" + view + "]");
+            assertTrue(cpuCounts[view] > 0, "No entity visible in view [" + view + "]");
+        }
+        // The set covers culled entities and every LOD.
+        assertTrue(cpuCounts[0] < entities.size());
+        for(int lodCount : lodCounts) {
+            assertTrue(lodCount > 0);
+        }
+    }
+
+    private static Vector4f[] offsetPlanes(Vector4f[] planes, float offset) {
+        Vector4f[] offsetPlanes = new Vector4f[planes.length];
+        for(int i = 0; i < planes.length; i++) {
+            offsetPlanes[i] = new Vector4f(planes[i]).add(0.0f, 0.0f, 0.0f, offset);
+        }
+        return offsetPlanes;
+    }
+}
@@ -0,0 +1,136 @@
+package org.polygon.engine.core.graph;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.polygon.engine.core.scene.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.lwjgl.opengl.GL40.*;
+
+// The instanced geometry path records one draw per mesh LOD batch, not one per entity.
+// The batching is driven with callbacks, one test runs the real instanced draws and needs a GL context.
+class InstancedDrawStatsTest {
+    private static final int INDEX_COUNT = 36;
+
+    @BeforeEach
+    void resetStats() {
+        RenderStats.reset();
+    }
+
+    @Test
+    void entitiesOfASingleLodMeshShareOneDraw() {
+        int[] lodFirstInstances = {0, 60, 90, 100};
+        int[] lodInstanceCounts = {60, 30, 10, 0};
+        int[] draws = new int[1];
+
+        SceneRender.drawInstancedLods(1, lodFirstInstances, lodInstanceCounts, INDEX_COUNT
+                , (meshLod, firstInstance, numInstances) -> {
+                    assertEquals(0, meshLod);
+                    assertEquals(0, firstInstance);
+                    assertEquals(100, numInstances);
+                    draws[0]++;
+                    return INDEX_COUNT;
+                });
+
+        assertEquals(1, draws[0]);
+        assertEquals(1, RenderStats.getDrawCalls(RenderStats.Pass.GEOMETRY));
+        assertEquals(100, RenderStats.getInstances(RenderStats.Pass.GEOMETRY));
+        assertEquals(100 * INDEX_COUNT / 3, RenderStats.getTriangles(RenderStats.Pass.GEOMETRY));
+    }
+
+    @Test
+    void oneDrawPerPopulatedLod() {
+        int[] lodFirstInstances = {0, 500, 500, 800};
+        int[] lodInstanceCounts = {500, 0, 300, 200};
+        int[] drawnLods = new int[3];
+        int[] numDraws = new int[1];
+
+        SceneRender.drawInstancedLods(4, lodFirstInstances, lodInstanceCounts, INDEX_COUNT
+                , (meshLod, firstInstance, numInstances) -> {
+                    assertEquals(lodFirstInstances[meshLod], firstInstance);
+                    assertEquals(lodInstanceCounts[meshLod], numInstances);
+                    drawnLods[numDraws[0]++] = meshLod;
+                    return INDEX_COUNT >> meshLod;
+                });
+
+        assertArrayEquals(new int[] {0, 2, 3}, drawnLods);
+        assertEquals(3, RenderStats.getDrawCalls(RenderStats.Pass.GEOMETRY));
+        assertEquals(1000, RenderStats.getInstances(RenderStats.Pass.GEOMETRY));
+    }
+
+    @Test
+    void missingLodsUseTheCoarsestOne() {
+        int[] lodFirstInstances = {0, 10, 30, 60};
+        int[] lodInstanceCounts = {10, 20, 30, 40};
+        int[] numDraws = new int[1];
+
+        SceneRender.drawInstancedLods(2, lodFirstInstances, lodInstanceCounts, INDEX_COUNT
+                , (meshLod, firstInstance, numInstances) -> {
+                    if(meshLod == 1) {
+                        assertEquals(10, firstInstance);
+                        assertEquals(90, numInstances);
+                    }
+                    numDraws[0]++;
+                    return INDEX_COUNT;
+                });
+
+        assertEquals(2, numDraws[0]);
+        assertEquals(2, RenderStats.getDrawCalls(RenderStats.Pass.GEOMETRY));
+        assertEquals(100, RenderStats.getInstances(RenderStats.Pass.GEOMETRY));
+    }
+
+    // The primitives the GPU generated for the instanced draws match the triangles recorded in RenderStats.
+    @Test
+    void instancedDrawsGenerateTheRecordedTriangles() {
+        GLTestContext.assumeAvailable();
+        Mesh mesh = new Mesh(TestMeshes.createLodMeshData());
+        ShaderProgram shaderProgram = SceneRender.createShaderProgram(List.of());
+        InstanceBuffer instanceBuffer = new InstanceBuffer(16);
+        int queryId = glGenQueries();
+        try {
+            List<Entity> entities = new ArrayList<>();
+            for(int i = 0; i < 10; i++) {
+                entities.add(new Entity("entity" + i, "model"));
+            }
+            instanceBuffer.upload(entities);
+            // The third and fourth LOD use the mesh's coarsest one and are drawn together.
+            int[] lodFirstInstances = {0, 6, 6, 9};
+            int[] lodInstanceCounts = {6, 0, 3, 1};
+
+            glEnable(GL_RASTERIZER_DISCARD);
+            shaderProgram.bind();
+            glBeginQuery(GL_PRIMITIVES_GENERATED, queryId);
+            SceneRender.drawInstancedLods(mesh, instanceBuffer, lodFirstInstances, lodInstanceCounts);
+            glEndQuery(GL_PRIMITIVES_GENERATED);
+            shaderProgram.unbind();
+            GLState.bindVertexArray(0);
+            glDisable(GL_RASTERIZER_DISCARD);
+            assertEquals(GL_NO_ERROR, glGetError());
+
+            int expectedTriangles = (6 * mesh.getLodIndexCount(0) + 4 * mesh.getLodIndexCount(1)) / 3;
+            assertEquals(2, RenderStats.getDrawCalls(RenderStats.Pass.GEOMETRY));
+            assertEquals(10, RenderStats.getInstances(RenderStats.Pass.GEOMETRY));
+            assertEquals(expectedTriangles, RenderStats.getTriangles(RenderStats.Pass.GEOMETRY));
+            assertEquals(expectedTriangles, glGetQueryObjecti(queryId, GL_QUERY_RESULT));
+        } finally {
+            glDeleteQueries(queryId);
+            instanceBuffer.cleanup();
+            shaderProgram.cleanup();
+            mesh.cleanup();
+        }
+    }
+
+    @Test
+    void noDrawWithoutInstances() {
+        SceneRender.drawInstancedLods(4, new int[4], new int[4], INDEX_COUNT
+                , (meshLod, firstInstance, numInstances) -> {
+                    throw new AssertionError("Drew LOD [" + meshLod + "] without instances");
+                });
+
+        assertEquals(0, RenderStats.getDrawCalls(RenderStats.Pass.GEOMETRY));
+    }
+}
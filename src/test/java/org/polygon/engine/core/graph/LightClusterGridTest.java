@@ -0,0 +1,209 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Compares the grid's binning with a brute-force test of every light against the AABB of every cluster,
+// both are plain CPU math.
+class LightClusterGridTest {
+    private static final float Z_NEAR = 0.1f;
+    private static final float Z_FAR = 100.0f;
+    // Lights this close to a cluster's surface may fall either way, the float math isn't the same.
+    private static final float EPSILON = 1e-4f;
+
+    private static Matrix4f createProjection() {
+        return new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16.0f / 9.0f, Z_NEAR, Z_FAR);
+    }
+
+    // View-space x, y, z and radius per light, spread over the frustum with some outside of it.
+    private static float[] createLights(int numLights, long seed) {
+        Random random = new Random(seed);
+        float[] lights = new float[numLights * 4];
+        for(int i = 0; i < numLights; i++) {
+            float distance = 0.05f + random.nextFloat() * Z_FAR * 1.1f;
+            lights[i * 4] = (random.nextFloat() * 2.0f - 1.0f) * distance * 1.3f;
+            lights[i * 4 + 1] = (random.nextFloat() * 2.0f - 1.0f) * distance * 0.8f;
+            lights[i * 4 + 2] = -distance;
+            lights[i * 4 + 3] = 0.1f + random.nextFloat() * 6.0f;
+        }
+        return lights;
+    }
+
+    private static LightClusterGrid buildGrid(ForkJoinPool pool, float[] lights) {
+        LightClusterGrid grid = new LightClusterGrid(pool);
+        grid.setProjection(createProjection());
+        for(int i = 0; i < lights.length / 4; i++) {
+            assertEquals(i, grid.addLight(lights[i * 4], lights[i * 4 + 1], lights[i * 4 + 2], lights[i * 4 + 3]));
+        }
+        grid.build();
+        return grid;
+    }
+
+    // Squared distance from the light sphere's center to the AABB of a cluster, computed on its own from the
+    // projection rather than with the grid's slice and tile helpers.
+    private static float clusterDistanceSquared(Matrix4f projMatrix, int cluster, float[] lights, int light) {
+        int tileX = cluster % LightClusterGrid.CLUSTERS_X;
+        int tileY = (cluster / LightClusterGrid.CLUSTERS_X) % LightClusterGrid.CLUSTERS_Y;
+        int slice = cluster / LightClusterGrid.CLUSTERS_PER_SLICE;
+        double near = Z_NEAR * Math.pow(Z_FAR / Z_NEAR, (double) slice / LightClusterGrid.CLUSTERS_Z);
+        double far = Z_NEAR * Math.pow(Z_FAR / Z_NEAR, (double) (slice + 1) / LightClusterGrid.CLUSTERS_Z);
+        double tanHalfFovX = 1.0 / projMatrix.m00();
+        double tanHalfFovY = 1.0 / projMatrix.m11();
+
+        double dx = axisDistance(lights[light * 4], tileX, LightClusterGrid.CLUSTERS_X, tanHalfFovX, near, far);
+        double dy = axisDistance(lights[light * 4 + 1], tileY, LightClusterGrid.CLUSTERS_Y, tanHalfFovY, near, far);
+        double distance = -lights[light * 4 + 2];
+        double dz = distance < near ? near - distance : (distance > far ? distance - far : 0.0);
+        return (float) (dx * dx + dy * dy + dz * dz);
+    }
+
+    private static double axisDistance(double value, int tile, int numTiles, double tanHalfFov, double near
+            , double far) {
+        double minNdc = 2.0 * tile / numTiles - 1.0;
+        double maxNdc = 2.0 * (tile + 1) / numTiles - 1.0;
+        double min = Math.min(minNdc * tanHalfFov * near, minNdc * tanHalfFov * far);
+        double max = Math.max(maxNdc * tanHalfFov * near, maxNdc * tanHalfFov * far);
+        return value < min ? min - value : (value > max ? value - max : 0.0);
+    }
+
+    private static boolean[] getClusterLights(LightClusterGrid grid, int cluster) {
+        boolean[] clusterLights = new boolean[grid.getNumLights()];
+        int offset = grid.getClusterOffsets()[cluster];
+        int previous = -1;
+        for(int i = 0; i < grid.getClusterCounts()[cluster]; i++) {
+            int light = grid.getLightIndices()[offset + i];
+            assertTrue(light > previous, "Lights of cluster [" + cluster + "] aren't in order");
+            clusterLights[light] = true;
+            previous = light;
+        }
+        return clusterLights;
+    }
+
+    @Test
+    void binningMatchesBruteForce() {
+        float[] lights = createLights(400, 1);
+        LightClusterGrid grid = buildGrid(ForkJoinPool.commonPool(), lights);
+        Matrix4f projMatrix = createProjection();
+
+        int numIndices = 0;
+        int numBinned = 0;
+        for(int cluster = 0; cluster < LightClusterGrid.NUM_CLUSTERS; cluster++) {
+            assertTrue(grid.getClusterCounts()[cluster] < LightClusterGrid.MAX_LIGHTS_PER_CLUSTER);
+            assertEquals(numIndices, grid.getClusterOffsets()[cluster]);
+            numIndices += grid.getClusterCounts()[cluster];
+
+            boolean[] clusterLights = getClusterLights(grid, cluster);
+            for(int light = 0; light < grid.getNumLights(); light++) {
+                float radius = lights[light * 4 + 3];
+                float distanceSquared = clusterDistanceSquared(projMatrix, cluster, lights, light);
+                if(distanceSquared < radius * radius * (1.0f - EPSILON) && !clusterLights[light]) {
+                    fail("Light [" + light + "] reaches cluster [" + cluster + "] but isn't binned");
+                }
+                if(distanceSquared > radius * radius * (1.0f + EPSILON) && clusterLights[light]) {
+                    fail("Light [" + light + "] is binned to cluster [" + cluster + "] it can't reach");
+                }
+                if(clusterLights[light]) {
+                    numBinned++;
+                }
+            }
+        }
+        assertEquals(numIndices, grid.getNumLightIndices());
+        assertEquals(numIndices, numBinned);
+        assertTrue(numIndices > grid.getNumLights());
+    }
+
+    // Every point inside a light sphere finds the light in the cluster the shader looks up for it.
+    @Test
+    void pointsInsideALightFindItInTheirCluster() {
+        float[] lights = createLights(400, 2);
+        LightClusterGrid grid = buildGrid(ForkJoinPool.commonPool(), lights);
+        Matrix4f projMatrix = createProjection();
+        float tanHalfFovX = 1.0f / projMatrix.m00();
+        float tanHalfFovY = 1.0f / projMatrix.m11();
+
+        Random random = new Random(3);
+        int numContained = 0;
+        for(int i = 0; i < 20000; i++) {
+            float u = random.nextFloat();
+            float v = random.nextFloat();
+            float distance = Z_NEAR + (float) Math.pow(random.nextFloat(), 2) * (Z_FAR - Z_NEAR);
+            float x = (u * 2.0f - 1.0f) * tanHalfFovX * distance;
+            float y = (v * 2.0f - 1.0f) * tanHalfFovY * distance;
+            int tileX = Math.min(LightClusterGrid.CLUSTERS_X - 1, (int) (u * LightClusterGrid.CLUSTERS_X));
+            int tileY = Math.min(LightClusterGrid.CLUSTERS_Y - 1, (int) (v * LightClusterGrid.CLUSTERS_Y));
+            int cluster = tileX + tileY * LightClusterGrid.CLUSTERS_X
+                    + grid.getSlice(-distance) * LightClusterGrid.CLUSTERS_PER_SLICE;
+
+            boolean[] clusterLights = getClusterLights(grid, cluster);
+            for(int light = 0; light < grid.getNumLights(); light++) {
+                float dx = x - lights[light * 4];
+                float dy = y - lights[light * 4 + 1];
+                float dz = -distance - lights[light * 4 + 2];
+                float radius = lights[light * 4 + 3];
+                if(dx * dx + dy * dy + dz * dz < radius * radius * (1.0f - EPSILON)) {
+                    assertTrue(clusterLights[light], "Light [" + light + "] missing from cluster [" + cluster + "]");
+                    numContained++;
+                }
+            }
+        }
+        assertTrue(numContained > 0);
+    }
+
+    @Test
+    void parallelBinningMatchesASingleThread() {
+        float[] lights = createLights(1000, 4);
+        LightClusterGrid parallel = buildGrid(ForkJoinPool.commonPool(), lights);
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        try {
+            LightClusterGrid serial = buildGrid(singleThread, lights);
+            assertArrayEquals(serial.getClusterOffsets(), parallel.getClusterOffsets());
+            assertArrayEquals(serial.getClusterCounts(), parallel.getClusterCounts());
+            assertEquals(serial.getNumLightIndices(), parallel.getNumLightIndices());
+            assertArrayEquals(Arrays.copyOf(serial.getLightIndices(), serial.getNumLightIndices())
+                    , Arrays.copyOf(parallel.getLightIndices(), parallel.getNumLightIndices()));
+        } finally {
+            singleThread.shutdown();
+        }
+    }
+
+    @Test
+    void clustersKeepTheFirstLightsUpToTheLimit() {
+        int numLights = LightClusterGrid.MAX_LIGHTS_PER_CLUSTER + 50;
+        float[] lights = new float[numLights * 4];
+        for(int i = 0; i < numLights; i++) {
+            lights[i * 4 + 2] = -10.0f;
+            lights[i * 4 + 3] = 1.0f;
+        }
+        LightClusterGrid grid = buildGrid(ForkJoinPool.commonPool(), lights);
+
+        int cluster = LightClusterGrid.CLUSTERS_X / 2 + LightClusterGrid.CLUSTERS_Y / 2 * LightClusterGrid.CLUSTERS_X
+                + grid.getSlice(-10.0f) * LightClusterGrid.CLUSTERS_PER_SLICE;
+        assertEquals(LightClusterGrid.MAX_LIGHTS_PER_CLUSTER, grid.getClusterCounts()[cluster]);
+        boolean[] clusterLights = getClusterLights(grid, cluster);
+        for(int light = 0; light < numLights; light++) {
+            assertEquals(light < LightClusterGrid.MAX_LIGHTS_PER_CLUSTER, clusterLights[light]);
+        }
+    }
+
+    @Test
+    void clearedLightsLeaveEveryClusterEmpty() {
+        LightClusterGrid grid = buildGrid(ForkJoinPool.commonPool(), createLights(100, 5));
+        assertTrue(grid.getNumLightIndices() > 0);
+
+        grid.clearLights();
+        grid.build();
+        assertEquals(0, grid.getNumLightIndices());
+        for(int count : grid.getClusterCounts()) {
+            assertEquals(0, count);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.polygon.engine.core.scene.Entity;
+import org.polygon.engine.core.scene.Scene;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The LOD math of the CPU passes, cull.comp runs the same per entity with the thresholds of getLodThresholds.
+class LodSelectorTest {
+    private static final float PROJECTION_SCALE = 1.5f;
+
+    @AfterEach
+    void resetSettings() {
+        LodSelector.setEnabled(true);
+        LodSelector.setLodBias(1.0f);
+    }
+
+    private static float[] getLodThresholds() {
+        return LodSelector.getLodThresholds(new float[LodSelector.NUM_LOD_THRESHOLDS]);
+    }
+
+    @Test
+    void smallerScreenSizesSelectCoarserLods() {
+        float[] lodThresholds = getLodThresholds();
+        assertArrayEquals(new float[] {0.25f, 0.12f, 0.05f}, lodThresholds);
+
+        assertEquals(0, LodSelector.selectLod(Float.MAX_VALUE, lodThresholds));
+        assertEquals(0, LodSelector.selectLod(0.25f, lodThresholds));
+        assertEquals(1, LodSelector.selectLod(0.2f, lodThresholds));
+        assertEquals(2, LodSelector.selectLod(0.1f, lodThresholds));
+        assertEquals(3, LodSelector.selectLod(0.01f, lodThresholds));
+        assertEquals(3, LodSelector.selectLod(0.0f, lodThresholds));
+    }
+
+    @Test
+    void theBiasScalesTheThresholds() {
+        LodSelector.setLodBias(2.0f);
+        float[] lodThresholds = getLodThresholds();
+        assertArrayEquals(new float[] {0.125f, 0.06f, 0.025f}, lodThresholds);
+        assertEquals(0, LodSelector.selectLod(0.2f, lodThresholds));
+        assertEquals(2, LodSelector.selectLod(0.05f, lodThresholds));
+    }
+
+    @Test
+    void disabledLodsAlwaysSelectTheFullDetail() {
+        LodSelector.setEnabled(false);
+        float[] lodThresholds = getLodThresholds();
+        assertArrayEquals(new float[LodSelector.NUM_LOD_THRESHOLDS], lodThresholds);
+        assertEquals(0, LodSelector.selectLod(0.0f, lodThresholds));
+    }
+
+    @Test
+    void screenSizeIsTheProjectedBoundingSphere() {
+        Vector3f min = new Vector3f(-1.0f);
+        Vector3f max = new Vector3f(1.0f);
+        Vector3f cameraPosition = new Vector3f();
+        Vector3f centerAux = new Vector3f();
+        Matrix4f modelMatrix = new Matrix4f().translate(0.0f, 0.0f, -10.0f).scale(2.0f);
+        float radius = (float) Math.sqrt(3.0f) * 2.0f;
+
+        float screenSize = LodSelector.getScreenSize(min, max, modelMatrix, cameraPosition, PROJECTION_SCALE
+                , centerAux);
+        assertEquals(radius / 10.0f * PROJECTION_SCALE, screenSize, 1e-6f);
+
+        // Rotations don't change the sphere.
+        modelMatrix.rotateY((float) Math.toRadians(35.0f));
+        assertEquals(screenSize, LodSelector.getScreenSize(min, max, modelMatrix, cameraPosition, PROJECTION_SCALE
+                , centerAux), 1e-6f);
+
+        // The camera inside the sphere.
+        cameraPosition.set(0.0f, 0.0f, -9.0f);
+        assertEquals(Float.MAX_VALUE, LodSelector.getScreenSize(min, max, modelMatrix, cameraPosition
+                , PROJECTION_SCALE, centerAux));
+    }
+
+    @Test
+    void screenPixelsAreClampedToTheScreen() {
+        assertEquals(540.0f, LodSelector.getScreenPixels(0.5f, 1080));
+        assertEquals(1080.0f, LodSelector.getScreenPixels(Float.MAX_VALUE, 1080));
+        assertEquals(0.0f, LodSelector.getScreenPixels(0.0f, 1080));
+    }
+
+    // The selector of the CPU passes gives the same LODs as the static math with the scene's camera.
+    @Test
+    void selectorMatchesTheStaticMath() {
+        Scene scene = new Scene(800, 600);
+        Model model = new Model("model", "model", new ArrayList<>(), new ArrayList<>(), false);
+        model.getAabbMinCorner().set(-0.5f, 0.0f, -0.5f);
+        model.getAabbMaxCorner().set(0.5f, 2.0f, 0.5f);
+        scene.addModel(model);
+        scene.getCamera().setPosition(1.0f, 2.0f, 3.0f);
+        LodSelector.setLodBias(1.3f);
+
+        Random random = new Random(1);
+        Entity[] entities = new Entity[500];
+        for(int i = 0; i < entities.length; i++) {
+            entities[i] = new Entity("entity" + i, model.getModelId());
+            entities[i].setPosition(random.nextFloat() * 200 - 100, random.nextFloat() * 20
+                    , random.nextFloat() * 200 - 100);
+            entities[i].setScale(0.2f + random.nextFloat() * 3);
+            scene.addEntity(entities[i]);
+        }
+        scene.syncRenderState();
+
+        LodSelector lodSelector = new LodSelector();
+        lodSelector.update(scene);
+        float[] lodThresholds = getLodThresholds();
+        Vector3f cameraPosition = scene.getCamera().getPosition();
+        float projectionScale = scene.getProjection().getProjMatrix().m11();
+        Vector3f centerAux = new Vector3f();
+        int[] lodCounts = new int[LodSelector.NUM_LOD_THRESHOLDS + 1];
+        for(Entity entity : entities) {
+            float screenSize = LodSelector.getScreenSize(model.getAabbMinCorner(), model.getAabbMaxCorner()
+                    , entity.getRenderModelMatrix(), cameraPosition, projectionScale, centerAux);
+            assertEquals(screenSize, lodSelector.getScreenSize(model, entity));
+            int lod = LodSelector.selectLod(screenSize, lodThresholds);
+            assertEquals(lod, lodSelector.selectLod(model, entity));
+            lodCounts[lod]++;
+        }
+        for(int lodCount : lodCounts) {
+            assertTrue(lodCount > 0);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.polygon.engine.core.graph;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+import org.polygon.engine.core.scene.Entity;
+import org.polygon.engine.core.utils.ShapeGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.lwjgl.opengl.GL43.*;
+
+// The indirect commands and draw records are laid out on the CPU like MultiDrawRender and GpuCulling do.
+// The last test draws meshes of a GeometryArena with the multi-draw path and with a draw per mesh, it needs a
+// GL context.
+class MultiDrawRenderTest {
+    private static final int IMAGE_SIZE = 96;
+
+    @Test
+    void commandsStartAtTheirRecords() {
+        // Index ranges of arena meshes and instance ranges of the instance buffer, the third draw is a coarser
+        // LOD of the first mesh with its own instances.
+        int[] indexCounts = {36, 240, 12};
+        int[] firstIndices = {0, 1036, 36};
+        int[] firstInstances = {0, 10, 4};
+        int[] instanceCounts = {4, 3, 5};
+        int[] materialIndices = {0, 1, 0};
+        IntBuffer commands = IntBuffer.allocate(3 * MultiDrawRender.COMMAND_SIZE_INTS);
+        IntBuffer records = IntBuffer.allocate(13 * MultiDrawRender.RECORD_SIZE_INTS);
+        int numRecords = 0;
+        for(int i = 0; i < 3; i++) {
+            MultiDrawRender.putCommand(commands, i, indexCounts[i], instanceCounts[i], firstIndices[i], numRecords);
+            MultiDrawRender.putRecords(records, numRecords, firstInstances[i], instanceCounts[i]
+                    , materialIndices[i]);
+            numRecords += instanceCounts[i];
+        }
+
+        // count, instanceCount, firstIndex, baseVertex and baseInstance.
+        assertArrayEquals(new int[] {
+                36, 4, 0, 0, 0,
+                240, 3, 1036, 0, 4,
+                12, 5, 36, 0, 7}, commands.array());
+        // Model matrix and material index of every instance, in the order of the commands.
+        assertArrayEquals(new int[] {
+                0, 0, 1, 0, 2, 0, 3, 0,
+                10, 1, 11, 1, 12, 1,
+                4, 0, 5, 0, 6, 0, 7, 0, 8, 0}, Arrays.copyOf(records.array(), numRecords * 2));
+        assertEquals(0, records.get(numRecords * 2));
+    }
+
+    @Test
+    void recordsOnlyWriteTheirRange() {
+        IntBuffer records = IntBuffer.allocate(8 * MultiDrawRender.RECORD_SIZE_INTS);
+        Arrays.fill(records.array(), -1);
+        MultiDrawRender.putRecords(records, 2, 100, 3, 7);
+        assertArrayEquals(new int[] {-1, -1, -1, -1, 100, 7, 101, 7, 102, 7, -1, -1, -1, -1, -1, -1}
+                , records.array());
+        assertEquals(0, records.position());
+    }
+
+    // The albedo and depth of the multi-draw path match a draw per mesh, for meshes in the arena after another
+    // one and for the same meshes outside of it. Covers the first indices, base vertices and instance ranges.
+    @Test
+    void multiDrawMatchesADrawPerMesh() {
+        GLTestContext.assumeAvailable();
+        GLState.invalidate();
+        List<Mesh> meshes = new ArrayList<>();
+        List<Material> materials = new ArrayList<>();
+        GeometryArena geometryArena = new GeometryArena();
+        InstanceBuffer instanceBuffer = new InstanceBuffer(16);
+        UniformBuffer cameraBuffer = new UniformBuffer(FrameUniforms.CAMERA_DATA_SIZE);
+        ShaderProgram shaderProgram = SceneRender.createShaderProgram(List.of());
+        MultiDrawRender multiDrawRender = null;
+        RenderTarget renderTarget = new RenderTarget();
+        try {
+            MeshData lodMeshData = TestMeshes.createLodMeshData();
+            MeshData sphereData = ShapeGenerator.generateSphereData(0.8f, 10, 6);
+            Mesh lodMesh = new Mesh(lodMeshData);
+            Mesh sphere = new Mesh(sphereData);
+            Mesh.setGeometryArena(geometryArena);
+            Mesh filler;
+            Mesh arenaLodMesh;
+            Mesh arenaSphere;
+            try {
+                filler = new Mesh(ShapeGenerator.generateSphereData(0.5f, 6, 4));
+                arenaLodMesh = new Mesh(lodMeshData);
+                arenaSphere = new Mesh(sphereData);
+            } finally {
+                Mesh.setGeometryArena(null);
+            }
+            meshes.addAll(List.of(lodMesh, sphere, filler, arenaLodMesh, arenaSphere));
+            assertTrue(arenaSphere.getLodFirstIndex(0) > arenaLodMesh.getLodFirstIndex(0));
+            assertTrue(arenaLodMesh.getLodFirstIndex(0) > 0);
+
+            Material red = new Material(new Vector4f(1.0f, 0.0f, 0.0f, 1.0f), 0.0f, 0.5f, 1.0f);
+            Material green = new Material(new Vector4f(0.0f, 1.0f, 0.0f, 1.0f), 0.0f, 0.5f, 1.0f);
+            materials.addAll(List.of(red, green));
+
+            // A 4 by 3 grid of entities, the first 8 are drawn with the LOD mesh and the last 4 with the sphere.
+            List<Entity> entities = new ArrayList<>();
+            for(int i = 0; i < 12; i++) {
+                Entity entity = new Entity("entity" + i, "model");
+                entity.setPosition((i % 4) * 2.2f - 3.3f, (i / 4) * 2.2f - 2.2f, 0.0f);
+                entities.add(entity);
+            }
+            instanceBuffer.upload(entities);
+            int[] lodMeshFirstInstances = {0, 5, 8, 8};
+            int[] lodMeshInstanceCounts = {5, 3, 0, 0};
+            // The sphere has a single LOD, its second LOD's instances are drawn with the first.
+            int[] sphereFirstInstances = {8, 10, 12, 12};
+            int[] sphereInstanceCounts = {2, 2, 0, 0};
+
+            ByteBuffer cameraData = cameraBuffer.getData();
+            new Matrix4f().perspective((float) Math.toRadians(60.0f), 1.0f, 0.1f, 50.0f)
+                    .get(FrameUniforms.PROJECTION_MATRIX_OFFSET, cameraData);
+            new Matrix4f().lookAt(0.0f, 0.0f, 9.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f)
+                    .get(FrameUniforms.VIEW_MATRIX_OFFSET, cameraData);
+            cameraBuffer.upload();
+            cameraBuffer.bind(UniformBuffer.CAMERA_BINDING);
+            TextureCache textureCache = new TextureCache();
+
+            // A draw per mesh outside of the arena.
+            renderTarget.begin();
+            shaderProgram.bind();
+            bindMaterial(red, textureCache);
+            SceneRender.drawInstancedLods(lodMesh, instanceBuffer, lodMeshFirstInstances, lodMeshInstanceCounts);
+            bindMaterial(green, textureCache);
+            SceneRender.drawInstancedLods(sphere, instanceBuffer, sphereFirstInstances, sphereInstanceCounts);
+            Image expected = renderTarget.read();
+            assertTrue(expected.coveredPixels() > IMAGE_SIZE * IMAGE_SIZE / 10);
+
+            // A draw per mesh of the arena.
+            renderTarget.begin();
+            shaderProgram.bind();
+            bindMaterial(red, textureCache);
+            SceneRender.drawInstancedLods(arenaLodMesh, instanceBuffer, lodMeshFirstInstances
+                    , lodMeshInstanceCounts);
+            bindMaterial(green, textureCache);
+            SceneRender.drawInstancedLods(arenaSphere, instanceBuffer, sphereFirstInstances, sphereInstanceCounts);
+            expected.assertMatches(renderTarget.read());
+
+            // The multi-draw path.
+            multiDrawRender = new MultiDrawRender(geometryArena);
+            renderTarget.begin();
+            multiDrawRender.clear();
+            multiDrawRender.add(red, arenaLodMesh, lodMeshFirstInstances, lodMeshInstanceCounts, textureCache, 0.0f);
+            multiDrawRender.add(green, arenaSphere, sphereFirstInstances, sphereInstanceCounts, textureCache, 0.0f);
+            multiDrawRender.render(instanceBuffer, textureCache);
+            expected.assertMatches(renderTarget.read());
+            assertEquals(GL_NO_ERROR, glGetError());
+        } finally {
+            GLState.bindVertexArray(0);
+            GLState.useProgram(0);
+            if(multiDrawRender != null) {
+                multiDrawRender.cleanup();
+            }
+            renderTarget.cleanup();
+            shaderProgram.cleanup();
+            cameraBuffer.cleanup();
+            instanceBuffer.cleanup();
+            materials.forEach(Material::cleanup);
+            meshes.forEach(Mesh::cleanup);
+            geometryArena.cleanup();
+        }
+    }
+
+    // Same material block as the geometry pass binds, see SceneRender.
+    private static void bindMaterial(Material material, TextureCache textureCache) {
+        UniformBuffer materialBuffer = material.getUniformBuffer();
+        if(materialBuffer == null) {
+            materialBuffer = new UniformBuffer(SceneRender.MATERIAL_DATA_SIZE);
+            material.setUniformBuffer(materialBuffer);
+        }
+        SceneRender.putMaterialData(materialBuffer.getData(), 0, material, material.getTextures(textureCache));
+        materialBuffer.upload();
+        materialBuffer.bind(UniformBuffer.MATERIAL_BINDING);
+    }
+
+    // Albedo and depth of a render.
+    private record Image(int[] albedo, float[] depth) {
+        private int coveredPixels() {
+            int coveredPixels = 0;
+            for(float value : depth) {
+                if(value < 1.0f) {
+                    coveredPixels++;
+                }
+            }
+            return coveredPixels;
+        }
+
+        private void assertMatches(Image image) {
+            for(int i = 0; i < albedo.length; i++) {
+                assertEquals(albedo[i], image.albedo[i], "Albedo of pixel [" + i + "]");
+                assertEquals(depth[i], image.depth[i], 1e-6f, "Depth of pixel [" + i + "]");
+            }
+        }
+    }
+
+    // The albedo attachment of the geometry pass and a depth buffer.
+    private static class RenderTarget {
+        private final int framebufferId;
+        private final int colorTextureId;
+        private final int depthRenderbufferId;
+
+        private RenderTarget() {
+            framebufferId = glGenFramebuffers();
+            GLState.bindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+            colorTextureId = glGenTextures();
+            GLState.bindTexture(GL_TEXTURE_2D, colorTextureId);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, IMAGE_SIZE, IMAGE_SIZE, 0, GL_RGBA, GL_UNSIGNED_BYTE
+                    , (ByteBuffer) null);
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorTextureId, 0);
+            GLState.bindTexture(GL_TEXTURE_2D, 0);
+            depthRenderbufferId = glGenRenderbuffers();
+            glBindRenderbuffer(GL_RENDERBUFFER, depthRenderbufferId);
+            glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT32F, IMAGE_SIZE, IMAGE_SIZE);
+            glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthRenderbufferId);
+            glDrawBuffer(GL_COLOR_ATTACHMENT0);
+            assertEquals(GL_FRAMEBUFFER_COMPLETE, glCheckFramebufferStatus(GL_FRAMEBUFFER));
+            GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
+        }
+
+        private void begin() {
+            GLState.bindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+            GLState.viewport(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+            GLState.enable(GL_DEPTH_TEST);
+            GLState.depthFunc(GL_LESS);
+            GLState.depthMask(true);
+            GLState.disable(GL_BLEND);
+            GLState.disable(GL_CULL_FACE);
+            glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        }
+
+        private Image read() {
+            int numPixels = IMAGE_SIZE * IMAGE_SIZE;
+            ByteBuffer albedo = MemoryUtil.memAlloc(numPixels * 4);
+            FloatBuffer depth = MemoryUtil.memAllocFloat(numPixels);
+            try {
+                GLState.bindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+                glReadBuffer(GL_COLOR_ATTACHMENT0);
+                glReadPixels(0, 0, IMAGE_SIZE, IMAGE_SIZE, GL_RGBA, GL_UNSIGNED_BYTE, albedo);
+                glReadPixels(0, 0, IMAGE_SIZE, IMAGE_SIZE, GL_DEPTH_COMPONENT, GL_FLOAT, depth);
+                GLState.bindFramebuffer(GL_FRAMEBUFFER, 0);
+                int[] albedoPixels = new int[numPixels];
+                albedo.asIntBuffer().get(albedoPixels);
+                float[] depthValues = new float[numPixels];
+                depth.get(depthValues);
+                return new Image(albedoPixels, depthValues);
+            } finally {
+                MemoryUtil.memFree(albedo);
+                MemoryUtil.memFree(depth);
+            }
+        }
+
+        private void cleanup() {
+            glDeleteFramebuffers(framebufferId);
+            glDeleteTextures(colorTextureId);
+            glDeleteRenderbuffers(depthRenderbufferId);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.polygon.engine.core.graph;
+
+import org.polygon.engine.core.utils.ShapeGenerator;
+
+import java.util.Arrays;
+
+// Mesh data shared by the tests drawing on the GPU.
+final class TestMeshes {
+    private TestMeshes() {
+    }
+
+    // A sphere whose second LOD is the first third of its triangles.
+    static MeshData createLodMeshData() {
+        MeshData sphere = ShapeGenerator.generateSphereData(1.0f, 16, 8);
+        int[] lod0 = sphere.indices();
+        int lod1IndexCount = lod0.length / 9 * 3;
+        int[] indices = Arrays.copyOf(lod0, lod0.length + lod1IndexCount);
+        System.arraycopy(lod0, 0, indices, lod0.length, lod1IndexCount);
+        return new MeshData(sphere.positions(), sphere.normals(), sphere.tangents(), sphere.bitangents()
+                , sphere.textCoords(), indices, sphere.boneIndices(), sphere.weights(), sphere.aabbMinCorner()
+                , sphere.aabbMaxCorner(), new int[] {0, lod0.length, indices.length});
+    }
+}
@@ -0,0 +1,300 @@
+package org.polygon.engine.core.scene;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+import org.polygon.engine.core.graph.Model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The renderers only see the scene as of the last sync point, while an update thread keeps changing it the way
+// the Engine's multithreaded update does. Needs no GL context.
+class SceneSyncTest {
+    private static final String MODEL_ID = "model";
+    private static final long RUN_MILLIS = 1000;
+
+    private static Scene createScene() {
+        Scene scene = new Scene(800, 600);
+        scene.addModel(new Model(MODEL_ID, MODEL_ID, new ArrayList<>(), new ArrayList<>(), false));
+        return scene;
+    }
+
+    private static Model getModel(Scene scene) {
+        return scene.getModelMap().get(MODEL_ID);
+    }
+
+    @Test
+    void modelsAndEntitiesReachTheRenderersAtTheSyncPoint() {
+        Scene scene = createScene();
+        Entity entity = new Entity("entity", MODEL_ID);
+        scene.addEntity(entity);
+        assertTrue(scene.getRenderModels().isEmpty());
+
+        scene.syncRenderState();
+        assertEquals(1, scene.getRenderModels().size());
+        assertEquals(List.of(entity), getModel(scene).getRenderEntityList());
+
+        scene.removeEntity(entity);
+        assertEquals(List.of(entity), getModel(scene).getRenderEntityList());
+        List<Entity> queried = new ArrayList<>();
+        scene.getBvh().query(new Vector3f(), 1.0f, queried);
+        assertEquals(List.of(entity), queried);
+
+        scene.syncRenderState();
+        assertTrue(getModel(scene).getRenderEntityList().isEmpty());
+        queried.clear();
+        scene.getBvh().query(new Vector3f(), 1.0f, queried);
+        assertTrue(queried.isEmpty());
+    }
+
+    @Test
+    void entityAddedAndRemovedBetweenSyncsIsNeverRendered() {
+        Scene scene = createScene();
+        scene.syncRenderState();
+        Entity entity = new Entity("entity", MODEL_ID);
+        scene.addEntity(entity);
+        scene.removeEntity(entity);
+
+        scene.syncRenderState();
+        assertTrue(getModel(scene).getRenderEntityList().isEmpty());
+        List<Entity> queried = new ArrayList<>();
+        scene.getBvh().query(new Vector3f(), 1.0f, queried);
+        assertTrue(queried.isEmpty());
+    }
+
+    @Test
+    void resetReachesTheRenderersAtTheSyncPoint() {
+        Scene scene = createScene();
+        scene.syncRenderState();
+        Model model = getModel(scene);
+
+        scene.reset();
+        assertSame(model, scene.getRenderModels().get(0));
+        scene.syncRenderState();
+        assertTrue(scene.getRenderModels().isEmpty());
+    }
+
+    // The entities of the scene before the reset, synced or not, can be added again to the new models.
+    @Test
+    void entitiesCanBeAddedAgainAfterAReset() {
+        Scene scene = createScene();
+        Entity synced = new Entity("synced", MODEL_ID);
+        Entity removed = new Entity("removed", MODEL_ID);
+        scene.addEntity(synced);
+        scene.addEntity(removed);
+        scene.syncRenderState();
+        Entity unsynced = new Entity("unsynced", MODEL_ID);
+        scene.addEntity(unsynced);
+        scene.removeEntity(removed);
+        synced.setPosition(1.0f, 0.0f, 0.0f);
+
+        scene.reset();
+        scene.addModel(new Model(MODEL_ID, MODEL_ID, new ArrayList<>(), new ArrayList<>(), false));
+        scene.addEntity(synced);
+        scene.addEntity(removed);
+        scene.addEntity(unsynced);
+        scene.syncRenderState();
+        assertEquals(List.of(synced, removed, unsynced), getModel(scene).getRenderEntityList());
+        List<Entity> queried = new ArrayList<>();
+        scene.getBvh().query(new Vector3f(), 2.0f, queried);
+        assertEquals(3, queried.size());
+
+        // Moved entities update their proxy in the new tree.
+        synced.setPosition(50.0f, 0.0f, 0.0f);
+        scene.syncRenderState();
+        queried.clear();
+        scene.getBvh().query(new Vector3f(50.0f, 0.0f, 0.0f), 2.0f, queried);
+        assertEquals(List.of(synced), queried);
+    }
+
+    // The renderers keeping data per entity learn from the sync points what changed since the previous frame.
+    @Test
+    void syncPointsReportTheChangedRenderState() {
+        Scene scene = createScene();
+        Entity moved = new Entity("moved", MODEL_ID);
+        Entity ticked = new Entity("ticked", MODEL_ID);
+        scene.addEntity(moved);
+        scene.addEntity(ticked);
+        scene.syncRenderState();
+        long renderListsVersion = scene.getRenderListsVersion();
+        assertEquals(List.of(moved, ticked), scene.getSyncedEntities());
+
+        scene.syncRenderState();
+        assertEquals(renderListsVersion, scene.getRenderListsVersion());
+        assertTrue(scene.getSyncedEntities().isEmpty());
+
+        moved.setPosition(1.0f, 0.0f, 0.0f);
+        scene.syncRenderState();
+        assertEquals(List.of(moved), scene.getSyncedEntities());
+
+        // Entities moved in a tick are interpolated until a newer tick ran, then synced to their transform.
+        scene.beginUpdateTick();
+        ticked.setPosition(2.0f, 0.0f, 0.0f);
+        scene.endUpdateTick();
+        scene.syncRenderState();
+        assertEquals(List.of(ticked), scene.getInterpolatedEntities());
+        scene.beginUpdateTick();
+        scene.endUpdateTick();
+        scene.syncRenderState();
+        assertEquals(List.of(ticked), scene.getSyncedEntities());
+        assertTrue(scene.getInterpolatedEntities().isEmpty());
+        assertEquals(renderListsVersion, scene.getRenderListsVersion());
+        assertEquals(5, scene.getRenderSyncCount());
+
+        scene.removeEntity(moved);
+        scene.syncRenderState();
+        assertTrue(scene.getRenderListsVersion() != renderListsVersion);
+    }
+
+    // Every tick moves all the entities to the tick number, a frame must never mix two ticks.
+    @Test
+    void transformsAreSnapshotWhileTheUpdateMovesEntities() throws InterruptedException {
+        Scene scene = createScene();
+        int numEntities = 5000;
+        Entity[] entities = new Entity[numEntities];
+        for(int i = 0; i < numEntities; i++) {
+            entities[i] = new Entity("entity" + i, MODEL_ID);
+            scene.addEntity(entities[i]);
+        }
+
+        ReentrantLock stateLock = new ReentrantLock();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> updateError = new AtomicReference<>();
+        Thread updateThread = new Thread(() -> {
+            try {
+                int tick = 0;
+                while(running.get()) {
+                    stateLock.lock();
+                    try {
+                        tick++;
+                        for(Entity entity : entities) {
+                            entity.setPosition(tick, tick, tick);
+                        }
+                    } finally {
+                        stateLock.unlock();
+                    }
+                    Thread.yield();
+                }
+            } catch (Throwable e) {
+                updateError.set(e);
+            }
+        });
+        updateThread.start();
+
+        List<Entity> queried = new ArrayList<>();
+        Vector3f center = new Vector3f();
+        long end = System.currentTimeMillis() + RUN_MILLIS;
+        try {
+            while(System.currentTimeMillis() < end) {
+                stateLock.lock();
+                try {
+                    scene.syncRenderState();
+                } finally {
+                    stateLock.unlock();
+                }
+                float tick = entities[0].getRenderModelMatrix().m30();
+                for(Entity entity : entities) {
+                    assertEquals(tick, entity.getRenderModelMatrix().m30());
+                    assertEquals(tick, entity.getRenderModelMatrix().m32());
+                }
+                queried.clear();
+                scene.getBvh().query(center.set(tick), 1.0f, queried);
+                assertEquals(numEntities, queried.size());
+            }
+        } finally {
+            running.set(false);
+            updateThread.join();
+        }
+        assertNull(updateError.get());
+    }
+
+    // The update adds a batch of entities every tick and removes the previous one, the renderers iterate the
+    // render lists and query the BVH outside the lock and must always see exactly one whole batch.
+    @Test
+    void entityListsAreSnapshotWhileTheUpdateAddsAndRemovesEntities() throws InterruptedException {
+        Scene scene = createScene();
+        Model model = getModel(scene);
+        int batchSize = 500;
+
+        ReentrantLock stateLock = new ReentrantLock();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> updateError = new AtomicReference<>();
+        List<Entity> batch = new ArrayList<>();
+        Runnable tick = new Runnable() {
+            private int tickNumber;
+
+            @Override
+            public void run() {
+                tickNumber++;
+                for(Entity entity : batch) {
+                    scene.removeEntity(entity);
+                }
+                batch.clear();
+                for(int i = 0; i < batchSize; i++) {
+                    Entity entity = new Entity(tickNumber + "_" + i, MODEL_ID);
+                    entity.setPosition(tickNumber, 0, 0);
+                    scene.addEntity(entity);
+                    batch.add(entity);
+                }
+            }
+        };
+        tick.run();
+        Thread updateThread = new Thread(() -> {
+            try {
+                while(running.get()) {
+                    stateLock.lock();
+                    try {
+                        tick.run();
+                    } finally {
+                        stateLock.unlock();
+                    }
+                    Thread.yield();
+                }
+            } catch (Throwable e) {
+                updateError.set(e);
+            }
+        });
+        updateThread.start();
+
+        List<Entity> queried = new ArrayList<>();
+        Vector3f center = new Vector3f();
+        long end = System.currentTimeMillis() + RUN_MILLIS;
+        int frames = 0;
+        try {
+            while(System.currentTimeMillis() < end) {
+                stateLock.lock();
+                try {
+                    scene.syncRenderState();
+                } finally {
+                    stateLock.unlock();
+                }
+                for(Model renderModel : scene.getRenderModels()) {
+                    List<Entity> entityList = renderModel.getRenderEntityList();
+                    assertEquals(batchSize, entityList.size());
+                    float batchTick = entityList.get(0).getRenderModelMatrix().m30();
+                    for(Entity entity : entityList) {
+                        assertEquals(batchTick, entity.getRenderModelMatrix().m30());
+                    }
+                    queried.clear();
+                    scene.getBvh().query(center.set(batchTick, 0, 0), 0.1f, queried);
+                    assertEquals(batchSize, queried.size());
+                }
+                frames++;
+            }
+        } finally {
+            running.set(false);
+            updateThread.join();
+        }
+        assertNull(updateError.get());
+        assertSame(model, scene.getRenderModels().get(0));
+        assertTrue(frames > 0);
+    }
+}